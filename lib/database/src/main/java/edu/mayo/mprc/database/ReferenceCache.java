@@ -0,0 +1,88 @@
+package edu.mayo.mprc.database;
+
+import org.hibernate.Session;
+import org.hibernate.Transaction;
+
+import javax.transaction.Synchronization;
+
+/**
+ * In-process cache of read-mostly reference data, such as the list of instruments or task states.
+ * The data is loaded on first use and kept until {@link #invalidate} is called.
+ * <p/>
+ * The DAO owning the cache has to invalidate it whenever it writes the cached data. When invalidated
+ * from within a transaction, the cache is invalidated once more when the transaction completes - a reload done by
+ * another thread before the commit would otherwise keep the old data around.
+ * <p/>
+ * The cached objects outlive the session that loaded them. Treat them as read-only.
+ *
+ * @param <T> Type of the cached data.
+ */
+public final class ReferenceCache<T> {
+	private final Loader<T> loader;
+	private T value;
+	/**
+	 * Incremented on every invalidation, so a load that raced with an invalidation is not stored.
+	 */
+	private long generation;
+
+	public ReferenceCache(Loader<T> loader) {
+		this.loader = loader;
+	}
+
+	/**
+	 * @return Cached data, loaded if not available.
+	 */
+	public T get() {
+		final long loadGeneration;
+		synchronized (this) {
+			if (value != null) {
+				return value;
+			}
+			loadGeneration = generation;
+		}
+		final T loaded = loader.load();
+		synchronized (this) {
+			if (generation == loadGeneration) {
+				value = loaded;
+			}
+		}
+		return loaded;
+	}
+
+	/**
+	 * Drop the cached data, the next {@link #get} will load it again.
+	 */
+	public synchronized void invalidate() {
+		value = null;
+		generation++;
+	}
+
+	/**
+	 * Drop the cached data now and once again when the transaction of given session completes.
+	 *
+	 * @param session Session the data is being written in.
+	 */
+	public void invalidate(Session session) {
+		invalidate();
+		final Transaction transaction = session.getTransaction();
+		if (transaction != null && transaction.isActive()) {
+			transaction.registerSynchronization(new Synchronization() {
+				@Override
+				public void beforeCompletion() {
+				}
+
+				@Override
+				public void afterCompletion(int status) {
+					invalidate();
+				}
+			});
+		}
+	}
+
+	/**
+	 * Loads the cached data from the database.
+	 */
+	public interface Loader<T> {
+		T load();
+	}
+}
@@ -0,0 +1,56 @@
+package edu.mayo.mprc.database;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public final class ReferenceCacheTest {
+
+	private static final class CountingLoader implements ReferenceCache.Loader<Integer> {
+		private int loads;
+
+		@Override
+		public Integer load() {
+			loads++;
+			return loads;
+		}
+	}
+
+	@Test
+	public void shouldLoadOnce() {
+		final CountingLoader loader = new CountingLoader();
+		final ReferenceCache<Integer> cache = new ReferenceCache<Integer>(loader);
+		Assert.assertEquals(cache.get(), Integer.valueOf(1));
+		Assert.assertEquals(cache.get(), Integer.valueOf(1));
+		Assert.assertEquals(loader.loads, 1);
+	}
+
+	@Test
+	public void shouldReloadAfterInvalidation() {
+		final CountingLoader loader = new CountingLoader();
+		final ReferenceCache<Integer> cache = new ReferenceCache<Integer>(loader);
+		Assert.assertEquals(cache.get(), Integer.valueOf(1));
+		cache.invalidate();
+		Assert.assertEquals(cache.get(), Integer.valueOf(2));
+		Assert.assertEquals(cache.get(), Integer.valueOf(2));
+	}
+
+	@Test
+	public void shouldNotKeepLoadRacingWithInvalidation() {
+		final ReferenceCache<Integer>[] holder = new ReferenceCache[1];
+		final CountingLoader counter = new CountingLoader();
+		holder[0] = new ReferenceCache<Integer>(new ReferenceCache.Loader<Integer>() {
+			@Override
+			public Integer load() {
+				final Integer value = counter.load();
+				if (value == 1) {
+					// Somebody writes the data while we are loading
+					holder[0].invalidate();
+				}
+				return value;
+			}
+		});
+		Assert.assertEquals(holder[0].get(), Integer.valueOf(1));
+		Assert.assertEquals(holder[0].get(), Integer.valueOf(2));
+		Assert.assertEquals(holder[0].get(), Integer.valueOf(2));
+	}
+}
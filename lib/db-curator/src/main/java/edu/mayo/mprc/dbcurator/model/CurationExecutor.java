@@ -6,8 +6,11 @@ import edu.mayo.mprc.fasta.DBInputStream;
 import edu.mayo.mprc.fasta.DBOutputStream;
 import edu.mayo.mprc.fasta.FASTAInputStream;
 import edu.mayo.mprc.fasta.FASTAOutputStream;
+import edu.mayo.mprc.fasta.MappedFASTAInputStream;
+import edu.mayo.mprc.utilities.ContentHashIndex;
 import edu.mayo.mprc.utilities.FileUtilities;
 import edu.mayo.mprc.utilities.StringUtilities;
+import edu.mayo.mprc.utilities.ThrottledProgress;
 import org.apache.log4j.Logger;
 
 import java.io.File;
@@ -19,6 +22,10 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
 import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * A CurationExecutor is a class class than handles the work behind executing a curation.
@@ -43,7 +50,7 @@ public final class CurationExecutor implements Runnable {
 	/**
 	 * the stream that is currently acting as an output file
 	 */
-	private DBOutputStream outStream;
+	private FASTAOutputStream outStream;
 
 	/**
 	 * the curation that is being executed
@@ -147,7 +154,8 @@ public final class CurationExecutor implements Runnable {
 		}
 
 		//for each step in the curation
-		for (CurationStep step : steps) {
+		int stepIndex = 0;
+		while (stepIndex < steps.size()) {
 			//if we have been interupted then exit.  This is pretty course grained interuption
 			//but it would take a lot more work to make it finer grained.
 			if (this.status.isInterrupted()) {
@@ -155,17 +163,28 @@ public final class CurationExecutor implements Runnable {
 				break;
 			}
 
+			//consecutive streaming steps are performed together in a single pass over the database
+			final int streamingSteps = outStream == null ? 0 : countStreamingSteps(steps, stepIndex);
+			final List<CurationStep> toPerform = steps.subList(stepIndex, stepIndex + Math.max(1, streamingSteps));
+			stepIndex += toPerform.size();
+
 			//increment the step counter
 			this.status.incrementStep();
+			final int firstStepNumber = this.status.getCurrentStepNumber();
+			final int lastStepNumber = firstStepNumber + toPerform.size() - 1;
 
-			this.status.addMessage("Step " + this.status.getCurrentStepNumber() + " has begun");
+			if (toPerform.size() == 1) {
+				this.status.addMessage("Step " + firstStepNumber + " has begun");
+			} else {
+				this.status.addMessage("Steps " + firstStepNumber + "-" + lastStepNumber + " have begun as a single pass");
+			}
 
 			//set the inStream to be the same file as the previous outStream file
 			try {
 				if (outStream == null) {
 					inStream = null;
 				} else {
-					inStream = new FASTAInputStream(outStream.getFile());
+					inStream = new MappedFASTAInputStream(outStream.getFile());
 				}
 
 				//if we couldn't find the output stream file object then it must have been deleted on us
@@ -176,15 +195,20 @@ public final class CurationExecutor implements Runnable {
 			}
 
 			//create a new outstream using the same test
-			File newOutFile = new File(this.tempDirectory.getPath(), String.valueOf(this.status.getCurrentStepNumber()));
+			File newOutFile = new File(this.tempDirectory.getPath(), String.valueOf(lastStepNumber));
 			try {
 				this.outStream = new FASTAOutputStream(newOutFile);
 			} catch (IOException e) {
 				status.addMessage("Error setting up the next output file after step " + newOutFile);
 				LOGGER.error(e);
 			}
-			//have the step perform itself
-			StepValidation postValidation = step.performStep(this);
+			//have the step(s) perform
+			final List<StepValidation> postValidations;
+			if (toPerform.size() == 1) {
+				postValidations = Collections.singletonList(toPerform.get(0).performStep(this));
+			} else {
+				postValidations = performStreamingSteps(toPerform);
+			}
 			//close the streams that were previously open
 			if (this.inStream != null) {
 				this.inStream.close();
@@ -192,18 +216,24 @@ public final class CurationExecutor implements Runnable {
 			if (this.outStream != null) {
 				this.outStream.close();
 			}
-			if (postValidation.isOK()) {
-				this.status.addCompletedStepValidation(postValidation);
-			} else {
-				for (String msg : postValidation.getMessages()) {
-					this.status.addMessage("Step failed: " + msg);
+			for (int i = 0; i < postValidations.size(); i++) {
+				if (i > 0) {
+					this.status.incrementStep();
+				}
+				final StepValidation postValidation = postValidations.get(i);
+				if (postValidation.isOK()) {
+					this.status.addCompletedStepValidation(postValidation);
+				} else {
+					for (String msg : postValidation.getMessages()) {
+						this.status.addMessage("Step failed: " + msg);
+					}
+					this.status.addFailedStepValidation(postValidation);
+					this.status.setToDone(); //break out of the step loop
+					return true;
 				}
-				this.status.addFailedStepValidation(postValidation);
-				this.status.setToDone(); //break out of the step loop
-				return true;
+				this.status.addMessage("Step " + this.status.getCurrentStepNumber() + " completed with " +
+						postValidation.getCompletionCount() + " sequences");
 			}
-			this.status.addMessage("Step " + this.status.getCurrentStepNumber() + " completed with " +
-					postValidation.getCompletionCount() + " sequences");
 		}
 
 		//if the resulting fasta file is not valid then we want to say something in the status but we should probably just complete anyway
@@ -215,8 +245,11 @@ public final class CurationExecutor implements Runnable {
 
 			File substitutableFile = null;
 
-			this.status.addMessage("Determining if there is an identical file already (may take a moment)");
-			substitutableFile = FileUtilities.findSingleSimilarFile(this.outStream.getFile(), finalPlace.getParentFile());
+			this.status.addMessage("Determining if there is an identical file already");
+			//the hash of the result was computed while it was written, the existing files are looked up in the index
+			final ContentHashIndex index = ContentHashIndex.forFolder(finalPlace.getParentFile());
+			final String contentHash = this.outStream.getContentHash();
+			substitutableFile = index.findIdentical(this.outStream.getFile(), contentHash);
 
 			if (substitutableFile != null) {
 				LOGGER.info("There already was an identical file so we will use it: " + substitutableFile.getAbsolutePath());
@@ -230,6 +263,7 @@ public final class CurationExecutor implements Runnable {
 				} else {
 					this.status.addMessage("Moving result file to final place: " + finalPlace);
 				}
+				index.add(finalPlace, contentHash);
 			}
 
 			this.curation.setCurationFile(finalPlace);
@@ -246,6 +280,80 @@ public final class CurationExecutor implements Runnable {
 		return false;
 	}
 
+	/**
+	 * @return How many steps starting at given index can be chained into a single pass. Steps that would fail
+	 *         their validation are left to run on their own, so they report the failure as usual.
+	 */
+	private int countStreamingSteps(List<CurationStep> steps, int start) {
+		int count = 0;
+		while (start + count < steps.size()) {
+			final CurationStep step = steps.get(start + count);
+			if (!(step instanceof StreamingCurationStep) || !step.preValidate(curationDao).isOK()) {
+				break;
+			}
+			count++;
+		}
+		return count;
+	}
+
+	/**
+	 * Chains the stages of given streaming steps and pushes the current input through them in one pass,
+	 * writing only the final result to the current output.
+	 *
+	 * @return Validations of the steps, in order.
+	 */
+	private List<StepValidation> performStreamingSteps(List<CurationStep> streamingSteps) {
+		final CurationStage[] stages = new CurationStage[streamingSteps.size()];
+		DBOutputStream next = this.outStream;
+		for (int i = stages.length - 1; i >= 0; i--) {
+			stages[i] = ((StreamingCurationStep) streamingSteps.get(i)).createStage(next, this.tempDirectory);
+			next = stages[i];
+		}
+
+		final ThrottledProgress progress = CurationStage.progressOf(this.status);
+		// The stage we pushed data into when an exception occurred
+		int driven = 0;
+		try {
+			this.inStream.beforeFirst();
+			while (this.inStream.gotoNextSequence()) {
+				stages[0].appendSequence(this.inStream.getHeader(), this.inStream.getSequence());
+				progress.advance();
+			}
+			// Stages holding sequences back flush them to the following stages, so finish in order
+			for (driven = 0; driven < stages.length; driven++) {
+				stages[driven].finish();
+			}
+			progress.finish();
+		} catch (Exception e) {
+			LOGGER.error(e);
+			failingStage(stages, driven).getValidation().addMessageAndException("Error performing the step as part of a single pass over "
+					+ streamingSteps.size() + " steps: " + e.getMessage(), e);
+		} finally {
+			for (CurationStage stage : stages) {
+				stage.close();
+			}
+		}
+
+		final List<StepValidation> validations = new ArrayList<StepValidation>(stages.length);
+		for (CurationStage stage : stages) {
+			validations.add(stage.complete());
+		}
+		return validations;
+	}
+
+	/**
+	 * @param driven Index of the stage the exception was thrown from.
+	 * @return The stage that failed, following the exception down the chain. Failures of the final output are
+	 *         reported on the last stage.
+	 */
+	private static CurationStage failingStage(CurationStage[] stages, int driven) {
+		int failed = Math.min(driven, stages.length - 1);
+		while (failed < stages.length - 1 && stages[failed].isNextFailed()) {
+			failed++;
+		}
+		return stages[failed];
+	}
+
 	/**
 	 * gets the status object of this curation.  You might want to get it before you run execute because it will allow
 	 * you to get feedback as far as progress is concerned.  This feature will require some concurrency but it shouldn't
@@ -308,44 +416,42 @@ public final class CurationExecutor implements Runnable {
 	/**
 	 * An implementation of CurationStatus that only this class will be aware of.  Only CurationExecutor will need
 	 * certain functionality and the only source of an instance of this Interface should be through a CurationExecutor
+	 * <p/>
+	 * The status is written by the executing thread and polled by the UI, so it uses no locks. The step number,
+	 * its progress and the last sequence count change together, as a single immutable {@link StepState}.
 	 *
 	 * @author Eric J. Winter Date: Apr 6, 2007 Time: 9:56:48 AM
 	 */
-	private class MyCurationStatus implements CurationStatus {
+	private static final class MyCurationStatus implements CurationStatus {
 		/**
-		 * a list of step validations representing failed steps
+		 * messages that were not picked up by {@link #getMessages()} yet
 		 */
-		private final List<String> messages = new ArrayList<String>();
+		private final Queue<String> messages = new ConcurrentLinkedQueue<String>();
 
 		/**
 		 * a list of step validations that completed succesfully
 		 */
-		private List<StepValidation> completedStepValidations = new ArrayList<StepValidation>();
+		private final List<StepValidation> completedStepValidations = new CopyOnWriteArrayList<StepValidation>();
 
 		/**
 		 * a list of the step validation representing steps that failed
 		 */
-		private List<StepValidation> failedStepValidations = new ArrayList<StepValidation>();
-
-		/**
-		 * a progress indicator between 0 and 100
-		 */
-		private float currentStepProgress = 0f;
+		private final List<StepValidation> failedStepValidations = new CopyOnWriteArrayList<StepValidation>();
 
 		/**
-		 * a counter indicating which step we are currently on
+		 * which step we are on, how far it got and how many sequences the last completed step produced
 		 */
-		private int whichStep = 0;
+		private final AtomicReference<StepState> state = new AtomicReference<StepState>(new StepState(0, 0f, -1));
 
 		/**
 		 * set to true when we are done performing the execution
 		 */
-		private boolean executionComplete = false;
+		private volatile boolean executionComplete = false;
 
 		/**
 		 * set to true when we want to interrupt the execution
 		 */
-		private boolean interrupt = false;
+		private volatile boolean interrupt = false;
 
 		/**
 		 * create a new status object
@@ -359,12 +465,12 @@ public final class CurationExecutor implements Runnable {
 		 *
 		 * @return the list of messages that have been added
 		 */
-		public synchronized List<String> getMessages() {
+		public List<String> getMessages() {
 			List<String> retMessages = new ArrayList<String>();
-			for (String s : this.messages) {
-				retMessages.add(s);
+			String message;
+			while ((message = this.messages.poll()) != null) {
+				retMessages.add(message);
 			}
-			this.messages.clear();
 			return retMessages;
 		}
 
@@ -373,7 +479,7 @@ public final class CurationExecutor implements Runnable {
 		 *
 		 * @param toAdd message to add
 		 */
-		public synchronized void addMessage(String toAdd) {
+		public void addMessage(String toAdd) {
 			this.messages.add(toAdd);
 		}
 
@@ -382,8 +488,8 @@ public final class CurationExecutor implements Runnable {
 		 *
 		 * @return the progress of the currently executing step
 		 */
-		public synchronized float getCurrentStepProgress() {
-			return this.currentStepProgress;
+		public float getCurrentStepProgress() {
+			return this.state.get().progress;
 		}
 
 		/**
@@ -391,15 +497,17 @@ public final class CurationExecutor implements Runnable {
 		 *
 		 * @param progress the progress you want to set
 		 */
-		public synchronized void setCurrentStepProgress(float progress) {
+		public void setCurrentStepProgress(float progress) {
 			if (progress > 100f) {
 				progress = 100f;
 			}
 			if (progress < 0f) {
 				progress = 0f;
 			}
-			this.currentStepProgress = progress;
-
+			StepState current;
+			do {
+				current = this.state.get();
+			} while (!this.state.compareAndSet(current, new StepState(current.step, progress, current.lastSequenceCount)));
 		}
 
 		/**
@@ -407,8 +515,7 @@ public final class CurationExecutor implements Runnable {
 		 *
 		 * @return a list of validations of successfully completed steps
 		 */
-		public synchronized List<StepValidation> getCompletedStepValidations() {
-
+		public List<StepValidation> getCompletedStepValidations() {
 			return Collections.unmodifiableList(completedStepValidations);
 		}
 
@@ -418,11 +525,12 @@ public final class CurationExecutor implements Runnable {
 		 *
 		 * @param toAdd the step that was completed successfully (it is up to caller to check)
 		 */
-		public synchronized void addCompletedStepValidation(StepValidation toAdd) {
-			if (this.completedStepValidations == null) {
-				this.completedStepValidations = new ArrayList<StepValidation>();
-			}
+		public void addCompletedStepValidation(StepValidation toAdd) {
 			this.completedStepValidations.add(toAdd);
+			StepState current;
+			do {
+				current = this.state.get();
+			} while (!this.state.compareAndSet(current, new StepState(current.step, current.progress, toAdd.getCompletionCount())));
 		}
 
 		/**
@@ -430,18 +538,14 @@ public final class CurationExecutor implements Runnable {
 		 *
 		 * @param toAdd - the step that was failed
 		 */
-		public synchronized void addFailedStepValidation(StepValidation toAdd) {
-			if (this.failedStepValidations == null) {
-				this.failedStepValidations = new ArrayList<StepValidation>();
-			}
+		public void addFailedStepValidation(StepValidation toAdd) {
 			this.failedStepValidations.add(toAdd);
 		}
 
 		/**
 		 * @return
 		 */
-		public synchronized List<StepValidation> getFailedStepValidations() {
-			//if (this.failedStepValidations == null || this.failedStepValidations.size() == 0) return null;
+		public List<StepValidation> getFailedStepValidations() {
 			return Collections.unmodifiableList(failedStepValidations);
 		}
 
@@ -450,24 +554,28 @@ public final class CurationExecutor implements Runnable {
 		 *
 		 * @return true if the executor is still running else false
 		 */
-		public synchronized boolean isInProgress() {
+		public boolean isInProgress() {
 			return !this.executionComplete && !this.interrupt;
 		}
 
 		/**
 		 * Sets the executor to a done state.
 		 */
-		public synchronized void setToDone() {
+		public void setToDone() {
 			this.executionComplete = true;
-			this.notifyAll();
+			synchronized (this) {
+				this.notifyAll();
+			}
 		}
 
 		/**
 		 * call this to interrupt execution of the curation
 		 */
-		public synchronized void causeInterrupt() {
+		public void causeInterrupt() {
 			this.interrupt = true;
-			this.notifyAll();
+			synchronized (this) {
+				this.notifyAll();
+			}
 		}
 
 		/**
@@ -475,16 +583,18 @@ public final class CurationExecutor implements Runnable {
 		 *
 		 * @return true if an interrupt has been asked for
 		 */
-		public synchronized boolean isInterrupted() {
+		public boolean isInterrupted() {
 			return this.interrupt;
 		}
 
 		/**
 		 * increment the counter which indicates which step we are currently on
 		 */
-		public synchronized void incrementStep() {
-			this.currentStepProgress = 0;
-			this.whichStep++;
+		public void incrementStep() {
+			StepState current;
+			do {
+				current = this.state.get();
+			} while (!this.state.compareAndSet(current, new StepState(current.step + 1, 0f, current.lastSequenceCount)));
 		}
 
 		/**
@@ -492,8 +602,8 @@ public final class CurationExecutor implements Runnable {
 		 *
 		 * @return the step that is currently being executed
 		 */
-		public synchronized int getCurrentStepNumber() {
-			return this.whichStep;
+		public int getCurrentStepNumber() {
+			return this.state.get().step;
 		}
 
 		/**
@@ -501,11 +611,25 @@ public final class CurationExecutor implements Runnable {
 		 *
 		 * @return
 		 */
-		public synchronized int getLastStepSequenceCount() {
-			if (this.completedStepValidations.size() == 0) {
-				return -1;
-			}
-			return this.completedStepValidations.get(this.completedStepValidations.size() - 1).getCompletionCount();
+		public int getLastStepSequenceCount() {
+			return this.state.get().lastSequenceCount;
+		}
+
+		public CurationProgress getProgress() {
+			final StepState current = this.state.get();
+			return new CurationProgress(current.step, current.progress, current.lastSequenceCount, isInProgress());
+		}
+	}
+
+	private static final class StepState {
+		private final int step;
+		private final float progress;
+		private final int lastSequenceCount;
+
+		private StepState(int step, float progress, int lastSequenceCount) {
+			this.step = step;
+			this.progress = progress;
+			this.lastSequenceCount = lastSequenceCount;
 		}
 	}
 
@@ -0,0 +1,44 @@
+package edu.mayo.mprc.dbcurator.model;
+
+/**
+ * An immutable snapshot of where a curation is. The values are consistent with each other, unlike when the
+ * {@link CurationStatus} getters are called one by one while the curation runs.
+ */
+public final class CurationProgress {
+	private final int stepNumber;
+	private final float stepProgress;
+	private final int lastStepSequenceCount;
+	private final boolean inProgress;
+
+	public CurationProgress(int stepNumber, float stepProgress, int lastStepSequenceCount, boolean inProgress) {
+		this.stepNumber = stepNumber;
+		this.stepProgress = stepProgress;
+		this.lastStepSequenceCount = lastStepSequenceCount;
+		this.inProgress = inProgress;
+	}
+
+	/**
+	 * @return Step being executed (base 1).
+	 */
+	public int getStepNumber() {
+		return stepNumber;
+	}
+
+	/**
+	 * @return Progress of the step being executed, 0-100.
+	 */
+	public float getStepProgress() {
+		return stepProgress;
+	}
+
+	/**
+	 * @return Sequences after the last completed step, -1 if no step completed.
+	 */
+	public int getLastStepSequenceCount() {
+		return lastStepSequenceCount;
+	}
+
+	public boolean isInProgress() {
+		return inProgress;
+	}
+}
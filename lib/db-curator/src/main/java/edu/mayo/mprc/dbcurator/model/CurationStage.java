@@ -0,0 +1,153 @@
+package edu.mayo.mprc.dbcurator.model;
+
+import edu.mayo.mprc.fasta.DBInputStream;
+import edu.mayo.mprc.fasta.DBOutputStream;
+import edu.mayo.mprc.utilities.ThrottledProgress;
+import org.apache.log4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * A {@link StreamingCurationStep} being performed. The sequences are pushed in one at a time through
+ * {@link #appendSequence} and the stage passes what it produces to the next stage, or to the final file.
+ * <p/>
+ * Once all the input was pushed in, {@link #finish()} has to be called so stages that hold sequences back can send them
+ * on, then {@link #close()} to release any temporary data.
+ */
+public abstract class CurationStage implements DBOutputStream {
+	private static final Logger LOGGER = Logger.getLogger(CurationStage.class);
+	private static final long PROGRESS_INTERVAL_MILLIS = 250;
+
+	private final CurationStep step;
+	private final DBOutputStream next;
+	private final StepValidation validation = new StepValidation();
+	private int sequenceCount;
+	/**
+	 * True if the next stage failed to take a sequence from this stage.
+	 */
+	private boolean nextFailed;
+
+	protected CurationStage(CurationStep step, DBOutputStream next) {
+		this.step = step;
+		this.next = next;
+	}
+
+	/**
+	 * Process one sequence, call {@link #emit} for each sequence produced.
+	 */
+	public abstract void appendSequence(String header, String sequence) throws IOException;
+
+	/**
+	 * Sends a produced sequence to the next stage.
+	 */
+	protected final void emit(String header, String sequence) throws IOException {
+		boolean passed = false;
+		try {
+			next.appendSequence(header, sequence);
+			passed = true;
+		} finally {
+			if (!passed) {
+				nextFailed = true;
+			}
+		}
+		sequenceCount++;
+	}
+
+	/**
+	 * Called after all the input was processed.
+	 */
+	public void finish() throws IOException {
+	}
+
+	public void appendRemaining(DBInputStream inputStream) throws IOException {
+		while (inputStream.gotoNextSequence()) {
+			appendSequence(inputStream.getHeader(), inputStream.getSequence());
+		}
+	}
+
+	/**
+	 * @return The file the results end up in.
+	 */
+	public File getFile() {
+		return next.getFile();
+	}
+
+	/**
+	 * Releases temporary data. The next stage is not closed.
+	 */
+	public void close() {
+	}
+
+	/**
+	 * @return Number of sequences this stage produced.
+	 */
+	public int getSequenceCount() {
+		return sequenceCount;
+	}
+
+	/**
+	 * @return True if an exception thrown from this stage came from the stages that follow.
+	 */
+	boolean isNextFailed() {
+		return nextFailed;
+	}
+
+	public StepValidation getValidation() {
+		return validation;
+	}
+
+	/**
+	 * Records the amount of produced sequences in the validation and the step.
+	 *
+	 * @return Validation of the performed step.
+	 */
+	public StepValidation complete() {
+		validation.setCompletionCount(sequenceCount);
+		step.setLastRunCompletionCount(sequenceCount);
+		return validation;
+	}
+
+	/**
+	 * Performs a single stage over the entire input. This is what the streaming steps do when run on their own.
+	 *
+	 * @param stage  Stage to perform.
+	 * @param in     Input database.
+	 * @param status The progress is updated here, we also take the amount of sequences from here.
+	 * @return Validation of the performed step.
+	 */
+	public static StepValidation perform(CurationStage stage, DBInputStream in, CurationStatus status) {
+		final ThrottledProgress progress = progressOf(status);
+		try {
+			in.beforeFirst();
+			while (in.gotoNextSequence()) {
+				stage.appendSequence(in.getHeader(), in.getSequence());
+				progress.advance();
+			}
+			stage.finish();
+			progress.finish();
+		} catch (IOException e) {
+			LOGGER.error(e);
+			stage.getValidation().addMessageAndException("Error in performing database IO", e);
+		} catch (Exception e) {
+			LOGGER.error(e);
+			stage.getValidation().addMessageAndException(e.getMessage(), e);
+		} finally {
+			stage.close();
+		}
+		return stage.complete();
+	}
+
+	/**
+	 * @param status Status to report to.
+	 * @return Progress of a pass over the result of the last completed step, reported a few times a second at most.
+	 */
+	public static ThrottledProgress progressOf(final CurationStatus status) {
+		return new ThrottledProgress(new ThrottledProgress.Listener() {
+			@Override
+			public void progressChanged(float percent) {
+				status.setCurrentStepProgress(percent);
+			}
+		}, status.getLastStepSequenceCount(), PROGRESS_INTERVAL_MILLIS);
+	}
+}
@@ -91,6 +91,13 @@ public interface CurationStatus {
 	 */
 	int getLastStepSequenceCount();
 
+	/**
+	 * Takes a consistent snapshot of the step number, its progress and the last step sequence count.
+	 *
+	 * @return snapshot of the current progress
+	 */
+	CurationProgress getProgress();
+
 	/**
 	 * add a message to the status object
 	 *
@@ -0,0 +1,143 @@
+package edu.mayo.mprc.dbcurator.model;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import edu.mayo.mprc.MprcException;
+import edu.mayo.mprc.fasta.DBOutputStream;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * A {@link CurationStage} that transforms the sequences in batches on all available cores.
+ * <p/>
+ * The transformations must not depend on each other or on the order they are called in. The results are sent on
+ * in the original order, on the thread that pushes the sequences in.
+ */
+public abstract class ParallelCurationStage extends CurationStage {
+	private static final int BATCH_SIZE = 1000;
+	private static final int THREADS = Runtime.getRuntime().availableProcessors();
+	/**
+	 * How many batches can be queued or processed at once. Bounds the memory use when the output is slower.
+	 */
+	private static final int MAX_PENDING_BATCHES = THREADS * 2;
+
+	private static final ExecutorService SERVICE = Executors.newFixedThreadPool(THREADS,
+			new ThreadFactoryBuilder()
+					.setDaemon(true)
+					.setNameFormat("curationStage-%d")
+					.build());
+
+	private final Deque<Future<Batch>> pending = new ArrayDeque<Future<Batch>>();
+	private Batch current = new Batch();
+
+	protected ParallelCurationStage(CurationStep step, DBOutputStream next) {
+		super(step, next);
+	}
+
+	/**
+	 * Called in parallel from multiple threads.
+	 *
+	 * @return Transformed header.
+	 */
+	protected abstract String transformHeader(String header);
+
+	/**
+	 * Called in parallel from multiple threads.
+	 *
+	 * @return Transformed sequence.
+	 */
+	protected abstract String transformSequence(String sequence);
+
+	/**
+	 * Sends on the transformed sequence. Called in the original order, override to send something else.
+	 */
+	protected void output(String header, String sequence, String transformedHeader, String transformedSequence) throws IOException {
+		emit(transformedHeader, transformedSequence);
+	}
+
+	@Override
+	public final void appendSequence(String header, String sequence) throws IOException {
+		current.add(header, sequence);
+		if (current.size == BATCH_SIZE) {
+			submitCurrent();
+		}
+	}
+
+	@Override
+	public void finish() throws IOException {
+		if (current.size > 0) {
+			submitCurrent();
+		}
+		while (!pending.isEmpty()) {
+			outputOldest();
+		}
+	}
+
+	@Override
+	public void close() {
+		for (Future<Batch> future : pending) {
+			future.cancel(true);
+		}
+		pending.clear();
+	}
+
+	private void submitCurrent() throws IOException {
+		final Batch batch = current;
+		current = new Batch();
+		pending.add(SERVICE.submit(new Callable<Batch>() {
+			@Override
+			public Batch call() {
+				batch.transform();
+				return batch;
+			}
+		}));
+		while (pending.size() > MAX_PENDING_BATCHES) {
+			outputOldest();
+		}
+	}
+
+	private void outputOldest() throws IOException {
+		final Batch batch;
+		try {
+			batch = pending.removeFirst().get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new MprcException("Interrupted while transforming sequences", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new MprcException("Could not transform sequences", e.getCause());
+		}
+		for (int i = 0; i < batch.size; i++) {
+			output(batch.headers[i], batch.sequences[i], batch.transformedHeaders[i], batch.transformedSequences[i]);
+		}
+	}
+
+	private final class Batch {
+		private final String[] headers = new String[BATCH_SIZE];
+		private final String[] sequences = new String[BATCH_SIZE];
+		private final String[] transformedHeaders = new String[BATCH_SIZE];
+		private final String[] transformedSequences = new String[BATCH_SIZE];
+		private int size;
+
+		public void add(String header, String sequence) {
+			headers[size] = header;
+			sequences[size] = sequence;
+			size++;
+		}
+
+		public void transform() {
+			for (int i = 0; i < size; i++) {
+				transformedHeaders[i] = transformHeader(headers[i]);
+				transformedSequences[i] = transformSequence(sequences[i]);
+			}
+		}
+	}
+}
@@ -0,0 +1,23 @@
+package edu.mayo.mprc.dbcurator.model;
+
+import edu.mayo.mprc.fasta.DBOutputStream;
+
+import java.io.File;
+
+/**
+ * A curation step that looks at one sequence at a time and never needs to go back in the database.
+ * <p/>
+ * Consecutive streaming steps are chained by the {@link CurationExecutor} and run as a single pass over the database,
+ * so no intermediate files are written between them.
+ */
+public interface StreamingCurationStep extends CurationStep {
+	/**
+	 * Creates a stage that performs this step, sending its results to the next stage. The step must have passed
+	 * {@link #preValidate} before this is called.
+	 *
+	 * @param next       Where to send the produced sequences.
+	 * @param tempFolder Folder for the stage to spill data it has to hold back, can be null for the default temp folder.
+	 * @return Stage performing this step.
+	 */
+	CurationStage createStage(DBOutputStream next, File tempFolder);
+}
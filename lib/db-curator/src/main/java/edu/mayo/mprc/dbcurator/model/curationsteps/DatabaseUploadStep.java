@@ -6,7 +6,7 @@ import edu.mayo.mprc.dbcurator.model.StepValidation;
 import edu.mayo.mprc.dbcurator.model.persistence.CurationDao;
 import edu.mayo.mprc.fasta.DBInputStream;
 import edu.mayo.mprc.fasta.DBOutputStream;
-import edu.mayo.mprc.fasta.FASTAInputStream;
+import edu.mayo.mprc.fasta.MappedFASTAInputStream;
 import edu.mayo.mprc.utilities.FileUtilities;
 
 import java.io.File;
@@ -87,7 +87,7 @@ public class DatabaseUploadStep implements CurationStep {
 		DBInputStream archiveIn = null;
 		try {
 			try {
-				archiveIn = new FASTAInputStream(this.pathToUploadedFile);
+				archiveIn = new MappedFASTAInputStream(this.pathToUploadedFile);
 			} catch (IOException e) {
 				//this is not expected to happen
 				this.recentRunValidation.addMessageAndException("Could not find the file on the server please re-upload", e);
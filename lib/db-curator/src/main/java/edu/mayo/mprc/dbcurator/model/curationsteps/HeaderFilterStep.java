@@ -1,17 +1,18 @@
 package edu.mayo.mprc.dbcurator.model.curationsteps;
 
 import edu.mayo.mprc.dbcurator.model.CurationExecutor;
-import edu.mayo.mprc.dbcurator.model.CurationStatus;
+import edu.mayo.mprc.dbcurator.model.CurationStage;
 import edu.mayo.mprc.dbcurator.model.CurationStep;
 import edu.mayo.mprc.dbcurator.model.StepValidation;
+import edu.mayo.mprc.dbcurator.model.StreamingCurationStep;
 import edu.mayo.mprc.dbcurator.model.persistence.CurationDao;
-import edu.mayo.mprc.fasta.DBInputStream;
 import edu.mayo.mprc.fasta.DBOutputStream;
 import edu.mayo.mprc.fasta.filter.MatchMode;
 import edu.mayo.mprc.fasta.filter.RegExTextFilter;
 import edu.mayo.mprc.fasta.filter.SimpleStringTextFilter;
 import edu.mayo.mprc.fasta.filter.TextFilter;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.Locale;
 
@@ -24,7 +25,7 @@ import java.util.Locale;
  * @author Eric J. Winter Date: Apr 9, 2007 Time: 9:30:27 AM
  */
 
-public class HeaderFilterStep implements CurationStep {
+public class HeaderFilterStep implements StreamingCurationStep {
 	private static final long serialVersionUID = 20071220L;
 
 
@@ -82,34 +83,25 @@ public class HeaderFilterStep implements CurationStep {
 	 * @return the post validation.  This is the same object that will be returned by a call to postValidate()
 	 */
 	public StepValidation performStep(CurationExecutor exec) {
+		return CurationStage.perform(createStage(exec.getCurrentOutStream(), null), exec.getCurrentInStream(), exec.getStatusObject());
+	}
 
-		//create a new validation object for this run
-		this.runValidation = new StepValidation();
-
-		DBInputStream in = exec.getCurrentInStream(); //the file we should be reading from (may be null)
-		DBOutputStream out = exec.getCurrentOutStream(); // the file we should be writing to
-		CurationStatus status = exec.getStatusObject(); //the status objec we want to update
-		TextFilter filter = this.getAppropriateTextFilter();
-		float sequencesToFilter = status.getLastStepSequenceCount();
-		int numberFilteredSoFar = 0;
-
-		//iterate through each sequence in the database and if the sequence matches
-		//the filter then copy the sequence to the output database file else don't
-		//effectively removing the sequence from the database.
-		in.beforeFirst();
-		while (in.gotoNextSequence()) {
-			status.setCurrentStepProgress(Math.round(++numberFilteredSoFar * 100f / sequencesToFilter));
-			if (filter.matches(in.getHeader())) {
-				try {
-					out.appendSequence(in.getHeader(), in.getSequence());
-				} catch (IOException e) {
-					this.runValidation.addMessageAndException("Error filtering steps", e);
+	/**
+	 * Only the sequences whose header matches the filter are sent on.
+	 * {@inheritDoc}
+	 */
+	public CurationStage createStage(DBOutputStream next, File tempFolder) {
+		final TextFilter filter = this.getAppropriateTextFilter();
+		final CurationStage stage = new CurationStage(this, next) {
+			@Override
+			public void appendSequence(String header, String sequence) throws IOException {
+				if (filter.matches(header)) {
+					emit(header, sequence);
 				}
 			}
-		}
-		this.runValidation.setCompletionCount(out.getSequenceCount());
-		this.setLastRunCompletionCount(out.getSequenceCount());
-		return this.runValidation;
+		};
+		this.runValidation = stage.getValidation();
+		return stage;
 	}
 
 	/**
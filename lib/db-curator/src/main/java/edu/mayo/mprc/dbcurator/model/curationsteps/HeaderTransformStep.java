@@ -1,15 +1,17 @@
 package edu.mayo.mprc.dbcurator.model.curationsteps;
 
+import edu.mayo.mprc.MprcException;
 import edu.mayo.mprc.dbcurator.model.CurationExecutor;
-import edu.mayo.mprc.dbcurator.model.CurationStatus;
+import edu.mayo.mprc.dbcurator.model.CurationStage;
 import edu.mayo.mprc.dbcurator.model.CurationStep;
+import edu.mayo.mprc.dbcurator.model.ParallelCurationStage;
 import edu.mayo.mprc.dbcurator.model.StepValidation;
+import edu.mayo.mprc.dbcurator.model.StreamingCurationStep;
 import edu.mayo.mprc.dbcurator.model.persistence.CurationDao;
-import edu.mayo.mprc.fasta.DBInputStream;
 import edu.mayo.mprc.fasta.DBOutputStream;
 import org.apache.log4j.Logger;
 
-import java.io.IOException;
+import java.io.File;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
@@ -21,7 +23,7 @@ import java.util.regex.PatternSyntaxException;
  *
  * @author Eric Winter
  */
-public class HeaderTransformStep implements CurationStep {
+public class HeaderTransformStep implements StreamingCurationStep {
 	private static final long serialVersionUID = 20071220L;
 
 	private static final Logger LOGGER = Logger.getLogger(HeaderTransformStep.class);
@@ -66,37 +68,34 @@ public class HeaderTransformStep implements CurationStep {
 		if (!lastRunValidation.isOK()) {
 			return lastRunValidation;
 		}
+		return CurationStage.perform(createStage(exe.getCurrentOutStream(), null), exe.getCurrentInStream(), exe.getStatusObject());
+	}
 
-		DBInputStream in = exe.getCurrentInStream();
-		DBOutputStream out = exe.getCurrentOutStream();
-		CurationStatus status = exe.getStatusObject();
-
-		//the the number of sequences we need to manipulate
-		int numberOfSequences = status.getLastStepSequenceCount();
-		int currentSequence = 0;
-		String currentHeader = "";
-		try {
-			in.beforeFirst();
-			while (in.gotoNextSequence()) {
-				status.setCurrentStepProgress(Math.round(100f * ++currentSequence / numberOfSequences));
-				//modify the header so that a description of the modification preceeds the original header
-				currentHeader = in.getHeader();
-				out.appendSequence(transformString(currentHeader), in.getSequence());
+	/**
+	 * Each header gets transformed, the sequences are passed unchanged. The headers are transformed in parallel batches,
+	 * the order of the sequences does not change.
+	 * {@inheritDoc}
+	 */
+	public CurationStage createStage(DBOutputStream next, File tempFolder) {
+		final Pattern pattern = getMatchPattern() == null ? null : Pattern.compile(getMatchPattern());
+		final String substitution = getSubstitutionPattern();
+		final CurationStage stage = new ParallelCurationStage(this, next) {
+			@Override
+			protected String transformHeader(String header) {
+				try {
+					return transformString(pattern, substitution, header);
+				} catch (RuntimeException e) {
+					throw new MprcException("Error applying the transform to the header: " + header, e);
+				}
 			}
-			this.lastRunValidation.setCompletionCount(out.getSequenceCount());
-			this.setLastRunCompletionCount(out.getSequenceCount());
-		} catch (PatternSyntaxException e) {
-			LOGGER.error(e);
-			this.lastRunValidation.addMessageAndException("Error applying the transform to the header: " + currentHeader, e);
-		} catch (IOException e) {
-			LOGGER.error(e);
-			this.lastRunValidation.addMessageAndException("Error in performing database IO", e);
-		} catch (Exception e) {
-			LOGGER.error(e);
-			this.lastRunValidation.addMessageAndException(e.getMessage(), e);
-		}
 
-		return this.lastRunValidation;
+			@Override
+			protected String transformSequence(String sequence) {
+				return sequence;
+			}
+		};
+		this.lastRunValidation = stage.getValidation();
+		return stage;
 	}
 
 	/**
@@ -116,16 +115,27 @@ public class HeaderTransformStep implements CurationStep {
 			compiledPattern = Pattern.compile(this.getMatchPattern());
 		}
 
+		return transformString(compiledPattern, this.getSubstitutionPattern(), toTransform);
+	}
+
+	/**
+	 * Thread-safe version of {@link #transformString(String)} that takes an already compiled pattern.
+	 */
+	private static String transformString(final Pattern pattern, final String substitution, final String toTransform) {
+		if (pattern == null || substitution == null) {
+			return toTransform;
+		}
+
 		StringBuffer result = new StringBuffer();
 
-		Matcher match = compiledPattern.matcher(toTransform);
+		Matcher match = pattern.matcher(toTransform);
 
 		while (match.find()) {
-			match.appendReplacement(result, this.substitutionPattern);
+			match.appendReplacement(result, substitution);
 		}
 		match.appendTail(result);
 
-		if (result.toString().equalsIgnoreCase(this.getSubstitutionPattern())) {
+		if (result.toString().equalsIgnoreCase(substitution)) {
 			LOGGER.info("Pattern not matched in header: " + toTransform);
 			return toTransform;
 		} else {
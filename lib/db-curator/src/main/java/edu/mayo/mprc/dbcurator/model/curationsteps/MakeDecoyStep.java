@@ -1,16 +1,23 @@
 package edu.mayo.mprc.dbcurator.model.curationsteps;
 
 import edu.mayo.mprc.dbcurator.model.CurationExecutor;
+import edu.mayo.mprc.dbcurator.model.CurationStage;
 import edu.mayo.mprc.dbcurator.model.CurationStatus;
 import edu.mayo.mprc.dbcurator.model.CurationStep;
+import edu.mayo.mprc.dbcurator.model.ParallelCurationStage;
 import edu.mayo.mprc.dbcurator.model.StepValidation;
+import edu.mayo.mprc.dbcurator.model.StreamingCurationStep;
 import edu.mayo.mprc.dbcurator.model.persistence.CurationDao;
 import edu.mayo.mprc.fasta.DBInputStream;
 import edu.mayo.mprc.fasta.DBOutputStream;
+import edu.mayo.mprc.fasta.FASTAOutputStream;
+import edu.mayo.mprc.fasta.MappedFASTAInputStream;
 import edu.mayo.mprc.fasta.filter.ReversalStringManipulator;
 import edu.mayo.mprc.fasta.filter.ScrambleStringManipulator;
 import edu.mayo.mprc.fasta.filter.StringManipulator;
+import edu.mayo.mprc.utilities.FileUtilities;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -23,7 +30,7 @@ import java.util.regex.Pattern;
  *
  * @author Eric J. Winter Date: Apr 10, 2007 Time: 12:03:54 PM
  */
-public class MakeDecoyStep implements CurationStep {
+public class MakeDecoyStep implements StreamingCurationStep {
 	private static final long serialVersionUID = 20071220L;
 
 	/**
@@ -153,42 +160,75 @@ public class MakeDecoyStep implements CurationStep {
 		if (!lastRunValidation.isOK()) {
 			return lastRunValidation;
 		}
+		return CurationStage.perform(createStage(out, null), in, status);
+	}
+
+	/**
+	 * In overwrite mode, each sequence is replaced by its decoy right away. In append mode, the original sequences are
+	 * sent on as they come and the decoys are spilled to a temporary file, to be sent after all the originals.
+	 * The decoys are made in parallel batches, the order of the sequences does not change.
+	 * {@inheritDoc}
+	 */
+	public CurationStage createStage(DBOutputStream next, final File tempFolder) {
+		final StringManipulator manipulator = getManipulator();
+		final String description = manipulator.getDescription();
+		final CurationStage stage = new ParallelCurationStage(this, next) {
+			private File spillFile;
+			private FASTAOutputStream spill;
+
+			@Override
+			protected String transformHeader(String header) {
+				return modifyHeader(header, description);
+			}
+
+			@Override
+			protected String transformSequence(String sequence) {
+				return manipulator.manipulateString(sequence);
+			}
 
-		//the the number of sequences we need to manipulate
-		int numberOfSequences = status.getLastStepSequenceCount();
-		int currentSequence = 0;
-		try {
-			//if we want to append the sequences we need to first write out he origal sequences
-			if (!this.overwriteMode) {
-				in.beforeFirst();
-
-				while (in.gotoNextSequence()) {
-					status.setCurrentStepProgress(Math.round(50f * ++currentSequence / numberOfSequences));
-					out.appendSequence(
-							in.getHeader(),
-							in.getSequence()
-					);
+			@Override
+			protected void output(String header, String sequence, String decoyHeader, String decoySequence) throws IOException {
+				if (overwriteMode) {
+					emit(decoyHeader, decoySequence);
+					return;
+				}
+				emit(header, sequence);
+				if (spill == null) {
+					spillFile = File.createTempFile("decoys", ".fasta", tempFolder);
+					spill = new FASTAOutputStream(spillFile);
 				}
+				spill.appendSequence(decoyHeader, decoySequence);
 			}
-			in.beforeFirst();
-			float percentMultiplier = (this.overwriteMode ? 100f : 50f); //if we are doing an append then we only want to multiply the manipulation by 50% not 100%
-			while (in.gotoNextSequence()) {
-				status.setCurrentStepProgress(percentMultiplier * ++currentSequence / numberOfSequences);
-
-				out.appendSequence(
-						modifyHeader(in.getHeader(), this.manipulator.getDescription()), //the modified header
-						this.manipulator.manipulateString(in.getSequence()) //the manipulated sequence
-				);
+
+			@Override
+			public void finish() throws IOException {
+				super.finish();
+				if (spill == null) {
+					return;
+				}
+				spill.close();
+				final DBInputStream decoys = new MappedFASTAInputStream(spillFile);
+				try {
+					decoys.beforeFirst();
+					while (decoys.gotoNextSequence()) {
+						emit(decoys.getHeader(), decoys.getSequence());
+					}
+				} finally {
+					decoys.close();
+				}
 			}
-			this.lastRunValidation.setCompletionCount(out.getSequenceCount());
-			this.setLastRunCompletionCount(out.getSequenceCount());
-		} catch (IOException e) {
-			this.lastRunValidation.addMessageAndException("Error in performing database IO", e);
-		} catch (Exception e) {
-			this.lastRunValidation.addMessageAndException(e.getMessage(), e);
-		}
-		return this.lastRunValidation;
 
+			@Override
+			public void close() {
+				super.close();
+				if (spill != null) {
+					spill.close();
+					FileUtilities.cleanupTempFile(spillFile);
+				}
+			}
+		};
+		this.lastRunValidation = stage.getValidation();
+		return stage;
 	}
 
 	/**
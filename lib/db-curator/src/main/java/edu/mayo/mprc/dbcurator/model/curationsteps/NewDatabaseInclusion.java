@@ -4,7 +4,7 @@ import edu.mayo.mprc.dbcurator.model.*;
 import edu.mayo.mprc.dbcurator.model.persistence.CurationDao;
 import edu.mayo.mprc.fasta.DBInputStream;
 import edu.mayo.mprc.fasta.DBOutputStream;
-import edu.mayo.mprc.fasta.FASTAInputStream;
+import edu.mayo.mprc.fasta.MappedFASTAInputStream;
 import edu.mayo.mprc.utilities.FileUtilities;
 import edu.mayo.mprc.utilities.StringUtilities;
 
@@ -114,7 +114,7 @@ public class NewDatabaseInclusion implements CurationStep {
 		DBInputStream archiveIn = null;
 		try {
 			try {
-				archiveIn = new FASTAInputStream(this.source.getArchive());
+				archiveIn = new MappedFASTAInputStream(this.source.getArchive());
 			} catch (IOException e) {
 				//this is not expected to happen
 				this.recentRunValidation.addMessageAndException("Error creating an input stream from the archive", e);
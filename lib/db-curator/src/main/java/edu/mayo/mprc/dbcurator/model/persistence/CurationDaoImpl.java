@@ -4,6 +4,7 @@ import edu.mayo.mprc.MprcException;
 import edu.mayo.mprc.database.Change;
 import edu.mayo.mprc.database.DaoBase;
 import edu.mayo.mprc.database.DatabasePlaceholder;
+import edu.mayo.mprc.database.ReferenceCache;
 import edu.mayo.mprc.dbcurator.model.Curation;
 import edu.mayo.mprc.dbcurator.model.FastaSource;
 import edu.mayo.mprc.dbcurator.model.HeaderTransform;
@@ -30,6 +31,28 @@ public final class CurationDaoImpl extends DaoBase implements CurationDao {
 	private List<Curation> allCurationList = null;
 	private Change legacyCurationChange = null;
 
+	private final ReferenceCache<List<FastaSource>> commonSources = new ReferenceCache<List<FastaSource>>(new ReferenceCache.Loader<List<FastaSource>>() {
+		@Override
+		public List<FastaSource> load() {
+			try {
+				return Collections.unmodifiableList((List<FastaSource>) getSession().createQuery("from FastaSource ds where ds.common = true").list());
+			} catch (Exception t) {
+				throw new MprcException("Cannot obtain a list of FASTA database sources", t);
+			}
+		}
+	});
+
+	private final ReferenceCache<List<HeaderTransform>> commonHeaderTransforms = new ReferenceCache<List<HeaderTransform>>(new ReferenceCache.Loader<List<HeaderTransform>>() {
+		@Override
+		public List<HeaderTransform> load() {
+			try {
+				return Collections.unmodifiableList((List<HeaderTransform>) getSession().createQuery("from HeaderTransform ht where ht.common = true").list());
+			} catch (Exception t) {
+				throw new MprcException("Cannot obtain a list of common database header transformations", t);
+			}
+		}
+	});
+
 	public CurationDaoImpl(DatabasePlaceholder databasePlaceholder) {
 		super(databasePlaceholder);
 	}
@@ -294,12 +317,11 @@ public final class CurationDaoImpl extends DaoBase implements CurationDao {
 		return null;
 	}
 
+	/**
+	 * @return Common FASTA sources. The list is cached, do not modify it.
+	 */
 	public List<FastaSource> getCommonSources() {
-		try {
-			return getSession().createQuery("from FastaSource ds where ds.common = true").list();
-		} catch (Exception t) {
-			throw new MprcException("Cannot obtain a list of FASTA database sources", t);
-		}
+		return commonSources.get();
 	}
 
 	private Criterion getHeaderTransformEqualityCriteria(HeaderTransform transform) {
@@ -309,14 +331,14 @@ public final class CurationDaoImpl extends DaoBase implements CurationDao {
 	@Override
 	public void addHeaderTransform(HeaderTransform sprotTrans) {
 		this.save(sprotTrans, getHeaderTransformEqualityCriteria(sprotTrans), true);
+		commonHeaderTransforms.invalidate(getSession());
 	}
 
+	/**
+	 * @return Common header transformations. The list is cached, do not modify it.
+	 */
 	public List<HeaderTransform> getCommonHeaderTransforms() {
-		try {
-			return getSession().createQuery("from HeaderTransform ht where ht.common = true").list();
-		} catch (Exception t) {
-			throw new MprcException("Cannot obtain a list of common database header transformations", t);
-		}
+		return commonHeaderTransforms.get();
 	}
 
 	@Override
@@ -345,6 +367,7 @@ public final class CurationDaoImpl extends DaoBase implements CurationDao {
 	@Override
 	public void addFastaSource(FastaSource source) {
 		save(source, getFastaSourceEqualityCriteria(source), true);
+		commonSources.invalidate(getSession());
 	}
 
 	@Override
@@ -381,6 +404,11 @@ public final class CurationDaoImpl extends DaoBase implements CurationDao {
 	public void delete(Object o) {
 		try {
 			getSession().delete(o);
+			if (o instanceof FastaSource) {
+				commonSources.invalidate(getSession());
+			} else if (o instanceof HeaderTransform) {
+				commonHeaderTransforms.invalidate(getSession());
+			}
 		} catch (Exception t) {
 			throw new MprcException("Could not delete object from database.", t);
 		}
@@ -1,8 +1,20 @@
 package edu.mayo.mprc.dbcurator.model.curationsteps;
 
+import edu.mayo.mprc.dbcurator.model.CurationStage;
+import edu.mayo.mprc.fasta.DBInputStream;
+import edu.mayo.mprc.fasta.DBOutputStream;
+import edu.mayo.mprc.fasta.filter.MatchMode;
+import edu.mayo.mprc.fasta.filter.ScrambleStringManipulator;
 import org.testng.Assert;
 import org.testng.annotations.Test;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
 public final class MakeDecoyStepTest {
 
 	@Test
@@ -17,4 +29,95 @@ public final class MakeDecoyStepTest {
 				">Random_PROT_HUMAN");
 	}
 
+	@Test
+	public void shouldAppendDecoysAfterChainedFilter() throws IOException {
+		final HeaderFilterStep filter = new HeaderFilterStep();
+		filter.setTextMode(TextMode.SIMPLE);
+		filter.setCriteriaString("HUMAN");
+		filter.setMatchMode(MatchMode.ANY);
+
+		final MakeDecoyStep decoy = new MakeDecoyStep();
+		decoy.setManipulatorType(MakeDecoyStep.REVERSAL_MANIPULATOR);
+		decoy.setOverwriteMode(false);
+		Assert.assertTrue(decoy.preValidate(null).isOK());
+
+		final CollectingOutputStream out = new CollectingOutputStream();
+		final CurationStage decoyStage = decoy.createStage(out, null);
+		final CurationStage filterStage = filter.createStage(decoyStage, null);
+		try {
+			filterStage.appendSequence(">A_HUMAN first", "ABC");
+			filterStage.appendSequence(">B_MOUSE second", "DEF");
+			filterStage.appendSequence(">C_HUMAN third", "GHI");
+			filterStage.finish();
+			decoyStage.finish();
+		} finally {
+			filterStage.close();
+			decoyStage.close();
+		}
+
+		Assert.assertEquals(out.sequences, Arrays.asList(
+				">A_HUMAN first", "ABC",
+				">C_HUMAN third", "GHI",
+				">Reversed_A_HUMAN (Reversed) first", "CBA",
+				">Reversed_C_HUMAN (Reversed) third", "IHG"));
+		Assert.assertEquals(filterStage.complete().getCompletionCount(), 2);
+		Assert.assertEquals(decoyStage.complete().getCompletionCount(), 4);
+		Assert.assertEquals(decoy.getLastRunCompletionCount(), Integer.valueOf(4));
+	}
+
+	@Test
+	public void shouldKeepOrderAcrossParallelBatches() throws IOException {
+		final MakeDecoyStep decoy = new MakeDecoyStep();
+		decoy.setManipulatorType(MakeDecoyStep.SCRAMBLE_MANIPULATOR);
+		decoy.setOverwriteMode(true);
+		Assert.assertTrue(decoy.preValidate(null).isOK());
+
+		final ScrambleStringManipulator scramble = new ScrambleStringManipulator();
+		final List<String> expected = new ArrayList<String>();
+		final CollectingOutputStream out = new CollectingOutputStream();
+		final CurationStage stage = decoy.createStage(out, null);
+		try {
+			for (int i = 0; i < 5555; i++) {
+				final String sequence = "PEPTIDE" + Integer.toString(i * 7919, 26).toUpperCase(Locale.ENGLISH);
+				stage.appendSequence(">P" + i, sequence);
+				expected.add(">Random_P" + i);
+				expected.add(scramble.manipulateString(sequence));
+			}
+			stage.finish();
+		} finally {
+			stage.close();
+		}
+		Assert.assertEquals(out.sequences, expected);
+	}
+
+	private static final class CollectingOutputStream implements DBOutputStream {
+		private final List<String> sequences = new ArrayList<String>();
+
+		@Override
+		public void appendSequence(String header, String sequence) throws IOException {
+			sequences.add(header);
+			sequences.add(sequence);
+		}
+
+		@Override
+		public void appendRemaining(DBInputStream inputStream) throws IOException {
+			while (inputStream.gotoNextSequence()) {
+				appendSequence(inputStream.getHeader(), inputStream.getSequence());
+			}
+		}
+
+		@Override
+		public File getFile() {
+			return null;
+		}
+
+		@Override
+		public void close() {
+		}
+
+		@Override
+		public int getSequenceCount() {
+			return sequences.size() / 2;
+		}
+	}
 }
@@ -0,0 +1,50 @@
+package edu.mayo.mprc.fasta;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A {@link CharSequence} view of a region of a byte buffer, one byte per character (ISO-8859-1).
+ * <p/>
+ * Nothing is copied until {@link #toString()} is called. The view is only as stable as the buffer below it.
+ */
+public final class ByteCharSequence implements CharSequence {
+	private final ByteBuffer buffer;
+	private final int offset;
+	private final int length;
+
+	public ByteCharSequence(ByteBuffer buffer, int offset, int length) {
+		this.buffer = buffer;
+		this.offset = offset;
+		this.length = length;
+	}
+
+	@Override
+	public int length() {
+		return length;
+	}
+
+	@Override
+	public char charAt(int index) {
+		if (index < 0 || index >= length) {
+			throw new IndexOutOfBoundsException("Index " + index + " out of range 0-" + length);
+		}
+		return (char) (buffer.get(offset + index) & 0xff);
+	}
+
+	@Override
+	public CharSequence subSequence(int start, int end) {
+		if (start < 0 || end > length || start > end) {
+			throw new IndexOutOfBoundsException("Subsequence " + start + "-" + end + " out of range 0-" + length);
+		}
+		return new ByteCharSequence(buffer, offset + start, end - start);
+	}
+
+	@Override
+	public String toString() {
+		final char[] chars = new char[length];
+		for (int i = 0; i < length; i++) {
+			chars[i] = (char) (buffer.get(offset + i) & 0xff);
+		}
+		return new String(chars);
+	}
+}
@@ -10,7 +10,6 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 /**
@@ -173,6 +172,14 @@ public final class FASTAInputStream implements DBInputStream {
 		FileUtilities.closeQuietly(this.reader);
 	}
 
+	/**
+	 * @param header Header line, including the leading <code>&gt;</code>.
+	 * @return True if the header is valid - there has to be something after the <code>&gt;</code>.
+	 */
+	public static boolean isValidHeader(CharSequence header) {
+		return header != null && FASTA_HEADER_PATTERN.matcher(header).find();
+	}
+
 	/**
 	 * goes through each header in a fasta file and checks to make sure it is a valid fasta header.  If any problems
 	 * are encountered or a header does not check out then false is returned
@@ -183,13 +190,11 @@ public final class FASTAInputStream implements DBInputStream {
 	public static boolean isFASTAFileValid(File toCheck) {
 		DBInputStream in = null;
 		try {
-			in = new FASTAInputStream(toCheck);
+			in = new MappedFASTAInputStream(toCheck);
 			int sequenceCount = 0;
 			in.beforeFirst();
 			while (in.gotoNextSequence()) {
-				Matcher matcher = FASTA_HEADER_PATTERN.matcher(in.getHeader());
-				boolean found = matcher.find();
-				if (!found) {
+				if (!isValidHeader(in.getHeader())) {
 					return false;
 				}
 				sequenceCount++;
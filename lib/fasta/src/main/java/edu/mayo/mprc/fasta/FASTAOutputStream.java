@@ -1,10 +1,11 @@
 package edu.mayo.mprc.fasta;
 
+import edu.mayo.mprc.utilities.ContentHashIndex;
 import edu.mayo.mprc.utilities.FileUtilities;
 
-import java.io.File;
-import java.io.FileWriter;
-import java.io.IOException;
+import java.io.*;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
 
 /**
  * A DBOutputStream used to write FASTA headers and sequences into
@@ -19,7 +20,15 @@ public final class FASTAOutputStream implements DBOutputStream {
 	/**
 	 * the current writer object that we are writing to
 	 */
-	private FileWriter out;
+	private Writer out;
+	/**
+	 * hashes the bytes as they are written, so the file does not have to be read again to find its duplicates
+	 */
+	private final MessageDigest digest = ContentHashIndex.createDigest();
+	/**
+	 * hash of the file contents, known once the stream is closed
+	 */
+	private String contentHash;
 	/**
 	 * the number of sequences that have sofar been written
 	 */
@@ -38,7 +47,7 @@ public final class FASTAOutputStream implements DBOutputStream {
 	 */
 	public FASTAOutputStream(File file) throws IOException {
 		this.file = file;
-		this.out = new FileWriter(this.file);
+		this.out = new OutputStreamWriter(new DigestOutputStream(new FileOutputStream(this.file), this.digest));
 	}
 
 
@@ -100,6 +109,16 @@ public final class FASTAOutputStream implements DBOutputStream {
 	 */
 	public void close() {
 		FileUtilities.closeQuietly(this.out);
+		if (this.contentHash == null) {
+			this.contentHash = ContentHashIndex.toHex(this.digest.digest());
+		}
+	}
+
+	/**
+	 * @return Hash of the written file as {@link ContentHashIndex} computes it. Available after the stream is closed.
+	 */
+	public String getContentHash() {
+		return this.contentHash;
 	}
 
 	/**
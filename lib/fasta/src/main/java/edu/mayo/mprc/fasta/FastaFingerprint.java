@@ -0,0 +1,250 @@
+package edu.mayo.mprc.fasta;
+
+import edu.mayo.mprc.MprcException;
+import edu.mayo.mprc.utilities.FileUtilities;
+
+import java.io.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * Fingerprint of the contents of a FASTA database.
+ * <p/>
+ * Each sequence (header and sequence together) is hashed into a 64-bit number. The database as a whole is
+ * identified by a digest over all the sequence records in the order they appear in the file.
+ * Two databases with the same digest are considered identical, no matter what their file names are.
+ * <p/>
+ * The sorted per-sequence hashes make it possible to tell how many sequences differ between two databases
+ * without having to read the databases again.
+ * <p/>
+ * The fingerprint is stored in a small binary file next to the FASTA file, see {@link #getFingerprintFile(java.io.File)}.
+ */
+public final class FastaFingerprint {
+	public static final String EXTENSION = ".fingerprint";
+
+	private static final String DIGEST_INSTANCE = "MD5";
+	private static final int FORMAT_VERSION = 1;
+	private static final int INITIAL_CAPACITY = 10000;
+
+	/**
+	 * Hex-encoded digest of all the sequences in the database, in file order.
+	 */
+	private final String digest;
+
+	/**
+	 * Sorted 64-bit hashes of the individual sequences.
+	 */
+	private final long[] sequenceHashes;
+
+	private FastaFingerprint(String digest, long[] sequenceHashes) {
+		this.digest = digest;
+		this.sequenceHashes = sequenceHashes;
+	}
+
+	/**
+	 * Reads the entire FASTA file and calculates its fingerprint.
+	 *
+	 * @param fasta FASTA file to fingerprint. Can be gzipped.
+	 * @return Fingerprint of the file contents.
+	 */
+	public static FastaFingerprint compute(File fasta) {
+		DBInputStream in = null;
+		try {
+			in = new MappedFASTAInputStream(fasta);
+			return compute(in);
+		} catch (IOException e) {
+			throw new MprcException("Could not fingerprint FASTA file " + fasta.getAbsolutePath(), e);
+		} finally {
+			FileUtilities.closeQuietly(in);
+		}
+	}
+
+	/**
+	 * Calculates fingerprint of all sequences in given stream. The stream is rewound first.
+	 */
+	public static FastaFingerprint compute(DBInputStream in) {
+		final MessageDigest total = createDigest();
+		final MessageDigest single = createDigest();
+		long[] hashes = new long[INITIAL_CAPACITY];
+		int count = 0;
+
+		in.beforeFirst();
+		while (in.gotoNextSequence()) {
+			single.reset();
+			update(single, in.getHeader());
+			single.update((byte) '\n');
+			update(single, in.getSequence());
+			final byte[] sequenceDigest = single.digest();
+			total.update(sequenceDigest);
+
+			if (count == hashes.length) {
+				hashes = Arrays.copyOf(hashes, hashes.length * 2);
+			}
+			hashes[count++] = toLong(sequenceDigest);
+		}
+
+		hashes = Arrays.copyOf(hashes, count);
+		Arrays.sort(hashes);
+		return new FastaFingerprint(toHex(total.digest()), hashes);
+	}
+
+	/**
+	 * @param fasta FASTA file.
+	 * @return The file the fingerprint of given FASTA file is stored in.
+	 */
+	public static File getFingerprintFile(File fasta) {
+		return new File(fasta.getParentFile(), fasta.getName() + EXTENSION);
+	}
+
+	/**
+	 * Loads a fingerprint previously stored using {@link #save}.
+	 */
+	public static FastaFingerprint load(File fingerprintFile) {
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(fingerprintFile)));
+			final String digest = readHeader(in, fingerprintFile);
+			final int count = in.readInt();
+			final long[] hashes = new long[count];
+			for (int i = 0; i < count; i++) {
+				hashes[i] = in.readLong();
+			}
+			return new FastaFingerprint(digest, hashes);
+		} catch (IOException e) {
+			throw new MprcException("Could not load FASTA fingerprint from " + fingerprintFile.getAbsolutePath(), e);
+		} finally {
+			FileUtilities.closeQuietly(in);
+		}
+	}
+
+	/**
+	 * Reads only the digest from a stored fingerprint, skipping the per-sequence hashes.
+	 * This is cheap enough to be done for every deployed database when looking for a match.
+	 *
+	 * @return The digest, or null if the fingerprint file cannot be read.
+	 */
+	public static String loadDigest(File fingerprintFile) {
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(fingerprintFile)));
+			return readHeader(in, fingerprintFile);
+		} catch (IOException ignore) {
+			// SWALLOWED: unreadable fingerprint is treated as missing
+			return null;
+		} finally {
+			FileUtilities.closeQuietly(in);
+		}
+	}
+
+	public void save(File fingerprintFile) {
+		DataOutputStream out = null;
+		try {
+			out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(fingerprintFile)));
+			out.writeInt(FORMAT_VERSION);
+			out.writeUTF(digest);
+			out.writeInt(sequenceHashes.length);
+			for (long hash : sequenceHashes) {
+				out.writeLong(hash);
+			}
+		} catch (IOException e) {
+			throw new MprcException("Could not save FASTA fingerprint to " + fingerprintFile.getAbsolutePath(), e);
+		} finally {
+			FileUtilities.closeQuietly(out);
+		}
+	}
+
+	public String getDigest() {
+		return digest;
+	}
+
+	public int getSequenceCount() {
+		return sequenceHashes.length;
+	}
+
+	/**
+	 * @return Amount of sequences present in only one of the two databases.
+	 */
+	public int countDifferences(FastaFingerprint other) {
+		final long[] a = sequenceHashes;
+		final long[] b = other.sequenceHashes;
+		int i = 0;
+		int j = 0;
+		int common = 0;
+		while (i < a.length && j < b.length) {
+			if (a[i] < b[j]) {
+				i++;
+			} else if (a[i] > b[j]) {
+				j++;
+			} else {
+				common++;
+				i++;
+				j++;
+			}
+		}
+		return a.length + b.length - 2 * common;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) {
+			return true;
+		}
+		if (!(o instanceof FastaFingerprint)) {
+			return false;
+		}
+		return digest.equals(((FastaFingerprint) o).digest);
+	}
+
+	@Override
+	public int hashCode() {
+		return digest.hashCode();
+	}
+
+	@Override
+	public String toString() {
+		return digest + " (" + sequenceHashes.length + " sequences)";
+	}
+
+	private static String readHeader(DataInputStream in, File fingerprintFile) throws IOException {
+		final int version = in.readInt();
+		if (version != FORMAT_VERSION) {
+			throw new IOException("Unsupported fingerprint format version " + version + " in " + fingerprintFile.getAbsolutePath());
+		}
+		return in.readUTF();
+	}
+
+	private static MessageDigest createDigest() {
+		try {
+			return MessageDigest.getInstance(DIGEST_INSTANCE);
+		} catch (NoSuchAlgorithmException e) {
+			throw new MprcException("Digest algorithm " + DIGEST_INSTANCE + " is not available", e);
+		}
+	}
+
+	private static void update(MessageDigest digest, String text) {
+		if (text == null) {
+			return;
+		}
+		for (int i = 0; i < text.length(); i++) {
+			// FASTA files are ASCII, the lower byte is sufficient
+			digest.update((byte) text.charAt(i));
+		}
+	}
+
+	private static long toLong(byte[] bytes) {
+		long result = 0;
+		for (int i = 0; i < 8; i++) {
+			result = (result << 8) | (bytes[i] & 0xff);
+		}
+		return result;
+	}
+
+	private static String toHex(byte[] bytes) {
+		final StringBuilder result = new StringBuilder(bytes.length * 2);
+		for (byte b : bytes) {
+			result.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+		}
+		return result.toString();
+	}
+}
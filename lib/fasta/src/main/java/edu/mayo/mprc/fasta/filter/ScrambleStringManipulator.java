@@ -5,13 +5,24 @@ import java.util.Random;
 /**
  * A StringManipulator that takes a String and randomizes it so that the returned string a s completely randomized string
  * that is made up of the same characters as the original string just in a random order.
+ * <p/>
+ * Unless a random number generator is set, each string is scrambled with its own generator seeded from the string itself.
+ * The result then does not depend on the order of the calls, so the manipulator can be used from multiple threads
+ * and the same database always produces the same decoys.
  */
 public final class ScrambleStringManipulator implements StringManipulator {
+	private static final long DEFAULT_SEED = 0x5DEECE66DL;
+
 	/**
 	 * Random number generator. Settable for reproducibility in tests.
 	 */
 	private Random random;
 
+	/**
+	 * Mixed into the per-string seeds.
+	 */
+	private long seed = DEFAULT_SEED;
+
 	public Random getRandom() {
 		return random;
 	}
@@ -20,6 +31,14 @@ public final class ScrambleStringManipulator implements StringManipulator {
 		this.random = random;
 	}
 
+	public long getSeed() {
+		return seed;
+	}
+
+	public void setSeed(long seed) {
+		this.seed = seed;
+	}
+
 	/**
 	 * Creates a Scrambled or Randomizeation of the characters that make up the given toManipulate String.
 	 *
@@ -27,10 +46,11 @@ public final class ScrambleStringManipulator implements StringManipulator {
 	 * @return the manipulated String
 	 */
 	public String manipulateString(String toManipulate) {
+		final Random generator = random != null ? random : new Random(seedFor(toManipulate));
 		StringBuilder builder = new StringBuilder(toManipulate);
 
 		for (int i = builder.length() - 1; i >= 0; i--) {
-			int randomIndex = getRandomInteger(0, builder.length() - 1);
+			int randomIndex = getRandomInteger(generator, 0, builder.length() - 1);
 
 			char swapA = builder.charAt(i);
 			char swapB = builder.charAt(randomIndex);
@@ -41,6 +61,17 @@ public final class ScrambleStringManipulator implements StringManipulator {
 		return builder.toString();
 	}
 
+	/**
+	 * @return 64-bit hash of the string combined with our seed.
+	 */
+	private long seedFor(String toManipulate) {
+		long hash = seed;
+		for (int i = 0; i < toManipulate.length(); i++) {
+			hash = 31 * hash + toManipulate.charAt(i);
+		}
+		return hash;
+	}
+
 	/**
 	 * A short (single word?) description of what this manipulator does.  This is needed to insert into the meta data of the
 	 * manipulated String to let people know what we are dong
@@ -54,12 +85,13 @@ public final class ScrambleStringManipulator implements StringManipulator {
 	/**
 	 * gets a random integer between the two specified integers (inclusive)
 	 *
-	 * @param min the minimum number to allow
-	 * @param max the maxiumum number to allow
+	 * @param generator random number generator to use
+	 * @param min       the minimum number to allow
+	 * @param max       the maxiumum number to allow
 	 * @return a random integer between the two given integers
 	 */
-	private int getRandomInteger(int min, int max) {
-		return (int) Math.round(getRandom().nextDouble() * (max - min)) + min;
+	private static int getRandomInteger(Random generator, int min, int max) {
+		return (int) Math.round(generator.nextDouble() * (max - min)) + min;
 	}
 
 }
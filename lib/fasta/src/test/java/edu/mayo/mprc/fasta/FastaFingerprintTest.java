@@ -0,0 +1,75 @@
+package edu.mayo.mprc.fasta;
+
+import edu.mayo.mprc.integration.Installer;
+import edu.mayo.mprc.utilities.FileUtilities;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+public final class FastaFingerprintTest {
+	private File fastaFileFolder;
+
+	@BeforeClass
+	public void installFiles() {
+		fastaFileFolder = Installer.testFastaFiles(null, Installer.Action.INSTALL);
+	}
+
+	@AfterClass
+	public void cleanupFiles() {
+		Installer.testFastaFiles(fastaFileFolder, Installer.Action.UNINSTALL);
+	}
+
+	@Test
+	public void shouldMatchCompressedAndUncompressed() {
+		final FastaFingerprint plain = FastaFingerprint.compute(new File(fastaFileFolder, "test_in.fasta"));
+		final FastaFingerprint zipped = FastaFingerprint.compute(new File(fastaFileFolder, "test_in.fasta.gz"));
+
+		Assert.assertEquals(plain.getSequenceCount(), 7);
+		Assert.assertEquals(plain, zipped);
+		Assert.assertEquals(plain.countDifferences(zipped), 0);
+	}
+
+	@Test
+	public void shouldCountDifferences() throws IOException {
+		final File inFile = new File(fastaFileFolder, "test_in.fasta");
+		final File outFile = File.createTempFile("test_fingerprint", ".fasta");
+
+		final DBInputStream in = new FASTAInputStream(inFile);
+		final DBOutputStream out = new FASTAOutputStream(outFile);
+		in.beforeFirst();
+		// Skip the first sequence
+		Assert.assertTrue(in.gotoNextSequence());
+		out.appendSequence("Reversed_" + in.getHeader().substring(1), new StringBuilder(in.getSequence()).reverse().toString());
+		out.appendRemaining(in);
+		out.close();
+		in.close();
+
+		final FastaFingerprint original = FastaFingerprint.compute(inFile);
+		final FastaFingerprint modified = FastaFingerprint.compute(outFile);
+
+		Assert.assertFalse(original.equals(modified));
+		// One sequence removed, one added
+		Assert.assertEquals(original.countDifferences(modified), 2);
+
+		FileUtilities.cleanupTempFile(outFile);
+	}
+
+	@Test
+	public void shouldSaveAndLoad() throws IOException {
+		final FastaFingerprint fingerprint = FastaFingerprint.compute(new File(fastaFileFolder, "test_in.fasta"));
+		final File file = File.createTempFile("test", FastaFingerprint.EXTENSION);
+
+		fingerprint.save(file);
+		Assert.assertEquals(FastaFingerprint.loadDigest(file), fingerprint.getDigest());
+		final FastaFingerprint loaded = FastaFingerprint.load(file);
+		Assert.assertEquals(loaded, fingerprint);
+		Assert.assertEquals(loaded.countDifferences(fingerprint), 0);
+		Assert.assertEquals(loaded.getSequenceCount(), fingerprint.getSequenceCount());
+
+		FileUtilities.cleanupTempFile(file);
+	}
+}
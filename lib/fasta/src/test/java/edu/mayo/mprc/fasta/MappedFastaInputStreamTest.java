@@ -0,0 +1,142 @@
+package edu.mayo.mprc.fasta;
+
+import edu.mayo.mprc.utilities.FileUtilities;
+import edu.mayo.mprc.utilities.GZipUtilities;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Checks that {@link MappedFASTAInputStream} reads exactly what {@link FASTAInputStream} reads, with windows small
+ * enough to split the records at every possible place.
+ */
+public final class MappedFastaInputStreamTest {
+	private static final String[] INPUTS = {
+			"",
+			">only header",
+			">only header\n",
+			">h1\nABC\nDEF\n>h2\nGHI",
+			">h1\r\nABC\r\nDEF\r\n>h2\r\nGHI\r\n",
+			">h1\rABC\rDEF\r>h2\rGHI\r",
+			">h1\nABC\n\nJUNK\nMORE JUNK\n>h2\n\n>h3\nXYZ\n",
+			"no header at start\nABC\n>h2\nDEF\n",
+			"\n>h1\nABC\n",
+			">h1\n>h2\n>h3\nA\n",
+			">\nABC\n>h2\nDEF\n",
+			">h1\nABC\n>\n",
+	};
+
+	@Test
+	public void shouldMatchLineReader() throws IOException {
+		for (String input : INPUTS) {
+			checkAllWindowSizes(input);
+		}
+	}
+
+	@Test
+	public void shouldMatchLineReaderOnRandomData() throws IOException {
+		final Random random = new Random(20121105L);
+		final StringBuilder builder = new StringBuilder();
+		for (int i = 0; i < 50; i++) {
+			builder.append(">sp|P").append(i).append(" protein ").append(random.nextInt()).append('\n');
+			final int lines = random.nextInt(4);
+			for (int j = 0; j < lines; j++) {
+				final int length = 1 + random.nextInt(70);
+				for (int k = 0; k < length; k++) {
+					builder.append((char) ('A' + random.nextInt(26)));
+				}
+				builder.append(random.nextInt(5) == 0 ? "\r\n" : "\n");
+			}
+		}
+		checkAllWindowSizes(builder.toString());
+	}
+
+	@Test
+	public void shouldReadGzippedFile() throws IOException {
+		final String input = ">h1\nABC\nDEF\n>h2\nGHI\n";
+		final File file = writeTemp(input);
+		final File gzipped = new File(file.getPath() + ".gz");
+		try {
+			GZipUtilities.compressFile(file, gzipped);
+			for (int windowSize = 1; windowSize < 8; windowSize++) {
+				Assert.assertEquals(read(new MappedFASTAInputStream(gzipped, windowSize)), read(new FASTAInputStream(file)));
+			}
+		} finally {
+			FileUtilities.cleanupTempFile(file);
+			FileUtilities.cleanupTempFile(gzipped);
+		}
+	}
+
+	@Test
+	public void shouldProvideViews() throws IOException {
+		final File file = writeTemp(">h1\nABC\nDEF\n>h2\nGHI\n");
+		final MappedFASTAInputStream stream = new MappedFASTAInputStream(file);
+		try {
+			stream.beforeFirst();
+			Assert.assertTrue(stream.gotoNextSequence());
+			Assert.assertEquals(stream.getHeaderView().toString(), ">h1");
+			Assert.assertEquals(stream.getSequenceView().length(), 6);
+			Assert.assertEquals(stream.getSequenceView().charAt(3), 'D');
+			Assert.assertEquals(stream.getSequenceView().subSequence(2, 4).toString(), "CD");
+			Assert.assertTrue(stream.gotoNextSequence());
+			Assert.assertEquals(stream.getSequence(), "GHI");
+			Assert.assertFalse(stream.gotoNextSequence());
+		} finally {
+			stream.close();
+			FileUtilities.cleanupTempFile(file);
+		}
+	}
+
+	@Test
+	public void shouldRejectEmptyHeader() throws IOException {
+		final File valid = writeTemp(">h1\nABC\n> \nDEF\n");
+		final File invalid = writeTemp(">h1\nABC\n>\nDEF\n");
+		try {
+			Assert.assertTrue(FASTAInputStream.isFASTAFileValid(valid));
+			Assert.assertFalse(FASTAInputStream.isFASTAFileValid(invalid));
+			Assert.assertFalse(FASTAInputStream.isValidHeader(">"));
+			Assert.assertFalse(FASTAInputStream.isValidHeader(null));
+		} finally {
+			FileUtilities.cleanupTempFile(valid);
+			FileUtilities.cleanupTempFile(invalid);
+		}
+	}
+
+	private static void checkAllWindowSizes(String input) throws IOException {
+		final File file = writeTemp(input);
+		try {
+			final List<String> expected = read(new FASTAInputStream(file));
+			for (int windowSize = 1; windowSize <= input.length() + 1; windowSize++) {
+				Assert.assertEquals(read(new MappedFASTAInputStream(file, windowSize)), expected,
+						"Window size " + windowSize + " for input [" + input + "]");
+			}
+		} finally {
+			FileUtilities.cleanupTempFile(file);
+		}
+	}
+
+	private static File writeTemp(String input) throws IOException {
+		final File file = File.createTempFile("mapped", ".fasta");
+		FileUtilities.writeStringToFile(file, input, true);
+		return file;
+	}
+
+	private static List<String> read(DBInputStream stream) {
+		final List<String> result = new ArrayList<String>();
+		try {
+			stream.beforeFirst();
+			while (stream.gotoNextSequence()) {
+				result.add(stream.getHeader());
+				result.add(stream.getSequence());
+			}
+		} finally {
+			stream.close();
+		}
+		return result;
+	}
+}
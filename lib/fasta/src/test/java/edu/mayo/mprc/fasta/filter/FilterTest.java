@@ -3,6 +3,7 @@ package edu.mayo.mprc.fasta.filter;
 import org.testng.Assert;
 import org.testng.annotations.Test;
 
+import java.util.Arrays;
 import java.util.Random;
 
 public final class FilterTest {
@@ -26,6 +27,24 @@ public final class FilterTest {
 		Assert.assertEquals(manipulator.manipulateString("A"), "A");
 	}
 
+	@Test
+	public static void shouldScrambleDeterministically() {
+		final ScrambleStringManipulator first = new ScrambleStringManipulator();
+		final ScrambleStringManipulator second = new ScrambleStringManipulator();
+		final String sequence = "ABCDEFGHIJKLMNOPQRSTUVWXYZ";
+		final String scrambled = first.manipulateString(sequence);
+		Assert.assertEquals(first.manipulateString("PEPTIDE").length(), 7);
+		Assert.assertEquals(second.manipulateString(sequence), scrambled, "Same sequence must scramble the same way");
+		Assert.assertFalse(scrambled.equals(sequence));
+
+		final char[] sorted = scrambled.toCharArray();
+		Arrays.sort(sorted);
+		Assert.assertEquals(new String(sorted), sequence);
+
+		second.setSeed(1);
+		Assert.assertFalse(second.manipulateString(sequence).equals(scrambled));
+	}
+
 	@Test
 	public static void shouldSimpleFilter() {
 		SimpleStringTextFilter filter = new SimpleStringTextFilter("HELLO world");
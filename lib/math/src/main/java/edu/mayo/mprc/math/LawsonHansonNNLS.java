@@ -0,0 +1,371 @@
+package edu.mayo.mprc.math;
+
+import edu.mayo.mprc.MprcException;
+import org.apache.log4j.Logger;
+
+/**
+ * Non-Negative Least Squares using the active set method of Lawson and Hanson.
+ * <p/>
+ * Minimizes <code>|Xb - y|</code> subject to <code>b &gt;= 0</code> for all coefficients that are not allowed to be
+ * negative. Unlike {@link NNLS}, the matrix is never inverted. A QR decomposition of the columns in the passive set
+ * is kept and updated as the columns come and go: a column is added by Gram-Schmidt orthogonalization, removed
+ * by Givens rotations. <code>Q<sup>T</sup>y</code> is updated along, so each least squares solution is a single
+ * back-substitution.
+ * <p/>
+ * All the work arrays are allocated once in the constructor and reused by every {@link #fit} call, so fitting
+ * many spectra against the same X allocates nothing. For the same reason, an instance must not be shared by threads.
+ * <p/>
+ * If the solution does not settle within the iteration limit, a warning is logged and the last feasible coefficients
+ * are returned.
+ */
+public final class LawsonHansonNNLS {
+	private static final Logger LOGGER = Logger.getLogger(LawsonHansonNNLS.class);
+	private static final double TOLERANCE = 1E-10;
+
+	/**
+	 * Columns of X, <code>columns[j][i] = X(i, j)</code>.
+	 */
+	private final double[][] columns;
+	private final boolean[] allowedToBeNegative;
+	private final int m;
+	private final int n;
+	private final int maxIterations;
+
+	// ---- workspace, reused by each fit
+	/**
+	 * Orthonormal columns of Q for the passive set, <code>q[k]</code> belongs to the k-th passive column.
+	 */
+	private final double[][] q;
+	/**
+	 * Upper triangular R, <code>r[row][col]</code>.
+	 */
+	private final double[][] r;
+	/**
+	 * Q<sup>T</sup>y
+	 */
+	private final double[] qty;
+	/**
+	 * Passive set - indices of columns in the order they are in the decomposition.
+	 */
+	private final int[] passive;
+	private final boolean[] isPassive;
+	/**
+	 * Columns that could not be added as they depend on the passive ones.
+	 */
+	private final boolean[] dependent;
+	private int passiveCount;
+
+	private final double[] z;
+	private final double[] gradient;
+	private final double[] residual;
+	private final double[] orthogonal;
+
+	/**
+	 * Result of the fit. The arrays are reused by subsequent fits into the same result.
+	 */
+	public static final class Fit {
+		private double[] coefs;
+		private double[] yhat;
+		private double rss = -1;
+
+		/**
+		 * @return Fitted coefficients.
+		 */
+		public double[] getCoefs() {
+			return coefs;
+		}
+
+		/**
+		 * @return Fitted values, <code>X * coefs</code>.
+		 */
+		public double[] getYhat() {
+			return yhat;
+		}
+
+		/**
+		 * @return Residual sum of squares.
+		 */
+		public double getRss() {
+			return rss;
+		}
+
+		private void ensureSize(int n, int m) {
+			if (coefs == null || coefs.length != n) {
+				coefs = new double[n];
+			}
+			if (yhat == null || yhat.length != m) {
+				yhat = new double[m];
+			}
+		}
+	}
+
+	/**
+	 * @param x                   The matrix, <code>x[row][column]</code>.
+	 * @param allowedToBeNegative Which coefficients are not constrained. Null if all must be non-negative.
+	 */
+	public LawsonHansonNNLS(double[][] x, boolean[] allowedToBeNegative) {
+		m = x.length;
+		n = m == 0 ? 0 : x[0].length;
+		if (m == 0 || n == 0) {
+			throw new MprcException("The matrix must not be empty.");
+		}
+		if (allowedToBeNegative != null && allowedToBeNegative.length != n) {
+			throw new MprcException("Expected " + n + " negativity flags, got " + allowedToBeNegative.length);
+		}
+		columns = new double[n][m];
+		for (int i = 0; i < m; i++) {
+			if (x[i].length != n) {
+				throw new MprcException("Row " + i + " has " + x[i].length + " columns, expected " + n);
+			}
+			for (int j = 0; j < n; j++) {
+				columns[j][i] = x[i][j];
+			}
+		}
+		this.allowedToBeNegative = allowedToBeNegative == null ? new boolean[n] : allowedToBeNegative.clone();
+		maxIterations = 3 * n + 10;
+
+		q = new double[n][m];
+		r = new double[n][n];
+		qty = new double[n];
+		passive = new int[n];
+		isPassive = new boolean[n];
+		dependent = new boolean[n];
+		z = new double[n];
+		gradient = new double[n];
+		residual = new double[m];
+		orthogonal = new double[m];
+	}
+
+	/**
+	 * Fits y.
+	 *
+	 * @param y      Values to fit, one per row of X.
+	 * @param result Where to store the result.
+	 */
+	public void fit(double[] y, Fit result) {
+		if (y.length != m) {
+			throw new MprcException("Expected " + m + " values, got " + y.length);
+		}
+		result.ensureSize(n, m);
+		final double[] b = result.coefs;
+		for (int j = 0; j < n; j++) {
+			b[j] = 0;
+			isPassive[j] = false;
+			dependent[j] = false;
+		}
+		passiveCount = 0;
+
+		// Unconstrained coefficients are always passive
+		for (int j = 0; j < n; j++) {
+			if (allowedToBeNegative[j]) {
+				addColumn(j, y);
+			}
+		}
+		if (passiveCount > 0) {
+			solvePassive();
+			for (int k = 0; k < passiveCount; k++) {
+				b[passive[k]] = z[k];
+			}
+		}
+
+		boolean converged = false;
+		for (int iteration = 0; iteration < maxIterations; iteration++) {
+			computeResidual(b, y);
+			final int next = mostPromisingColumn();
+			if (next < 0) {
+				converged = true;
+				break;
+			}
+			if (!addColumn(next, y)) {
+				dependent[next] = true;
+				continue;
+			}
+
+			// Inner loop - step towards the unconstrained solution until it is feasible
+			while (true) {
+				solvePassive();
+				double alpha = 1;
+				for (int k = 0; k < passiveCount; k++) {
+					final int j = passive[k];
+					if (!allowedToBeNegative[j] && z[k] <= TOLERANCE) {
+						final double denominator = b[j] - z[k];
+						final double step = denominator > 0 ? b[j] / denominator : 0;
+						if (step < alpha) {
+							alpha = step;
+						}
+					}
+				}
+				if (alpha >= 1) {
+					for (int k = 0; k < passiveCount; k++) {
+						b[passive[k]] = z[k];
+					}
+					break;
+				}
+				for (int k = 0; k < passiveCount; k++) {
+					final int j = passive[k];
+					b[j] += alpha * (z[k] - b[j]);
+				}
+				// Drop the columns that hit zero, going backwards so the positions stay valid
+				for (int k = passiveCount - 1; k >= 0; k--) {
+					final int j = passive[k];
+					if (!allowedToBeNegative[j] && b[j] <= TOLERANCE) {
+						b[j] = 0;
+						removeColumn(k);
+					}
+				}
+				if (passiveCount == 0) {
+					break;
+				}
+			}
+		}
+
+		if (!converged) {
+			LOGGER.warn("Lawson-Hanson NNLS did not converge in " + maxIterations + " iterations for a " + m + "x" + n + " matrix, the fit is not optimal");
+		}
+
+		double rss = 0;
+		for (int i = 0; i < m; i++) {
+			double value = 0;
+			for (int k = 0; k < passiveCount; k++) {
+				value += columns[passive[k]][i] * b[passive[k]];
+			}
+			result.yhat[i] = value;
+			final double delta = y[i] - value;
+			rss += delta * delta;
+		}
+		result.rss = rss;
+	}
+
+	private void computeResidual(double[] b, double[] y) {
+		System.arraycopy(y, 0, residual, 0, m);
+		for (int k = 0; k < passiveCount; k++) {
+			final double coef = b[passive[k]];
+			final double[] column = columns[passive[k]];
+			for (int i = 0; i < m; i++) {
+				residual[i] -= column[i] * coef;
+			}
+		}
+	}
+
+	/**
+	 * @return The active column whose increase lowers the residual the most, -1 if there is no such column.
+	 */
+	private int mostPromisingColumn() {
+		int best = -1;
+		double bestGradient = TOLERANCE;
+		for (int j = 0; j < n; j++) {
+			if (isPassive[j] || dependent[j]) {
+				continue;
+			}
+			gradient[j] = dot(columns[j], residual);
+			if (gradient[j] > bestGradient) {
+				bestGradient = gradient[j];
+				best = j;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Appends a column to the QR decomposition.
+	 *
+	 * @return False if the column is linearly dependent on the passive ones and was not added.
+	 */
+	private boolean addColumn(int j, double[] y) {
+		final int k = passiveCount;
+		final double[] column = columns[j];
+		System.arraycopy(column, 0, orthogonal, 0, m);
+		for (int l = 0; l < k; l++) {
+			r[l][k] = 0;
+		}
+		// Orthogonalize twice, once is not enough when the columns are nearly dependent
+		for (int pass = 0; pass < 2; pass++) {
+			for (int l = 0; l < k; l++) {
+				final double projection = dot(q[l], orthogonal);
+				r[l][k] += projection;
+				final double[] ql = q[l];
+				for (int i = 0; i < m; i++) {
+					orthogonal[i] -= projection * ql[i];
+				}
+			}
+		}
+		final double norm = Math.sqrt(dot(orthogonal, orthogonal));
+		if (norm <= TOLERANCE * Math.max(1, Math.sqrt(dot(column, column)))) {
+			return false;
+		}
+		final double[] qk = q[k];
+		for (int i = 0; i < m; i++) {
+			qk[i] = orthogonal[i] / norm;
+		}
+		r[k][k] = norm;
+		qty[k] = dot(qk, y);
+		passive[k] = j;
+		isPassive[j] = true;
+		passiveCount++;
+		return true;
+	}
+
+	/**
+	 * Removes a passive column, restoring the triangular shape of R with Givens rotations.
+	 */
+	private void removeColumn(int position) {
+		isPassive[passive[position]] = false;
+		final int k = passiveCount;
+		// Shift the columns of R left
+		for (int col = position; col < k - 1; col++) {
+			passive[col] = passive[col + 1];
+			for (int row = 0; row <= col + 1; row++) {
+				r[row][col] = r[row][col + 1];
+			}
+		}
+		// R is now upper Hessenberg from the position on, zero the subdiagonal
+		for (int row = position; row < k - 1; row++) {
+			final double a = r[row][row];
+			final double b = r[row + 1][row];
+			final double hypot = Math.hypot(a, b);
+			final double c = a / hypot;
+			final double s = b / hypot;
+			for (int col = row; col < k - 1; col++) {
+				final double upper = r[row][col];
+				final double lower = r[row + 1][col];
+				r[row][col] = c * upper + s * lower;
+				r[row + 1][col] = -s * upper + c * lower;
+			}
+			r[row + 1][row] = 0;
+			final double[] q1 = q[row];
+			final double[] q2 = q[row + 1];
+			for (int i = 0; i < m; i++) {
+				final double v1 = q1[i];
+				final double v2 = q2[i];
+				q1[i] = c * v1 + s * v2;
+				q2[i] = -s * v1 + c * v2;
+			}
+			final double t1 = qty[row];
+			final double t2 = qty[row + 1];
+			qty[row] = c * t1 + s * t2;
+			qty[row + 1] = -s * t1 + c * t2;
+		}
+		passiveCount--;
+	}
+
+	/**
+	 * Solves <code>R z = Q<sup>T</sup>y</code> for the passive set.
+	 */
+	private void solvePassive() {
+		for (int row = passiveCount - 1; row >= 0; row--) {
+			double sum = qty[row];
+			for (int col = row + 1; col < passiveCount; col++) {
+				sum -= r[row][col] * z[col];
+			}
+			z[row] = sum / r[row][row];
+		}
+	}
+
+	private double dot(double[] a, double[] b) {
+		double sum = 0;
+		for (int i = 0; i < m; i++) {
+			sum += a[i] * b[i];
+		}
+		return sum;
+	}
+}
@@ -19,7 +19,7 @@ import java.util.Map;
  * Implementation of Non-Negative Least Squares fitting that caches solution and hat matrices to make
  * repeated fits with the same base X matrix faster.  This isn't as clever as
  * Lawson and Hanson's method that fixes up the solution matrix rather than
- * redoing the inversion; that speedup could theoretically be added here, however.
+ * redoing the inversion; {@link LawsonHansonNNLS} implements that method.
  * <p/>
  * Also, the memory performance of this is not as good as it could be.
  */
@@ -0,0 +1,289 @@
+package edu.mayo.mprc.math;
+
+import cern.colt.matrix.DoubleFactory1D;
+import cern.colt.matrix.DoubleFactory2D;
+import cern.colt.matrix.DoubleMatrix1D;
+import org.apache.log4j.Logger;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.Random;
+
+public final class LawsonHansonNNLSTest {
+	private static final Logger LOGGER = Logger.getLogger(LawsonHansonNNLSTest.class);
+
+	private static final double[][] UNIT_3X3 = {
+			{1, 0, 0},
+			{0, 1, 0},
+			{0, 0, 1}
+	};
+
+	private static final double[][] TEST_1 = {
+			{1, 2, 3},
+			{-1, 1, -2},
+			{3, -1, 1}
+	};
+
+	private static final double[][] TEST_2 = {
+			{1, -1, 3},
+			{2, 1, -1},
+			{3, -2, 1},
+			{4, -1, 3}
+	};
+
+	@Test
+	public void shouldSolveIdentityMatrix() {
+		assertFit(UNIT_3X3, null, new double[]{1, 2, 3}, new double[]{1, 2, 3}, 1E-12);
+	}
+
+	@Test
+	public void shouldSolveWithNegativeNumbers() {
+		assertFit(UNIT_3X3, null, new double[]{1, -200, 3}, new double[]{1, 0, 3}, 1E-12);
+	}
+
+	@Test
+	public void shouldSolveWithAllowedNegativeNumbers() {
+		assertFit(UNIT_3X3, new boolean[]{false, true, false}, new double[]{1, -200, 3}, new double[]{1, -200, 3}, 1E-12);
+		assertFit(UNIT_3X3, new boolean[]{false, false, true}, new double[]{1, -200, -100}, new double[]{1, 0, -100}, 1E-12);
+	}
+
+	@Test
+	public void shouldSolveWithAllNegative() {
+		final boolean[] all = {true, true, true};
+		assertFit(TEST_1, all, new double[]{3, -5, 8}, new double[]{2, -1, 1}, 1E-10);
+		assertFit(TEST_2, all, new double[]{6, 2, 9, 12}, new double[]{2, -1, 1}, 1E-10);
+	}
+
+	@Test
+	public void shouldHandleDependentColumns() {
+		final double[][] x = {
+				{1, 2, 0},
+				{1, 2, 1},
+				{1, 2, 0}
+		};
+		final LawsonHansonNNLS nnls = new LawsonHansonNNLS(x, null);
+		final LawsonHansonNNLS.Fit fit = new LawsonHansonNNLS.Fit();
+		nnls.fit(new double[]{2, 3, 2}, fit);
+		Assert.assertEquals(fit.getRss(), 0, 1E-10);
+		Assert.assertEquals(fit.getCoefs()[0] + 2 * fit.getCoefs()[1], 2, 1E-10);
+		Assert.assertEquals(fit.getCoefs()[2], 1, 1E-10);
+	}
+
+	@Test
+	public void shouldMatchExhaustiveSearch() {
+		final Random random = new Random(20121112L);
+		final LawsonHansonNNLS.Fit fit = new LawsonHansonNNLS.Fit();
+		for (int problem = 0; problem < 200; problem++) {
+			final int n = 1 + random.nextInt(6);
+			final int m = n + random.nextInt(10);
+			final double[][] x = randomMatrix(random, m, n);
+			final boolean[] negative = new boolean[n];
+			for (int j = 0; j < n; j++) {
+				negative[j] = random.nextInt(4) == 0;
+			}
+			final double[] y = new double[m];
+			for (int i = 0; i < m; i++) {
+				y[i] = random.nextGaussian() * 10;
+			}
+			final LawsonHansonNNLS nnls = new LawsonHansonNNLS(x, negative);
+			nnls.fit(y, fit);
+			final double best = exhaustiveRss(x, negative, y);
+			Assert.assertEquals(fit.getRss(), best, 1E-8 * Math.max(1, best), "Problem " + problem);
+			for (int j = 0; j < n; j++) {
+				Assert.assertTrue(negative[j] || fit.getCoefs()[j] >= 0, "Coefficient " + j + " must not be negative");
+			}
+		}
+	}
+
+	/**
+	 * Fits overlapping isotope envelopes of the sizes we see when deconvolving spectra, reporting the time per fit
+	 * for this solver and for {@link NNLS}.
+	 */
+	@Test(groups = "benchmark")
+	public void benchmarkIsotopeDeconvolution() {
+		final Random random = new Random(1L);
+		final int[][] sizes = {{20, 3}, {40, 6}, {80, 12}, {120, 20}};
+		for (final int[] size : sizes) {
+			final int m = size[0];
+			final int n = size[1];
+			final double[][] x = isotopeEnvelopes(m, n);
+			final int fits = 2000;
+			final double[][] ys = new double[fits][];
+			for (int f = 0; f < fits; f++) {
+				ys[f] = noisyMixture(random, x);
+			}
+
+			final LawsonHansonNNLS nnls = new LawsonHansonNNLS(x, null);
+			final LawsonHansonNNLS.Fit fit = new LawsonHansonNNLS.Fit();
+			final double[] rss = new double[fits];
+			final long start = System.nanoTime();
+			for (int f = 0; f < fits; f++) {
+				nnls.fit(ys[f], fit);
+				rss[f] = fit.getRss();
+			}
+			final long lawsonHanson = System.nanoTime() - start;
+
+			String comparison = "";
+			if (n <= 6) {
+				// The old implementation visits up to 2^n subsets per fit, larger problems take too long
+				final NNLS old = new NNLS(DoubleFactory2D.dense.make(x), 0, 0);
+				final long oldStart = System.nanoTime();
+				for (int f = 0; f < fits; f++) {
+					final NNLS.Fit oldFit = new NNLS.Fit();
+					final DoubleMatrix1D y = DoubleFactory1D.dense.make(ys[f]);
+					old.fit(y, oldFit);
+					Assert.assertEquals(rss[f], oldFit.rss, 1E-6 * Math.max(1, oldFit.rss));
+				}
+				final long oldTime = System.nanoTime() - oldStart;
+				comparison = ", NNLS: " + (oldTime / fits) + " ns/fit";
+			}
+			LOGGER.info(m + "x" + n + " Lawson-Hanson: " + (lawsonHanson / fits) + " ns/fit" + comparison);
+		}
+	}
+
+	private static void assertFit(double[][] x, boolean[] negative, double[] y, double[] expected, double precision) {
+		final LawsonHansonNNLS nnls = new LawsonHansonNNLS(x, negative);
+		final LawsonHansonNNLS.Fit fit = new LawsonHansonNNLS.Fit();
+		nnls.fit(y, fit);
+		for (int i = 0; i < expected.length; i++) {
+			Assert.assertEquals(fit.getCoefs()[i], expected[i], precision, "Mismatched element #" + (i + 1));
+		}
+	}
+
+	private static double[][] randomMatrix(Random random, int m, int n) {
+		final double[][] x = new double[m][n];
+		for (int i = 0; i < m; i++) {
+			for (int j = 0; j < n; j++) {
+				x[i][j] = random.nextGaussian();
+			}
+		}
+		return x;
+	}
+
+	/**
+	 * Tries all subsets of zeroed constrained coefficients, returns the best feasible residual sum of squares.
+	 */
+	private static double exhaustiveRss(double[][] x, boolean[] negative, double[] y) {
+		final int n = x[0].length;
+		double best = Double.MAX_VALUE;
+		for (int mask = 0; mask < (1 << n); mask++) {
+			boolean valid = true;
+			for (int j = 0; j < n; j++) {
+				if (negative[j] && (mask & (1 << j)) == 0) {
+					valid = false;
+				}
+			}
+			if (!valid) {
+				continue;
+			}
+			final double[] coefs = leastSquares(x, mask, y);
+			if (coefs == null) {
+				continue;
+			}
+			boolean feasible = true;
+			for (int j = 0; j < n; j++) {
+				if (!negative[j] && coefs[j] < -1E-12) {
+					feasible = false;
+				}
+			}
+			if (feasible) {
+				best = Math.min(best, rss(x, coefs, y));
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Unconstrained least squares over the columns in the mask using normal equations.
+	 */
+	private static double[] leastSquares(double[][] x, int mask, double[] y) {
+		final int n = x[0].length;
+		final int[] used = new int[Integer.bitCount(mask)];
+		for (int j = 0, k = 0; j < n; j++) {
+			if ((mask & (1 << j)) != 0) {
+				used[k++] = j;
+			}
+		}
+		final int k = used.length;
+		final double[][] a = new double[k][k + 1];
+		for (int p = 0; p < k; p++) {
+			for (int s = 0; s < k; s++) {
+				for (double[] row : x) {
+					a[p][s] += row[used[p]] * row[used[s]];
+				}
+			}
+			for (int i = 0; i < x.length; i++) {
+				a[p][k] += x[i][used[p]] * y[i];
+			}
+		}
+		for (int col = 0; col < k; col++) {
+			int pivot = col;
+			for (int row = col + 1; row < k; row++) {
+				if (Math.abs(a[row][col]) > Math.abs(a[pivot][col])) {
+					pivot = row;
+				}
+			}
+			if (Math.abs(a[pivot][col]) < 1E-12) {
+				return null;
+			}
+			final double[] swap = a[col];
+			a[col] = a[pivot];
+			a[pivot] = swap;
+			for (int row = 0; row < k; row++) {
+				if (row != col) {
+					final double factor = a[row][col] / a[col][col];
+					for (int c = col; c <= k; c++) {
+						a[row][c] -= factor * a[col][c];
+					}
+				}
+			}
+		}
+		final double[] coefs = new double[n];
+		for (int p = 0; p < k; p++) {
+			coefs[used[p]] = a[p][k] / a[p][p];
+		}
+		return coefs;
+	}
+
+	private static double rss(double[][] x, double[] coefs, double[] y) {
+		double rss = 0;
+		for (int i = 0; i < x.length; i++) {
+			double value = 0;
+			for (int j = 0; j < coefs.length; j++) {
+				value += x[i][j] * coefs[j];
+			}
+			rss += (y[i] - value) * (y[i] - value);
+		}
+		return rss;
+	}
+
+	/**
+	 * Each column is an isotope envelope starting one peak further than the previous one.
+	 */
+	private static double[][] isotopeEnvelopes(int m, int n) {
+		final double[][] x = new double[m][n];
+		final double[] envelope = {0.45, 0.3, 0.15, 0.07, 0.03};
+		for (int j = 0; j < n; j++) {
+			final int offset = j * (m - envelope.length) / Math.max(1, n - 1);
+			for (int k = 0; k < envelope.length; k++) {
+				x[offset + k][j] = envelope[k];
+			}
+		}
+		return x;
+	}
+
+	private static double[] noisyMixture(Random random, double[][] x) {
+		final int n = x[0].length;
+		final double[] y = new double[x.length];
+		for (int j = 0; j < n; j++) {
+			final double abundance = random.nextBoolean() ? random.nextDouble() * 1000 : 0;
+			for (int i = 0; i < x.length; i++) {
+				y[i] += x[i][j] * abundance;
+			}
+		}
+		for (int i = 0; i < y.length; i++) {
+			y[i] += random.nextGaussian() * 5;
+		}
+		return y;
+	}
+}
@@ -5,75 +5,103 @@ import edu.mayo.mprc.utilities.FileUtilities;
 
 import java.io.File;
 import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Data access object for the generic MPRC data format.
  * This object is used by more specific DAOs that store specific data within the format.
+ * <p/>
+ * Reads use a small pool of connections, so readers do not wait for each other. Each connection has a busy timeout,
+ * so while another process commits to the file, the readers wait for up to {@link #BUSY_TIMEOUT_SECONDS} instead of
+ * failing.
  */
 public final class MprcFile {
+	/**
+	 * How many connections can read at once.
+	 */
+	public static final int READ_CONNECTIONS = 4;
+	private static final int QUERY_TIMEOUT_SECONDS = 30;
+	private static final int BUSY_TIMEOUT_SECONDS = 30;
+	/**
+	 * How long to wait for a connection when all of them are busy.
+	 */
+	private static final long CONNECTION_TIMEOUT = QUERY_TIMEOUT_SECONDS * 1000L;
+	/**
+	 * How often a reader waiting for a connection checks whether the file was closed.
+	 */
+	private static final long CLOSED_CHECK_INTERVAL = 100;
+
 	private final File databaseFile;
-	private Connection connection = null;
+	private boolean open;
+
+	/**
+	 * Idle connections. Only the connections listed in {@link #allConnections} get in.
+	 */
+	private final BlockingQueue<Connection> idleConnections = new ArrayBlockingQueue<Connection>(READ_CONNECTIONS);
+	/**
+	 * All open connections, idle or not. Guards the pool.
+	 */
+	private final List<Connection> allConnections = new ArrayList<Connection>(READ_CONNECTIONS);
 
 	public MprcFile(File databaseFile) {
 		this.databaseFile = databaseFile;
 	}
 
-	public synchronized void open() {
-		if (connection == null) {
-			try {
-				Class.forName("org.sqlite.JDBC");
-			} catch (Exception t) {
-				throw new MprcException("Sql initialization failed", t);
-			}
-
-			try {
-				// create a database connection
-				connection = DriverManager.getConnection("jdbc:sqlite:" + databaseFile.getAbsolutePath());
+	public void open() {
+		synchronized (allConnections) {
+			if (!open) {
+				final Connection connection = openConnection();
+				allConnections.add(connection);
+				idleConnections.add(connection);
+				open = true;
 			}
-			catch (Exception e) {
-				// if the error message is "out of memory",
-				// it probably means no database file is found
-				throw new MprcException("Cannot open database connection to " + databaseFile.getAbsolutePath(), e);
-			}
-		}
-	}
-
-	public synchronized void close() {
-		try {
-			if (connection != null) {
-				connection.close();
-			}
-		}
-		catch (SQLException e) {
-			// connection close failed.
-			throw new MprcException("Closing database " + databaseFile.getAbsolutePath() + " failed.", e);
-		} finally {
-			connection = null;
 		}
 	}
 
 	/**
-	 * Locked access to the connection object.
-	 *
-	 * @return Connection.
+	 * Closes the idle connections. The busy ones get closed when their reads finish, the readers waiting
+	 * for a connection fail.
 	 */
-	private synchronized Connection getConnection() {
-		return connection;
+	public void close() {
+		synchronized (allConnections) {
+			open = false;
+			final List<Connection> idle = new ArrayList<Connection>(READ_CONNECTIONS);
+			idleConnections.drainTo(idle);
+			allConnections.clear();
+			SQLException failure = null;
+			for (Connection connection : idle) {
+				try {
+					connection.close();
+				} catch (SQLException e) {
+					failure = e;
+				}
+			}
+			if (failure != null) {
+				// connection close failed.
+				throw new MprcException("Closing database " + databaseFile.getAbsolutePath() + " failed.", failure);
+			}
+		}
 	}
 
 	/**
 	 * Processes result set obtained from given sql using a callback method.
+	 * Runs on one of the pooled connections, several threads can read at once.
 	 *
 	 * @param sql      The sql command to execute.
 	 * @param callback Callback that is passed the recordset resulting from the sql command.
 	 * @return The object returned from {@link MprcFileCallback}.
 	 */
 	public Object processResultSet(String sql, MprcFileCallback callback) {
+		final Connection connection = borrowConnection();
 		PreparedStatement statement = null;
 		ResultSet rs = null;
 		try {
-			statement = getConnection().prepareStatement(sql);
-			statement.setQueryTimeout(30);  // set timeout to 30 sec.
+			statement = connection.prepareStatement(sql);
+			statement.setQueryTimeout(QUERY_TIMEOUT_SECONDS);
 			rs = statement.executeQuery();
 			return callback.processResultSet(rs);
 		} catch (Exception t) {
@@ -81,6 +109,95 @@ public final class MprcFile {
 		} finally {
 			FileUtilities.closeObjectQuietly(rs);
 			closeStatement(statement);
+			returnConnection(connection);
+		}
+	}
+
+	private Connection openConnection() {
+		try {
+			Class.forName("org.sqlite.JDBC");
+		} catch (Exception t) {
+			throw new MprcException("Sql initialization failed", t);
+		}
+
+		final Connection connection;
+		try {
+			// create a database connection
+			connection = DriverManager.getConnection("jdbc:sqlite:" + databaseFile.getAbsolutePath());
+		} catch (Exception e) {
+			// if the error message is "out of memory",
+			// it probably means no database file is found
+			throw new MprcException("Cannot open database connection to " + databaseFile.getAbsolutePath(), e);
+		}
+
+		Statement statement = null;
+		try {
+			// The SQLite driver turns the query timeout into the busy timeout of the whole connection
+			statement = connection.createStatement();
+			statement.setQueryTimeout(BUSY_TIMEOUT_SECONDS);
+		} catch (SQLException e) {
+			closeQuietly(connection);
+			throw new MprcException("Cannot set busy timeout for " + databaseFile.getAbsolutePath(), e);
+		} finally {
+			closeStatement(statement);
+		}
+		return connection;
+	}
+
+	/**
+	 * Takes an idle connection. Opens a new one if all are busy and there are less than {@link #READ_CONNECTIONS},
+	 * otherwise waits for up to {@link #CONNECTION_TIMEOUT}.
+	 */
+	private Connection borrowConnection() {
+		final long until = System.currentTimeMillis() + CONNECTION_TIMEOUT;
+		while (true) {
+			synchronized (allConnections) {
+				if (!open) {
+					throw new MprcException("Database " + databaseFile.getAbsolutePath() + " is not open");
+				}
+				final Connection idle = idleConnections.poll();
+				if (idle != null) {
+					return idle;
+				}
+				if (allConnections.size() < READ_CONNECTIONS) {
+					final Connection created = openConnection();
+					allConnections.add(created);
+					return created;
+				}
+			}
+
+			final long remaining = until - System.currentTimeMillis();
+			if (remaining <= 0) {
+				throw new MprcException("Timed out waiting for a connection to " + databaseFile.getAbsolutePath());
+			}
+			try {
+				final Connection idle = idleConnections.poll(Math.min(remaining, CLOSED_CHECK_INTERVAL), TimeUnit.MILLISECONDS);
+				if (idle != null) {
+					return idle;
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new MprcException("Interrupted while waiting for a connection to " + databaseFile.getAbsolutePath(), e);
+			}
+		}
+	}
+
+	private void returnConnection(Connection connection) {
+		synchronized (allConnections) {
+			if (allConnections.contains(connection)) {
+				idleConnections.add(connection);
+				return;
+			}
+		}
+		// The file was closed meanwhile
+		closeQuietly(connection);
+	}
+
+	private static void closeQuietly(Connection connection) {
+		try {
+			connection.close();
+		} catch (SQLException ignore) {
+			// SWALLOWED: the connection is not needed anymore
 		}
 	}
 
@@ -0,0 +1,236 @@
+package edu.mayo.mprc.io.data;
+
+import edu.mayo.mprc.MprcException;
+import edu.mayo.mprc.utilities.FileUtilities;
+import org.apache.log4j.Logger;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+public final class MprcFileTest {
+	private static final Logger LOGGER = Logger.getLogger(MprcFileTest.class);
+
+	private static final int ROWS = 1000;
+	/**
+	 * How many rows to scan in {@link #benchmarkConcurrentReads}.
+	 */
+	private static final String BENCHMARK_ROWS = "mprcfile.benchmark.rows";
+	private static final long TIMEOUT = 10 * 1000;
+
+	private static final MprcFileCallback COUNT = new MprcFileCallback() {
+		@Override
+		public Object processResultSet(ResultSet rs) throws Exception {
+			rs.next();
+			return rs.getInt(1);
+		}
+	};
+
+	@Test
+	public void shouldReadConcurrently() throws Exception {
+		final File folder = FileUtilities.createTempFolder();
+		final MprcFile file = createFile(folder, ROWS);
+		try {
+			final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+			final List<Thread> readers = new ArrayList<Thread>();
+			for (int i = 0; i < MprcFile.READ_CONNECTIONS * 2; i++) {
+				final Thread thread = new Thread(new Runnable() {
+					@Override
+					public void run() {
+						try {
+							for (int read = 0; read < 100; read++) {
+								final int count = (Integer) file.processResultSet("select count(*) from spectra", COUNT);
+								if (count != ROWS) {
+									throw new MprcException("Expected " + ROWS + " rows, got " + count);
+								}
+							}
+						} catch (Throwable t) {
+							failure.compareAndSet(null, t);
+						}
+					}
+				}, "mprcfile-reader-" + i);
+				thread.start();
+				readers.add(thread);
+			}
+			for (Thread thread : readers) {
+				thread.join(TIMEOUT);
+			}
+			if (failure.get() != null) {
+				throw new MprcException("Reader failed", failure.get());
+			}
+		} finally {
+			file.close();
+			FileUtilities.cleanupTempFile(folder);
+		}
+	}
+
+	/**
+	 * Scans a file of {@link #BENCHMARK_ROWS} rows (default 300000) with one reader, then with
+	 * {@link MprcFile#READ_CONNECTIONS} readers at once, each reading the whole file.
+	 */
+	@Test(groups = "benchmark")
+	public void benchmarkConcurrentReads() throws Exception {
+		final int rows = Integer.getInteger(BENCHMARK_ROWS, 300000);
+		final File folder = FileUtilities.createTempFolder();
+		final MprcFile file = createFile(folder, rows);
+		try {
+			// Warm up the page cache so both runs read from memory
+			scan(file, 1, rows);
+			final long single = scan(file, 1, rows);
+			final long concurrent = scan(file, MprcFile.READ_CONNECTIONS, rows);
+			LOGGER.info(rows + " rows"
+					+ "\n\t1 reader: " + throughput(rows, single)
+					+ "\n\t" + MprcFile.READ_CONNECTIONS + " readers: " + throughput((long) rows * MprcFile.READ_CONNECTIONS, concurrent));
+		} finally {
+			file.close();
+			FileUtilities.cleanupTempFile(folder);
+		}
+	}
+
+	/**
+	 * Reads all rows of the file from given amount of threads at once.
+	 *
+	 * @return Time in milliseconds until the last reader finished.
+	 */
+	private static long scan(final MprcFile file, int readerCount, final int rows) throws InterruptedException {
+		final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+		final MprcFileCallback countRows = new MprcFileCallback() {
+			@Override
+			public Object processResultSet(ResultSet rs) throws Exception {
+				int count = 0;
+				double total = 0;
+				while (rs.next()) {
+					total += rs.getDouble(2);
+					count++;
+				}
+				return total > 0 ? count : 0;
+			}
+		};
+		final List<Thread> readers = new ArrayList<Thread>(readerCount);
+		for (int i = 0; i < readerCount; i++) {
+			readers.add(new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						final int count = (Integer) file.processResultSet("select id, mz from spectra", countRows);
+						if (count != rows) {
+							throw new MprcException("Expected " + rows + " rows, got " + count);
+						}
+					} catch (Throwable t) {
+						failure.compareAndSet(null, t);
+					}
+				}
+			}, "mprcfile-scan-" + i));
+		}
+		final long start = System.currentTimeMillis();
+		for (Thread thread : readers) {
+			thread.start();
+		}
+		for (Thread thread : readers) {
+			thread.join();
+		}
+		final long time = System.currentTimeMillis() - start;
+		if (failure.get() != null) {
+			throw new MprcException("Reader failed", failure.get());
+		}
+		return time;
+	}
+
+	private static String throughput(long rows, long millis) {
+		return millis + " ms (" + (rows * 1000L / Math.max(millis, 1)) + " rows/s)";
+	}
+
+	@Test
+	public void shouldFailWaitingReaderOnClose() throws Exception {
+		final File folder = FileUtilities.createTempFolder();
+		final MprcFile file = createFile(folder, ROWS);
+		final CountDownLatch busy = new CountDownLatch(MprcFile.READ_CONNECTIONS);
+		final CountDownLatch release = new CountDownLatch(1);
+		try {
+			// Keep all the connections busy
+			final MprcFileCallback blocking = new MprcFileCallback() {
+				@Override
+				public Object processResultSet(ResultSet rs) throws Exception {
+					busy.countDown();
+					release.await();
+					return null;
+				}
+			};
+			for (int i = 0; i < MprcFile.READ_CONNECTIONS; i++) {
+				new Thread(new Runnable() {
+					@Override
+					public void run() {
+						file.processResultSet("select count(*) from spectra", blocking);
+					}
+				}, "mprcfile-busy-" + i).start();
+			}
+			Assert.assertTrue(busy.await(TIMEOUT, TimeUnit.MILLISECONDS));
+
+			final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+			final Thread waiting = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						file.processResultSet("select count(*) from spectra", COUNT);
+					} catch (Throwable t) {
+						failure.set(t);
+					}
+				}
+			}, "mprcfile-waiting");
+			waiting.start();
+			Thread.sleep(200);
+			Assert.assertTrue(waiting.isAlive(), "The reader has to wait for a connection");
+
+			file.close();
+			waiting.join(TIMEOUT);
+			Assert.assertFalse(waiting.isAlive(), "Closing the file has to stop the waiting reader");
+			Assert.assertTrue(failure.get() instanceof MprcException, String.valueOf(failure.get()));
+		} finally {
+			release.countDown();
+			FileUtilities.cleanupTempFile(folder);
+		}
+	}
+
+	/**
+	 * Writes the test data with a plain connection, the way other processes produce the files.
+	 */
+	private static MprcFile createFile(File folder, int rows) throws Exception {
+		final File databaseFile = new File(folder, "test.mprc");
+		Class.forName("org.sqlite.JDBC");
+		final Connection connection = DriverManager.getConnection("jdbc:sqlite:" + databaseFile.getAbsolutePath());
+		try {
+			final Statement create = connection.createStatement();
+			create.execute("create table spectra (id integer primary key, mz real)");
+			MprcFile.closeStatement(create);
+			connection.setAutoCommit(false);
+			final PreparedStatement insert = connection.prepareStatement("insert into spectra values (?, ?)");
+			for (int id = 0; id < rows; id++) {
+				insert.setInt(1, id);
+				insert.setDouble(2, 400.0 + id * 0.001);
+				insert.addBatch();
+				if (id % 10000 == 9999) {
+					insert.executeBatch();
+				}
+			}
+			insert.executeBatch();
+			MprcFile.closeStatement(insert);
+			connection.commit();
+		} finally {
+			connection.close();
+		}
+
+		final MprcFile file = new MprcFile(databaseFile);
+		file.open();
+		return file;
+	}
+}
@@ -4,6 +4,7 @@ import edu.mayo.mprc.MprcException;
 import edu.mayo.mprc.database.Change;
 import edu.mayo.mprc.database.DaoBase;
 import edu.mayo.mprc.database.DatabasePlaceholder;
+import edu.mayo.mprc.database.ReferenceCache;
 import edu.mayo.mprc.unimod.ModSet;
 import edu.mayo.mprc.workspace.User;
 import org.apache.log4j.Logger;
@@ -16,16 +17,41 @@ import org.hibernate.criterion.SimpleExpression;
 
 import java.util.*;
 
+/**
+ * The lists of ion series, instruments and proteases are requested on every search submission and parameter edit,
+ * while they change very rarely. They are cached in memory and invalidated whenever this DAO changes them.
+ */
 public final class ParamsDaoImpl extends DaoBase implements ParamsDao {
 	private static final Logger LOGGER = Logger.getLogger(ParamsDaoImpl.class);
 
+	private final ReferenceCache<List<IonSeries>> ionSeries = new ReferenceCache<List<IonSeries>>(new ReferenceCache.Loader<List<IonSeries>>() {
+		@Override
+		public List<IonSeries> load() {
+			return Collections.unmodifiableList((List<IonSeries>) listAll(IonSeries.class));
+		}
+	});
+
+	private final ReferenceCache<List<Instrument>> instruments = new ReferenceCache<List<Instrument>>(new ReferenceCache.Loader<List<Instrument>>() {
+		@Override
+		public List<Instrument> load() {
+			return Collections.unmodifiableList((List<Instrument>) listAll(Instrument.class));
+		}
+	});
+
+	private final ReferenceCache<List<Protease>> proteases = new ReferenceCache<List<Protease>>(new ReferenceCache.Loader<List<Protease>>() {
+		@Override
+		public List<Protease> load() {
+			return Collections.unmodifiableList((List<Protease>) listAll(Protease.class));
+		}
+	});
+
 	public ParamsDaoImpl(DatabasePlaceholder databasePlaceholder) {
 		super(databasePlaceholder);
 	}
 
 	@Override
 	public List<IonSeries> ionSeries() {
-		return (List<IonSeries>) listAll(IonSeries.class);
+		return ionSeries.get();
 	}
 
 	/**
@@ -39,6 +65,7 @@ public final class ParamsDaoImpl extends DaoBase implements ParamsDao {
 	public void addIonSeries(IonSeries ionSeries, Change creation) {
 		try {
 			save(ionSeries, creation, getIonSeriesEqCriteria(ionSeries), true/*Must be new*/);
+			this.ionSeries.invalidate(getSession());
 		} catch (Exception t) {
 			throw new MprcException("Cannot add new ion series '" + ionSeries.getName() + "'", t);
 		}
@@ -47,7 +74,9 @@ public final class ParamsDaoImpl extends DaoBase implements ParamsDao {
 	@Override
 	public IonSeries updateIonSeries(IonSeries ionSeries, Change creation) {
 		try {
-			return save(ionSeries, creation, getIonSeriesEqCriteria(ionSeries), false/*Can already exist*/);
+			final IonSeries saved = save(ionSeries, creation, getIonSeriesEqCriteria(ionSeries), false/*Can already exist*/);
+			this.ionSeries.invalidate(getSession());
+			return saved;
 		} catch (Exception t) {
 			throw new MprcException("Cannot update ion series '" + ionSeries.getName() + "'", t);
 		}
@@ -57,6 +86,7 @@ public final class ParamsDaoImpl extends DaoBase implements ParamsDao {
 	public void deleteIonSeries(IonSeries ionSeries, Change deletion) {
 		try {
 			delete(ionSeries, deletion);
+			this.ionSeries.invalidate(getSession());
 		} catch (Exception t) {
 			throw new MprcException("Cannot delete ion series '" + ionSeries.getName() + "'", t);
 		}
@@ -64,7 +94,7 @@ public final class ParamsDaoImpl extends DaoBase implements ParamsDao {
 
 	@Override
 	public List<Instrument> instruments() {
-		return (List<Instrument>) listAll(Instrument.class);
+		return instruments.get();
 	}
 
 	@Override
@@ -85,6 +115,7 @@ public final class ParamsDaoImpl extends DaoBase implements ParamsDao {
 		try {
 			Instrument newInstrument = updateInstrumentIonSeries(instrument, change);
 			save(newInstrument, change, getInstrumentEqCriteria(instrument), true/*Must be new*/);
+			instruments.invalidate(getSession());
 			return newInstrument;
 		} catch (Exception t) {
 			throw new MprcException("Cannot add new instrument '" + instrument.getName() + "'", t);
@@ -105,6 +136,7 @@ public final class ParamsDaoImpl extends DaoBase implements ParamsDao {
 		try {
 			Instrument newInstrument = updateInstrumentIonSeries(instrument, change);
 			save(newInstrument, change, getInstrumentEqCriteria(instrument), false/*Update existing*/);
+			instruments.invalidate(getSession());
 			return newInstrument;
 		} catch (Exception t) {
 			throw new MprcException("Cannot update instrument '" + instrument.getName() + "'", t);
@@ -115,6 +147,7 @@ public final class ParamsDaoImpl extends DaoBase implements ParamsDao {
 	public void deleteInstrument(Instrument instrument, Change change) {
 		try {
 			delete(instrument, change);
+			instruments.invalidate(getSession());
 		} catch (Exception t) {
 			throw new MprcException("Cannot delete instrument '" + instrument.getName() + "'", t);
 		}
@@ -122,7 +155,7 @@ public final class ParamsDaoImpl extends DaoBase implements ParamsDao {
 
 	@Override
 	public List<Protease> proteases() {
-		return (List<Protease>) listAll(Protease.class);
+		return proteases.get();
 	}
 
 	private SimpleExpression getProteaseEqCriteria(Protease protease) {
@@ -138,6 +171,7 @@ public final class ParamsDaoImpl extends DaoBase implements ParamsDao {
 	public void addProtease(Protease protease, Change change) {
 		try {
 			save(protease, change, getProteaseEqCriteria(protease), true/*Must be new*/);
+			proteases.invalidate(getSession());
 		} catch (Exception t) {
 			throw new MprcException("Cannot add new protease '" + protease.getName() + "'", t);
 		}
@@ -146,7 +180,9 @@ public final class ParamsDaoImpl extends DaoBase implements ParamsDao {
 	@Override
 	public Protease updateProtease(Protease protease, Change change) {
 		try {
-			return save(protease, change, getProteaseEqCriteria(protease), false/*Can already exist*/);
+			final Protease saved = save(protease, change, getProteaseEqCriteria(protease), false/*Can already exist*/);
+			proteases.invalidate(getSession());
+			return saved;
 		} catch (Exception t) {
 			throw new MprcException("Cannot update protease '" + protease.getName() + "'", t);
 		}
@@ -156,6 +192,7 @@ public final class ParamsDaoImpl extends DaoBase implements ParamsDao {
 	public void deleteProtease(Protease protease, Change change) {
 		try {
 			delete(protease, change);
+			proteases.invalidate(getSession());
 		} catch (Exception t) {
 			throw new MprcException("Cannot delete protease '" + protease.getName() + "'", t);
 		}
@@ -17,22 +17,25 @@ import java.util.regex.Pattern;
 
 /**
  * Metadata information about search engine parameters. Contains list of allowed values, default values, etc.
- * The values are fetched on demand and cached indefinitely.
- * TODO: Merge this cache with the DAOs to ensure that it gets invalidated when the user changes something.
+ * The lists of enzymes, instruments and ions are cached by {@link ParamsDao}, so they follow the user changes.
+ * Unimod is fetched on demand and cached indefinitely.
  */
 public final class ParamsInfoImpl extends ParamsInfo {
 	private CurationDao curationDao;
 	private UnimodDao unimodDao;
 	private ParamsDao paramsDao;
 
-	private List<Protease> enzymes;
-
 	private Unimod unimod;
+
+	/**
+	 * Ion series list the {@link #ions} map was built from.
+	 */
+	private List<IonSeries> ionList;
 	private Map<String, IonSeries> ions;
 
 	private Instrument defInst;
 	private List<Instrument> insts;
-	private final Map<String, Instrument> instsHash = new HashMap<String, Instrument>();
+	private Map<String, Instrument> instsHash;
 
 	/**
 	 * @deprecated Only used for inverse mapping (native->abstract)
@@ -80,16 +83,9 @@ public final class ParamsInfoImpl extends ParamsInfo {
 		return dbs;
 	}
 
-	private void initializeEnzymes() {
-		if (enzymes == null) {
-			this.enzymes = paramsDao.proteases();
-		}
-	}
-
 	@Override
 	public List<Protease> getEnzymeAllowedValues() {
-		initializeEnzymes();
-		return enzymes;
+		return paramsDao.proteases();
 	}
 
 	private void initializeUnimod() {
@@ -122,21 +118,29 @@ public final class ParamsInfoImpl extends ParamsInfo {
 		return unimod;
 	}
 
-	private void initializeInstruments() {
-		if (insts == null) {
-			this.insts = paramsDao.instruments();
-			for (Instrument instrument : insts) {
+	/**
+	 * Rebuild the instrument information if the DAO returned a different list than last time.
+	 */
+	private synchronized void initializeInstruments() {
+		final List<Instrument> current = paramsDao.instruments();
+		if (insts != current) {
+			Instrument defaultInstrument = null;
+			for (Instrument instrument : current) {
 				if (instrument.getMascotName() != null && instrument.getMascotName().equals(Instrument.ORBITRAP.getMascotName())) {
-					defInst = instrument;
+					defaultInstrument = instrument;
 					break;
 				}
 			}
-			if (defInst == null) {
-				defInst = insts.get(0);
+			if (defaultInstrument == null) {
+				defaultInstrument = current.get(0);
 			}
-			for (Instrument instrument : insts) {
-				instsHash.put(instrument.getName(), instrument);
+			final Map<String, Instrument> hash = new HashMap<String, Instrument>();
+			for (Instrument instrument : current) {
+				hash.put(instrument.getName(), instrument);
 			}
+			defInst = defaultInstrument;
+			instsHash = hash;
+			insts = current;
 		}
 	}
 
@@ -152,13 +156,15 @@ public final class ParamsInfoImpl extends ParamsInfo {
 		return instsHash;
 	}
 
-	private void initializeIons() {
-		if (ions == null) {
-			final List<IonSeries> listIons = paramsDao.ionSeries();
-			ions = new HashMap<String, IonSeries>();
-			for (IonSeries ionSeries : listIons) {
-				ions.put(ionSeries.getName(), ionSeries);
+	private synchronized void initializeIons() {
+		final List<IonSeries> current = paramsDao.ionSeries();
+		if (ionList != current) {
+			final Map<String, IonSeries> hash = new HashMap<String, IonSeries>();
+			for (IonSeries ionSeries : current) {
+				hash.put(ionSeries.getName(), ionSeries);
 			}
+			ions = hash;
+			ionList = current;
 		}
 	}
 
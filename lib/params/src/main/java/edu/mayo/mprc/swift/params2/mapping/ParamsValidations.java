@@ -21,6 +21,17 @@ public final class ParamsValidations implements Cloneable {
 		list.add(v);
 	}
 
+	/**
+	 * Add all validations from another object, after the validations already present.
+	 */
+	public void addAll(ParamsValidations other) {
+		for (Map.Entry<ParamName, ValidationList> entry : other.validationMap.entrySet()) {
+			for (Validation validation : entry.getValue()) {
+				addValidation(entry.getKey(), validation);
+			}
+		}
+	}
+
 	public ValidationList getValidationFor(ParamName name) {
 		if (validationMap.containsKey(name)) {
 			return validationMap.get(name);
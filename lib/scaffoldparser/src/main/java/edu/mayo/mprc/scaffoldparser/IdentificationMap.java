@@ -1,5 +1,6 @@
 package edu.mayo.mprc.scaffoldparser;
 
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -43,6 +44,35 @@ public final class IdentificationMap<T> {
 		}
 	}
 
+	/**
+	 * Loads the map directly from Scaffold .xml export, without building the entire {@link Scaffold} object graph
+	 * first. Use this for large exports.
+	 *
+	 * @param stream        Scaffold .xml export. The stream is not closed.
+	 * @param inputFileName Same as for {@link #loadFromScaffold}.
+	 */
+	public void loadFromScaffoldXml(InputStream stream, final String inputFileName, final IdentificationFactory<T> idFactory) {
+		spectrumMzIndex = new HashMap<Integer, List<T>>();
+		ScaffoldXmlReader.read(stream, new ScaffoldXmlHandler() {
+			@Override
+			public void biologicalSample(BiologicalSample sample) {
+			}
+
+			@Override
+			public void tandemMassSpectrometrySample(TandemMassSpectrometrySample tandemMsSample) {
+			}
+
+			@Override
+			public void proteinGroup(ProteinGroup proteinGroup) {
+			}
+
+			@Override
+			public void spectrumIdentification(SpectrumAnalysisIdentification spectrumAnalysisIdentification, PeptideAnalysisIdentification peptideAnalysisId, ProteinAnalysisIdentification proteinAnalysisId, ProteinGroup proteinGroup) {
+				addNewIdToMap(inputFileName, spectrumAnalysisIdentification, peptideAnalysisId, proteinAnalysisId, proteinGroup, idFactory);
+			}
+		});
+	}
+
 	private void addNewIdToMap(String inputFileName,
 	                           SpectrumAnalysisIdentification spectrumAnalysisIdentification,
 	                           PeptideAnalysisIdentification peptideAnalysisId,
@@ -111,6 +111,10 @@ public final class PeptideAnalysisIdentification {
 		return spectrumAnalysisIdentification;
 	}
 
+	void setSpectrumAnalysisIdentification(SpectrumAnalysisIdentification spectrumAnalysisIdentification) {
+		this.spectrumAnalysisIdentification = spectrumAnalysisIdentification;
+	}
+
 	/**
 	 * Strips the neighboring amino acids from the sequence, e.g. <code>(K)ADFGH(R)</code> becomes
 	 * <code>ADFGH</code>.
@@ -0,0 +1,41 @@
+package edu.mayo.mprc.scaffoldparser;
+
+/**
+ * Receives identification events from {@link ScaffoldXmlReader}.
+ * <p/>
+ * The objects passed to the handler have only their own attributes filled in, the lists of children
+ * (e.g. {@link ProteinGroup#getProteinAnalysisIdentifications()}) are always null. Keep only what you need,
+ * the reader does not hold on to the objects once their element is closed.
+ */
+public interface ScaffoldXmlHandler {
+	/**
+	 * A new biological sample starts. All following events belong to this sample until the next call.
+	 */
+	void biologicalSample(BiologicalSample sample);
+
+	/**
+	 * A new tandem mass spectrometry sample (fraction) of the current biological sample starts.
+	 */
+	void tandemMassSpectrometrySample(TandemMassSpectrometrySample tandemMsSample);
+
+	/**
+	 * A new protein group of the current fraction starts. Its preferred protein annotation, if any,
+	 * is filled in before the first {@link #spectrumIdentification} of the group.
+	 */
+	void proteinGroup(ProteinGroup proteinGroup);
+
+	/**
+	 * A spectrum was matched to a peptide of given protein. A peptide listed under several proteins is reported
+	 * once for each of them, with the same peptide object.
+	 *
+	 * @param spectrumAnalysisIdentification The identified spectrum.
+	 * @param peptideAnalysisId              The peptide including modifications and scores.
+	 * @param proteinAnalysisId              The protein the peptide belongs to.
+	 * @param proteinGroup                   The protein group.
+	 */
+	void spectrumIdentification(
+			SpectrumAnalysisIdentification spectrumAnalysisIdentification,
+			PeptideAnalysisIdentification peptideAnalysisId,
+			ProteinAnalysisIdentification proteinAnalysisId,
+			ProteinGroup proteinGroup);
+}
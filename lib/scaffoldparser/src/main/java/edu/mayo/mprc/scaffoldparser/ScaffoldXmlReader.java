@@ -0,0 +1,234 @@
+package edu.mayo.mprc.scaffoldparser;
+
+import edu.mayo.mprc.MprcException;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Streaming alternative to {@link ScaffoldParser#loadScaffoldXml}. Reads Scaffold .xml export element by element
+ * and reports the identifications to a {@link ScaffoldXmlHandler}, so the whole object graph never has to be in memory.
+ * <p/>
+ * The only things kept for the entire run are maps of spectra and peptides by their XStream id, as the export refers
+ * to spectra and peptides that were already listed (<code>&lt;SpectrumAnalysisIdentification reference="13"/&gt;</code>).
+ * A referenced peptide is reported again for the protein that refers to it. References to any other element
+ * are not supported and fail the read.
+ */
+public final class ScaffoldXmlReader {
+	private static final XMLInputFactory INPUT_FACTORY = XMLInputFactory.newInstance();
+
+	private final ScaffoldXmlHandler handler;
+	private final Map<String, SpectrumAnalysisIdentification> spectraById = new HashMap<String, SpectrumAnalysisIdentification>();
+	private final Map<String, PeptideAnalysisIdentification> peptidesById = new HashMap<String, PeptideAnalysisIdentification>();
+
+	private ProteinGroup proteinGroup;
+	private PreferredProteinAnnotation preferredProteinAnnotation;
+	private ProteinAnalysisIdentification proteinAnalysisId;
+	private PeptideAnalysisIdentification peptideAnalysisId;
+	/**
+	 * XStream id of the current peptide, null if the peptide is a reference to an earlier one.
+	 */
+	private String peptideId;
+	private List<Score> scores;
+
+	private ScaffoldXmlReader(ScaffoldXmlHandler handler) {
+		this.handler = handler;
+	}
+
+	/**
+	 * Read given Scaffold .xml export, reporting the identifications to the handler as they are encountered.
+	 *
+	 * @param stream  Stream with Scaffold .xml export. It is not closed.
+	 * @param handler Handler to receive the identification events.
+	 */
+	public static void read(InputStream stream, ScaffoldXmlHandler handler) {
+		new ScaffoldXmlReader(handler).parse(stream);
+	}
+
+	private void parse(InputStream stream) {
+		XMLStreamReader reader = null;
+		try {
+			synchronized (INPUT_FACTORY) {
+				reader = INPUT_FACTORY.createXMLStreamReader(stream);
+			}
+			while (reader.hasNext()) {
+				final int event = reader.next();
+				if (event == XMLStreamConstants.START_ELEMENT) {
+					startElement(reader);
+				} else if (event == XMLStreamConstants.END_ELEMENT) {
+					endElement(reader.getLocalName());
+				}
+			}
+		} catch (XMLStreamException e) {
+			throw new MprcException("Could not parse Scaffold .xml export", e);
+		} finally {
+			if (reader != null) {
+				try {
+					reader.close();
+				} catch (XMLStreamException ignore) {
+					// SWALLOWED: we are done with the reader
+				}
+			}
+		}
+	}
+
+	private void startElement(XMLStreamReader reader) throws XMLStreamException {
+		final String name = reader.getLocalName();
+		final String reference = attribute(reader, "reference");
+		if (reference != null && !"SpectrumAnalysisIdentification".equals(name) && !"PeptideAnalysisIdentification".equals(name)) {
+			throw new MprcException("Scaffold .xml export refers to an earlier " + name + " (id " + reference + "), this is not supported");
+		}
+		if ("BiologicalSample".equals(name)) {
+			final BiologicalSample sample = new BiologicalSample();
+			sample.setSampleName(attribute(reader, "sampleName"));
+			sample.setCategory(attribute(reader, "category"));
+			sample.setDescription(attribute(reader, "description"));
+			sample.setAnalyzeAsMudPit(Boolean.parseBoolean(attribute(reader, "analyzeAsMudPit")));
+			handler.biologicalSample(sample);
+		} else if ("TandemMassSpectrometrySample".equals(name)) {
+			final TandemMassSpectrometrySample tandemMsSample = new TandemMassSpectrometrySample();
+			tandemMsSample.setFractionName(attribute(reader, "fractionName"));
+			tandemMsSample.setFractionNumber(intAttribute(reader, "fractionNumber"));
+			tandemMsSample.setMassSpecMachineName(attribute(reader, "massSpecMachineName"));
+			handler.tandemMassSpectrometrySample(tandemMsSample);
+		} else if ("ProteinGroup".equals(name)) {
+			proteinGroup = new ProteinGroup();
+			proteinGroup.setMatchProbability(doubleAttribute(reader, "matchProbability"));
+			proteinGroup.setNumberUniqueSpectrumMatches(intAttribute(reader, "numberUniqueSpectrumMatches"));
+			handler.proteinGroup(proteinGroup);
+		} else if ("preferredProteinAnnotation".equals(name)) {
+			preferredProteinAnnotation = new PreferredProteinAnnotation();
+			if (proteinGroup != null) {
+				proteinGroup.setPreferredProteinAnnotation(preferredProteinAnnotation);
+			}
+		} else if (preferredProteinAnnotation != null) {
+			preferredProteinAnnotationElement(reader, name);
+		} else if ("ProteinAnalysisIdentification".equals(name)) {
+			proteinAnalysisId = new ProteinAnalysisIdentification();
+			proteinAnalysisId.setAccessionNumber(attribute(reader, "accessionNumber"));
+			proteinAnalysisId.setProteinName(attribute(reader, "proteinName"));
+			proteinAnalysisId.setMatchProbability(doubleAttribute(reader, "matchProbability"));
+			proteinAnalysisId.setSequenceCoverageFraction(doubleAttribute(reader, "sequenceCoverageFraction"));
+		} else if ("PeptideAnalysisIdentification".equals(name)) {
+			if (reference != null) {
+				peptideAnalysisId = peptidesById.get(reference);
+				if (peptideAnalysisId == null) {
+					throw new MprcException("Scaffold .xml export refers to unknown peptide id " + reference);
+				}
+				peptideId = null;
+				return;
+			}
+			peptideAnalysisId = new PeptideAnalysisIdentification();
+			peptideId = attribute(reader, "id");
+			peptideAnalysisId.setMatchProbability(doubleAttribute(reader, "matchProbability"));
+			peptideAnalysisId.setPrimaryScoreValue(doubleAttribute(reader, "primaryScoreValue"));
+		} else if (peptideAnalysisId != null) {
+			peptideElement(reader, name);
+		}
+	}
+
+	private void preferredProteinAnnotationElement(XMLStreamReader reader, String name) throws XMLStreamException {
+		if ("accessionNumber".equals(name)) {
+			preferredProteinAnnotation.setAccessionNumber(reader.getElementText());
+		} else if ("proteinName".equals(name)) {
+			preferredProteinAnnotation.setProteinName(reader.getElementText());
+		} else if ("nameAdjusted".equals(name)) {
+			preferredProteinAnnotation.setNameAdjusted(reader.getElementText());
+		} else if ("numberAdjusted".equals(name)) {
+			preferredProteinAnnotation.setNumberAdjusted(reader.getElementText());
+		}
+	}
+
+	private void peptideElement(XMLStreamReader reader, String name) throws XMLStreamException {
+		if ("sequence".equals(name)) {
+			peptideAnalysisId.setSequence(reader.getElementText());
+		} else if ("Modification".equals(name)) {
+			final Modification modification = new Modification();
+			modification.setName(attribute(reader, "name"));
+			modification.setLocation(intAttribute(reader, "location"));
+			if (peptideAnalysisId.getModifications() == null) {
+				peptideAnalysisId.setModifications(new ArrayList<Modification>(2));
+			}
+			peptideAnalysisId.getModifications().add(modification);
+		} else if ("X_TandemScore".equals(name)) {
+			scores = new ArrayList<Score>();
+			peptideAnalysisId.setTandemScore(scores);
+		} else if ("MascotScore".equals(name)) {
+			scores = new ArrayList<Score>();
+			peptideAnalysisId.setMascotScore(scores);
+		} else if ("SequestScore".equals(name)) {
+			scores = new ArrayList<Score>();
+			peptideAnalysisId.setSequestScore(scores);
+		} else if ("score".equals(name) && scores != null) {
+			final Score score = new Score();
+			score.setType(attribute(reader, "type"));
+			score.setValue(doubleAttribute(reader, "value"));
+			scores.add(score);
+		} else if ("SpectrumAnalysisIdentification".equals(name)) {
+			peptideAnalysisId.setSpectrumAnalysisIdentification(spectrum(reader));
+		}
+	}
+
+	private SpectrumAnalysisIdentification spectrum(XMLStreamReader reader) {
+		final String reference = attribute(reader, "reference");
+		if (reference != null) {
+			final SpectrumAnalysisIdentification spectrum = spectraById.get(reference);
+			if (spectrum == null) {
+				throw new MprcException("Scaffold .xml export refers to unknown spectrum id " + reference);
+			}
+			return spectrum;
+		}
+		final SpectrumAnalysisIdentification spectrum = new SpectrumAnalysisIdentification();
+		spectrum.setSpectrum(attribute(reader, "spectrum"));
+		spectrum.setAnalysisProgram(attribute(reader, "analysisProgram"));
+		spectrum.setCharge(intAttribute(reader, "charge"));
+		final String id = attribute(reader, "id");
+		if (id != null) {
+			spectraById.put(id, spectrum);
+		}
+		return spectrum;
+	}
+
+	private void endElement(String name) {
+		if ("PeptideAnalysisIdentification".equals(name)) {
+			if (peptideAnalysisId.getSpectrumAnalysisIdentification() != null) {
+				handler.spectrumIdentification(peptideAnalysisId.getSpectrumAnalysisIdentification(), peptideAnalysisId, proteinAnalysisId, proteinGroup);
+			}
+			if (peptideId != null) {
+				peptidesById.put(peptideId, peptideAnalysisId);
+			}
+			peptideAnalysisId = null;
+			peptideId = null;
+			scores = null;
+		} else if ("X_TandemScore".equals(name) || "MascotScore".equals(name) || "SequestScore".equals(name)) {
+			scores = null;
+		} else if ("ProteinAnalysisIdentification".equals(name)) {
+			proteinAnalysisId = null;
+		} else if ("preferredProteinAnnotation".equals(name)) {
+			preferredProteinAnnotation = null;
+		} else if ("ProteinGroup".equals(name)) {
+			proteinGroup = null;
+		}
+	}
+
+	private static String attribute(XMLStreamReader reader, String name) {
+		return reader.getAttributeValue(null, name);
+	}
+
+	private static int intAttribute(XMLStreamReader reader, String name) {
+		final String value = attribute(reader, name);
+		return value == null ? 0 : Integer.parseInt(value.trim());
+	}
+
+	private static double doubleAttribute(XMLStreamReader reader, String name) {
+		final String value = attribute(reader, name);
+		return value == null ? 0.0 : Double.parseDouble(value.trim());
+	}
+}
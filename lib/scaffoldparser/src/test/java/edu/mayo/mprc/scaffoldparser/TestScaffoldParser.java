@@ -1,5 +1,6 @@
 package edu.mayo.mprc.scaffoldparser;
 
+import edu.mayo.mprc.MprcException;
 import edu.mayo.mprc.utilities.FileUtilities;
 import edu.mayo.mprc.utilities.ResourceUtilities;
 import edu.mayo.mprc.utilities.TestingUtilities;
@@ -7,9 +8,12 @@ import org.testng.Assert;
 import org.testng.annotations.Test;
 import org.xml.sax.SAXException;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 
 public final class TestScaffoldParser {
 	private static final org.apache.log4j.Logger LOGGER = org.apache.log4j.Logger.getLogger(TestScaffoldParser.class);
@@ -58,6 +62,87 @@ public final class TestScaffoldParser {
 		}
 	}
 
+	/**
+	 * The streaming reader must produce the same identifications as walking the XStream object graph.
+	 */
+	@Test
+	public void testStreamingReader() throws IOException {
+		final IdentificationFactory<String> factory = new IdentificationFactory<String>() {
+			@Override
+			public String createIdentification(SpectrumAnalysisIdentification spectrumAnalysisIdentification, PeptideAnalysisIdentification peptideAnalysisId, ProteinAnalysisIdentification proteinAnalysisId, ProteinGroup proteinGroup) {
+				return spectrumAnalysisIdentification.getSpectrum() + " " + spectrumAnalysisIdentification.getCharge()
+						+ " " + peptideAnalysisId.getSequence() + " " + peptideAnalysisId.getModifications().size()
+						+ " " + peptideAnalysisId.getTandemScore().get(0).getValue()
+						+ " " + proteinAnalysisId.getAccessionNumber()
+						+ " " + proteinGroup.getPreferredProteinAnnotation().getAccessionNumber();
+			}
+		};
+
+		final IdentificationMap<String> expected = new IdentificationMap<String>();
+		expected.loadFromScaffold(ScaffoldParser.loadScaffoldXml(ResourceUtilities.getStream("classpath:test.xml", TestScaffoldParser.class)), null, factory);
+
+		final IdentificationMap<String> streamed = new IdentificationMap<String>();
+		final InputStream stream = ResourceUtilities.getStream("classpath:test.xml", TestScaffoldParser.class);
+		try {
+			streamed.loadFromScaffoldXml(stream, null, factory);
+		} finally {
+			FileUtilities.closeQuietly(stream);
+		}
+
+		Assert.assertEquals(streamed.getNumIds(), 48);
+		Assert.assertEquals(streamed.getNumIds(), expected.getNumIds());
+		Assert.assertEquals(streamed.getSpectrumMzIndex(), expected.getSpectrumMzIndex());
+	}
+
+	/**
+	 * Peptide 63 is a copy of peptide 15 listed under another protein, XStream may write it as a reference.
+	 */
+	@Test
+	public void testStreamingReaderPeptideReference() throws IOException {
+		final IdentificationFactory<String> factory = new IdentificationFactory<String>() {
+			@Override
+			public String createIdentification(SpectrumAnalysisIdentification spectrumAnalysisIdentification, PeptideAnalysisIdentification peptideAnalysisId, ProteinAnalysisIdentification proteinAnalysisId, ProteinGroup proteinGroup) {
+				return spectrumAnalysisIdentification.getSpectrum() + " " + peptideAnalysisId.getSequence()
+						+ " " + peptideAnalysisId.getPrimaryScoreValue() + " " + proteinAnalysisId.getAccessionNumber();
+			}
+		};
+		final String xml = readTestXml();
+		final String referenced = xml.replaceFirst(
+				"(?s)<PeptideAnalysisIdentification id=\"63\".*?</PeptideAnalysisIdentification>",
+				"<PeptideAnalysisIdentification reference=\"15\"/>");
+		Assert.assertFalse(referenced.equals(xml));
+
+		final IdentificationMap<String> expected = new IdentificationMap<String>();
+		expected.loadFromScaffoldXml(new ByteArrayInputStream(xml.getBytes("UTF-8")), null, factory);
+		final IdentificationMap<String> streamed = new IdentificationMap<String>();
+		streamed.loadFromScaffoldXml(new ByteArrayInputStream(referenced.getBytes("UTF-8")), null, factory);
+
+		Assert.assertEquals(streamed.getNumIds(), 48);
+		Assert.assertEquals(streamed.getSpectrumMzIndex(), expected.getSpectrumMzIndex());
+	}
+
+	@Test(expectedExceptions = MprcException.class)
+	public void testStreamingReaderUnsupportedReference() throws IOException {
+		final String referenced = readTestXml().replaceFirst(
+				"(?s)<ProteinAnalysisIdentification id=\"57\".*?</ProteinAnalysisIdentification>",
+				"<ProteinAnalysisIdentification reference=\"8\"/>");
+		new IdentificationMap<String>().loadFromScaffoldXml(new ByteArrayInputStream(referenced.getBytes("UTF-8")), null, new IdentificationFactory<String>() {
+			@Override
+			public String createIdentification(SpectrumAnalysisIdentification spectrumAnalysisIdentification, PeptideAnalysisIdentification peptideAnalysisId, ProteinAnalysisIdentification proteinAnalysisId, ProteinGroup proteinGroup) {
+				return "";
+			}
+		});
+	}
+
+	private static String readTestXml() throws IOException {
+		final InputStream stream = ResourceUtilities.getStream("classpath:test.xml", TestScaffoldParser.class);
+		try {
+			return FileUtilities.readIntoString(new InputStreamReader(stream, "UTF-8"), Long.MAX_VALUE);
+		} finally {
+			FileUtilities.closeQuietly(stream);
+		}
+	}
+
 	@Test
 	public void testSequenceStripping() {
 		Assert.assertEquals("GDDITMVLILPKPEK", PeptideAnalysisIdentification.stripNeighborAminoAcids("(K)GDDITMVLILPKPEK(S)"), "The end amino acids are not stripped properly");
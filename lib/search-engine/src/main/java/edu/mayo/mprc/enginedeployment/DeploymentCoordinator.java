@@ -0,0 +1,215 @@
+package edu.mayo.mprc.enginedeployment;
+
+import edu.mayo.mprc.MprcException;
+import edu.mayo.mprc.fasta.DBInputStream;
+import edu.mayo.mprc.fasta.FASTAInputStream;
+import edu.mayo.mprc.fasta.MappedFASTAInputStream;
+import edu.mayo.mprc.fasta.FastaFingerprint;
+import edu.mayo.mprc.utilities.FileUtilities;
+import org.apache.log4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Coordinates the database deployers of all search engines running within one JVM.
+ * <p/>
+ * When a new database is curated, each engine gets its own deployment request and the requests run in parallel.
+ * The coordinator makes sure that:
+ * <ul>
+ * <li>the deployers that need the contents of the curated FASTA file, asking for it at the same time, read and
+ * validate it only once and share the resulting {@link PreparedDatabase}. Nothing is kept in memory afterwards,
+ * a fingerprint stored next to a previous deployment is loaded instead of reading the file again.</li>
+ * <li>at most {@link #getMaxConcurrentDeployments()} engine indexers run at the same time, so they do not overload
+ * the node. Deployers that do not index never wait for a slot.</li>
+ * </ul>
+ */
+public final class DeploymentCoordinator {
+	private static final Logger LOGGER = Logger.getLogger(DeploymentCoordinator.class);
+
+	private static final DeploymentCoordinator INSTANCE = new DeploymentCoordinator(Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+
+	/**
+	 * Preparations in progress, keyed by absolute path of the FASTA file.
+	 */
+	private final Map<String, FutureTask<PreparedDatabase>> preparations = new HashMap<String, FutureTask<PreparedDatabase>>();
+
+	private final Object deploymentLock = new Object();
+	private int maxConcurrentDeployments;
+	private int runningDeployments;
+
+	DeploymentCoordinator(int maxConcurrentDeployments) {
+		this.maxConcurrentDeployments = maxConcurrentDeployments;
+	}
+
+	/**
+	 * @return The coordinator shared by all deployers in this JVM.
+	 */
+	public static DeploymentCoordinator getInstance() {
+		return INSTANCE;
+	}
+
+	public int getMaxConcurrentDeployments() {
+		synchronized (deploymentLock) {
+			return maxConcurrentDeployments;
+		}
+	}
+
+	/**
+	 * @param maxConcurrentDeployments How many deployments can run on this node at the same time.
+	 */
+	public void setMaxConcurrentDeployments(int maxConcurrentDeployments) {
+		if (maxConcurrentDeployments < 1) {
+			throw new MprcException("At least one concurrent deployment must be allowed, got " + maxConcurrentDeployments);
+		}
+		synchronized (deploymentLock) {
+			this.maxConcurrentDeployments = maxConcurrentDeployments;
+			deploymentLock.notifyAll();
+		}
+	}
+
+	/**
+	 * Reads and validates given curated database.
+	 * If several deployers ask for the same file at once, only one of them does the work, the others wait for it.
+	 *
+	 * @param fastaFile       Curated FASTA file.
+	 * @param fingerprintFile Fingerprint saved by a previous deployment of the file, can be null. If it is not older than
+	 *                        the FASTA file, it is loaded instead of reading the database.
+	 * @return Database prepared for deployment.
+	 */
+	public PreparedDatabase prepare(final File fastaFile, final File fingerprintFile) {
+		if (fingerprintFile != null && fingerprintFile.isFile() && fingerprintFile.lastModified() >= fastaFile.lastModified()) {
+			try {
+				// Only valid databases get deployed and fingerprinted
+				return new PreparedDatabase(fastaFile, FastaFingerprint.load(fingerprintFile), null);
+			} catch (MprcException e) {
+				// SWALLOWED: the database is read again
+				LOGGER.warn("Cannot use stored fingerprint: " + MprcException.getDetailedMessage(e));
+			}
+		}
+
+		final String key = fastaFile.getAbsolutePath();
+		FutureTask<PreparedDatabase> preparation;
+		synchronized (preparations) {
+			preparation = preparations.get(key);
+			if (preparation == null) {
+				preparation = new FutureTask<PreparedDatabase>(new Callable<PreparedDatabase>() {
+					public PreparedDatabase call() {
+						return readDatabase(fastaFile);
+					}
+				});
+				preparations.put(key, preparation);
+			}
+		}
+
+		// Only the first caller actually runs the preparation, the rest blocks in get()
+		preparation.run();
+		try {
+			return preparation.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new MprcException("Interrupted while preparing database " + key, e);
+		} catch (ExecutionException e) {
+			throw new MprcException("Could not prepare database " + key, e.getCause());
+		} finally {
+			synchronized (preparations) {
+				if (preparations.get(key) == preparation) {
+					preparations.remove(key);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Blocks until an indexing slot becomes available. Every successful call must be matched by
+	 * {@link #finishDeployment()}.
+	 */
+	public void startDeployment() throws InterruptedException {
+		synchronized (deploymentLock) {
+			while (runningDeployments >= maxConcurrentDeployments) {
+				deploymentLock.wait();
+			}
+			runningDeployments++;
+		}
+	}
+
+	/**
+	 * Frees an indexing slot obtained by {@link #startDeployment()}.
+	 */
+	public void finishDeployment() {
+		synchronized (deploymentLock) {
+			runningDeployments--;
+			deploymentLock.notifyAll();
+		}
+	}
+
+	/**
+	 * Single pass over the database that both validates and fingerprints it.
+	 */
+	private static PreparedDatabase readDatabase(File fastaFile) {
+		LOGGER.info("Preparing database " + fastaFile.getAbsolutePath() + " for deployment");
+		ValidatingInputStream in = null;
+		try {
+			in = new ValidatingInputStream(new MappedFASTAInputStream(fastaFile));
+			final FastaFingerprint fingerprint = FastaFingerprint.compute(in);
+			String validationError = in.getValidationError();
+			if (validationError == null && fingerprint.getSequenceCount() == 0) {
+				validationError = "The database " + fastaFile.getAbsolutePath() + " contains no sequences";
+			}
+			return new PreparedDatabase(fastaFile, fingerprint, validationError);
+		} catch (IOException e) {
+			throw new MprcException("Could not read database " + fastaFile.getAbsolutePath(), e);
+		} finally {
+			FileUtilities.closeQuietly(in);
+		}
+	}
+
+	/**
+	 * Checks the headers of the sequences as they are read, the same way {@link FASTAInputStream#isFASTAFileValid} does.
+	 */
+	private static final class ValidatingInputStream implements DBInputStream {
+		private final DBInputStream stream;
+		private String validationError;
+
+		private ValidatingInputStream(DBInputStream stream) {
+			this.stream = stream;
+		}
+
+		public void beforeFirst() {
+			validationError = null;
+			stream.beforeFirst();
+		}
+
+		public boolean gotoNextSequence() {
+			final boolean hasNext = stream.gotoNextSequence();
+			if (hasNext && validationError == null) {
+				final String header = stream.getHeader();
+				if (!FASTAInputStream.isValidHeader(header)) {
+					validationError = "Invalid FASTA header: " + header;
+				}
+			}
+			return hasNext;
+		}
+
+		public String getHeader() {
+			return stream.getHeader();
+		}
+
+		public String getSequence() {
+			return stream.getSequence();
+		}
+
+		public void close() {
+			stream.close();
+		}
+
+		public String getValidationError() {
+			return validationError;
+		}
+	}
+}
@@ -5,10 +5,13 @@ import edu.mayo.mprc.daemon.WorkPacket;
 import edu.mayo.mprc.daemon.Worker;
 import edu.mayo.mprc.daemon.exception.DaemonException;
 import edu.mayo.mprc.daemon.progress.ProgressReporter;
+import edu.mayo.mprc.fasta.FastaFingerprint;
 import edu.mayo.mprc.utilities.FileUtilities;
+import edu.mayo.mprc.utilities.ProcessCaller;
 import org.apache.log4j.Logger;
 
 import java.io.File;
+import java.io.FileFilter;
 import java.util.*;
 
 /**
@@ -28,6 +31,9 @@ public abstract class DeploymentService<T extends DeploymentResult> implements W
 	 * <p/>
 	 * This method takes special care of requests that are already being processed. These are bundled with the current
 	 * execution, so when the deployment finishes, all waiting processes are terminated at once.
+	 * <p/>
+	 * Deployments are coordinated with the deployers of other engines through {@link DeploymentCoordinator}, so only
+	 * a limited amount of deployments runs at the same time.
 	 *
 	 * @param workPacket       - deployment request to process
 	 * @param progressReporter - to report progress
@@ -84,7 +90,12 @@ public abstract class DeploymentService<T extends DeploymentResult> implements W
 		} catch (Exception t) {
 			// SWALLOWED: We never throw an exception, instead we report it
 			if (request != null) {
-				reportCoDeploymentFailure(request, t);
+				if (Thread.currentThread().isInterrupted()) {
+					// The interrupt stays set, the deployment was stopped rather than failed on its own
+					reportCoDeploymentFailure(request, new MprcException("Deployment of " + request.getShortName() + " was interrupted", t));
+				} else {
+					reportCoDeploymentFailure(request, t);
+				}
 			}
 		}
 	}
@@ -203,6 +214,102 @@ public abstract class DeploymentService<T extends DeploymentResult> implements W
 		}
 	}
 
+	/**
+	 * Validates given FASTA file and returns its fingerprint. Deployers call this only when they are about to index the
+	 * database. The file is read once for all deployers asking at the same time, see {@link DeploymentCoordinator}.
+	 * The fingerprint stored by {@link #recordFingerprint} is reused as long as the FASTA file does not change.
+	 *
+	 * @param fastaFile     FASTA file to fingerprint.
+	 * @param deployedFasta Where the FASTA file is deployed.
+	 * @return Fingerprint of the file contents.
+	 */
+	protected FastaFingerprint getFingerprint(File fastaFile, File deployedFasta) {
+		final PreparedDatabase database = DeploymentCoordinator.getInstance().prepare(fastaFile, FastaFingerprint.getFingerprintFile(deployedFasta));
+		if (!database.isValid()) {
+			throw new MprcException(database.getValidationError());
+		}
+		return database.getFingerprint();
+	}
+
+	/**
+	 * Runs the indexer of a database. Waits for a free slot first, so the indexers of all engines together do not
+	 * overload the node, see {@link DeploymentCoordinator#startDeployment()}.
+	 *
+	 * @param indexer Indexer to run.
+	 */
+	protected static void runIndexer(ProcessCaller indexer) {
+		try {
+			DeploymentCoordinator.getInstance().startDeployment();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new MprcException("Interrupted while waiting to index the database", e);
+		}
+		try {
+			indexer.run();
+		} finally {
+			DeploymentCoordinator.getInstance().finishDeployment();
+		}
+	}
+
+	/**
+	 * Stores the fingerprint next to a successfully deployed FASTA file, so other deployments of the same
+	 * content can find it using {@link #findIdenticalDeployment}.
+	 *
+	 * @param deployedFasta The deployed FASTA file.
+	 * @param fingerprint   Fingerprint of the deployed file.
+	 */
+	protected void recordFingerprint(File deployedFasta, FastaFingerprint fingerprint) {
+		fingerprint.save(FastaFingerprint.getFingerprintFile(deployedFasta));
+	}
+
+	/**
+	 * Looks through the databases already deployed in the {@link #getDeployableDbFolder()} for one with identical contents
+	 * to the one we are about to deploy. The deployers are expected to keep each database in its own subfolder.
+	 *
+	 * @param deployedFasta Where the database we are deploying is going to be (this one is never reported as a match).
+	 * @param fingerprint   Fingerprint of the database being deployed.
+	 * @return Deployed FASTA file with the same contents, or null if there is none.
+	 */
+	protected File findIdenticalDeployment(File deployedFasta, FastaFingerprint fingerprint) {
+		final File deployableDbFolder = getDeployableDbFolder();
+		if (deployableDbFolder == null || !deployableDbFolder.isDirectory()) {
+			return null;
+		}
+		final File ownFingerprint = FastaFingerprint.getFingerprintFile(deployedFasta).getAbsoluteFile();
+		final File[] folders = deployableDbFolder.listFiles(new FileFilter() {
+			public boolean accept(File pathname) {
+				return pathname.isDirectory();
+			}
+		});
+		if (folders == null) {
+			return null;
+		}
+		for (File folder : folders) {
+			final File[] fingerprints = folder.listFiles(new FileFilter() {
+				public boolean accept(File pathname) {
+					return pathname.getName().endsWith(FastaFingerprint.EXTENSION) && pathname.isFile();
+				}
+			});
+			if (fingerprints == null) {
+				continue;
+			}
+			for (File fingerprintFile : fingerprints) {
+				if (fingerprintFile.getAbsoluteFile().equals(ownFingerprint)) {
+					continue;
+				}
+				if (fingerprint.getDigest().equals(FastaFingerprint.loadDigest(fingerprintFile))) {
+					final String name = fingerprintFile.getName();
+					final File fasta = new File(folder, name.substring(0, name.length() - FastaFingerprint.EXTENSION.length()));
+					if (fasta.exists()) {
+						LOGGER.info("Database " + deployedFasta.getName() + " is identical to already deployed " + fasta.getAbsolutePath());
+						return fasta;
+					}
+				}
+			}
+		}
+		return null;
+	}
+
 	/**
 	 * Cleans up deployment files that are related to the give deployed file.
 	 *
@@ -0,0 +1,43 @@
+package edu.mayo.mprc.enginedeployment;
+
+import edu.mayo.mprc.fasta.FastaFingerprint;
+
+import java.io.File;
+
+/**
+ * A curated FASTA database that was read and validated once on behalf of all deployers running on this node.
+ * Obtained from {@link DeploymentCoordinator#prepare(java.io.File, java.io.File)}.
+ */
+public final class PreparedDatabase {
+	private final File fastaFile;
+	private final FastaFingerprint fingerprint;
+	private final String validationError;
+
+	PreparedDatabase(File fastaFile, FastaFingerprint fingerprint, String validationError) {
+		this.fastaFile = fastaFile;
+		this.fingerprint = fingerprint;
+		this.validationError = validationError;
+	}
+
+	public File getFastaFile() {
+		return fastaFile;
+	}
+
+	public FastaFingerprint getFingerprint() {
+		return fingerprint;
+	}
+
+	/**
+	 * @return True if the database is a valid FASTA file with at least one sequence.
+	 */
+	public boolean isValid() {
+		return validationError == null;
+	}
+
+	/**
+	 * @return Description of why the database is not valid, null if it is valid.
+	 */
+	public String getValidationError() {
+		return validationError;
+	}
+}
@@ -0,0 +1,87 @@
+package edu.mayo.mprc.enginedeployment;
+
+import edu.mayo.mprc.fasta.FastaFingerprint;
+import edu.mayo.mprc.utilities.FileUtilities;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public final class DeploymentCoordinatorTest {
+
+	@Test
+	public void shouldReuseStoredFingerprint() throws IOException {
+		final File fasta = File.createTempFile("coordinator", ".fasta");
+		FileUtilities.writeStringToFile(fasta, ">P1 first\nMKLVAAG\n>P2 second\nPEPTIDE\n", true);
+		final File fingerprintFile = FastaFingerprint.getFingerprintFile(fasta);
+
+		final DeploymentCoordinator coordinator = new DeploymentCoordinator(1);
+		final PreparedDatabase first = coordinator.prepare(fasta, fingerprintFile);
+		Assert.assertTrue(first.isValid(), first.getValidationError());
+		Assert.assertEquals(first.getFingerprint().getSequenceCount(), 2);
+		first.getFingerprint().save(fingerprintFile);
+
+		// Same timestamp, different contents - the stored fingerprint proves the file was not read again
+		final long lastModified = fasta.lastModified();
+		FileUtilities.writeStringToFile(fasta, ">P1 first\nMKLVAAG\n", true);
+		Assert.assertTrue(fasta.setLastModified(lastModified));
+		Assert.assertTrue(fingerprintFile.setLastModified(lastModified));
+		Assert.assertEquals(coordinator.prepare(fasta, fingerprintFile).getFingerprint(), first.getFingerprint());
+
+		// Changed file is read again
+		Assert.assertTrue(fasta.setLastModified(lastModified + 10000));
+		Assert.assertEquals(coordinator.prepare(fasta, fingerprintFile).getFingerprint().getSequenceCount(), 1);
+
+		FileUtilities.cleanupTempFile(fingerprintFile);
+		FileUtilities.cleanupTempFile(fasta);
+	}
+
+	@Test
+	public void shouldRejectInvalidDatabase() throws IOException {
+		final File fasta = File.createTempFile("coordinator", ".fasta");
+		FileUtilities.writeStringToFile(fasta, "MKLVAAG\n>P2 second\nPEPTIDE\n", true);
+
+		final PreparedDatabase database = new DeploymentCoordinator(1).prepare(fasta, null);
+		Assert.assertFalse(database.isValid());
+
+		FileUtilities.cleanupTempFile(fasta);
+	}
+
+	@Test
+	public void shouldLimitConcurrentDeployments() throws InterruptedException {
+		final DeploymentCoordinator coordinator = new DeploymentCoordinator(2);
+		final AtomicInteger running = new AtomicInteger(0);
+		final AtomicInteger maxRunning = new AtomicInteger(0);
+
+		final Thread[] threads = new Thread[6];
+		for (int i = 0; i < threads.length; i++) {
+			threads[i] = new Thread(new Runnable() {
+				public void run() {
+					try {
+						coordinator.startDeployment();
+						try {
+							final int now = running.incrementAndGet();
+							synchronized (maxRunning) {
+								maxRunning.set(Math.max(maxRunning.get(), now));
+							}
+							Thread.sleep(20);
+							running.decrementAndGet();
+						} finally {
+							coordinator.finishDeployment();
+						}
+					} catch (InterruptedException ignore) {
+						// SWALLOWED: test thread ends
+					}
+				}
+			});
+			threads[i].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		Assert.assertTrue(maxRunning.get() <= 2, "At most two deployments can run at once, got " + maxRunning.get());
+	}
+}
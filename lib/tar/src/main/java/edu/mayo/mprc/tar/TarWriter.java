@@ -94,13 +94,24 @@ public final class TarWriter {
 		if (isTarClosed()) {
 			this.rolloverContents();
 		}
+		addEntry(outputStream, file, this.tarFile.getAbsolutePath());
+	}
+
+	/**
+	 * Writes a file as an entry named after the file to a tar stream that stays open.
+	 *
+	 * @param outputStream Tar stream to write to.
+	 * @param file         File to add.
+	 * @param tarName      Name of the tar for error messages.
+	 */
+	public static void addEntry(TarOutputStream outputStream, File file, String tarName) {
 		String name = file.getName();
 		TarEntry t = new TarEntry(file);
 		t.setName(name);
 		try {
 			outputStream.putNextEntry(t);
 		} catch (IOException e) {
-			throw new MprcException("failed adding tar entry for file=" + name + "to tar file=" + this.tarFile.getAbsolutePath(), e);
+			throw new MprcException("failed adding tar entry for file=" + name + "to tar file=" + tarName, e);
 		}
 		BufferedInputStream bis = null;
 
@@ -124,12 +135,12 @@ public final class TarWriter {
 					try {
 						outputStream.flush();
 					} catch (IOException e) {
-						throw new MprcException("could not flush stream to tar file=" + this.tarFile.getAbsolutePath(), e);
+						throw new MprcException("could not flush stream to tar file=" + tarName, e);
 					}
 					try {
 						outputStream.closeEntry();
 					} catch (IOException e) {
-						throw new MprcException("could not close the stream to tar file=" + this.tarFile.getAbsolutePath(), e);
+						throw new MprcException("could not close the stream to tar file=" + tarName, e);
 					}
 					return;
 				}
@@ -22,9 +22,10 @@ public class IndexedModSet implements Set<Mod> {
 	 */
 	private Map<String, Mod> titleIndex = new HashMap<String, Mod>();
 	/**
-	 * A sorted map of the Delta's sorted by Monoisotopic mass.  This will allow a fast searching of mods in a given mass range.
+	 * Specificities bucketed by position and sorted by monoisotopic mass, for fast searching of mods in a given mass range.
+	 * Built on first use, dropped when a modification is added.
 	 */
-	private TreeMap<Double, List<Mod>> deltaMonoMassIndex = new TreeMap<Double, List<Mod>>();
+	private volatile ModSpecificityMassIndex massIndex;
 
 	public IndexedModSet() {
 
@@ -43,12 +44,16 @@ public class IndexedModSet implements Set<Mod> {
 			}
 		}
 
-		List<Mod> massList = this.deltaMonoMassIndex.get(m.getMassMono());
-		if (massList == null) {
-			massList = new LinkedList<Mod>();
+		massIndex = null;
+	}
+
+	private ModSpecificityMassIndex getMassIndex() {
+		ModSpecificityMassIndex index = massIndex;
+		if (index == null) {
+			index = new ModSpecificityMassIndex(modifications);
+			massIndex = index;
 		}
-		massList.add(m);
-		deltaMonoMassIndex.put(m.getMassMono(), massList);
+		return index;
 	}
 
 	/**
@@ -178,44 +183,24 @@ public class IndexedModSet implements Set<Mod> {
 	 * @return a set of modifications that match the given parameters
 	 */
 	public Set<ModSpecificity> findMatchingModSpecificities(Double minMass, Double maxMass, Character site, Terminus terminus, Boolean proteinOnly, Boolean hidden) {
-		Collection<List<Mod>> inRange = null;
-		if (minMass != null && maxMass != null) {
-			inRange = deltaMonoMassIndex.subMap(minMass, maxMass).values();
-		} else {
-			inRange = deltaMonoMassIndex.values();
-		}
-
-		Set<ModSpecificity> modsInMassRange = collectModSpecificities(inRange);
-
-		Set<ModSpecificity> matchingModSpecificities = new HashSet<ModSpecificity>();
-		for (ModSpecificity sp : modsInMassRange) {
-			if (site != null && !sp.getSite().equals(site)) {
-				continue;
-			}
-			if (terminus != null && !sp.getTerm().equals(terminus)) {
-				continue;
-			}
-			if (proteinOnly != null && !proteinOnly.equals(sp.isProteinOnly())) {
-				continue;
-			}
-			if (hidden != null && !hidden.equals(sp.getHidden())) {
-				continue;
-			}
-			matchingModSpecificities.add(sp);
-		}
-		return matchingModSpecificities;
+		return getMassIndex().find(minMass, maxMass, site, terminus, proteinOnly, hidden);
 	}
 
-	private static Set<ModSpecificity> collectModSpecificities(Collection<List<Mod>> inRange) {
-		Set<ModSpecificity> modsInMassRange = new HashSet<ModSpecificity>();
-		for (List<Mod> l : inRange) {
-			for (Mod m : l) {
-				for (ModSpecificity ms : m.getModSpecificities()) {
-					modsInMassRange.add(ms);
-				}
-			}
-		}
-		return modsInMassRange;
+	/**
+	 * Annotates many mass deltas at once, for instance all the deltas observed at one site in a search result.
+	 * Much faster than calling {@link #findMatchingModSpecificities(Double, Double, Character, Terminus, Boolean, Boolean)}
+	 * for each delta. Requirement set to null is not considered.
+	 *
+	 * @param deltas      the mass deltas to annotate
+	 * @param tolerance   a modification matches a delta if its monoisotopic mass is within <code>delta &plusmn; tolerance</code>
+	 * @param site        the specificity site
+	 * @param terminus    the specificity terminus
+	 * @param proteinOnly if terminus is set, specify if it has to be protein terminus
+	 * @param hidden      whether the modification is hidden or not
+	 * @return for each delta, the set of matching specificities. The sets for deltas with no match are empty and immutable.
+	 */
+	public List<Set<ModSpecificity>> findMatchingModSpecificities(double[] deltas, double tolerance, Character site, Terminus terminus, Boolean proteinOnly, Boolean hidden) {
+		return getMassIndex().find(deltas, tolerance, site, terminus, proteinOnly, hidden);
 	}
 
 	/**
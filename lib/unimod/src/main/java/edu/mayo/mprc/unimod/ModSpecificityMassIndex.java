@@ -0,0 +1,203 @@
+package edu.mayo.mprc.unimod;
+
+import com.google.common.base.Objects;
+
+import java.util.*;
+
+/**
+ * Immutable index of modification specificities for mass lookups.
+ * <p/>
+ * The specificities are split into buckets by their position - site, terminus and protein-only flag. Each bucket keeps
+ * the monoisotopic masses in a sorted array, so a mass query is a binary search over only the specificities
+ * that can occur at the requested position.
+ */
+final class ModSpecificityMassIndex {
+	private final List<Bucket> allBuckets;
+	private final Map<Character, List<Bucket>> bucketsBySite;
+
+	ModSpecificityMassIndex(Collection<Mod> mods) {
+		final Map<Position, List<ModSpecificity>> grouped = new HashMap<Position, List<ModSpecificity>>();
+		for (Mod mod : mods) {
+			if (mod.getMassMono() == null || mod.getModSpecificities() == null) {
+				continue;
+			}
+			for (ModSpecificity specificity : mod.getModSpecificities()) {
+				final Position position = new Position(specificity.getSite(), specificity.getTerm(), specificity.isProteinOnly());
+				List<ModSpecificity> list = grouped.get(position);
+				if (list == null) {
+					list = new ArrayList<ModSpecificity>();
+					grouped.put(position, list);
+				}
+				list.add(specificity);
+			}
+		}
+
+		allBuckets = new ArrayList<Bucket>(grouped.size());
+		bucketsBySite = new HashMap<Character, List<Bucket>>();
+		for (Map.Entry<Position, List<ModSpecificity>> entry : grouped.entrySet()) {
+			final Bucket bucket = new Bucket(entry.getKey(), entry.getValue());
+			allBuckets.add(bucket);
+			List<Bucket> siteBuckets = bucketsBySite.get(entry.getKey().site);
+			if (siteBuckets == null) {
+				siteBuckets = new ArrayList<Bucket>(2);
+				bucketsBySite.put(entry.getKey().site, siteBuckets);
+			}
+			siteBuckets.add(bucket);
+		}
+	}
+
+	/**
+	 * Same as {@link IndexedModSet#findMatchingModSpecificities(Double, Double, Character, Terminus, Boolean, Boolean)}.
+	 * The mass range is <code>[minMass, maxMass)</code>.
+	 */
+	public Set<ModSpecificity> find(Double minMass, Double maxMass, Character site, Terminus terminus, Boolean proteinOnly, Boolean hidden) {
+		final boolean massLimited = minMass != null && maxMass != null;
+		final Set<ModSpecificity> result = new HashSet<ModSpecificity>();
+		for (Bucket bucket : getBuckets(site, terminus, proteinOnly)) {
+			final double[] masses = bucket.masses;
+			int i = massLimited ? lowerBound(masses, minMass) : 0;
+			for (; i < masses.length && (!massLimited || masses[i] < maxMass); i++) {
+				addIfVisible(result, bucket.specificities[i], hidden);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Finds the specificities for many mass deltas at once. The buckets for the position are looked up only once,
+	 * and no set is allocated for deltas without a match.
+	 *
+	 * @param deltas    Mass deltas to annotate.
+	 * @param tolerance A specificity matches a delta if its mass is within <code>[delta-tolerance, delta+tolerance]</code>.
+	 * @return For each delta, a set of matching specificities. An empty immutable set if there are none.
+	 */
+	public List<Set<ModSpecificity>> find(double[] deltas, double tolerance, Character site, Terminus terminus, Boolean proteinOnly, Boolean hidden) {
+		final List<Bucket> buckets = getBuckets(site, terminus, proteinOnly);
+		final List<Set<ModSpecificity>> result = new ArrayList<Set<ModSpecificity>>(deltas.length);
+		for (final double delta : deltas) {
+			final double max = delta + tolerance;
+			Set<ModSpecificity> matches = Collections.emptySet();
+			for (Bucket bucket : buckets) {
+				final double[] masses = bucket.masses;
+				for (int i = lowerBound(masses, delta - tolerance); i < masses.length && masses[i] <= max; i++) {
+					final ModSpecificity specificity = bucket.specificities[i];
+					if (hidden != null && !hidden.equals(specificity.getHidden())) {
+						continue;
+					}
+					if (matches.isEmpty()) {
+						matches = new HashSet<ModSpecificity>(4);
+					}
+					matches.add(specificity);
+				}
+			}
+			result.add(matches);
+		}
+		return result;
+	}
+
+	private List<Bucket> getBuckets(Character site, Terminus terminus, Boolean proteinOnly) {
+		final List<Bucket> candidates;
+		if (site == null) {
+			candidates = allBuckets;
+		} else {
+			candidates = bucketsBySite.get(site);
+			if (candidates == null) {
+				return Collections.emptyList();
+			}
+		}
+		if (terminus == null && proteinOnly == null) {
+			return candidates;
+		}
+		final List<Bucket> result = new ArrayList<Bucket>(candidates.size());
+		for (Bucket bucket : candidates) {
+			if (bucket.position.matches(terminus, proteinOnly)) {
+				result.add(bucket);
+			}
+		}
+		return result;
+	}
+
+	private static void addIfVisible(Set<ModSpecificity> result, ModSpecificity specificity, Boolean hidden) {
+		if (hidden == null || hidden.equals(specificity.getHidden())) {
+			result.add(specificity);
+		}
+	}
+
+	/**
+	 * @return Index of the first mass that is not smaller than <code>value</code>.
+	 */
+	private static int lowerBound(double[] masses, double value) {
+		int low = 0;
+		int high = masses.length;
+		while (low < high) {
+			final int mid = (low + high) >>> 1;
+			if (masses[mid] < value) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Where in a peptide a specificity can occur.
+	 */
+	private static final class Position {
+		private final Character site;
+		private final Terminus terminus;
+		private final Boolean proteinOnly;
+
+		private Position(Character site, Terminus terminus, Boolean proteinOnly) {
+			this.site = site;
+			this.terminus = terminus;
+			this.proteinOnly = proteinOnly;
+		}
+
+		public boolean matches(Terminus terminus, Boolean proteinOnly) {
+			return (terminus == null || terminus.equals(this.terminus))
+					&& (proteinOnly == null || proteinOnly.equals(this.proteinOnly));
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Position)) {
+				return false;
+			}
+			final Position other = (Position) obj;
+			return Objects.equal(site, other.site)
+					&& Objects.equal(terminus, other.terminus)
+					&& Objects.equal(proteinOnly, other.proteinOnly);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hashCode(site, terminus, proteinOnly);
+		}
+	}
+
+	/**
+	 * Specificities at one position, sorted by the monoisotopic mass of their modification.
+	 */
+	private static final class Bucket {
+		private final Position position;
+		private final double[] masses;
+		private final ModSpecificity[] specificities;
+
+		private Bucket(Position position, List<ModSpecificity> list) {
+			this.position = position;
+			final ModSpecificity[] sorted = list.toArray(new ModSpecificity[list.size()]);
+			Arrays.sort(sorted, new Comparator<ModSpecificity>() {
+				@Override
+				public int compare(ModSpecificity o1, ModSpecificity o2) {
+					return o1.getModification().getMassMono().compareTo(o2.getModification().getMassMono());
+				}
+			});
+			specificities = sorted;
+			masses = new double[sorted.length];
+			for (int i = 0; i < sorted.length; i++) {
+				masses[i] = sorted[i].getModification().getMassMono();
+			}
+		}
+	}
+}
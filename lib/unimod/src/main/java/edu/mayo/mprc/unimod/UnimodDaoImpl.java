@@ -4,6 +4,7 @@ import edu.mayo.mprc.MprcException;
 import edu.mayo.mprc.database.Change;
 import edu.mayo.mprc.database.DaoBase;
 import edu.mayo.mprc.database.DatabasePlaceholder;
+import edu.mayo.mprc.database.ReferenceCache;
 import edu.mayo.mprc.utilities.ResourceUtilities;
 import org.apache.log4j.Logger;
 import org.hibernate.Session;
@@ -15,19 +16,30 @@ import java.util.Map;
 /**
  * Provides access to the unimod set from the database.
  * Since the set is reasonably small, it can be loaded completely in one go, indexed in memory
- * and processed more efficiently.
+ * and processed more efficiently. The loaded set is kept in memory until it gets upgraded.
  * <p/>
  * The DAO allows you to return current modification set, and to upgrade the set from a given file.
  */
 public final class UnimodDaoImpl extends DaoBase implements UnimodDao {
 	private static final Logger LOGGER = Logger.getLogger(UnimodDaoImpl.class);
 
+	private final ReferenceCache<Unimod> unimod = new ReferenceCache<Unimod>(new ReferenceCache.Loader<Unimod>() {
+		@Override
+		public Unimod load() {
+			return loadFromDatabase();
+		}
+	});
+
 	public UnimodDaoImpl(DatabasePlaceholder databasePlaceholder) {
 		super(databasePlaceholder);
 	}
 
 	@Override
 	public Unimod load() {
+		return unimod.get();
+	}
+
+	private Unimod loadFromDatabase() {
 		final Session session = getSession();
 		try {
 			final List<Mod> list = (List<Mod>) allCriteria(Mod.class)
@@ -50,6 +62,7 @@ public final class UnimodDaoImpl extends DaoBase implements UnimodDao {
 			final List<Mod> list = (List<Mod>) allCriteria(Mod.class).list();
 			UnimodUpgrade upgrade = new UnimodUpgrade();
 			upgrade.upgrade(list, unimod, request, getSession());
+			this.unimod.invalidate(getSession());
 			return upgrade;
 		} catch (Exception t) {
 			throw new MprcException("Database upgrade " + (request != null ? request : "") + " failed", t);
@@ -0,0 +1,222 @@
+package edu.mayo.mprc.unimod;
+
+import org.apache.log4j.Logger;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.*;
+
+public final class ModSpecificityMassIndexTest {
+	private static final Logger LOGGER = Logger.getLogger(ModSpecificityMassIndexTest.class);
+
+	private static final String SITES = "ACDEFGHIKLMNPQRSTVWY*";
+	private static final double TOLERANCE = 0.01;
+	/**
+	 * How many deltas to annotate in {@link #benchmarkAnnotation}.
+	 */
+	private static final String BENCHMARK_DELTAS = "unimod.benchmark.deltas";
+
+	@Test
+	public void shouldMatchLinearSearch() {
+		final Unimod unimod = UnimodTest.getDefaultUnimodSet();
+		final LinearSearch linear = new LinearSearch(unimod);
+		final Random random = new Random(1);
+		final double[] masses = modMasses(unimod);
+		final Terminus[] termini = {null, Terminus.Anywhere, Terminus.Nterm, Terminus.Cterm};
+		final Boolean[] flags = {null, Boolean.TRUE, Boolean.FALSE};
+
+		for (int i = 0; i < 5000; i++) {
+			final double delta = masses[random.nextInt(masses.length)] + (random.nextDouble() - 0.5) * 0.05;
+			final Character site = random.nextInt(4) == 0 ? null : SITES.charAt(random.nextInt(SITES.length()));
+			final Terminus terminus = termini[random.nextInt(termini.length)];
+			final Boolean proteinOnly = flags[random.nextInt(flags.length)];
+			final Boolean hidden = flags[random.nextInt(flags.length)];
+			Assert.assertEquals(
+					unimod.findMatchingModSpecificities(delta - TOLERANCE, delta + TOLERANCE, site, terminus, proteinOnly, hidden),
+					linear.find(delta - TOLERANCE, delta + TOLERANCE, site, terminus, proteinOnly, hidden),
+					delta + "@" + site + " " + terminus + " " + proteinOnly + " " + hidden);
+		}
+
+		Assert.assertEquals(unimod.findMatchingModSpecificities(null, null, null, Terminus.Nterm, null, false),
+				linear.find(null, null, null, Terminus.Nterm, null, false));
+		Assert.assertEquals(unimod.findMatchingModSpecificities(null, null, null, null, null, null).size(),
+				unimod.getAllSpecificities(true).size());
+	}
+
+	@Test
+	public void shouldAnnotateBatch() {
+		final Unimod unimod = UnimodTest.getDefaultUnimodSet();
+		final double[] deltas = randomDeltas(unimod, new Random(2), 2000);
+		Assert.assertTrue(assertBatch(unimod, deltas, null, null) > deltas.length / 3, "Half of the deltas come from modifications");
+		assertBatch(unimod, deltas, 'M', false);
+	}
+
+	/**
+	 * @return How many deltas matched.
+	 */
+	private static int assertBatch(Unimod unimod, double[] deltas, Character site, Boolean hidden) {
+		final List<Set<ModSpecificity>> annotated = unimod.findMatchingModSpecificities(deltas, TOLERANCE, site, null, null, hidden);
+		Assert.assertEquals(annotated.size(), deltas.length);
+		int matched = 0;
+		for (int i = 0; i < deltas.length; i++) {
+			final Set<ModSpecificity> expected = unimod.findMatchingModSpecificities(deltas[i] - TOLERANCE, Math.nextUp(deltas[i] + TOLERANCE), site, null, null, hidden);
+			Assert.assertEquals(annotated.get(i), expected, "Delta " + deltas[i] + "@" + site);
+			if (!expected.isEmpty()) {
+				matched++;
+			}
+		}
+		return matched;
+	}
+
+	@Test
+	public void shouldSeeAddedModifications() {
+		final IndexedModSet set = new IndexedModSet();
+		Assert.assertTrue(set.findMatchingModSpecificities(0.0, 100.0, null, null, null, null).isEmpty());
+
+		final Mod oxidation = UnimodTest.getDefaultUnimodSet().getByTitle("Oxidation");
+		set.add(oxidation);
+		final Set<ModSpecificity> found = set.findMatchingModSpecificities(15.99, 16.0, 'M', null, null, null);
+		Assert.assertEquals(found.size(), 1);
+		Assert.assertEquals(found.iterator().next().getModification(), oxidation);
+	}
+
+	/**
+	 * Annotates {@link #BENCHMARK_DELTAS} deltas (default 100000) at random sites, the way search results are annotated.
+	 */
+	@Test(groups = "benchmark")
+	public void benchmarkAnnotation() {
+		final Unimod unimod = UnimodTest.getDefaultUnimodSet();
+		final int count = Integer.getInteger(BENCHMARK_DELTAS, 100000);
+		final Random random = new Random(3);
+		final double[] deltas = randomDeltas(unimod, random, count);
+		final char[] sites = new char[count];
+		for (int i = 0; i < count; i++) {
+			sites[i] = SITES.charAt(random.nextInt(SITES.length() - 1));
+		}
+		final LinearSearch linear = new LinearSearch(unimod);
+		// Build the index before measuring
+		unimod.findMatchingModSpecificities(0.0, 1.0, 'A', null, null, null);
+
+		long start = System.currentTimeMillis();
+		long linearMatches = 0;
+		for (int i = 0; i < count; i++) {
+			linearMatches += linear.find(deltas[i] - TOLERANCE, deltas[i] + TOLERANCE, sites[i], null, null, null).size();
+		}
+		final long linearTime = System.currentTimeMillis() - start;
+
+		start = System.currentTimeMillis();
+		long indexedMatches = 0;
+		for (int i = 0; i < count; i++) {
+			indexedMatches += unimod.findMatchingModSpecificities(deltas[i] - TOLERANCE, deltas[i] + TOLERANCE, sites[i], null, null, null).size();
+		}
+		final long indexedTime = System.currentTimeMillis() - start;
+
+		final Map<Character, double[]> deltasBySite = groupBySite(deltas, sites);
+		start = System.currentTimeMillis();
+		long batchMatches = 0;
+		for (final Map.Entry<Character, double[]> bySite : deltasBySite.entrySet()) {
+			for (final Set<ModSpecificity> matches : unimod.findMatchingModSpecificities(bySite.getValue(), TOLERANCE, bySite.getKey(), null, null, null)) {
+				batchMatches += matches.size();
+			}
+		}
+		final long batchTime = System.currentTimeMillis() - start;
+
+		LOGGER.info(count + " deltas in " + unimod.size() + " modifications"
+				+ "\n\tlinear: " + linearTime + " ms"
+				+ "\n\tindexed: " + indexedTime + " ms"
+				+ "\n\tbatch: " + batchTime + " ms");
+		Assert.assertEquals(indexedMatches, linearMatches);
+		Assert.assertTrue(batchMatches >= indexedMatches, "The batch tolerance includes the upper bound");
+	}
+
+	private static Map<Character, double[]> groupBySite(double[] deltas, char[] sites) {
+		final Map<Character, List<Double>> lists = new HashMap<Character, List<Double>>();
+		for (int i = 0; i < deltas.length; i++) {
+			List<Double> list = lists.get(sites[i]);
+			if (list == null) {
+				list = new ArrayList<Double>();
+				lists.put(sites[i], list);
+			}
+			list.add(deltas[i]);
+		}
+		final Map<Character, double[]> result = new HashMap<Character, double[]>();
+		for (final Map.Entry<Character, List<Double>> entry : lists.entrySet()) {
+			final double[] array = new double[entry.getValue().size()];
+			for (int i = 0; i < array.length; i++) {
+				array[i] = entry.getValue().get(i);
+			}
+			result.put(entry.getKey(), array);
+		}
+		return result;
+	}
+
+	/**
+	 * Half of the deltas are masses of real modifications with a measurement error, the rest is noise.
+	 */
+	private static double[] randomDeltas(Unimod unimod, Random random, int count) {
+		final double[] masses = modMasses(unimod);
+		final double[] deltas = new double[count];
+		for (int i = 0; i < count; i++) {
+			if (random.nextBoolean()) {
+				deltas[i] = masses[random.nextInt(masses.length)] + random.nextGaussian() * TOLERANCE / 3;
+			} else {
+				deltas[i] = random.nextDouble() * 500 - 100;
+			}
+		}
+		return deltas;
+	}
+
+	private static double[] modMasses(Unimod unimod) {
+		final double[] masses = new double[unimod.size()];
+		int i = 0;
+		for (final Mod mod : unimod) {
+			masses[i++] = mod.getMassMono();
+		}
+		return masses;
+	}
+
+	/**
+	 * The lookup as IndexedModSet used to do it - walk all modifications in the mass range, filter every specificity.
+	 */
+	private static final class LinearSearch {
+		private final TreeMap<Double, List<Mod>> massIndex = new TreeMap<Double, List<Mod>>();
+
+		private LinearSearch(Collection<Mod> mods) {
+			for (final Mod mod : mods) {
+				List<Mod> list = massIndex.get(mod.getMassMono());
+				if (list == null) {
+					list = new LinkedList<Mod>();
+					massIndex.put(mod.getMassMono(), list);
+				}
+				list.add(mod);
+			}
+		}
+
+		public Set<ModSpecificity> find(Double minMass, Double maxMass, Character site, Terminus terminus, Boolean proteinOnly, Boolean hidden) {
+			final Collection<List<Mod>> inRange = minMass != null && maxMass != null
+					? massIndex.subMap(minMass, maxMass).values()
+					: massIndex.values();
+			final Set<ModSpecificity> result = new HashSet<ModSpecificity>();
+			for (final List<Mod> mods : inRange) {
+				for (final Mod mod : mods) {
+					for (final ModSpecificity sp : mod.getModSpecificities()) {
+						if (site != null && !sp.getSite().equals(site)) {
+							continue;
+						}
+						if (terminus != null && !sp.getTerm().equals(terminus)) {
+							continue;
+						}
+						if (proteinOnly != null && !proteinOnly.equals(sp.isProteinOnly())) {
+							continue;
+						}
+						if (hidden != null && !hidden.equals(sp.getHidden())) {
+							continue;
+						}
+						result.add(sp);
+					}
+				}
+			}
+			return result;
+		}
+	}
+}
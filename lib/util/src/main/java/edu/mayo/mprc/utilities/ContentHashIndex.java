@@ -0,0 +1,259 @@
+package edu.mayo.mprc.utilities;
+
+import edu.mayo.mprc.MprcException;
+import org.apache.log4j.Logger;
+
+import java.io.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Remembers SHA-1 hashes of the files in a folder, so a file identical to a given one can be found by a lookup
+ * instead of comparing the contents byte by byte.
+ * <p/>
+ * The index is stored in the folder itself, in {@link #INDEX_FILE_NAME}. Each entry remembers the length and
+ * modification time of the file, a file that changed since it was hashed is hashed again when needed. Files that are
+ * not in the index yet are hashed only when a file of the same length is being looked up, so each file gets read once.
+ * <p/>
+ * Files with equal hashes are considered identical.
+ * <p/>
+ * Use the index only for folders Swift owns, such as the curated databases. Other folders (user uploads, source
+ * database archives) should not get the extra index file.
+ */
+public final class ContentHashIndex {
+	private static final Logger LOGGER = Logger.getLogger(ContentHashIndex.class);
+
+	public static final String INDEX_FILE_NAME = ".content-hashes";
+	private static final String DIGEST_INSTANCE = "SHA-1";
+	private static final int BUFFER_SIZE = 1024 * 1024;
+
+	private static final Map<File, ContentHashIndex> INDICES = new HashMap<File, ContentHashIndex>();
+
+	private final File folder;
+	private final File indexFile;
+	/**
+	 * File name to its entry.
+	 */
+	private final Map<String, Entry> entries = new HashMap<String, Entry>();
+	/**
+	 * Modification time of the index file when we last read or wrote it.
+	 */
+	private long indexLastModified = -1;
+
+	private ContentHashIndex(File folder) {
+		this.folder = folder;
+		indexFile = new File(folder, INDEX_FILE_NAME);
+	}
+
+	/**
+	 * @param folder Folder to index.
+	 * @return The index for given folder, shared by everyone in this JVM.
+	 */
+	public static ContentHashIndex forFolder(File folder) {
+		final File key = folder.getAbsoluteFile();
+		synchronized (INDICES) {
+			ContentHashIndex index = INDICES.get(key);
+			if (index == null) {
+				index = new ContentHashIndex(key);
+				INDICES.put(key, index);
+			}
+			return index;
+		}
+	}
+
+	/**
+	 * Finds a file in the folder that is identical to the given one. If there is none and the given file is in the
+	 * folder, it gets added to the index.
+	 *
+	 * @param file File to find a copy of.
+	 * @return Identical file in the folder (never <code>file</code> itself), or null if there is none.
+	 */
+	public File findIdentical(File file) {
+		return findIdentical(file, hash(file));
+	}
+
+	/**
+	 * Same as {@link #findIdentical(File)} with the hash of the file already known, e.g. computed while it was written.
+	 */
+	public synchronized File findIdentical(File file, String hash) {
+		reloadIfChanged();
+		final File absoluteFile = file.getAbsoluteFile();
+		final long length = file.length();
+		indexFilesOfLength(length, absoluteFile);
+
+		File result = null;
+		for (final Map.Entry<String, Entry> entry : entries.entrySet()) {
+			final File candidate = new File(folder, entry.getKey());
+			if (entry.getValue().hash.equals(hash) && entry.getValue().length == length && !candidate.equals(absoluteFile)) {
+				result = candidate;
+				break;
+			}
+		}
+
+		if (result == null && folder.equals(absoluteFile.getParentFile())) {
+			entries.put(absoluteFile.getName(), new Entry(hash, length, absoluteFile.lastModified()));
+		}
+		save();
+		return result;
+	}
+
+	/**
+	 * Records hash of a file that was put into the folder.
+	 */
+	public synchronized void add(File file, String hash) {
+		reloadIfChanged();
+		entries.put(file.getName(), new Entry(hash, file.length(), file.lastModified()));
+		save();
+	}
+
+	/**
+	 * @return Hex-encoded SHA-1 hash of the file contents.
+	 */
+	public static String hash(File file) {
+		final MessageDigest digest = createDigest();
+		InputStream in = null;
+		try {
+			in = new FileInputStream(file);
+			final byte[] buffer = new byte[BUFFER_SIZE];
+			int read;
+			while ((read = in.read(buffer)) >= 0) {
+				digest.update(buffer, 0, read);
+			}
+		} catch (IOException e) {
+			throw new MprcException("Could not hash " + file.getAbsolutePath(), e);
+		} finally {
+			FileUtilities.closeQuietly(in);
+		}
+		return toHex(digest.digest());
+	}
+
+	/**
+	 * @return New instance of the digest the index uses. Feed it the file contents as they are written.
+	 */
+	public static MessageDigest createDigest() {
+		try {
+			return MessageDigest.getInstance(DIGEST_INSTANCE);
+		} catch (NoSuchAlgorithmException e) {
+			throw new MprcException("Digest algorithm " + DIGEST_INSTANCE + " is not available", e);
+		}
+	}
+
+	public static String toHex(byte[] bytes) {
+		final StringBuilder result = new StringBuilder(bytes.length * 2);
+		for (byte b : bytes) {
+			result.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+		}
+		return result.toString();
+	}
+
+	/**
+	 * Drops entries of files that are gone or changed, hashes the files of given length we do not know yet.
+	 */
+	private void indexFilesOfLength(final long length, final File exclude) {
+		for (final Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator(); iterator.hasNext(); ) {
+			final Map.Entry<String, Entry> entry = iterator.next();
+			final File file = new File(folder, entry.getKey());
+			if (!file.isFile() || file.length() != entry.getValue().length || file.lastModified() != entry.getValue().lastModified) {
+				iterator.remove();
+			}
+		}
+
+		final File[] sameLength = folder.listFiles(new FileFilter() {
+			@Override
+			public boolean accept(File pathname) {
+				return pathname.isFile() && pathname.canRead() && pathname.length() == length
+						&& !entries.containsKey(pathname.getName())
+						&& !pathname.getName().startsWith(INDEX_FILE_NAME)
+						&& !pathname.getAbsoluteFile().equals(exclude);
+			}
+		});
+		if (sameLength == null) {
+			return;
+		}
+		for (final File file : sameLength) {
+			final long lastModified = file.lastModified();
+			try {
+				entries.put(file.getName(), new Entry(hash(file), length, lastModified));
+			} catch (MprcException e) {
+				// SWALLOWED: a file we cannot read cannot be a match
+				LOGGER.warn("Could not hash " + file.getAbsolutePath(), e);
+			}
+		}
+	}
+
+	private void reloadIfChanged() {
+		final long lastModified = indexFile.lastModified();
+		if (lastModified == indexLastModified) {
+			return;
+		}
+		entries.clear();
+		indexLastModified = lastModified;
+		if (!indexFile.exists()) {
+			return;
+		}
+		BufferedReader reader = null;
+		try {
+			reader = new BufferedReader(new InputStreamReader(new FileInputStream(indexFile), "UTF-8"));
+			String line;
+			while ((line = reader.readLine()) != null) {
+				final String[] parts = line.split("\t", 4);
+				if (parts.length == 4) {
+					entries.put(parts[3], new Entry(parts[0], Long.parseLong(parts[1]), Long.parseLong(parts[2])));
+				}
+			}
+		} catch (Exception e) {
+			// SWALLOWED: the index is only a cache, we start over
+			LOGGER.warn("Could not read content hash index " + indexFile.getAbsolutePath(), e);
+			entries.clear();
+		} finally {
+			FileUtilities.closeQuietly(reader);
+		}
+	}
+
+	/**
+	 * Writes the index to a temporary file first, so a reader never sees a partial index. The temporary file has
+	 * a unique name, so other processes saving the same index do not overwrite it.
+	 */
+	private void save() {
+		File tempFile = null;
+		Writer writer = null;
+		try {
+			tempFile = File.createTempFile(INDEX_FILE_NAME, ".tmp", folder);
+			writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tempFile), "UTF-8"));
+			for (final Map.Entry<String, Entry> entry : entries.entrySet()) {
+				final Entry value = entry.getValue();
+				writer.write(value.hash + "\t" + value.length + "\t" + value.lastModified + "\t" + entry.getKey() + "\n");
+			}
+			writer.close();
+			writer = null;
+			if (!tempFile.renameTo(indexFile)) {
+				FileUtilities.quietDelete(indexFile);
+				if (!tempFile.renameTo(indexFile)) {
+					throw new IOException("Could not rename " + tempFile.getAbsolutePath() + " to " + indexFile.getAbsolutePath());
+				}
+			}
+			indexLastModified = indexFile.lastModified();
+		} catch (IOException e) {
+			// SWALLOWED: the index is only a cache, next time the files get hashed again
+			LOGGER.warn("Could not save content hash index " + indexFile.getAbsolutePath(), e);
+		} finally {
+			FileUtilities.closeQuietly(writer);
+			FileUtilities.quietDelete(tempFile);
+		}
+	}
+
+	private static final class Entry {
+		private final String hash;
+		private final long length;
+		private final long lastModified;
+
+		private Entry(String hash, long length, long lastModified) {
+			this.hash = hash;
+			this.length = length;
+			this.lastModified = lastModified;
+		}
+	}
+}
@@ -0,0 +1,144 @@
+package edu.mayo.mprc.utilities;
+
+import edu.mayo.mprc.MprcException;
+import org.apache.log4j.Logger;
+
+import java.io.File;
+import java.lang.reflect.Array;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Gets notified by the operating system when a directory changes, using java.nio.file.WatchService.
+ * <p/>
+ * The watch service exists since Java 7, so it is called through reflection. On Java 6 {@link #create} returns null
+ * and the files have to be polled.
+ * <p/>
+ * The watch keys are passed around as plain objects. Only creation and modification of directory entries is
+ * reported, a file deletion does not matter to {@link FileMonitor}.
+ */
+final class DirectoryWatcher {
+	private static final Logger LOGGER = Logger.getLogger(DirectoryWatcher.class);
+
+	private final Object watchService;
+	private final Object kinds;
+	private final Method toPath;
+	private final Method register;
+	private final Method poll;
+	private final Method pollEvents;
+	private final Method reset;
+	private final Method cancel;
+	private final Method close;
+
+	private DirectoryWatcher() throws ClassNotFoundException, NoSuchMethodException, NoSuchFieldException,
+			IllegalAccessException, InvocationTargetException {
+		final Class<?> fileSystems = Class.forName("java.nio.file.FileSystems");
+		final Class<?> fileSystem = Class.forName("java.nio.file.FileSystem");
+		final Class<?> path = Class.forName("java.nio.file.Path");
+		final Class<?> watchServiceClass = Class.forName("java.nio.file.WatchService");
+		final Class<?> watchKey = Class.forName("java.nio.file.WatchKey");
+		final Class<?> kind = Class.forName("java.nio.file.WatchEvent$Kind");
+		final Class<?> standardKinds = Class.forName("java.nio.file.StandardWatchEventKinds");
+
+		kinds = Array.newInstance(kind, 2);
+		Array.set(kinds, 0, standardKinds.getField("ENTRY_CREATE").get(null));
+		Array.set(kinds, 1, standardKinds.getField("ENTRY_MODIFY").get(null));
+
+		toPath = File.class.getMethod("toPath");
+		register = path.getMethod("register", watchServiceClass, kinds.getClass());
+		poll = watchServiceClass.getMethod("poll", long.class, TimeUnit.class);
+		pollEvents = watchKey.getMethod("pollEvents");
+		reset = watchKey.getMethod("reset");
+		cancel = watchKey.getMethod("cancel");
+		close = watchServiceClass.getMethod("close");
+
+		final Object defaultFileSystem = fileSystems.getMethod("getDefault").invoke(null);
+		watchService = fileSystem.getMethod("newWatchService").invoke(defaultFileSystem);
+	}
+
+	/**
+	 * @return New watcher, null if the platform cannot watch directories.
+	 */
+	public static DirectoryWatcher create() {
+		try {
+			return new DirectoryWatcher();
+		} catch (Exception e) {
+			// SWALLOWED: Java 6 or no watch service, the files will be polled
+			LOGGER.debug("Cannot watch directories, falling back to polling: " + MprcException.getDetailedMessage(e));
+			return null;
+		}
+	}
+
+	/**
+	 * @param directory Directory to watch.
+	 * @return Watch key to recognize the events of this directory.
+	 */
+	public Object register(File directory) {
+		try {
+			return register.invoke(toPath.invoke(directory), watchService, kinds);
+		} catch (Exception e) {
+			throw new MprcException("Cannot watch directory " + directory.getAbsolutePath(), getCause(e));
+		}
+	}
+
+	/**
+	 * Waits for a directory to change.
+	 *
+	 * @param timeout How long to wait, in milliseconds.
+	 * @return Key of the changed directory, null if nothing changed. Pass the key to {@link #reset}.
+	 */
+	public Object poll(long timeout) throws InterruptedException {
+		try {
+			return poll.invoke(watchService, timeout, TimeUnit.MILLISECONDS);
+		} catch (InvocationTargetException e) {
+			if (e.getCause() instanceof InterruptedException) {
+				throw (InterruptedException) e.getCause();
+			}
+			throw new MprcException("Watching directories failed", e.getCause());
+		} catch (IllegalAccessException e) {
+			throw new MprcException("Watching directories failed", e);
+		}
+	}
+
+	/**
+	 * Throws away the events of a key and lets it report more.
+	 *
+	 * @return False if the directory cannot be watched anymore, e.g. it was deleted.
+	 */
+	public boolean reset(Object key) {
+		try {
+			pollEvents.invoke(key);
+			return (Boolean) reset.invoke(key);
+		} catch (Exception e) {
+			throw new MprcException("Cannot reset directory watch", getCause(e));
+		}
+	}
+
+	/**
+	 * Stops watching a directory.
+	 */
+	public void cancel(Object key) {
+		try {
+			cancel.invoke(key);
+		} catch (Exception e) {
+			throw new MprcException("Cannot cancel directory watch", getCause(e));
+		}
+	}
+
+	/**
+	 * Stops watching all directories. A thread blocked in {@link #poll} fails.
+	 */
+	public void close() {
+		try {
+			close.invoke(watchService);
+		} catch (Exception e) {
+			// SWALLOWED: nothing to be done about it
+			LOGGER.warn("Cannot close directory watcher: " + MprcException.getDetailedMessage(getCause(e)));
+		}
+	}
+
+	private static Throwable getCause(Exception e) {
+		return e instanceof InvocationTargetException ? e.getCause() : e;
+	}
+}
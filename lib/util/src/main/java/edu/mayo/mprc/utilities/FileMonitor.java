@@ -1,6 +1,7 @@
 package edu.mayo.mprc.utilities;
 
 import edu.mayo.mprc.MprcException;
+import org.apache.log4j.Logger;
 
 import java.io.File;
 import java.lang.ref.WeakReference;
@@ -20,34 +21,79 @@ import java.util.*;
  * <li>Create new instance of file monitor.</li>
  * <li>Add files/directories to watch</li>
  * </ul>
+ * <p/>
+ * The directories containing the files are watched using {@link DirectoryWatcher}, so a change is noticed right away
+ * without checking the files over and over. A burst of events (e.g. a file written in several chunks) is coalesced -
+ * the files get checked once the directory has been quiet for {@link #QUIET_PERIOD} milliseconds.
+ * <p/>
+ * Some file systems (e.g. NFS) do not report changes done by other machines. The watched files are therefore still
+ * checked every {@link #MAX_SLOWDOWN} polling intervals. If such check finds a change nobody reported, the directory
+ * gets polled from then on. The files are polled also when the directory cannot be watched at all (Java 6,
+ * nonexistent directory). The polling interval grows up to {@link #MAX_SLOWDOWN} times while nothing changes and
+ * drops back on a change.
  */
 public final class FileMonitor {
-	private Timer timer;
-	private Map<File, Long> files;
-	private Collection<WeakReference<FileListener>> listeners;
+	private static final Logger LOGGER = Logger.getLogger(FileMonitor.class);
+
+	/**
+	 * Check the files once there were no events in their directory for this many milliseconds.
+	 */
+	private static final long QUIET_PERIOD = 200;
+	/**
+	 * Check the files at most this long after the first event, even if the events keep coming.
+	 */
+	private static final long MAX_COALESCE_DELAY = 2000;
+	/**
+	 * How many times can the polling interval grow when nothing changes.
+	 */
+	private static final int MAX_SLOWDOWN = 4;
+
+	private final long minPollingInterval;
+	private final long maxPollingInterval;
+	private final Thread thread;
+	private volatile DirectoryWatcher watcher;
+	private volatile boolean stopped;
+
+	private final Map<File, Long> files = new HashMap<File, Long>();
+	private final Map<File, Directory> directories = new HashMap<File, Directory>();
+	private final Map<Object, Directory> watchKeys = new HashMap<Object, Directory>();
+	private final Collection<WeakReference<FileListener>> listeners = new ArrayList<WeakReference<FileListener>>();
 
 	/**
 	 * Create a file monitor instance with specified polling interval.
 	 *
-	 * @param pollingInterval Polling interval in milliseconds.
+	 * @param pollingInterval Polling interval in milliseconds. Used for files that cannot be watched for changes.
 	 */
 	public FileMonitor(long pollingInterval) {
-		files = new HashMap<File, Long>();
-		listeners = new ArrayList<WeakReference<FileListener>>();
-
-		timer = new Timer(true);
-		timer.schedule(new FileMonitorNotifier(), 0, pollingInterval);
+		this(pollingInterval, true);
 	}
 
+	/**
+	 * @param pollingInterval Polling interval in milliseconds.
+	 * @param watch           False to poll all the files.
+	 */
+	FileMonitor(long pollingInterval, boolean watch) {
+		minPollingInterval = pollingInterval;
+		maxPollingInterval = pollingInterval * MAX_SLOWDOWN;
+		watcher = watch ? DirectoryWatcher.create() : null;
+
+		thread = new Thread(new FileMonitorNotifier(), "File monitor");
+		thread.setDaemon(true);
+		thread.start();
+	}
 
 	/**
 	 * Stop the file monitor polling.
 	 */
 	public void stop() {
-		timer.cancel();
+		stopped = true;
+		final DirectoryWatcher currentWatcher = watcher;
+		if (currentWatcher != null) {
+			currentWatcher.close();
+		}
+		thread.interrupt();
 	}
 
-
 	/**
 	 * Add file to listen for. File may be any java.io.File (including a
 	 * directory) and may well be a non-existing file in the case where the
@@ -58,30 +104,45 @@ public final class FileMonitor {
 	 *
 	 * @param file File to listen for.
 	 */
-	public void addFile(File file) {
-		if (!files.containsKey(file)) {
-			long modifiedTime = file.exists() ? file.lastModified() : -1;
-			files.put(file, modifiedTime);
+	public synchronized void addFile(File file) {
+		if (files.containsKey(file)) {
+			return;
 		}
-	}
+		files.put(file, getModifiedTime(file));
 
+		final File parent = file.getAbsoluteFile().getParentFile();
+		Directory directory = directories.get(parent);
+		if (directory == null) {
+			directory = new Directory(parent);
+			directories.put(parent, directory);
+			watch(directory);
+		}
+		directory.files.add(file);
+	}
 
 	/**
 	 * Remove specified file for listening.
 	 *
 	 * @param file File to remove.
 	 */
-	public void removeFile(File file) {
-		files.remove(file);
+	public synchronized void removeFile(File file) {
+		if (files.remove(file) == null) {
+			return;
+		}
+		final Directory directory = directories.get(file.getAbsoluteFile().getParentFile());
+		directory.files.remove(file);
+		if (directory.files.isEmpty()) {
+			directories.remove(directory.folder);
+			unwatch(directory);
+		}
 	}
 
-
 	/**
 	 * Add listener to this file monitor.
 	 *
 	 * @param fileListener Listener to add.
 	 */
-	public void addListener(FileListener fileListener) {
+	public synchronized void addListener(FileListener fileListener) {
 		if (fileListener == null) {
 			throw new MprcException("Cannot add null listener to file monitor");
 		}
@@ -98,14 +159,13 @@ public final class FileMonitor {
 		listeners.add(new WeakReference<FileListener>(fileListener));
 	}
 
-
 	/**
 	 * Remove listener from this file monitor.
 	 *
 	 * @param fileListener Listener to remove.
 	 */
-	public void removeListener(FileListener fileListener) {
-		for (Iterator<WeakReference<FileListener>> iterator = listeners.iterator(); iterator.hasNext();) {
+	public synchronized void removeListener(FileListener fileListener) {
+		for (Iterator<WeakReference<FileListener>> iterator = listeners.iterator(); iterator.hasNext(); ) {
 			WeakReference<FileListener> reference = iterator.next();
 			FileListener listener = reference.get();
 			if (listener != null && listener.equals(fileListener)) {
@@ -115,43 +175,284 @@ public final class FileMonitor {
 		}
 	}
 
+	/**
+	 * @return True if the file is watched for changes, false if it is polled.
+	 */
+	synchronized boolean isWatched(File file) {
+		final Directory directory = directories.get(file.getAbsoluteFile().getParentFile());
+		return directory != null && directory.watchKey != null;
+	}
+
+	private static long getModifiedTime(File file) {
+		return file.exists() ? file.lastModified() : -1;
+	}
+
+	/**
+	 * Start watching the directory, if possible. Otherwise it gets polled.
+	 */
+	private void watch(Directory directory) {
+		final DirectoryWatcher currentWatcher = watcher;
+		if (currentWatcher == null || directory.eventsMissed || !directory.folder.isDirectory()) {
+			return;
+		}
+		try {
+			directory.watchKey = currentWatcher.register(directory.folder);
+			watchKeys.put(directory.watchKey, directory);
+		} catch (MprcException e) {
+			// SWALLOWED: the directory gets polled
+			LOGGER.debug("Polling " + directory.folder.getAbsolutePath() + ": " + MprcException.getDetailedMessage(e));
+		}
+	}
+
+	/**
+	 * Stop watching the directory, it gets polled from now on.
+	 */
+	private void unwatch(Directory directory) {
+		if (directory.watchKey == null) {
+			return;
+		}
+		watchKeys.remove(directory.watchKey);
+		final DirectoryWatcher currentWatcher = watcher;
+		if (currentWatcher != null) {
+			try {
+				currentWatcher.cancel(directory.watchKey);
+			} catch (MprcException e) {
+				// SWALLOWED: the key is gone anyway
+				LOGGER.debug(MprcException.getDetailedMessage(e));
+			}
+		}
+		directory.watchKey = null;
+		directory.pending = false;
+	}
+
+	/**
+	 * A directory with the monitored files.
+	 */
+	private static final class Directory {
+		private final File folder;
+		private final List<File> files = new ArrayList<File>(1);
+		/**
+		 * Null if the directory is polled.
+		 */
+		private Object watchKey;
+		/**
+		 * The directory was watched, but a change was not reported. It is polled for good.
+		 */
+		private boolean eventsMissed;
+		/**
+		 * There were events in the directory, its files are to be checked at {@link #checkAt}.
+		 */
+		private boolean pending;
+		private long firstEvent;
+		private long checkAt;
+
+		private Directory(File folder) {
+			this.folder = folder;
+		}
+	}
 
 	/**
-	 * This is the timer thread which is executed every n milliseconds
-	 * according to the setting of the file monitor. It investigates the
-	 * file in question and notify listeners if changed.
+	 * The thread that waits for directory events and polls the files that are not watched. It investigates the
+	 * files in question and notifies listeners if they changed.
 	 */
-	private class FileMonitorNotifier extends TimerTask {
+	private final class FileMonitorNotifier implements Runnable {
+		private long pollingInterval = minPollingInterval;
+
+		@Override
 		public void run() {
-			// Loop over the registered files and see which have changed.
-			// Use a copy of the list in case listener wants to alter the
-			// list within its fileChanged method.
-			Collection<File> filesKeysCopy = new ArrayList<File>(FileMonitor.this.files.keySet());
+			long nextPoll = System.currentTimeMillis() + pollingInterval;
+			long nextVerify = System.currentTimeMillis() + maxPollingInterval;
+			while (!stopped) {
+				try {
+					final long wakeUp = Math.min(Math.min(nextPoll, nextVerify), getNextCheck());
+					waitForEvent(Math.max(1, wakeUp - System.currentTimeMillis()));
 
-			for (File file : filesKeysCopy) {
-				long lastModifiedTime = FileMonitor.this.files.get(file);
-				long newModifiedTime = file.exists() ? file.lastModified() : -1;
+					final long now = System.currentTimeMillis();
+					fireChanged(checkPending(now));
+					if (now >= nextPoll) {
+						final List<File> changed = poll();
+						pollingInterval = changed.isEmpty() ? Math.min(pollingInterval * 2, maxPollingInterval) : minPollingInterval;
+						nextPoll = now + pollingInterval;
+						fireChanged(changed);
+					}
+					if (now >= nextVerify) {
+						nextVerify = now + maxPollingInterval;
+						fireChanged(verifyWatched(now));
+					}
+				} catch (InterruptedException e) {
+					// SWALLOWED: the monitor got stopped
+					LOGGER.debug("File monitor interrupted");
+				} catch (Exception e) {
+					// SWALLOWED: keep monitoring, just poll everything from now on
+					if (!stopped) {
+						LOGGER.error("File monitor failed, polling all files from now on", e);
+						stopWatching();
+					}
+				}
+			}
+		}
 
-				// Check if file has changed (but it must not have been deleted)
-				if (newModifiedTime != lastModifiedTime && newModifiedTime != -1) {
+		/**
+		 * Waits until a directory changes or the timeout elapses.
+		 */
+		private void waitForEvent(long timeout) throws InterruptedException {
+			final DirectoryWatcher currentWatcher = watcher;
+			if (currentWatcher == null) {
+				Thread.sleep(timeout);
+				return;
+			}
+			final Object key = currentWatcher.poll(timeout);
+			if (key == null) {
+				return;
+			}
+			final boolean valid = currentWatcher.reset(key);
+			synchronized (FileMonitor.this) {
+				final Directory directory = watchKeys.get(key);
+				if (directory == null) {
+					return;
+				}
+				final long now = System.currentTimeMillis();
+				if (!directory.pending) {
+					directory.pending = true;
+					directory.firstEvent = now;
+				}
+				directory.checkAt = Math.min(now + QUIET_PERIOD, directory.firstEvent + MAX_COALESCE_DELAY);
+				if (!valid) {
+					// The directory itself is gone, the files get checked now and polled from now on
+					watchKeys.remove(key);
+					directory.watchKey = null;
+				}
+			}
+		}
 
-					// Register new modified time
-					FileMonitor.this.files.put(file, newModifiedTime);
+		private long getNextCheck() {
+			long nextCheck = Long.MAX_VALUE;
+			synchronized (FileMonitor.this) {
+				for (Directory directory : watchKeys.values()) {
+					if (directory.pending) {
+						nextCheck = Math.min(nextCheck, directory.checkAt);
+					}
+				}
+			}
+			return nextCheck;
+		}
 
-					// Notify listeners
-					for (Iterator<WeakReference<FileListener>> listenerIterator = listeners.iterator(); listenerIterator.hasNext();) {
-						WeakReference<FileListener> reference = listenerIterator.next();
-						FileListener listener = reference.get();
+		/**
+		 * @return Files in the directories whose events have settled that have changed.
+		 */
+		private List<File> checkPending(long now) {
+			final List<File> changed = new ArrayList<File>(0);
+			synchronized (FileMonitor.this) {
+				for (Directory directory : directories.values()) {
+					if (directory.pending && directory.checkAt <= now) {
+						directory.pending = false;
+						checkFiles(directory, changed);
+					}
+				}
+			}
+			return changed;
+		}
 
-						// Remove from list if the back-end object has been GC'd
-						if (listener == null) {
-							listenerIterator.remove();
-						} else {
-							listener.fileChanged(file);
+		/**
+		 * @return Files that changed in the directories that are not watched.
+		 */
+		private List<File> poll() {
+			final List<File> changed = new ArrayList<File>(0);
+			synchronized (FileMonitor.this) {
+				for (Directory directory : directories.values()) {
+					if (directory.watchKey == null) {
+						// The directory might have been created since, watch it before checking so no change is lost
+						watch(directory);
+						checkFiles(directory, changed);
+					}
+				}
+			}
+			return changed;
+		}
+
+		/**
+		 * Checks the watched files for changes that were not reported. A directory with such change gets polled.
+		 *
+		 * @return Files that changed.
+		 */
+		private List<File> verifyWatched(long now) {
+			final List<File> changed = new ArrayList<File>(0);
+			synchronized (FileMonitor.this) {
+				for (Directory directory : directories.values()) {
+					if (directory.watchKey == null || directory.pending) {
+						continue;
+					}
+					final int before = changed.size();
+					checkFiles(directory, changed);
+					for (File file : changed.subList(before, changed.size())) {
+						// A fresh change might have its event still on the way
+						if (files.get(file) < now - MAX_COALESCE_DELAY) {
+							LOGGER.info("Changes in " + directory.folder.getAbsolutePath() + " are not reported, polling it from now on");
+							directory.eventsMissed = true;
+							unwatch(directory);
+							break;
 						}
 					}
 				}
 			}
+			return changed;
+		}
+
+		/**
+		 * Check if file has changed (but it must not have been deleted)
+		 */
+		private void checkFiles(Directory directory, List<File> changed) {
+			for (File file : directory.files) {
+				final long lastModifiedTime = files.get(file);
+				final long newModifiedTime = getModifiedTime(file);
+				if (newModifiedTime != lastModifiedTime && newModifiedTime != -1) {
+					files.put(file, newModifiedTime);
+					changed.add(file);
+				}
+			}
+		}
+
+		private void stopWatching() {
+			final DirectoryWatcher currentWatcher = watcher;
+			watcher = null;
+			if (currentWatcher != null) {
+				currentWatcher.close();
+			}
+			synchronized (FileMonitor.this) {
+				for (Directory directory : directories.values()) {
+					directory.watchKey = null;
+					directory.pending = false;
+				}
+				watchKeys.clear();
+			}
+		}
+
+		/**
+		 * Notify listeners. Called without holding the lock, so a listener can alter the monitored files.
+		 */
+		private void fireChanged(List<File> changed) {
+			if (changed.isEmpty()) {
+				return;
+			}
+			final List<FileListener> currentListeners = new ArrayList<FileListener>(listeners.size());
+			synchronized (FileMonitor.this) {
+				for (Iterator<WeakReference<FileListener>> listenerIterator = listeners.iterator(); listenerIterator.hasNext(); ) {
+					WeakReference<FileListener> reference = listenerIterator.next();
+					FileListener listener = reference.get();
+
+					// Remove from list if the back-end object has been GC'd
+					if (listener == null) {
+						listenerIterator.remove();
+					} else {
+						currentListeners.add(listener);
+					}
+				}
+			}
+			for (File file : changed) {
+				for (FileListener listener : currentListeners) {
+					listener.fileChanged(file);
+				}
+			}
 		}
 	}
 }
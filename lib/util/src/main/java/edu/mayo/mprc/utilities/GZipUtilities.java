@@ -2,11 +2,15 @@ package edu.mayo.mprc.utilities;
 
 import java.io.*;
 import java.util.zip.GZIPInputStream;
-import java.util.zip.GZIPOutputStream;
 
 public final class GZipUtilities {
 
 	public static final int BUFF_SIZE = 2048;
+	/**
+	 * Buffer size for streaming large files.
+	 */
+	public static final int LARGE_BUFF_SIZE = 256 * 1024;
+	private static final int READ_AHEAD_CHUNKS = 4;
 
 
 	/**
@@ -48,7 +52,8 @@ public final class GZipUtilities {
 
 
 	/**
-	 * Takes in InputStream and compresses it into a given file.  This method will not overwrite an existing file.
+	 * Takes in InputStream and compresses it into a given file using all the cores, see {@link ParallelGZIPOutputStream}.
+	 * This method will not overwrite an existing file.
 	 *
 	 * @param istream         the stream to compress and write out
 	 * @param destinationFile the file you want to put the compressed stream into.
@@ -60,23 +65,19 @@ public final class GZipUtilities {
 		}
 
 		OutputStream gzStream = null;
-		InputStream biStream = null;
 		try {
-			gzStream = new GZIPOutputStream(new BufferedOutputStream(new FileOutputStream(destinationFile)), BUFF_SIZE);
-			biStream = new BufferedInputStream(istream, BUFF_SIZE);
-			transferStream(biStream, gzStream);
+			gzStream = new ParallelGZIPOutputStream(new BufferedOutputStream(new FileOutputStream(destinationFile), LARGE_BUFF_SIZE));
+			transferStream(istream, gzStream, LARGE_BUFF_SIZE);
 		} finally {
 			if (gzStream != null) {
 				gzStream.close();
 			}
-			if (biStream != null) {
-				biStream.close();
-			}
+			istream.close();
 		}
 	}
 
 	/**
-	 * Decompreses one gzipped file into another file.
+	 * Decompreses one gzipped file into another file. The decompression runs in a separate thread from the writing.
 	 *
 	 * @param toDecompress
 	 * @param destinationFile
@@ -92,9 +93,9 @@ public final class GZipUtilities {
 		OutputStream ostream = null;
 		try {
 
-			ostream = new BufferedOutputStream(new FileOutputStream(destinationFile), BUFF_SIZE);
-			istream = getCompressedFileAsStream(toDecompress);
-			transferStream(istream, ostream);
+			ostream = new FileOutputStream(destinationFile);
+			istream = new ReadAheadInputStream(getCompressedFileAsStream(toDecompress), LARGE_BUFF_SIZE, READ_AHEAD_CHUNKS, "gunzip-" + toDecompress.getName());
+			transferStream(istream, ostream, LARGE_BUFF_SIZE);
 		} finally {
 			if (istream != null) {
 				istream.close();
@@ -113,7 +114,7 @@ public final class GZipUtilities {
 	 * @throws IOException
 	 */
 	public static InputStream getCompressedFileAsStream(File file) throws IOException {
-		return new GZIPInputStream(new BufferedInputStream(new FileInputStream(file)));
+		return new GZIPInputStream(new FileInputStream(file), LARGE_BUFF_SIZE);
 	}
 
 	/**
@@ -124,7 +125,11 @@ public final class GZipUtilities {
 	 * @throws IOException
 	 */
 	protected static void transferStream(InputStream istream, OutputStream ostream) throws IOException {
-		byte[] inBuf = new byte[BUFF_SIZE];
+		transferStream(istream, ostream, BUFF_SIZE);
+	}
+
+	private static void transferStream(InputStream istream, OutputStream ostream, int bufferSize) throws IOException {
+		byte[] inBuf = new byte[bufferSize];
 		int readBytes = istream.read(inBuf);
 		while (readBytes >= 0) {
 			ostream.write(inBuf, 0, readBytes);
@@ -0,0 +1,267 @@
+package edu.mayo.mprc.utilities;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayDeque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Gzip compression using all the cores, the same way <tt>pigz</tt> does it.
+ * <p/>
+ * The data is cut into blocks of {@link #BLOCK_SIZE} that are deflated in parallel. Each block is primed with the last
+ * 32KB of the previous one, so the compression ratio stays close to a serial gzip. The blocks are ended with a sync
+ * flush instead of finishing the deflate stream, so they can be concatenated into a single standard gzip member
+ * that any gunzip can read. The CRC of the data is computed by the writing thread.
+ * <p/>
+ * The sync flush needs Java 7. On older Java, the data is compressed serially by a plain {@link GZIPOutputStream}.
+ * Writing each block as a separate gzip member would be standard as well, but a reader on Java 6 sees only the first
+ * member.
+ * <p/>
+ * At most {@link #MAX_PENDING_BLOCKS} blocks are being compressed at once, so the memory use is bounded.
+ */
+public final class ParallelGZIPOutputStream extends OutputStream {
+	public static final int BLOCK_SIZE = 128 * 1024;
+	private static final int DICTIONARY_SIZE = 32 * 1024;
+
+	private static final int THREADS = Runtime.getRuntime().availableProcessors();
+	private static final int MAX_PENDING_BLOCKS = THREADS * 2;
+	private static final ExecutorService COMPRESSORS = Executors.newFixedThreadPool(THREADS,
+			new ThreadFactoryBuilder()
+					.setDaemon(true)
+					.setNameFormat("gzip-%d")
+					.build());
+
+	/**
+	 * Deflater.SYNC_FLUSH, available from Java 7.
+	 */
+	private static final int SYNC_FLUSH = 2;
+	private static final Method DEFLATE_WITH_FLUSH = findDeflateWithFlush();
+
+	private static final byte[] HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, 0};
+
+	private final OutputStream out;
+	private final int level;
+	/**
+	 * Serial compression used when the sync flush is not available, null otherwise.
+	 */
+	private final GZIPOutputStream serial;
+	private final ArrayDeque<Future<ByteArrayOutputStream>> pending = new ArrayDeque<Future<ByteArrayOutputStream>>();
+	private final CRC32 crc = new CRC32();
+	private final byte[] oneByte = new byte[1];
+
+	private byte[] block = new byte[BLOCK_SIZE];
+	private int blockFill;
+	private byte[] dictionary;
+	private long totalIn;
+	private boolean headerWritten;
+	private boolean closed;
+
+	public ParallelGZIPOutputStream(OutputStream out) throws IOException {
+		this(out, Deflater.DEFAULT_COMPRESSION);
+	}
+
+	/**
+	 * @param out   Stream to write the compressed data to. Closed when this stream is closed.
+	 * @param level Deflate compression level.
+	 */
+	public ParallelGZIPOutputStream(OutputStream out, int level) throws IOException {
+		this(out, level, DEFLATE_WITH_FLUSH != null);
+	}
+
+	/**
+	 * @param parallel False to compress serially, as if the sync flush was not available.
+	 */
+	ParallelGZIPOutputStream(OutputStream out, int level, boolean parallel) throws IOException {
+		this.out = out;
+		this.level = level;
+		serial = parallel ? null : new LeveledGZIPOutputStream(out, level);
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		oneByte[0] = (byte) b;
+		write(oneByte, 0, 1);
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		if (closed) {
+			throw new IOException("The stream is closed");
+		}
+		if (serial != null) {
+			serial.write(b, off, len);
+			return;
+		}
+		while (len > 0) {
+			final int toCopy = Math.min(len, block.length - blockFill);
+			System.arraycopy(b, off, block, blockFill, toCopy);
+			blockFill += toCopy;
+			off += toCopy;
+			len -= toCopy;
+			if (blockFill == block.length) {
+				submitBlock(false);
+			}
+		}
+	}
+
+	/**
+	 * Writes out the blocks compressed so far. The data in the unfinished block is not compressed yet.
+	 */
+	@Override
+	public void flush() throws IOException {
+		if (serial != null) {
+			serial.flush();
+			return;
+		}
+		while (!pending.isEmpty()) {
+			writeFirstPending();
+		}
+		out.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		if (serial != null) {
+			serial.close();
+			return;
+		}
+		try {
+			submitBlock(true);
+			while (!pending.isEmpty()) {
+				writeFirstPending();
+			}
+			writeTrailer(out, crc.getValue(), totalIn);
+		} finally {
+			for (final Future<ByteArrayOutputStream> future : pending) {
+				future.cancel(true);
+			}
+			pending.clear();
+			out.close();
+		}
+	}
+
+	private void submitBlock(final boolean last) throws IOException {
+		final byte[] input = block;
+		final int length = blockFill;
+		final byte[] blockDictionary = dictionary;
+		crc.update(input, 0, length);
+		totalIn += length;
+		if (length >= DICTIONARY_SIZE) {
+			dictionary = new byte[DICTIONARY_SIZE];
+			System.arraycopy(input, length - DICTIONARY_SIZE, dictionary, 0, DICTIONARY_SIZE);
+		}
+		block = new byte[BLOCK_SIZE];
+		blockFill = 0;
+
+		pending.add(COMPRESSORS.submit(new Callable<ByteArrayOutputStream>() {
+			@Override
+			public ByteArrayOutputStream call() throws IOException {
+				return deflateBlock(input, length, blockDictionary, last);
+			}
+		}));
+		if (pending.size() >= MAX_PENDING_BLOCKS) {
+			writeFirstPending();
+		}
+	}
+
+	private void writeFirstPending() throws IOException {
+		if (!headerWritten) {
+			out.write(HEADER);
+			headerWritten = true;
+		}
+		final Future<ByteArrayOutputStream> future = pending.removeFirst();
+		try {
+			future.get().writeTo(out);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while compressing", e);
+		} catch (ExecutionException e) {
+			throw new IOException("Could not compress", e.getCause());
+		}
+	}
+
+	/**
+	 * Raw deflate of one block, ended with a sync flush so the next block can follow, or finished if this is the last one.
+	 */
+	private ByteArrayOutputStream deflateBlock(byte[] input, int length, byte[] blockDictionary, boolean last) throws IOException {
+		final ByteArrayOutputStream result = new ByteArrayOutputStream(length / 2 + 64);
+		final Deflater deflater = new Deflater(level, true);
+		try {
+			if (blockDictionary != null) {
+				deflater.setDictionary(blockDictionary);
+			}
+			deflater.setInput(input, 0, length);
+			final byte[] buffer = new byte[Math.max(length / 2, 1024)];
+			if (last) {
+				deflater.finish();
+				while (!deflater.finished()) {
+					final int produced = deflater.deflate(buffer);
+					result.write(buffer, 0, produced);
+				}
+			} else {
+				int produced;
+				do {
+					produced = syncFlush(deflater, buffer);
+					result.write(buffer, 0, produced);
+				} while (produced == buffer.length);
+			}
+		} finally {
+			deflater.end();
+		}
+		return result;
+	}
+
+	private static int syncFlush(Deflater deflater, byte[] buffer) throws IOException {
+		try {
+			return (Integer) DEFLATE_WITH_FLUSH.invoke(deflater, buffer, 0, buffer.length, SYNC_FLUSH);
+		} catch (IllegalAccessException e) {
+			throw new IOException("Could not flush the deflater", e);
+		} catch (InvocationTargetException e) {
+			throw new IOException("Could not flush the deflater", e.getCause());
+		}
+	}
+
+	private static void writeTrailer(OutputStream out, long crc, long totalIn) throws IOException {
+		writeInt(out, (int) crc);
+		writeInt(out, (int) totalIn);
+	}
+
+	private static void writeInt(OutputStream out, int value) throws IOException {
+		out.write(value & 0xff);
+		out.write((value >> 8) & 0xff);
+		out.write((value >> 16) & 0xff);
+		out.write((value >> 24) & 0xff);
+	}
+
+	private static Method findDeflateWithFlush() {
+		try {
+			return Deflater.class.getMethod("deflate", byte[].class, int.class, int.class, int.class);
+		} catch (NoSuchMethodException ignore) {
+			// SWALLOWED: Java 6, the data is compressed serially
+			return null;
+		}
+	}
+
+	private static final class LeveledGZIPOutputStream extends GZIPOutputStream {
+		private LeveledGZIPOutputStream(OutputStream out, int level) throws IOException {
+			super(out);
+			def.setLevel(level);
+		}
+	}
+}
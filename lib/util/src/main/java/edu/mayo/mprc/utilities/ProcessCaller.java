@@ -6,6 +6,7 @@ import edu.mayo.mprc.MprcException;
 import org.apache.log4j.Level;
 import org.apache.log4j.Logger;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.text.DecimalFormat;
@@ -30,7 +31,8 @@ import java.util.concurrent.atomic.AtomicLong;
  * }
  * </pre>
  * <ul>
- * <li>Properly drain all outputs and either retain their values or just count the number of lines</li>
+ * <li>Properly drain all outputs and either retain their values or just count the number of lines. The outputs
+ * of all processes are drained by the shared {@link ProcessOutputPump}, optionally saved to a file</li>
  * <li>Properly close all streams</li>
  * <li>Call {@link Process#destroy()} on termination of the process, after all the draining finished.
  * </ul>
@@ -55,6 +57,9 @@ public final class ProcessCaller implements Runnable {
 	private InputStream inputStream;
 	private StreamDrainer outputStreamDrainer;
 	private StreamDrainer errorStreamDrainer;
+	private int retainedLines = StreamDrainer.DEFAULT_RETAIN_SIZE;
+	private File outputFile;
+	private File errorFile;
 	private Timer timer;
 	private AtomicLong killAtTime = new AtomicLong();
 	private boolean killed;
@@ -165,20 +170,17 @@ public final class ProcessCaller implements Runnable {
 		if (outputLogger != null) {
 			LOGGER.debug("Running process:" + getCallDescription());
 		}
-		Thread outputPipe = null;
-		Thread errorPipe = null;
+		ProcessOutputPump.Drain outputDrain = null;
+		ProcessOutputPump.Drain errorDrain = null;
+		boolean exited = false;
 		try {
 			process = builder.start();
 
-			outputStreamDrainer = new StreamDrainer(process.getInputStream(), outputLogger, Level.INFO,
-					retainedLogLines(), outputMonitor);
-			outputPipe = new Thread(outputStreamDrainer, "Process stdout drain");
-			outputPipe.start();
+			outputStreamDrainer = new StreamDrainer(null, outputLogger, Level.INFO, retainedLogLines(), outputMonitor);
+			outputDrain = ProcessOutputPump.getDefault().drain(process.getInputStream(), outputStreamDrainer, outputFile);
 
-			errorStreamDrainer = new StreamDrainer(process.getErrorStream(), errorLogger, Level.ERROR,
-					retainedLogLines(), errorMonitor);
-			errorPipe = new Thread(errorStreamDrainer, "Process stderr drain");
-			errorPipe.start();
+			errorStreamDrainer = new StreamDrainer(null, errorLogger, Level.ERROR, retainedLogLines(), errorMonitor);
+			errorDrain = ProcessOutputPump.getDefault().drain(process.getErrorStream(), errorStreamDrainer, errorFile);
 
 			if (getInputStream() != null) {
 				ByteStreams.copy(getInputStream(), process.getOutputStream());
@@ -192,18 +194,19 @@ public final class ProcessCaller implements Runnable {
 			}
 
 			process.waitFor();
+			exited = true;
 		} catch (IOException e) {
 			throw new MprcException(e);
 		} finally {
 			// Wait for the pipes to stop piping - give them up to a minute
 			try {
-				if (outputPipe != null) {
-					outputPipe.join(PIPE_TIMEOUT);
-				}
-				if (errorPipe != null) {
-					errorPipe.join(PIPE_TIMEOUT);
+				if (exited) {
+					awaitDrain(outputDrain);
+					awaitDrain(errorDrain);
 				}
 			} finally {
+				cancelDrain(outputDrain);
+				cancelDrain(errorDrain);
 				if (process != null) {
 					FileUtilities.closeQuietly(process.getErrorStream());
 					FileUtilities.closeQuietly(process.getInputStream());
@@ -218,8 +221,21 @@ public final class ProcessCaller implements Runnable {
 		}
 	}
 
+	private static void awaitDrain(ProcessOutputPump.Drain drain) throws InterruptedException {
+		drain.processExited();
+		if (!drain.await(PIPE_TIMEOUT)) {
+			LOGGER.warn("Process output was not drained within " + PIPE_TIMEOUT / 1000 + " seconds");
+		}
+	}
+
+	private static void cancelDrain(ProcessOutputPump.Drain drain) {
+		if (drain != null) {
+			drain.cancel();
+		}
+	}
+
 	private int retainedLogLines() {
-		return isRetainLogs() ? StreamDrainer.DEFAULT_RETAIN_SIZE : 0;
+		return isRetainLogs() ? retainedLines : 0;
 	}
 
 	private static String commandListToString(List<String> command, final boolean windowsPlatform) {
@@ -283,6 +299,28 @@ public final class ProcessCaller implements Runnable {
 		this.retainLogs = retainLogs;
 	}
 
+	/**
+	 * @param retainedLines How many most recent lines of each output to keep for {@link #getOutputLog} and
+	 *                      {@link #getErrorLog}. {@link StreamDrainer#DEFAULT_RETAIN_SIZE} by default.
+	 */
+	public void setRetainedLines(int retainedLines) {
+		this.retainedLines = retainedLines;
+	}
+
+	/**
+	 * @param outputFile The complete standard output gets written to this file. Null (default) to keep only the most recent lines.
+	 */
+	public void setOutputFile(File outputFile) {
+		this.outputFile = outputFile;
+	}
+
+	/**
+	 * @param errorFile The complete standard error gets written to this file. Null (default) to keep only the most recent lines.
+	 */
+	public void setErrorFile(File errorFile) {
+		this.errorFile = errorFile;
+	}
+
 	/**
 	 * @return Description of failed call that lets the user to replicate it. Provides logs.
 	 */
@@ -0,0 +1,397 @@
+package edu.mayo.mprc.utilities;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import edu.mayo.mprc.MprcException;
+import org.apache.log4j.Logger;
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Drains the outputs of all the processes started by {@link ProcessCaller} using a few shared threads, instead of
+ * two threads per process.
+ * <p/>
+ * Each pump thread goes around its streams and reads only what {@link InputStream#available()} reports, so a quiet
+ * process never blocks the others. When no stream has data, the thread sleeps for a while, up to {@link #MAX_IDLE_SLEEP}
+ * milliseconds.
+ * <p/>
+ * A stream ends when it reports end of file, or when its process exited and there is nothing left to read. Output
+ * written after that by a process the child left running in the background is not collected.
+ * <p/>
+ * The lines are passed to a {@link StreamDrainer} that keeps only the most recent ones. The full output can be saved
+ * to a file as well.
+ * <p/>
+ * {@link LogMonitor}s can take their time, e.g. to report progress over the network, so a stream with a monitor
+ * hands its lines over to a thread of its own. When the lines waiting for the monitor hold more than
+ * {@link #MAX_PENDING_CHARS} characters, the stream is not read until it catches up, which slows down only the process
+ * being monitored.
+ * The drain is done once the monitor has seen all the lines.
+ */
+public final class ProcessOutputPump {
+	private static final Logger LOGGER = Logger.getLogger(ProcessOutputPump.class);
+
+	private static final int PUMP_THREADS = 2;
+	private static final int BUFFER_SIZE = 64 * 1024;
+	/**
+	 * Longer lines are split, so a process that never outputs a line end cannot exhaust the memory.
+	 */
+	private static final int MAX_LINE_LENGTH = 64 * 1024;
+	private static final long MIN_IDLE_SLEEP = 1;
+	private static final long MAX_IDLE_SLEEP = 20;
+	/**
+	 * The queue is bounded by size rather than line count, as the lines can be up to {@link #MAX_LINE_LENGTH} long.
+	 * It can overshoot by one read buffer.
+	 */
+	static final int MAX_PENDING_CHARS = 2 * 1024 * 1024;
+
+	/**
+	 * Passes lines to the {@link LogMonitor}s, a thread is used only while a monitor has lines to process.
+	 */
+	private static final ExecutorService MONITOR_SERVICE = Executors.newCachedThreadPool(
+			new ThreadFactoryBuilder()
+					.setDaemon(true)
+					.setNameFormat("process-output-monitor-%d")
+					.build());
+
+	private static final ProcessOutputPump DEFAULT = new ProcessOutputPump(PUMP_THREADS, "process-output-pump");
+
+	private final PumpThread[] threads;
+
+	/**
+	 * @param threadCount How many threads drain the streams.
+	 * @param name        Name prefix for the threads.
+	 */
+	ProcessOutputPump(int threadCount, String name) {
+		threads = new PumpThread[threadCount];
+		for (int i = 0; i < threadCount; i++) {
+			threads[i] = new PumpThread(name + "-" + i);
+			threads[i].start();
+		}
+	}
+
+	/**
+	 * @return The pump shared by all processes.
+	 */
+	public static ProcessOutputPump getDefault() {
+		return DEFAULT;
+	}
+
+	/**
+	 * Starts draining given stream.
+	 *
+	 * @param stream    Stream to drain, typically output of a process.
+	 * @param lines     Receives the lines of the stream.
+	 * @param spillFile If not null, the complete output is written to this file.
+	 * @return Drain to be notified when the process exits and waited for.
+	 */
+	public Drain drain(InputStream stream, StreamDrainer lines, File spillFile) {
+		final OutputStream spill;
+		try {
+			spill = spillFile == null ? null : new BufferedOutputStream(new FileOutputStream(spillFile), BUFFER_SIZE);
+		} catch (IOException e) {
+			throw new MprcException("Cannot write process output to " + spillFile.getAbsolutePath(), e);
+		}
+		final Drain drain = new Drain(stream, lines, spill);
+		PumpThread leastBusy = threads[0];
+		for (PumpThread thread : threads) {
+			if (thread.drains.size() < leastBusy.drains.size()) {
+				leastBusy = thread;
+			}
+		}
+		leastBusy.add(drain);
+		return drain;
+	}
+
+	/**
+	 * A single stream being drained.
+	 */
+	public static final class Drain {
+		private final InputStream stream;
+		private final StreamDrainer lines;
+		private final OutputStream spill;
+		/**
+		 * Lines waiting for the monitor, null if the lines are processed right away.
+		 */
+		private final BlockingQueue<String> pendingLines;
+		/**
+		 * Total length of the {@link #pendingLines}.
+		 */
+		private final AtomicInteger pendingChars = new AtomicInteger();
+		private final Runnable deliverPendingLines = new Runnable() {
+			@Override
+			public void run() {
+				deliverPendingLines();
+			}
+		};
+		private byte[] line = new byte[256];
+		private int lineLength;
+		private boolean afterCarriageReturn;
+		private volatile boolean processExited;
+		private volatile boolean canceled;
+		/**
+		 * The stream was read to its end, guarded by this.
+		 */
+		private boolean pumped;
+		/**
+		 * A task passing the pending lines to the monitor is scheduled, guarded by this.
+		 */
+		private boolean delivering;
+		/**
+		 * The stream was read and the monitor got all the lines, guarded by this.
+		 */
+		private boolean done;
+
+		private Drain(InputStream stream, StreamDrainer lines, OutputStream spill) {
+			this.stream = stream;
+			this.lines = lines;
+			this.spill = spill;
+			pendingLines = lines.hasLogMonitor() ? new LinkedBlockingQueue<String>() : null;
+		}
+
+		/**
+		 * Tells the drain that the process has exited, so once the stream has nothing to read, it is over.
+		 */
+		public void processExited() {
+			processExited = true;
+		}
+
+		/**
+		 * Waits until the whole stream is drained.
+		 *
+		 * @param timeout How long to wait in milliseconds.
+		 * @return True if the stream was drained, false on timeout.
+		 */
+		public synchronized boolean await(long timeout) throws InterruptedException {
+			final long until = System.currentTimeMillis() + timeout;
+			long remaining = timeout;
+			while (!done && remaining > 0) {
+				wait(remaining);
+				remaining = until - System.currentTimeMillis();
+			}
+			return done;
+		}
+
+		/**
+		 * Stops draining the stream, whatever is left in it is ignored.
+		 */
+		public void cancel() {
+			canceled = true;
+		}
+
+		/**
+		 * Reads what is available without blocking.
+		 *
+		 * @return True if something happened - data were read or the stream ended.
+		 */
+		private boolean pump(byte[] buffer) {
+			// Check the exit first, anything the process wrote before exiting is available by then
+			final boolean exited = processExited;
+			try {
+				if (canceled) {
+					if (pendingLines != null) {
+						String text;
+						while ((text = pendingLines.poll()) != null) {
+							pendingChars.addAndGet(-text.length());
+						}
+					}
+					finish();
+					return true;
+				}
+				if (pendingLines != null && pendingChars.get() >= MAX_PENDING_CHARS) {
+					// Let the monitor catch up
+					return false;
+				}
+				final int available = stream.available();
+				if (available > 0) {
+					final int read = stream.read(buffer, 0, Math.min(available, buffer.length));
+					if (read < 0) {
+						finish();
+					} else {
+						consume(buffer, read);
+					}
+					return true;
+				}
+				if (exited) {
+					finish();
+					return true;
+				}
+				return false;
+			} catch (IOException e) {
+				// SWALLOWED: the stream got closed, nothing more to read
+				LOGGER.debug("Process output ended with " + MprcException.getDetailedMessage(e));
+				finish();
+				return true;
+			}
+		}
+
+		private void consume(byte[] buffer, int length) throws IOException {
+			if (spill != null) {
+				spill.write(buffer, 0, length);
+			}
+			int start = 0;
+			for (int i = 0; i < length; i++) {
+				final byte b = buffer[i];
+				if (b == '\n' || b == '\r') {
+					if (b == '\n' && afterCarriageReturn) {
+						// Second half of \r\n
+						start = i + 1;
+						afterCarriageReturn = false;
+						continue;
+					}
+					append(buffer, start, i - start);
+					flushLine();
+					afterCarriageReturn = b == '\r';
+					start = i + 1;
+				} else {
+					afterCarriageReturn = false;
+				}
+			}
+			append(buffer, start, length - start);
+		}
+
+		private void append(byte[] buffer, int start, int length) {
+			int offset = start;
+			int remaining = length;
+			while (remaining > 0) {
+				final int chunk = Math.min(remaining, MAX_LINE_LENGTH - lineLength);
+				if (lineLength + chunk > line.length) {
+					line = Arrays.copyOf(line, Math.min(MAX_LINE_LENGTH, Math.max(line.length * 2, lineLength + chunk)));
+				}
+				System.arraycopy(buffer, offset, line, lineLength, chunk);
+				lineLength += chunk;
+				offset += chunk;
+				remaining -= chunk;
+				if (lineLength == MAX_LINE_LENGTH) {
+					flushLine();
+				}
+			}
+		}
+
+		private void flushLine() {
+			final String text = new String(line, 0, lineLength, Charset.defaultCharset());
+			lineLength = 0;
+			if (pendingLines == null) {
+				lines.addLine(text);
+				return;
+			}
+			pendingChars.addAndGet(text.length());
+			pendingLines.add(text);
+			synchronized (this) {
+				if (delivering) {
+					return;
+				}
+				delivering = true;
+			}
+			MONITOR_SERVICE.execute(deliverPendingLines);
+		}
+
+		/**
+		 * Runs on the monitor thread, passes the lines to the monitor until there are none left.
+		 */
+		private void deliverPendingLines() {
+			while (true) {
+				String text;
+				while ((text = pendingLines.poll()) != null) {
+					pendingChars.addAndGet(-text.length());
+					try {
+						lines.addLine(text);
+					} catch (Exception e) {
+						// SWALLOWED: a failing monitor must not stop the process output from being collected
+						LOGGER.error("Failed processing process output", e);
+					}
+				}
+				synchronized (this) {
+					if (pendingLines.isEmpty()) {
+						delivering = false;
+						if (pumped) {
+							done = true;
+							notifyAll();
+						}
+						return;
+					}
+				}
+			}
+		}
+
+		private void finish() {
+			if (lineLength > 0) {
+				flushLine();
+			}
+			FileUtilities.closeQuietly(spill);
+			synchronized (this) {
+				pumped = true;
+				if (!delivering) {
+					done = true;
+					notifyAll();
+				}
+			}
+		}
+
+		private synchronized boolean isPumped() {
+			return pumped;
+		}
+	}
+
+	private static final class PumpThread extends Thread {
+		private final List<Drain> drains = new CopyOnWriteArrayList<Drain>();
+		private final byte[] buffer = new byte[BUFFER_SIZE];
+
+		private PumpThread(String name) {
+			super(name);
+			setDaemon(true);
+		}
+
+		public void add(Drain drain) {
+			drains.add(drain);
+			synchronized (this) {
+				notifyAll();
+			}
+		}
+
+		@Override
+		public void run() {
+			long sleep = MIN_IDLE_SLEEP;
+			while (true) {
+				try {
+					boolean busy = false;
+					for (Drain drain : drains) {
+						try {
+							busy |= drain.pump(buffer);
+						} catch (Exception e) {
+							// SWALLOWED: one failing monitor must not stop draining the other processes
+							LOGGER.error("Failed processing process output", e);
+							drain.finish();
+						}
+						if (drain.isPumped()) {
+							drains.remove(drain);
+						}
+					}
+					if (busy) {
+						sleep = MIN_IDLE_SLEEP;
+						continue;
+					}
+					synchronized (this) {
+						if (drains.isEmpty()) {
+							wait();
+							sleep = MIN_IDLE_SLEEP;
+						} else {
+							wait(sleep);
+							sleep = Math.min(sleep * 2, MAX_IDLE_SLEEP);
+						}
+					}
+				} catch (InterruptedException e) {
+					// SWALLOWED: the pump lives as long as the JVM
+					LOGGER.debug("Process output pump interrupted");
+				}
+			}
+		}
+	}
+}
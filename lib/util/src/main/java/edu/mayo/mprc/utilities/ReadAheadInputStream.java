@@ -0,0 +1,158 @@
+package edu.mayo.mprc.utilities;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Reads the underlying stream in a background thread, in large chunks, ahead of the consumer.
+ * <p/>
+ * Useful when producing the data is expensive (e.g. gzip decompression) and the consumer
+ * does substantial work on it as well - both can then run at the same time.
+ * <p/>
+ * The chunks are recycled, so the memory use is bounded by <code>chunkCount * chunkSize</code>.
+ */
+public final class ReadAheadInputStream extends InputStream {
+	private static final Chunk END_OF_STREAM = new Chunk(0);
+
+	private final InputStream source;
+	private final BlockingQueue<Chunk> filled;
+	private final BlockingQueue<Chunk> empty;
+	private final Thread reader;
+
+	private volatile IOException failure;
+	private volatile boolean closed;
+
+	private Chunk current;
+	private int currentPosition;
+	private boolean endOfStream;
+
+	/**
+	 * @param source     Stream to read ahead. Closed when this stream is closed.
+	 * @param chunkSize  How many bytes to read at once.
+	 * @param chunkCount How many chunks can be read ahead.
+	 * @param threadName Name of the background reading thread.
+	 */
+	public ReadAheadInputStream(InputStream source, int chunkSize, int chunkCount, String threadName) {
+		this.source = source;
+		filled = new ArrayBlockingQueue<Chunk>(chunkCount + 1);
+		empty = new ArrayBlockingQueue<Chunk>(chunkCount);
+		for (int i = 0; i < chunkCount; i++) {
+			empty.add(new Chunk(chunkSize));
+		}
+		reader = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				readAhead();
+			}
+		}, threadName);
+		reader.setDaemon(true);
+		reader.start();
+	}
+
+	private void readAhead() {
+		try {
+			while (!closed) {
+				final Chunk chunk = empty.take();
+				chunk.length = 0;
+				while (chunk.length < chunk.data.length) {
+					final int read = source.read(chunk.data, chunk.length, chunk.data.length - chunk.length);
+					if (read < 0) {
+						break;
+					}
+					chunk.length += read;
+				}
+				final boolean full = chunk.length == chunk.data.length;
+				if (chunk.length > 0) {
+					filled.put(chunk);
+				}
+				if (!full) {
+					break;
+				}
+			}
+		} catch (InterruptedException ignore) {
+			// SWALLOWED: we were closed
+			return;
+		} catch (IOException e) {
+			failure = e;
+		} catch (RuntimeException e) {
+			failure = new IOException("Could not read ahead", e);
+		}
+		try {
+			filled.put(END_OF_STREAM);
+		} catch (InterruptedException ignore) {
+			// SWALLOWED: we were closed
+		}
+	}
+
+	/**
+	 * Make sure there is something to read in {@link #current}.
+	 *
+	 * @return False at the end of the stream.
+	 */
+	private boolean nextChunk() throws IOException {
+		if (endOfStream) {
+			return false;
+		}
+		if (current != null && currentPosition < current.length) {
+			return true;
+		}
+		if (current != null) {
+			empty.offer(current);
+		}
+		try {
+			current = filled.take();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for data");
+		}
+		currentPosition = 0;
+		if (current == END_OF_STREAM) {
+			endOfStream = true;
+			if (failure != null) {
+				throw failure;
+			}
+			return false;
+		}
+		return true;
+	}
+
+	@Override
+	public int read() throws IOException {
+		if (!nextChunk()) {
+			return -1;
+		}
+		return current.data[currentPosition++] & 0xff;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0) {
+			return 0;
+		}
+		if (!nextChunk()) {
+			return -1;
+		}
+		final int toCopy = Math.min(len, current.length - currentPosition);
+		System.arraycopy(current.data, currentPosition, b, off, toCopy);
+		currentPosition += toCopy;
+		return toCopy;
+	}
+
+	@Override
+	public void close() throws IOException {
+		closed = true;
+		reader.interrupt();
+		source.close();
+	}
+
+	private static final class Chunk {
+		private final byte[] data;
+		private int length;
+
+		private Chunk(int size) {
+			data = new byte[size];
+		}
+	}
+}
@@ -93,6 +93,10 @@ public final class StreamDrainer implements Runnable {
 		}
 	}
 
+	boolean hasLogMonitor() {
+		return logMonitor != null;
+	}
+
 	/**
 	 * @return Returns abridged log that was collected - up to 100 last lines.
 	 */
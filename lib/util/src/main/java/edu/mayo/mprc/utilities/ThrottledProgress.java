@@ -0,0 +1,80 @@
+package edu.mayo.mprc.utilities;
+
+/**
+ * Reports progress of a long loop without paying for it on every iteration.
+ * <p/>
+ * The loop calls {@link #advance()} for each processed item, which only increments a counter. Every
+ * {@link #CHECK_EVERY} items the clock is checked, and the percentage is passed to the {@link Listener}
+ * at most once per given interval.
+ * <p/>
+ * Meant to be owned by the thread running the loop - it is not thread-safe.
+ */
+public final class ThrottledProgress {
+	/**
+	 * How many items to process between looking at the clock.
+	 */
+	public static final int CHECK_EVERY = 1024;
+
+	public interface Listener {
+		/**
+		 * @param percent Progress between 0 and 100.
+		 */
+		void progressChanged(float percent);
+	}
+
+	private final Listener listener;
+	private final long total;
+	private final long minIntervalMillis;
+
+	private long done;
+	private long nextCheck = CHECK_EVERY;
+	private long lastReport;
+
+	/**
+	 * @param listener          Gets the progress.
+	 * @param total             Total amount of items. If not positive, the progress is reported as zero.
+	 * @param minIntervalMillis Minimum time between two reports.
+	 */
+	public ThrottledProgress(Listener listener, long total, long minIntervalMillis) {
+		this.listener = listener;
+		this.total = total;
+		this.minIntervalMillis = minIntervalMillis;
+	}
+
+	public void advance() {
+		if (++done >= nextCheck) {
+			check();
+		}
+	}
+
+	public void advance(long items) {
+		done += items;
+		if (done >= nextCheck) {
+			check();
+		}
+	}
+
+	/**
+	 * Reports the final progress regardless of the time elapsed since the last report.
+	 */
+	public void finish() {
+		report();
+	}
+
+	public long getDone() {
+		return done;
+	}
+
+	private void check() {
+		nextCheck = done + CHECK_EVERY;
+		final long now = System.currentTimeMillis();
+		if (now - lastReport >= minIntervalMillis) {
+			lastReport = now;
+			report();
+		}
+	}
+
+	private void report() {
+		listener.progressChanged(total <= 0 ? 0f : Math.min(100f, 100f * done / total));
+	}
+}
@@ -0,0 +1,72 @@
+package edu.mayo.mprc.utilities;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.File;
+
+public final class ContentHashIndexTest {
+
+	@Test
+	public void shouldFindIdenticalFile() {
+		final File folder = FileUtilities.createTempFolder();
+		final File other = FileUtilities.createTempFolder();
+		try {
+			final File existing = new File(folder, "existing.fasta");
+			FileUtilities.writeStringToFile(existing, ">a\nABC\n", true);
+			final File sameLength = new File(folder, "same-length.fasta");
+			FileUtilities.writeStringToFile(sameLength, ">b\nABC\n", true);
+
+			final File result = new File(other, "result.fasta");
+			FileUtilities.writeStringToFile(result, ">a\nABC\n", true);
+
+			final ContentHashIndex index = ContentHashIndex.forFolder(folder);
+			Assert.assertEquals(index.findIdentical(result), existing);
+			Assert.assertTrue(new File(folder, ContentHashIndex.INDEX_FILE_NAME).exists());
+			Assert.assertEquals(folder.list().length, 3, "No temporary index files are left behind");
+
+			FileUtilities.writeStringToFile(result, ">c\nABC\n", true);
+			Assert.assertNull(index.findIdentical(result));
+		} finally {
+			FileUtilities.cleanupTempFile(folder);
+			FileUtilities.cleanupTempFile(other);
+		}
+	}
+
+	@Test
+	public void shouldUseRecordedHash() {
+		final File folder = FileUtilities.createTempFolder();
+		try {
+			final File added = new File(folder, "added.fasta");
+			FileUtilities.writeStringToFile(added, ">a\nABC\n", true);
+			final ContentHashIndex index = ContentHashIndex.forFolder(folder);
+			index.add(added, ContentHashIndex.hash(added));
+
+			final File copy = new File(folder, "copy.fasta");
+			FileUtilities.writeStringToFile(copy, ">a\nABC\n", true);
+			Assert.assertEquals(index.findIdentical(copy, ContentHashIndex.hash(copy)), added);
+			Assert.assertEquals(index.findIdentical(added, ContentHashIndex.hash(added)), copy, "Never returns the file itself");
+		} finally {
+			FileUtilities.cleanupTempFile(folder);
+		}
+	}
+
+	@Test
+	public void shouldForgetChangedFiles() {
+		final File folder = FileUtilities.createTempFolder();
+		try {
+			final File file = new File(folder, "file.fasta");
+			FileUtilities.writeStringToFile(file, ">a\nABC\n", true);
+			final ContentHashIndex index = ContentHashIndex.forFolder(folder);
+			final String originalHash = ContentHashIndex.hash(file);
+			index.add(file, originalHash);
+
+			FileUtilities.writeStringToFile(file, ">a\nABCD\n", true);
+			final File query = new File(folder, "query.fasta");
+			FileUtilities.writeStringToFile(query, ">a\nABC\n", true);
+			Assert.assertNull(index.findIdentical(query, originalHash), "The changed file must not match its old hash");
+		} finally {
+			FileUtilities.cleanupTempFile(folder);
+		}
+	}
+}
@@ -0,0 +1,133 @@
+package edu.mayo.mprc.utilities;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public final class FileMonitorTest {
+	/**
+	 * Long enough for the tests not to pass by polling.
+	 */
+	private static final long SLOW_POLLING = 60 * 1000;
+	private static final long FAST_POLLING = 50;
+	/**
+	 * Some platforms implement the watch service by polling every 10 seconds.
+	 */
+	private static final long TIMEOUT = 15 * 1000;
+
+	private File folder;
+	private FileMonitor monitor;
+
+	@BeforeMethod
+	public void setup() {
+		folder = FileUtilities.createTempFolder();
+	}
+
+	@AfterMethod
+	public void teardown() {
+		if (monitor != null) {
+			monitor.stop();
+			monitor = null;
+		}
+		FileUtilities.cleanupTempFile(folder);
+	}
+
+	@Test
+	public void shouldNoticeChangeWithoutPolling() throws InterruptedException {
+		final File file = new File(folder, "watched.txt");
+		FileUtilities.writeStringToFile(file, "first", true);
+		monitor = new FileMonitor(SLOW_POLLING);
+		final Listener listener = new Listener();
+		monitor.addFile(file);
+		monitor.addListener(listener);
+		if (!monitor.isWatched(file)) {
+			// Java 6, nothing to test
+			return;
+		}
+
+		Assert.assertTrue(file.setLastModified(file.lastModified() - 10000));
+		Assert.assertEquals(listener.waitForChanges(1, TIMEOUT), Arrays.asList(file));
+	}
+
+	@Test
+	public void shouldCoalesceBurstOfChanges() throws InterruptedException {
+		final File file = new File(folder, "burst.txt");
+		FileUtilities.writeStringToFile(file, "first", true);
+		monitor = new FileMonitor(SLOW_POLLING);
+		final Listener listener = new Listener();
+		monitor.addFile(file);
+		monitor.addListener(listener);
+		if (!monitor.isWatched(file)) {
+			return;
+		}
+
+		final long modified = file.lastModified();
+		for (int i = 1; i <= 20; i++) {
+			Assert.assertTrue(file.setLastModified(modified - i * 1000));
+		}
+		Assert.assertEquals(listener.waitForChanges(1, TIMEOUT).size(), 1);
+		Thread.sleep(1000);
+		Assert.assertEquals(listener.getChanges().size(), 1, "The burst has to be reported once");
+	}
+
+	@Test
+	public void shouldPollCreatedFile() throws InterruptedException {
+		final File file = new File(folder, "created.txt");
+		monitor = new FileMonitor(FAST_POLLING, false);
+		final Listener listener = new Listener();
+		monitor.addFile(file);
+		monitor.addListener(listener);
+		Assert.assertFalse(monitor.isWatched(file));
+
+		FileUtilities.writeStringToFile(file, "created", true);
+		Assert.assertEquals(listener.waitForChanges(1, TIMEOUT), Arrays.asList(file));
+
+		FileUtilities.quietDelete(file);
+		Thread.sleep(FAST_POLLING * 10);
+		Assert.assertEquals(listener.getChanges().size(), 1, "Deletion is not a change");
+	}
+
+	@Test
+	public void shouldWatchDirectoryOnceCreated() throws InterruptedException {
+		final File file = new File(new File(folder, "later"), "file.txt");
+		monitor = new FileMonitor(FAST_POLLING);
+		final Listener listener = new Listener();
+		monitor.addFile(file);
+		monitor.addListener(listener);
+		Assert.assertFalse(monitor.isWatched(file));
+
+		FileUtilities.ensureFolderExists(file.getParentFile());
+		FileUtilities.writeStringToFile(file, "created", true);
+		Assert.assertEquals(listener.waitForChanges(1, TIMEOUT), Arrays.asList(file));
+	}
+
+	private static final class Listener implements FileListener {
+		private final List<File> changes = new ArrayList<File>();
+
+		@Override
+		public synchronized void fileChanged(File file) {
+			changes.add(file);
+			notifyAll();
+		}
+
+		public synchronized List<File> getChanges() {
+			return new ArrayList<File>(changes);
+		}
+
+		public synchronized List<File> waitForChanges(int count, long timeout) throws InterruptedException {
+			final long until = System.currentTimeMillis() + timeout;
+			long remaining = timeout;
+			while (changes.size() < count && remaining > 0) {
+				wait(remaining);
+				remaining = until - System.currentTimeMillis();
+			}
+			return getChanges();
+		}
+	}
+}
@@ -0,0 +1,223 @@
+package edu.mayo.mprc.utilities;
+
+import org.apache.log4j.Logger;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.*;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.Inflater;
+
+public final class ParallelGZIPOutputStreamTest {
+	private static final Logger LOGGER = Logger.getLogger(ParallelGZIPOutputStreamTest.class);
+
+	/**
+	 * Size of the generated archive for {@link #benchmarkCompression}. Set to 1024 for the full benchmark.
+	 */
+	private static final String BENCHMARK_MEGABYTES = "gzip.benchmark.megabytes";
+	private static final int MEGABYTE = 1024 * 1024;
+
+	@Test
+	public void shouldRoundTrip() throws IOException {
+		roundTrip(true);
+	}
+
+	@Test
+	public void shouldRoundTripWithoutSyncFlush() throws IOException {
+		roundTrip(false);
+	}
+
+	private static void roundTrip(boolean parallel) throws IOException {
+		final int[] sizes = {0, 1, ParallelGZIPOutputStream.BLOCK_SIZE - 1, ParallelGZIPOutputStream.BLOCK_SIZE,
+				ParallelGZIPOutputStream.BLOCK_SIZE * 7 / 2, ParallelGZIPOutputStream.BLOCK_SIZE * 40 + 17};
+		final Random random = new Random(1);
+		for (final int size : sizes) {
+			final byte[] data = archiveLikeData(random, size);
+			final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+			final OutputStream gzip = new ParallelGZIPOutputStream(compressed, Deflater.DEFAULT_COMPRESSION, parallel);
+			// Uneven writes cross the block boundaries
+			int written = 0;
+			while (written < size) {
+				final int length = Math.min(size - written, 1 + random.nextInt(50000));
+				gzip.write(data, written, length);
+				written += length;
+			}
+			gzip.close();
+
+			Assert.assertTrue(Arrays.equals(gunzip(compressed.toByteArray()), data), "Round trip of " + size + " bytes");
+			Assert.assertEquals(countMembers(compressed.toByteArray()), 1, "A single gzip member is expected");
+		}
+	}
+
+	@Test
+	public void shouldCompressAsWellAsSerialGzip() throws IOException {
+		final byte[] data = archiveLikeData(new Random(2), 4 * MEGABYTE);
+		final ByteArrayOutputStream parallel = new ByteArrayOutputStream();
+		final OutputStream gzip = new ParallelGZIPOutputStream(parallel);
+		gzip.write(data);
+		gzip.close();
+
+		final ByteArrayOutputStream serial = new ByteArrayOutputStream();
+		final GZIPOutputStream serialGzip = new GZIPOutputStream(serial);
+		serialGzip.write(data);
+		serialGzip.close();
+
+		Assert.assertTrue(parallel.size() < serial.size() * 1.05, "Parallel: " + parallel.size() + " serial: " + serial.size());
+	}
+
+	@Test
+	public void shouldBeReadableByGunzip() throws IOException {
+		if (FileUtilities.isWindowsPlatform()) {
+			return;
+		}
+		final File folder = FileUtilities.createTempFolder();
+		try {
+			final File original = new File(folder, "data.tar");
+			writeArchive(original, new Random(3), 3 * MEGABYTE);
+			final File compressed = new File(folder, "data.tar.gz");
+			GZipUtilities.compressFile(original, compressed);
+
+			final ProcessCaller caller = new ProcessCaller(new ProcessBuilder("gzip", "-t", compressed.getAbsolutePath()));
+			caller.run();
+			Assert.assertEquals(caller.getExitValue(), 0, caller.getErrorLog());
+
+			final File decompressed = new File(folder, "decompressed.tar");
+			GZipUtilities.decompressFile(compressed, decompressed);
+			Assert.assertTrue(FileUtilities.equalFiles(original, decompressed), "Decompressed file must match");
+		} finally {
+			FileUtilities.cleanupTempFile(folder);
+		}
+	}
+
+	/**
+	 * Compares the serial gzip with 2KB buffers GZipUtilities used to do with the current implementation,
+	 * on an archive of {@link #BENCHMARK_MEGABYTES} megabytes (default 32).
+	 */
+	@Test(groups = "benchmark")
+	public void benchmarkCompression() throws IOException {
+		final int megabytes = Integer.getInteger(BENCHMARK_MEGABYTES, 32);
+		final File folder = FileUtilities.createTempFolder();
+		try {
+			final File original = new File(folder, "archive.tar");
+			writeArchive(original, new Random(4), megabytes * MEGABYTE);
+
+			final File serial = new File(folder, "serial.tar.gz");
+			long start = System.currentTimeMillis();
+			OutputStream out = new GZIPOutputStream(new BufferedOutputStream(new FileOutputStream(serial)), GZipUtilities.BUFF_SIZE);
+			copy(new BufferedInputStream(new FileInputStream(original), GZipUtilities.BUFF_SIZE), out, GZipUtilities.BUFF_SIZE);
+			final long serialCompress = System.currentTimeMillis() - start;
+
+			final File parallel = new File(folder, "parallel.tar.gz");
+			start = System.currentTimeMillis();
+			GZipUtilities.compressFile(original, parallel);
+			final long parallelCompress = System.currentTimeMillis() - start;
+
+			start = System.currentTimeMillis();
+			copy(new GZIPInputStream(new BufferedInputStream(new FileInputStream(parallel))),
+					new BufferedOutputStream(new FileOutputStream(new File(folder, "serial.tar")), GZipUtilities.BUFF_SIZE), GZipUtilities.BUFF_SIZE);
+			final long serialDecompress = System.currentTimeMillis() - start;
+
+			start = System.currentTimeMillis();
+			GZipUtilities.decompressFile(parallel, new File(folder, "parallel.tar"));
+			final long parallelDecompress = System.currentTimeMillis() - start;
+
+			LOGGER.info(megabytes + " MB archive"
+					+ "\n\tgzip: " + throughput(megabytes, serialCompress) + ", " + serial.length() + " bytes"
+					+ "\n\tparallel gzip: " + throughput(megabytes, parallelCompress) + ", " + parallel.length() + " bytes"
+					+ "\n\tgunzip: " + throughput(megabytes, serialDecompress)
+					+ "\n\tread-ahead gunzip: " + throughput(megabytes, parallelDecompress));
+			Assert.assertTrue(FileUtilities.equalFiles(original, new File(folder, "parallel.tar")));
+		} finally {
+			FileUtilities.cleanupTempFile(folder);
+		}
+	}
+
+	private static String throughput(int megabytes, long millis) {
+		return millis + " ms (" + (megabytes * 1000L / Math.max(millis, 1)) + " MB/s)";
+	}
+
+	private static void copy(InputStream in, OutputStream out, int bufferSize) throws IOException {
+		try {
+			final byte[] buffer = new byte[bufferSize];
+			int read;
+			while ((read = in.read(buffer)) >= 0) {
+				out.write(buffer, 0, read);
+			}
+		} finally {
+			FileUtilities.closeQuietly(in);
+			out.close();
+		}
+	}
+
+	/**
+	 * Counts the gzip members by inflating them one after another.
+	 */
+	private static int countMembers(byte[] compressed) throws IOException {
+		int members = 0;
+		int offset = 0;
+		while (offset < compressed.length) {
+			// Skip the 10 byte header, no optional fields are ever written
+			Assert.assertEquals(compressed[offset] & 0xff, 0x1f);
+			Assert.assertEquals(compressed[offset + 1] & 0xff, 0x8b);
+			final Inflater inflater = new Inflater(true);
+			inflater.setInput(compressed, offset + 10, compressed.length - offset - 10);
+			final byte[] buffer = new byte[8192];
+			try {
+				while (!inflater.finished()) {
+					inflater.inflate(buffer);
+				}
+			} catch (DataFormatException e) {
+				throw new IOException("Corrupted gzip member", e);
+			}
+			// The 8 byte trailer follows the deflate data
+			offset = compressed.length - inflater.getRemaining() + 8;
+			inflater.end();
+			members++;
+		}
+		return members;
+	}
+
+	private static byte[] gunzip(byte[] compressed) throws IOException {
+		final ByteArrayOutputStream result = new ByteArrayOutputStream();
+		copy(new GZIPInputStream(new ByteArrayInputStream(compressed)), result, 8192);
+		return result.toByteArray();
+	}
+
+	private static void writeArchive(File file, Random random, int size) throws IOException {
+		final OutputStream out = new BufferedOutputStream(new FileOutputStream(file));
+		try {
+			final int chunk = 16 * MEGABYTE;
+			for (int written = 0; written < size; written += chunk) {
+				out.write(archiveLikeData(random, Math.min(chunk, size - written)));
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Resembles a tar of .dta and .out files - 512 byte headers followed by lines of numbers.
+	 */
+	private static byte[] archiveLikeData(Random random, int size) {
+		final ByteArrayOutputStream result = new ByteArrayOutputStream(size + 1024);
+		int file = 0;
+		while (result.size() < size) {
+			final byte[] header = new byte[512];
+			final byte[] name = ("spectrum." + file + "." + file + ".2.dta").getBytes();
+			System.arraycopy(name, 0, header, 0, name.length);
+			result.write(header, 0, header.length);
+			final int lines = 50 + random.nextInt(200);
+			for (int line = 0; line < lines; line++) {
+				final byte[] text = (String.format("%.4f %.1f", 200 + random.nextDouble() * 1800, random.nextDouble() * 10000) + "\n").getBytes();
+				result.write(text, 0, text.length);
+			}
+			file++;
+		}
+		return Arrays.copyOf(result.toByteArray(), size);
+	}
+}
@@ -0,0 +1,194 @@
+package edu.mayo.mprc.utilities;
+
+import org.apache.log4j.Logger;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public final class ProcessOutputPumpTest {
+	private static final Logger LOGGER = Logger.getLogger(ProcessOutputPumpTest.class);
+	private static final int LINES = 100000;
+	private static final int PROCESSES = 8;
+	private static final long TIMEOUT = 60 * 1000;
+
+	private File folder;
+	private File script;
+
+	@BeforeClass
+	public void setup() {
+		folder = FileUtilities.createTempFolder();
+		script = new File(folder, "noisy.sh");
+		FileUtilities.writeStringToFile(script,
+				"i=0\n" +
+						"while [ $i -lt $1 ]; do\n" +
+						"  i=$((i+1))\n" +
+						"  echo \"out $i\"\n" +
+						"  echo \"err $i\" 1>&2\n" +
+						"done\n", true);
+	}
+
+	@AfterClass
+	public void teardown() {
+		FileUtilities.cleanupTempFile(folder);
+	}
+
+	@Test
+	public void shouldDrainManyNoisyProcesses() throws InterruptedException {
+		if (FileUtilities.isWindowsPlatform()) {
+			return;
+		}
+		final List<ProcessCaller> callers = new ArrayList<ProcessCaller>(PROCESSES);
+		final List<Thread> threads = new ArrayList<Thread>(PROCESSES);
+		final List<CountingMonitor> monitors = new ArrayList<CountingMonitor>(PROCESSES);
+		final long start = System.currentTimeMillis();
+		for (int i = 0; i < PROCESSES; i++) {
+			final ProcessCaller caller = new ProcessCaller(new ProcessBuilder("sh", script.getAbsolutePath(), String.valueOf(LINES)));
+			caller.setLogToConsole(false);
+			caller.setRetainLogs(true);
+			caller.setRetainedLines(10);
+			caller.setOutputFile(new File(folder, "out" + i + ".txt"));
+			final CountingMonitor monitor = new CountingMonitor();
+			caller.setErrorMonitor(monitor);
+			callers.add(caller);
+			monitors.add(monitor);
+			final Thread thread = new Thread(caller, "noisy-" + i);
+			threads.add(thread);
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.join(TIMEOUT);
+		}
+
+		for (int i = 0; i < PROCESSES; i++) {
+			final ProcessCaller caller = callers.get(i);
+			Assert.assertEquals(caller.getExitValue(), 0);
+			Assert.assertTrue(caller.getOutputLog().endsWith("\tout " + LINES + "\n"), "The tail has to end with the last line");
+			Assert.assertTrue(caller.getErrorLog().endsWith("\terr " + LINES + "\n"), "The tail has to end with the last line");
+			Assert.assertEquals(monitors.get(i).getLines(), LINES);
+
+			final File spill = new File(folder, "out" + i + ".txt");
+			Assert.assertEquals(spill.length(), expectedLength("out "), "The whole output has to be saved");
+		}
+		LOGGER.info(PROCESSES + " processes with " + LINES + " lines on each output took "
+				+ (System.currentTimeMillis() - start) + " ms");
+	}
+
+	@Test
+	public void shouldSplitLines() throws InterruptedException {
+		final byte[] longLine = new byte[200 * 1024];
+		Arrays.fill(longLine, (byte) 'x');
+		final String input = "dos\r\nmac\runix\n\nlong " + new String(longLine) + "\nlast";
+		final CountingMonitor monitor = new CountingMonitor();
+		final StreamDrainer lines = new StreamDrainer(null, null, null, 100, monitor);
+
+		final ProcessOutputPump.Drain drain = ProcessOutputPump.getDefault().drain(
+				new ByteArrayInputStream(input.getBytes()), lines, null);
+		drain.processExited();
+		Assert.assertTrue(drain.await(TIMEOUT));
+
+		Assert.assertTrue(lines.getLog().startsWith("dos\nmac\nunix\n\nlong xxx"), lines.getLog());
+		Assert.assertTrue(lines.getLog().endsWith("\nlast\n"), lines.getLog());
+		// The long line is split into 64K pieces
+		Assert.assertEquals(monitor.getLines(), 4 + 4 + 1);
+	}
+
+	@Test
+	public void shouldNotWaitForSlowMonitor() throws InterruptedException {
+		final ProcessOutputPump pump = new ProcessOutputPump(1, "slow-monitor-pump");
+		final CountDownLatch release = new CountDownLatch(1);
+		final CountingMonitor slowMonitor = new CountingMonitor() {
+			@Override
+			public void line(String line) {
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				super.line(line);
+			}
+		};
+		final ProcessOutputPump.Drain slow = pump.drain(new ByteArrayInputStream("a\nb\nc\n".getBytes()),
+				new StreamDrainer(null, null, null, 100, slowMonitor), null);
+		slow.processExited();
+
+		final CountingMonitor monitor = new CountingMonitor();
+		final ProcessOutputPump.Drain quick = pump.drain(new ByteArrayInputStream("d\ne\n".getBytes()),
+				new StreamDrainer(null, null, null, 100, monitor), null);
+		quick.processExited();
+
+		Assert.assertTrue(quick.await(TIMEOUT), "A blocked monitor must not hold up the other streams");
+		Assert.assertEquals(monitor.getLines(), 2);
+		Assert.assertFalse(slow.await(100), "The drain is done only once the monitor got all the lines");
+
+		release.countDown();
+		Assert.assertTrue(slow.await(TIMEOUT));
+		Assert.assertEquals(slowMonitor.getLines(), 3);
+	}
+
+	@Test
+	public void shouldStopReadingWhenMonitorFallsBehind() throws InterruptedException {
+		final ProcessOutputPump pump = new ProcessOutputPump(1, "bounded-monitor-pump");
+		final CountDownLatch release = new CountDownLatch(1);
+		final CountingMonitor slowMonitor = new CountingMonitor() {
+			@Override
+			public void line(String line) {
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				super.line(line);
+			}
+		};
+		// Long lines, so a bound on the line count alone would let far more than the limit pile up
+		final int lineLength = 32 * 1024;
+		final int lineCount = ProcessOutputPump.MAX_PENDING_CHARS * 4 / lineLength;
+		final byte[] input = new byte[lineCount * lineLength];
+		Arrays.fill(input, (byte) 'x');
+		for (int i = lineLength - 1; i < input.length; i += lineLength) {
+			input[i] = '\n';
+		}
+		final ByteArrayInputStream stream = new ByteArrayInputStream(input);
+		final ProcessOutputPump.Drain drain = pump.drain(stream, new StreamDrainer(null, null, null, 10, slowMonitor), null);
+		drain.processExited();
+
+		Assert.assertFalse(drain.await(500), "The monitor is blocked");
+		final int read = input.length - stream.available();
+		Assert.assertTrue(read <= ProcessOutputPump.MAX_PENDING_CHARS + 2 * 64 * 1024,
+				"Read " + read + " bytes while the monitor was blocked");
+
+		release.countDown();
+		Assert.assertTrue(drain.await(TIMEOUT));
+		Assert.assertEquals(slowMonitor.getLines(), lineCount);
+	}
+
+	private static long expectedLength(String prefix) {
+		long length = 0;
+		for (int i = 1; i <= LINES; i++) {
+			length += prefix.length() + String.valueOf(i).length() + 1;
+		}
+		return length;
+	}
+
+	private static class CountingMonitor implements LogMonitor {
+		private final AtomicInteger lines = new AtomicInteger();
+
+		@Override
+		public void line(String line) {
+			lines.incrementAndGet();
+		}
+
+		public int getLines() {
+			return lines.get();
+		}
+	}
+}
@@ -0,0 +1,52 @@
+package edu.mayo.mprc.utilities;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public final class ThrottledProgressTest {
+
+	private static final class Recorder implements ThrottledProgress.Listener {
+		private final List<Float> reports = new ArrayList<Float>();
+
+		@Override
+		public void progressChanged(float percent) {
+			reports.add(percent);
+		}
+	}
+
+	@Test
+	public void shouldReportOnlyAtCheckpoints() {
+		final Recorder recorder = new Recorder();
+		final ThrottledProgress progress = new ThrottledProgress(recorder, ThrottledProgress.CHECK_EVERY * 4, 0);
+		for (int i = 0; i < ThrottledProgress.CHECK_EVERY * 4; i++) {
+			progress.advance();
+		}
+		Assert.assertEquals(recorder.reports.size(), 4);
+		Assert.assertEquals(recorder.reports.get(0), 25f);
+		Assert.assertEquals(recorder.reports.get(3), 100f);
+	}
+
+	@Test
+	public void shouldThrottleByTime() {
+		final Recorder recorder = new Recorder();
+		final ThrottledProgress progress = new ThrottledProgress(recorder, 1000000, 60 * 1000);
+		progress.advance(500000);
+		progress.advance(ThrottledProgress.CHECK_EVERY);
+		progress.advance(ThrottledProgress.CHECK_EVERY);
+		Assert.assertEquals(recorder.reports.size(), 1, "Only the first checkpoint fits into the interval");
+		progress.finish();
+		Assert.assertEquals(recorder.reports.size(), 2);
+		Assert.assertEquals(progress.getDone(), 500000L + 2 * ThrottledProgress.CHECK_EVERY);
+	}
+
+	@Test
+	public void shouldReportZeroForUnknownTotal() {
+		final Recorder recorder = new Recorder();
+		final ThrottledProgress progress = new ThrottledProgress(recorder, -1, 0);
+		progress.advance(ThrottledProgress.CHECK_EVERY);
+		Assert.assertEquals(recorder.reports.get(0), 0f);
+	}
+}
@@ -14,6 +14,7 @@ import edu.mayo.mprc.daemon.progress.ProgressReporter;
 import edu.mayo.mprc.enginedeployment.DeploymentRequest;
 import edu.mayo.mprc.enginedeployment.DeploymentResult;
 import edu.mayo.mprc.enginedeployment.DeploymentService;
+import edu.mayo.mprc.fasta.FastaFingerprint;
 import edu.mayo.mprc.utilities.FileUtilities;
 import edu.mayo.mprc.utilities.ProcessCaller;
 import org.apache.log4j.Logger;
@@ -139,6 +140,41 @@ public final class OmssaDeploymentService extends DeploymentService<DeploymentRe
 		}
 	}
 
+	/**
+	 * The formatdb index files do not depend on the database name, so an index of a database with identical contents
+	 * deployed under a different name can be copied (hard-linked if possible) instead of running formatdb again.
+	 *
+	 * @param toDeploy    The FASTA file we are deploying.
+	 * @param fingerprint Fingerprint of its contents.
+	 * @return true if a complete index was reused.
+	 */
+	protected boolean reuseIdenticalDeployment(File toDeploy, FastaFingerprint fingerprint) {
+		final File identical = findIdenticalDeployment(toDeploy, fingerprint);
+		if (identical == null) {
+			return false;
+		}
+		for (String extension : indexExtensions) {
+			if (!new File(identical.getAbsolutePath() + extension).exists()) {
+				LOGGER.debug("OMSSA index of identical database " + identical.getAbsolutePath() + " is incomplete, cannot reuse it.");
+				return false;
+			}
+		}
+		final List<File> reused = new ArrayList<File>(indexExtensions.size());
+		for (String extension : indexExtensions) {
+			final File target = new File(toDeploy.getAbsolutePath() + extension);
+			if (!FileUtilities.linkOrCopy(new File(identical.getAbsolutePath() + extension), target, /*overwrite*/true, /*symLink*/false)) {
+				LOGGER.warn("Could not reuse OMSSA index of " + identical.getAbsolutePath() + ", running formatdb instead.");
+				for (File file : reused) {
+					FileUtilities.quietDelete(file);
+				}
+				return false;
+			}
+			reused.add(target);
+		}
+		LOGGER.info("OMSSA database " + toDeploy.getName() + " reuses the index of " + identical.getAbsolutePath());
+		return true;
+	}
+
 	public DeploymentResult performDeployment(DeploymentRequest request) {
 		LOGGER.info("Deploying OMSSA database " + request.getShortName());
 		DeploymentResult reportInto = new DeploymentResult();
@@ -166,9 +202,17 @@ public final class OmssaDeploymentService extends DeploymentService<DeploymentRe
 				return reportInto;
 			}
 
+			final FastaFingerprint fingerprint = getFingerprint(curationFile, toDeploy);
+			if (reuseIdenticalDeployment(toDeploy, fingerprint)) {
+				reportInto.addMessage("No indexing is required, an identical database was previously deployed.");
+				recordFingerprint(toDeploy, fingerprint);
+				reportInto.setGeneratedFiles(FileUtilities.getFilesFromFolder(toDeploy.getParentFile()));
+				return reportInto;
+			}
+
 			ProcessCaller caller = getFormatDBCaller(toDeploy);
 
-			caller.run(); //this will block until complete but that is OK since this daemon is a thread.
+			runIndexer(caller); //this will block until complete but that is OK since this daemon is a thread.
 
 			LOGGER.info("OMSSA database " + request.getShortName() + " is deployed");
 
@@ -176,6 +220,7 @@ public final class OmssaDeploymentService extends DeploymentService<DeploymentRe
 				throw new DaemonException("Non-zero exit value for format db call: " + caller.getFailedCallDescription());
 			}
 
+			recordFingerprint(toDeploy, fingerprint);
 			reportInto.setGeneratedFiles(FileUtilities.getFilesFromFolder(toDeploy.getParentFile()));
 
 			return reportInto;
@@ -208,6 +253,7 @@ public final class OmssaDeploymentService extends DeploymentService<DeploymentRe
 					&& FileUtilities.getFileNameWithoutExtension(deploymentFile).equals(deployedFastaFile.getName())
 					&& indexExtensions.contains("." + FileUtilities.getExtension(deploymentFile.getName())))
 					|| deploymentFile.getName().equals(deployedFastaFile.getName())
+					|| deploymentFile.equals(FastaFingerprint.getFingerprintFile(deployedFastaFile))
 					|| deploymentFile.getName().equals(FORMATDBEXEC_LOG_FILE_NAME)) {
 
 				if (FileUtilities.deleteNow(deploymentFile)) {
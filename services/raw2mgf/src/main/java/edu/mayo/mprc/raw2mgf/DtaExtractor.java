@@ -0,0 +1,16 @@
+package edu.mayo.mprc.raw2mgf;
+
+import java.io.File;
+
+/**
+ * Extracts a range of spectra as .dta files. Implemented by extract_msn, can be faked for testing.
+ * Must be safe to call from multiple threads at once, each with a different output folder.
+ */
+interface DtaExtractor {
+	/**
+	 * @param outputDir     Folder to write the .dta files to.
+	 * @param firstSpectrum First spectrum to extract.
+	 * @param lastSpectrum  Last spectrum to extract.
+	 */
+	void extract(File outputDir, long firstSpectrum, long lastSpectrum);
+}
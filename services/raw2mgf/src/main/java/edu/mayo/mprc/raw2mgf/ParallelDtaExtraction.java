@@ -0,0 +1,202 @@
+package edu.mayo.mprc.raw2mgf;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import edu.mayo.mprc.MprcException;
+import edu.mayo.mprc.utilities.FileUtilities;
+import org.apache.log4j.Logger;
+
+import java.io.File;
+import java.text.MessageFormat;
+import java.util.ArrayDeque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Extracts spectra in batches of given size, several batches at once, and appends them to an .mgf file in scan order.
+ * <p/>
+ * Each batch is extracted into its own temporary folder. As soon as a batch and all the batches before it are done,
+ * its .dta files are appended to the .mgf and deleted, so at most <code>threads</code> batches of .dta files
+ * are on the disk at any time.
+ * <p/>
+ * Without a last spectrum, the batches continue until one of them produces no .dta files. The batches started past that
+ * point are discarded.
+ */
+final class ParallelDtaExtraction {
+	private static final Logger LOGGER = Logger.getLogger(ParallelDtaExtraction.class);
+
+	private final DtaExtractor extractor;
+	private final File tempFolder;
+	private final int threads;
+	private final int batchSize;
+	private final File mgfFile;
+	private final boolean wineCleanup;
+
+	/**
+	 * @param extractor   Extracts the .dta files.
+	 * @param tempFolder  Batch folders are created here.
+	 * @param threads     How many batches to extract at once.
+	 * @param batchSize   How many spectra to extract in one batch.
+	 * @param mgfFile     The .dta files are appended to this file.
+	 * @param wineCleanup The .dta files come from wine and need the zero characters removed.
+	 */
+	ParallelDtaExtraction(DtaExtractor extractor, File tempFolder, int threads, int batchSize, File mgfFile, boolean wineCleanup) {
+		this.extractor = extractor;
+		this.tempFolder = tempFolder;
+		this.threads = Math.max(1, threads);
+		this.batchSize = batchSize;
+		this.mgfFile = mgfFile;
+		this.wineCleanup = wineCleanup;
+	}
+
+	/**
+	 * @param firstSpectrum First spectrum to extract.
+	 * @param lastSpectrum  Last spectrum to extract, null to extract until there are no more .dta files.
+	 * @return Number of extracted .dta files.
+	 */
+	public long run(long firstSpectrum, Long lastSpectrum) {
+		final ExecutorService executor = Executors.newFixedThreadPool(threads,
+				new ThreadFactoryBuilder()
+						.setDaemon(true)
+						.setNameFormat("extract_msn-%d")
+						.build());
+		final ArrayDeque<Batch> inFlight = new ArrayDeque<Batch>(threads);
+		long nextSpectrum = firstSpectrum;
+		boolean lastSubmitted = false;
+		long totalSpectraExtracted = 0;
+		try {
+			while (true) {
+				while (!lastSubmitted && inFlight.size() < threads) {
+					long lastInBatch = nextSpectrum + batchSize - 1;
+					if (lastSpectrum != null && lastInBatch >= lastSpectrum) {
+						lastInBatch = lastSpectrum;
+						lastSubmitted = true;
+					}
+					inFlight.add(submit(executor, nextSpectrum, lastInBatch));
+					nextSpectrum = lastInBatch + 1;
+				}
+				if (inFlight.isEmpty()) {
+					break;
+				}
+
+				final Batch batch = inFlight.removeFirst();
+				try {
+					final File[] dtaFiles = batch.getDtaFiles();
+					// Terminate if we could not find any .dta anymore
+					if (dtaFiles.length == 0) {
+						if (totalSpectraExtracted == 0) {
+							throw new MprcException("There were no .dta files present after extracting spectra " + firstSpectrum + " to " + batch.lastSpectrum);
+						}
+						break;
+					}
+					appendToMgf(batch, dtaFiles);
+					totalSpectraExtracted += dtaFiles.length;
+				} finally {
+					FileUtilities.cleanupTempFile(batch.folder);
+				}
+			}
+		} finally {
+			discard(inFlight);
+			executor.shutdownNow();
+		}
+		return totalSpectraExtracted;
+	}
+
+	private Batch submit(ExecutorService executor, final long firstSpectrum, final long lastSpectrum) {
+		final File folder = createBatchFolder();
+		final Future<File[]> future = executor.submit(new Callable<File[]>() {
+			@Override
+			public File[] call() {
+				LOGGER.debug("Extracting spectra " + firstSpectrum + " to " + lastSpectrum + " into " + folder.getAbsolutePath());
+				extractor.extract(folder, firstSpectrum, lastSpectrum);
+				return RawToMgfWorker.getDtaFiles(folder);
+			}
+		});
+		return new Batch(folder, lastSpectrum, future);
+	}
+
+	private File createBatchFolder() {
+		try {
+			return FileUtilities.createTempFolder(tempFolder, "raw2mgf", false);
+		} catch (Exception t) {
+			throw new MprcException("Cannot create temporary folder for raw->mgf conversion", t);
+		}
+	}
+
+	/**
+	 * Appends the .dta files to the .mgf, deletes them and moves the remaining files (logs) next to the .mgf.
+	 */
+	private void appendToMgf(Batch batch, File[] dtaFiles) {
+		final DTAToMGFConverter converter = new DTAToMGFConverter(dtaFiles, mgfFile);
+		converter.setWineCleanup(wineCleanup);
+		try {
+			converter.run();
+		} catch (Exception t) {
+			throw new MprcException("dta to MGF conversion failed", t);
+		}
+		copyRemainingFiles(batch.folder, mgfFile.getParentFile());
+		if (!mgfFile.isFile()) {
+			throw new MprcException("The MGF file does not exist " + mgfFile.getAbsolutePath());
+		}
+		if (mgfFile.length() == 0) {
+			throw new MprcException(
+					MessageFormat.format("Merging of DTAs resulted in mgf of zero length (merge {0} into {1})",
+							batch.folder, mgfFile.getAbsolutePath()));
+		}
+	}
+
+	private static void copyRemainingFiles(File fromFolder, File toFolder) {
+		final File[] files = fromFolder.listFiles();
+		if (files == null) {
+			return;
+		}
+		for (File file : files) {
+			try {
+				FileUtilities.copyFile(file, new File(toFolder, file.getName()), true);
+			} catch (Exception e) {
+				throw new MprcException("Error moving remaining files in batch converter", e);
+			}
+			FileUtilities.quietDelete(file);
+		}
+	}
+
+	/**
+	 * Waits for the batches we do not need anymore to finish, so they do not write into deleted folders, then deletes them.
+	 */
+	private static void discard(ArrayDeque<Batch> batches) {
+		for (Batch batch : batches) {
+			try {
+				batch.future.get();
+			} catch (Exception ignore) {
+				// SWALLOWED: the batch is past the end or we are failing already
+			}
+			FileUtilities.cleanupTempFile(batch.folder);
+		}
+		batches.clear();
+	}
+
+	private static final class Batch {
+		private final File folder;
+		private final long lastSpectrum;
+		private final Future<File[]> future;
+
+		private Batch(File folder, long lastSpectrum, Future<File[]> future) {
+			this.folder = folder;
+			this.lastSpectrum = lastSpectrum;
+			this.future = future;
+		}
+
+		public File[] getDtaFiles() {
+			try {
+				return future.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new MprcException("Interrupted while extracting .dta files", e);
+			} catch (ExecutionException e) {
+				throw new MprcException("Error extracting dta files", e.getCause());
+			}
+		}
+	}
+}
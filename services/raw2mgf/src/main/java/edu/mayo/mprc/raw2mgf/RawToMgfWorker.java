@@ -33,6 +33,9 @@ import static java.util.Arrays.sort;
  * <p/>
  * We filter out the -F and -L parameters out in {@link #cleanupFromToParams} (they specify first and last spectrum) and we substitute our
  * own limits, running extract_msn in multiple passes. We combine the resulting spectra into a .mgf file.
+ * <p/>
+ * Several passes can run at once, see {@link #setExtractMsnThreads}. The spectra of each pass are appended to the .mgf
+ * as soon as all the previous passes are done, see {@link ParallelDtaExtraction}.
  */
 public final class RawToMgfWorker implements Worker {
 	private static final Logger LOGGER = Logger.getLogger(RawToMgfWorker.class);
@@ -44,11 +47,13 @@ public final class RawToMgfWorker implements Worker {
 	private String wrapperScript;
 	private File xvfbWrapperScript;
 	private int spectrumBatchSize = 8000;
+	private int extractMsnThreads = 1;
 
 	public static final String TEMP_FOLDER = "tempFolder";
 	public static final String EXTRACT_MSN_EXECUTABLE = "extractMsnExecutable";
 	private static final String WRAPPER_SCRIPT = "wrapperScript";
 	private static final String XVFB_WRAPPER_SCRIPT = "xvfbWrapperScript";
+	private static final String EXTRACT_MSN_THREADS = "extractMsnThreads";
 
 	private static final int MAX_RAW_PATH_LENGTH = 100;
 
@@ -111,8 +116,7 @@ public final class RawToMgfWorker implements Worker {
 		// will use the temporary folder to get dta files then make mgf file in the
 		// output_dir
 		FileUtilities.ensureFolderExists(tempFolder);
-		File fulltempfolder = getMirrorFolderonTemp(tempFolder);
-		FileUtilities.ensureFolderExists(fulltempfolder);
+		FileUtilities.ensureFolderExists(mgfFile.getParentFile());
 
 		boolean temporaryLinkMade = false;
 		File temporaryRawFile = null;
@@ -130,44 +134,21 @@ public final class RawToMgfWorker implements Worker {
 			}
 		}
 
-		long currentSpectrum = firstSpectrum == null ? 1 : firstSpectrum;
-		long lastSpectrumInBatch = currentSpectrum + spectrumBatchSize - 1;
+		final File extractedRawFile = rawFile;
+		final File exMsnExe = getExtractMsnExecutable();
+		final DtaExtractor extractMsn = new DtaExtractor() {
+			@Override
+			public void extract(File outputDir, long firstSpectrum, long lastSpectrum) {
+				runExtractMsnJob(exMsnExe, outputDir, params, extractedRawFile, firstSpectrum, lastSpectrum, wrapperScript, xvfbWrapperScript.getAbsolutePath());
+			}
+		};
+		final boolean wine = wrapperScript != null && wrapperScript.length() > 0;
+		final ParallelDtaExtraction extraction = new ParallelDtaExtraction(extractMsn, tempFolder, getExtractMsnThreads(), spectrumBatchSize,
+				mgfFile, wine && !FileUtilities.isWindowsPlatform());
 
-		long totalSpectraExtracted = 0;
 		try {
-			while (currentSpectrum <= lastSpectrumInBatch) {
-				// Extract .dta files
-				File[] dtaFiles = null;
-
-				File ex_msn_exe = getExtractMsnExecutable();
-
-				FileUtilities.ensureFolderExists(mgfFile.getParentFile());
-
-				runExtractMsnJob(ex_msn_exe, fulltempfolder, params, rawFile, currentSpectrum, lastSpectrumInBatch, wrapperScript, xvfbWrapperScript.getAbsolutePath());
-
-				// Count how many extracted
-				dtaFiles = getDtaFiles(fulltempfolder);
-
-				// Terminate if we could not find any .dta anymore
-				if (dtaFiles.length == 0) {
-					if (totalSpectraExtracted == 0) {
-						throw new MprcException("There were no .dta files present in " + rawFile.getAbsolutePath());
-					}
-					break;
-				}
-
-				// Combine .dta to .mgf
-				final boolean wine = wrapperScript != null && wrapperScript.length() > 0;
-				dtaToMgf(fulltempfolder, dtaFiles, mgfFile, wine && !FileUtilities.isWindowsPlatform());
-
-				// Determine next batch position
-				totalSpectraExtracted += dtaFiles.length;
-				currentSpectrum = lastSpectrumInBatch + 1;
-				lastSpectrumInBatch = currentSpectrum + spectrumBatchSize - 1;
-				if (lastSpectrum != null) {
-					lastSpectrumInBatch = Math.min(lastSpectrumInBatch, lastSpectrum);
-				}
-			}
+			final long totalSpectraExtracted = extraction.run(firstSpectrum == null ? 1 : firstSpectrum, lastSpectrum);
+			LOGGER.debug("Raw2mgf: extracted " + totalSpectraExtracted + " spectra from " + rawFile.getAbsolutePath());
 		} catch (Exception we) {
 			throw new DaemonException("Error extracting dta files from " + batchWorkPacket.getInputFile(), we);
 		} finally {
@@ -244,7 +225,7 @@ public final class RawToMgfWorker implements Worker {
 	 * @param rawfile         - the raw file
 	 * @return Number of extracted spectra. If there are genuinely no spectra, returns 0. Throws an exception if things go wrong.
 	 */
-	synchronized void runExtractMsnJob(File fileToExec, File thermoOutputDir, String params, File rawfile, long firstSpectrum, long lastSpectrum, String wrapperScript, String xvfbWrapperScript) {
+	void runExtractMsnJob(File fileToExec, File thermoOutputDir, String params, File rawfile, long firstSpectrum, long lastSpectrum, String wrapperScript, String xvfbWrapperScript) {
 		final String spectrumRangeParams = (params.length() == 0 ? "" : params + " ") + "-F" + firstSpectrum + " -L" + lastSpectrum;
 		ExtractMsnWrapper extractMsn = new ExtractMsnWrapper(fileToExec, spectrumRangeParams, rawfile, wrapperScript, xvfbWrapperScript);
 		extractMsn.setOutputDir(thermoOutputDir);
@@ -256,87 +237,6 @@ public final class RawToMgfWorker implements Worker {
 		}
 	}
 
-	/**
-	 * convert dta files to an mgf file
-	 *
-	 * @param thermoOutputDir - Where .dta files were stored
-	 * @param dtaFiles        - the list of dta files to process
-	 * @param finalOutputFile - token for mgf output file
-	 * @param wine            - if should use wine or not
-	 * @throws edu.mayo.mprc.MprcException
-	 */
-	private void dtaToMgf(File thermoOutputDir, File[] dtaFiles, File finalOutputFile, boolean wine) {
-		// now do mgf file creation...
-		File finalOutputDir = finalOutputFile.getParentFile();
-
-		DTAToMGFConverter pDTAtoMGF =
-				new DTAToMGFConverter(
-						dtaFiles,
-						finalOutputFile);
-		pDTAtoMGF.setWineCleanup(wine);
-		try {
-			// Run the conversion
-			pDTAtoMGF.run();
-			// delete the dta files
-			deleteDTAFiles(thermoOutputDir);
-			// copy remaining files in folder to pBatchInfo.Output_Dir
-			copyRemainingFiles(thermoOutputDir, finalOutputDir);
-		} catch (Exception t) {
-			throw new MprcException("dta to MGF conversion failed", t);
-		}
-		File file = pDTAtoMGF.getResultFile();
-		if (!file.exists() || !file.isFile()) {
-			throw new MprcException("The MGF file does not exist " + file.getAbsolutePath());
-		}
-		if (file.length() == 0) {
-			throw new MprcException(
-					MessageFormat.format("Merging of DTAs resulted in mgf of zero length (merge {0} into {1})",
-							thermoOutputDir, file.getAbsolutePath()));
-		}
-	}
-
-	private static void copyRemainingFiles(File fromfolder, File tofolder) {
-		String[] fromfiles = fromfolder.list();
-		for (String fromfile : fromfiles) {
-			File to = new File(tofolder, FileUtilities.getLastFolderName(fromfile));
-			File localfile = new File(fromfolder, fromfile);
-			try {
-				FileUtilities.copyFile(localfile, to, true);
-			} catch (Exception e) {
-				throw new MprcException("Error moving remaining files in batch converter", e);
-			}
-			FileUtilities.quietDelete(localfile);
-		}
-		FileUtilities.quietDelete(fromfolder);
-	}
-
-	private static File getMirrorFolderonTemp(File tempfolder) {
-		try {
-			return FileUtilities.createTempFolder(tempfolder, "raw2mgf", false);
-		} catch (Exception t) {
-			throw new DaemonException("Cannot create temporary folder for raw->mgf conversion", t);
-		}
-	}
-
-	private void deleteDTAFiles(File dir) {
-
-		ExtensionFilter filter = new ExtensionFilter("dta");
-
-		String[] list = dir.list(filter);
-		File file;
-		if (list.length == 0) {
-			return;
-		}
-
-		for (String aList : list) {
-			file = new File(dir, aList);
-			boolean isdeleted = file.delete();
-			if (!isdeleted) {
-				LOGGER.warn("Deletion of dta file failed with name=" + dir.getAbsolutePath() + File.separator + aList);
-			}
-		}
-	}
-
 	private static void checkRawFile(File pFile) {
 		if (pFile.exists()) {
 			if (pFile.isDirectory()) {
@@ -391,6 +291,17 @@ public final class RawToMgfWorker implements Worker {
 		return spectrumBatchSize;
 	}
 
+	public int getExtractMsnThreads() {
+		return extractMsnThreads;
+	}
+
+	/**
+	 * @param extractMsnThreads How many extract_msn passes can run at once. Limited to the number of cores.
+	 */
+	public void setExtractMsnThreads(int extractMsnThreads) {
+		this.extractMsnThreads = Math.max(1, Math.min(extractMsnThreads, Runtime.getRuntime().availableProcessors()));
+	}
+
 	/**
 	 * A factory capable of creating the worker
 	 */
@@ -402,6 +313,9 @@ public final class RawToMgfWorker implements Worker {
 			worker.setWrapperScript(config.getWrapperScript());
 			worker.setXvfbWrapperScript(new File(config.getXvfbWrapperScript()));
 			worker.setExtractMsnExecutable(new File(config.getExtractMsnExecutable()));
+			if (config.getExtractMsnThreads() != null && config.getExtractMsnThreads().length() > 0) {
+				worker.setExtractMsnThreads(Integer.parseInt(config.getExtractMsnThreads()));
+			}
 			return worker;
 		}
 	}
@@ -415,6 +329,7 @@ public final class RawToMgfWorker implements Worker {
 		private String wrapperScript;
 		private String xvfbWrapperScript;
 		private String extractMsnExecutable;
+		private String extractMsnThreads;
 
 		public Config() {
 		}
@@ -458,12 +373,21 @@ public final class RawToMgfWorker implements Worker {
 			this.xvfbWrapperScript = xvfbWrapperScript;
 		}
 
+		public String getExtractMsnThreads() {
+			return extractMsnThreads;
+		}
+
+		public void setExtractMsnThreads(String extractMsnThreads) {
+			this.extractMsnThreads = extractMsnThreads;
+		}
+
 		public Map<String, String> save(DependencyResolver resolver) {
 			Map<String, String> map = new TreeMap<String, String>();
 			map.put(TEMP_FOLDER, tempFolder);
 			map.put(WRAPPER_SCRIPT, wrapperScript);
 			map.put(XVFB_WRAPPER_SCRIPT, xvfbWrapperScript);
 			map.put(EXTRACT_MSN_EXECUTABLE, extractMsnExecutable);
+			map.put(EXTRACT_MSN_THREADS, extractMsnThreads);
 			return map;
 		}
 
@@ -472,6 +396,7 @@ public final class RawToMgfWorker implements Worker {
 			wrapperScript = values.get(WRAPPER_SCRIPT);
 			xvfbWrapperScript = values.get(XVFB_WRAPPER_SCRIPT);
 			extractMsnExecutable = values.get(EXTRACT_MSN_EXECUTABLE);
+			extractMsnThreads = values.get(EXTRACT_MSN_THREADS);
 		}
 
 		@Override
@@ -500,6 +425,13 @@ public final class RawToMgfWorker implements Worker {
 					.required()
 					.existingDirectory()
 
+					.property(EXTRACT_MSN_THREADS, "Parallel extract_msn runs",
+							"<p>How many extract_msn runs can convert parts of a .RAW file at once. Each run needs its own CPU core" +
+									" and room in the temp folder for up to 8000 <tt>.dta</tt> files.</p>" +
+									"<p>Set to 1 if your extract_msn or <tt>wine</tt> setup cannot run multiple instances.</p>")
+					.integerValue(1, Runtime.getRuntime().availableProcessors())
+					.defaultValue(String.valueOf(Math.min(4, Runtime.getRuntime().availableProcessors())))
+
 					.property(WRAPPER_SCRIPT, "Wrapper Script",
 							"<p>This is needed only for Linux. On Windows, leave this field blank.</p>" +
 									"<p>A wrapper script takes the extract_msn command line as a parameter and executes extract_msn.</p>"
@@ -0,0 +1,152 @@
+package edu.mayo.mprc.raw2mgf;
+
+import edu.mayo.mprc.MprcException;
+import edu.mayo.mprc.utilities.FileUtilities;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+public final class TestParallelDtaExtraction {
+	private static final Pattern TITLE = Pattern.compile("TITLE=test scan (\\d+) \\1.*");
+
+	@Test
+	public void shouldMergeBatchesInScanOrder() throws IOException {
+		final File folder = FileUtilities.createTempFolder();
+		try {
+			final FakeExtractMsn extractMsn = new FakeExtractMsn(1000);
+			final File mgf = new File(folder, "test.mgf");
+			final long extracted = new ParallelDtaExtraction(extractMsn, folder, 4, 37, mgf, false).run(1, null);
+
+			Assert.assertEquals(extracted, 1000L);
+			assertScans(mgf, 1, 1000);
+			Assert.assertTrue(extractMsn.getMaxRunning() > 1, "The batches should overlap");
+			Assert.assertTrue(extractMsn.getMaxRunning() <= 4, "At most 4 batches can run at once, was " + extractMsn.getMaxRunning());
+			Assert.assertTrue(new File(folder, "test.log").isFile(), "The log should be moved next to the .mgf");
+			Assert.assertEquals(folder.list().length, 2, "Only the .mgf and the log should remain");
+		} finally {
+			FileUtilities.cleanupTempFile(folder);
+		}
+	}
+
+	@Test
+	public void shouldStopAtLastSpectrum() throws IOException {
+		final File folder = FileUtilities.createTempFolder();
+		try {
+			final File mgf = new File(folder, "test.mgf");
+			final long extracted = new ParallelDtaExtraction(new FakeExtractMsn(1000), folder, 3, 10, mgf, false).run(15, 102L);
+
+			Assert.assertEquals(extracted, 88L);
+			assertScans(mgf, 15, 102);
+		} finally {
+			FileUtilities.cleanupTempFile(folder);
+		}
+	}
+
+	@Test
+	public void shouldFailWithoutSpectra() throws IOException {
+		final File folder = FileUtilities.createTempFolder();
+		try {
+			new ParallelDtaExtraction(new FakeExtractMsn(0), folder, 2, 10, new File(folder, "test.mgf"), false).run(1, null);
+			Assert.fail("Extraction without spectra must fail");
+		} catch (MprcException e) {
+			Assert.assertTrue(e.getMessage().contains("no .dta files"), e.getMessage());
+		} finally {
+			FileUtilities.cleanupTempFile(folder);
+		}
+	}
+
+	@Test
+	public void shouldPropagateFailure() throws IOException {
+		final File folder = FileUtilities.createTempFolder();
+		try {
+			final DtaExtractor failing = new FakeExtractMsn(1000) {
+				@Override
+				public void extract(File outputDir, long firstSpectrum, long lastSpectrum) {
+					if (firstSpectrum > 50) {
+						throw new MprcException("extract_msn crashed");
+					}
+					super.extract(outputDir, firstSpectrum, lastSpectrum);
+				}
+			};
+			new ParallelDtaExtraction(failing, folder, 4, 20, new File(folder, "test.mgf"), false).run(1, null);
+			Assert.fail("The extract_msn failure must propagate");
+		} catch (MprcException e) {
+			Assert.assertEquals(e.getCause().getMessage(), "extract_msn crashed");
+		} finally {
+			final String[] remaining = folder.list();
+			FileUtilities.cleanupTempFile(folder);
+			Assert.assertEquals(remaining.length, 2, "The batch folders must be deleted ");
+		}
+	}
+
+	private static void assertScans(File mgf, int firstScan, int lastScan) throws IOException {
+		final BufferedReader reader = new BufferedReader(new FileReader(mgf));
+		try {
+			int expected = firstScan;
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (line.startsWith("TITLE=")) {
+					final Matcher matcher = TITLE.matcher(line);
+					Assert.assertTrue(matcher.matches(), line);
+					Assert.assertEquals(Integer.parseInt(matcher.group(1)), expected);
+					expected++;
+				}
+			}
+			Assert.assertEquals(expected, lastScan + 1);
+		} finally {
+			FileUtilities.closeQuietly(reader);
+		}
+	}
+
+	/**
+	 * Pretends to be extract_msn on a .RAW file with given number of spectra, taking random time to finish.
+	 */
+	private static class FakeExtractMsn implements DtaExtractor {
+		private final int spectra;
+		private final AtomicInteger running = new AtomicInteger();
+		private final AtomicInteger maxRunning = new AtomicInteger();
+		private final Random random = new Random(1);
+
+		private FakeExtractMsn(int spectra) {
+			this.spectra = spectra;
+		}
+
+		@Override
+		public void extract(File outputDir, long firstSpectrum, long lastSpectrum) {
+			final int nowRunning = running.incrementAndGet();
+			int max;
+			while ((max = maxRunning.get()) < nowRunning && !maxRunning.compareAndSet(max, nowRunning)) {
+				// retry
+			}
+			try {
+				final long delay;
+				synchronized (random) {
+					delay = 5 + random.nextInt(30);
+				}
+				Thread.sleep(delay);
+				for (long scan = firstSpectrum; scan <= Math.min(lastSpectrum, spectra); scan++) {
+					FileUtilities.writeStringToFile(new File(outputDir, "test." + scan + "." + scan + ".2.dta"),
+							(1000 + scan) + " 2\n100.0 10.0\n200.0 20.0\n", true);
+				}
+				FileUtilities.writeStringToFile(new File(outputDir, "test.log"), "extracted " + firstSpectrum + "-" + lastSpectrum, true);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new MprcException("Interrupted", e);
+			} finally {
+				running.decrementAndGet();
+			}
+		}
+
+		public int getMaxRunning() {
+			return maxRunning.get();
+		}
+	}
+}
@@ -2,12 +2,38 @@ package edu.mayo.mprc.searchdb.dao;
 
 /**
  * A peptide sequence. Immutable, stored in the database only once with unique ID.
+ * <p/>
+ * The first {@link #PREFIX_LENGTH} residues are stored separately, so the peptides contained in a protein can be
+ * looked up by the short stretches of the protein sequence.
  */
 public final class PeptideSequence extends Sequence {
+	/**
+	 * Length of the indexed peptide prefix.
+	 */
+	static final int PREFIX_LENGTH = 4;
+
+	private String prefix;
+
 	PeptideSequence() {
 	}
 
 	public PeptideSequence(String sequence) {
 		super(sequence);
+		setPrefix(computePrefix(sequence));
+	}
+
+	public String getPrefix() {
+		return prefix;
+	}
+
+	void setPrefix(String prefix) {
+		this.prefix = prefix;
+	}
+
+	/**
+	 * @return The first {@link #PREFIX_LENGTH} residues of the sequence, the whole sequence if it is shorter.
+	 */
+	static String computePrefix(String sequence) {
+		return sequence.length() <= PREFIX_LENGTH ? sequence : sequence.substring(0, PREFIX_LENGTH);
 	}
 }
@@ -0,0 +1,166 @@
+package edu.mayo.mprc.searchdb.dao;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * In-memory k-mer index of protein sequences, used to quickly find all proteins containing a given peptide.
+ * <p/>
+ * Every stretch of {@link #K} amino acids of every protein is encoded into an integer. For each such k-mer
+ * we keep a list of proteins it occurs in. To find a peptide, we take the peptide k-mer occurring in the least proteins
+ * and check only the proteins from its list.
+ * <p/>
+ * Proteins can be added to the index at any time. The index is thread safe.
+ */
+final class ProteinSequenceIndex {
+	/**
+	 * Length of the indexed k-mers.
+	 */
+	static final int K = 4;
+
+	private static final int BITS_PER_RESIDUE = 5;
+	private static final int KMER_COUNT = 1 << (BITS_PER_RESIDUE * K);
+	private static final int KMER_MASK = KMER_COUNT - 1;
+	private static final int INVALID = -1;
+	private static final int INITIAL_CAPACITY = 1024;
+	private static final int[] EMPTY = new int[0];
+
+	/**
+	 * Database ids of the indexed proteins.
+	 */
+	private int[] proteinIds = new int[INITIAL_CAPACITY];
+	/**
+	 * Sequences of the indexed proteins.
+	 */
+	private String[] sequences = new String[INITIAL_CAPACITY];
+	private int proteinCount;
+
+	/**
+	 * For each k-mer, indices (not ids) of proteins containing it. Only the first {@link #postingSizes} entries are valid.
+	 */
+	private final int[][] postings = new int[KMER_COUNT][];
+	private final int[] postingSizes = new int[KMER_COUNT];
+
+	ProteinSequenceIndex() {
+	}
+
+	/**
+	 * Add a protein to the index.
+	 *
+	 * @param proteinId Database id of the protein.
+	 * @param sequence  The protein sequence.
+	 */
+	public synchronized void add(int proteinId, String sequence) {
+		if (proteinCount == proteinIds.length) {
+			proteinIds = Arrays.copyOf(proteinIds, proteinCount * 2);
+			sequences = Arrays.copyOf(sequences, proteinCount * 2);
+		}
+		final int index = proteinCount++;
+		proteinIds[index] = proteinId;
+		sequences[index] = sequence;
+
+		int kmer = 0;
+		int valid = 0;
+		for (int i = 0; i < sequence.length(); i++) {
+			final int code = residueCode(sequence.charAt(i));
+			if (code == INVALID) {
+				valid = 0;
+				continue;
+			}
+			kmer = ((kmer << BITS_PER_RESIDUE) | code) & KMER_MASK;
+			if (++valid >= K) {
+				addPosting(kmer, index);
+			}
+		}
+	}
+
+	/**
+	 * @return Number of indexed proteins.
+	 */
+	public synchronized int size() {
+		return proteinCount;
+	}
+
+	/**
+	 * Find all proteins containing given peptide.
+	 *
+	 * @param peptide Peptide sequence.
+	 * @return Ids of all the proteins containing the peptide.
+	 */
+	public synchronized List<Integer> findProteinsContaining(String peptide) {
+		final int[] candidates = getCandidates(peptide);
+		final List<Integer> result = new ArrayList<Integer>();
+		if (candidates == null) {
+			// Peptide too short or contains unusual residues, go through everything
+			for (int i = 0; i < proteinCount; i++) {
+				if (sequences[i].contains(peptide)) {
+					result.add(proteinIds[i]);
+				}
+			}
+		} else {
+			for (int index : candidates) {
+				if (sequences[index].contains(peptide)) {
+					result.add(proteinIds[index]);
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @return The shortest posting list for the peptide k-mers (trimmed to its size),
+	 *         {@link #EMPTY} if some k-mer is not present at all, null if the peptide cannot be looked up in the index.
+	 */
+	private int[] getCandidates(String peptide) {
+		if (peptide.length() < K) {
+			return null;
+		}
+		int best = INVALID;
+		int kmer = 0;
+		for (int i = 0; i < peptide.length(); i++) {
+			final int code = residueCode(peptide.charAt(i));
+			if (code == INVALID) {
+				return null;
+			}
+			kmer = ((kmer << BITS_PER_RESIDUE) | code) & KMER_MASK;
+			if (i >= K - 1) {
+				if (postingSizes[kmer] == 0) {
+					return EMPTY;
+				}
+				if (best == INVALID || postingSizes[kmer] < postingSizes[best]) {
+					best = kmer;
+				}
+			}
+		}
+		return Arrays.copyOf(postings[best], postingSizes[best]);
+	}
+
+	private void addPosting(int kmer, int proteinIndex) {
+		final int size = postingSizes[kmer];
+		int[] list = postings[kmer];
+		if (size > 0 && list[size - 1] == proteinIndex) {
+			// k-mer repeats within the same protein
+			return;
+		}
+		if (list == null) {
+			list = new int[2];
+			postings[kmer] = list;
+		} else if (size == list.length) {
+			list = Arrays.copyOf(list, size * 2);
+			postings[kmer] = list;
+		}
+		list[size] = proteinIndex;
+		postingSizes[kmer] = size + 1;
+	}
+
+	private static int residueCode(char residue) {
+		if (residue >= 'A' && residue <= 'Z') {
+			return residue - 'A';
+		}
+		if (residue >= 'a' && residue <= 'z') {
+			return residue - 'a';
+		}
+		return INVALID;
+	}
+}
@@ -2,7 +2,9 @@ package edu.mayo.mprc.searchdb.dao;
 
 import edu.mayo.mprc.database.Dao;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 public interface SearchDbDao extends Dao {
 	/**
@@ -14,6 +16,15 @@ public interface SearchDbDao extends Dao {
 	 */
 	ProteinSequence addProteinSequence(String sequence);
 
+	/**
+	 * Bulk version of {@link #addProteinSequence(String)}. Duplicate sequences are stored only once,
+	 * and the new sequences are written to the database in batches.
+	 *
+	 * @param sequences Sequences to look up.
+	 * @return Map from each sequence to the ProteinSequence object with the ID set up.
+	 */
+	Map<String, ProteinSequence> addProteinSequences(Collection<String> sequences);
+
 	/**
 	 * Return a protein sequence for given ID.
 	 *
@@ -31,6 +42,15 @@ public interface SearchDbDao extends Dao {
 	 */
 	PeptideSequence addPeptideSequence(String sequence);
 
+	/**
+	 * Bulk version of {@link #addPeptideSequence(String)}. Duplicate sequences are stored only once,
+	 * and the new sequences are written to the database in batches.
+	 *
+	 * @param sequences Sequences to look up.
+	 * @return Map from each sequence to the PeptideSequence object with the ID set up.
+	 */
+	Map<String, PeptideSequence> addPeptideSequences(Collection<String> sequences);
+
 	/**
 	 * Return a protein sequence for given ID.
 	 *
@@ -1,21 +1,89 @@
 package edu.mayo.mprc.searchdb.dao;
 
+import edu.mayo.mprc.MprcException;
 import edu.mayo.mprc.config.RuntimeInitializer;
 import edu.mayo.mprc.database.DaoBase;
 import edu.mayo.mprc.database.DatabasePlaceholder;
 import edu.mayo.mprc.swift.db.SwiftDao;
+import org.apache.log4j.Logger;
+import org.hibernate.Transaction;
+import org.hibernate.jdbc.Work;
+import org.hibernate.persister.entity.AbstractEntityPersister;
 
-import java.util.List;
-import java.util.Map;
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.*;
 
 /**
  * DAO for the search results stored in the database.
+ * <p/>
+ * Protein and peptide sequences are deduplicated by their content hash. Sequences are added in bulk - the existing
+ * ones are looked up with one query per {@link #BATCH_SIZE} sequences and the missing ones are inserted using batched
+ * JDBC statements.
+ * <p/>
+ * Peptide to protein mapping is answered from an in-memory {@link ProteinSequenceIndex}, loaded page by page from the
+ * stored protein sequences on first use. The index assumes this DAO is the only one adding sequences. Once the proteins
+ * exceed {@link #MAX_INDEXED_RESIDUES}, the index is dropped and the database is searched instead.
+ * <p/>
+ * The ids and proteins added within a transaction get to the shared cache and index only once the transaction commits,
+ * until then they are visible to that transaction alone.
+ * <p/>
+ * Protein to peptide mapping looks up the peptides by their stored {@link PeptideSequence#getPrefix() prefix}, using
+ * every short stretch of the protein, and checks the candidates against the protein. No peptides are kept in memory.
  */
 public final class SearchDbDaoImpl extends DaoBase implements RuntimeInitializer, SearchDbDao {
+	private static final Logger LOGGER = Logger.getLogger(SearchDbDaoImpl.class);
+
+	/**
+	 * How many sequences to look up or insert in one database round trip.
+	 */
+	private static final int BATCH_SIZE = 500;
+	/**
+	 * How many residues of protein sequence can the in-memory index hold, about 6 bytes of heap per residue.
+	 */
+	private static final long MAX_INDEXED_RESIDUES = 32L * 1000 * 1000;
+	/**
+	 * How many hash to id mappings to remember per table.
+	 */
+	private static final int MAX_CACHED_IDS = 100 * 1000;
+
 	private SwiftDao swiftDao;
 
+	private final SequenceTable<ProteinSequence> proteins = new SequenceTable<ProteinSequence>(ProteinSequence.class) {
+		@Override
+		public ProteinSequence create(String sequence) {
+			return new ProteinSequence(sequence);
+		}
+	};
+
+	private final SequenceTable<PeptideSequence> peptides = new SequenceTable<PeptideSequence>(PeptideSequence.class) {
+		@Override
+		public PeptideSequence create(String sequence) {
+			return new PeptideSequence(sequence);
+		}
+	};
+
+	/**
+	 * Index of all committed protein sequences, null until first needed or when there are too many proteins.
+	 */
+	private ProteinSequenceIndex proteinIndex;
+	private final Set<Integer> indexedProteinIds = new HashSet<Integer>();
+	private long indexedResidues;
+	/**
+	 * The proteins do not fit {@link #MAX_INDEXED_RESIDUES}, do not try to index them again.
+	 */
+	private boolean tooManyProteins;
+	/**
+	 * Sequences added by the transactions in progress.
+	 */
+	private final Map<Transaction, PendingSequences> pendingByTransaction = new IdentityHashMap<Transaction, PendingSequences>();
+
 	public SearchDbDaoImpl(SwiftDao swiftDao, DatabasePlaceholder databasePlaceholder) {
 		super(databasePlaceholder);
+		this.swiftDao = swiftDao;
 	}
 
 	@Override
@@ -29,31 +97,444 @@ public final class SearchDbDaoImpl extends DaoBase implements RuntimeInitializer
 
 	@Override
 	public ProteinSequence addProteinSequence(String sequence) {
-		return null; //TODO: implement me
+		return addProteinSequences(Arrays.asList(sequence)).get(sequence);
+	}
+
+	@Override
+	public synchronized Map<String, ProteinSequence> addProteinSequences(Collection<String> sequences) {
+		return addSequences(sequences, proteins);
 	}
 
 	@Override
 	public ProteinSequence getProteinSequence(int proteinId) {
-		return null; //TODO: implement me
+		return (ProteinSequence) getSession().get(ProteinSequence.class, proteinId);
 	}
 
 	@Override
 	public PeptideSequence addPeptideSequence(String sequence) {
-		return null; //TODO: implement me
+		return addPeptideSequences(Arrays.asList(sequence)).get(sequence);
+	}
+
+	@Override
+	public synchronized Map<String, PeptideSequence> addPeptideSequences(Collection<String> sequences) {
+		return addSequences(sequences, peptides);
 	}
 
 	@Override
 	public PeptideSequence getPeptideSequence(int peptideId) {
-		return null; //TODO: implement me
+		return (PeptideSequence) getSession().get(PeptideSequence.class, peptideId);
 	}
 
+	/**
+	 * Does not lock the DAO, the lookup uses only the database.
+	 */
 	@Override
 	public List<Integer> getPeptidesForProtein(int proteinId) {
-		return null; //TODO: implement me
+		final ProteinSequence protein = getProteinSequence(proteinId);
+		if (protein == null) {
+			return null;
+		}
+		final String sequence = protein.getSequence();
+		// Every stretch of the protein a peptide prefix can be, with the positions it starts at
+		final Map<String, List<Integer>> prefixPositions = new HashMap<String, List<Integer>>();
+		for (int start = 0; start < sequence.length(); start++) {
+			final int maxEnd = Math.min(sequence.length(), start + PeptideSequence.PREFIX_LENGTH);
+			for (int end = start + 1; end <= maxEnd; end++) {
+				final String prefix = sequence.substring(start, end);
+				List<Integer> positions = prefixPositions.get(prefix);
+				if (positions == null) {
+					positions = new ArrayList<Integer>(1);
+					prefixPositions.put(prefix, positions);
+				}
+				positions.add(start);
+			}
+		}
+
+		final Set<Integer> result = new TreeSet<Integer>();
+		final List<String> batch = new ArrayList<String>(BATCH_SIZE);
+		final Iterator<String> iterator = prefixPositions.keySet().iterator();
+		while (iterator.hasNext()) {
+			batch.add(iterator.next());
+			if (batch.size() == BATCH_SIZE || !iterator.hasNext()) {
+				final List<?> rows = getSession()
+						.createQuery("select s.id, s.sequence, s.prefix from PeptideSequence s where s.prefix in (:prefixes)")
+						.setParameterList("prefixes", batch)
+						.list();
+				for (Object row : rows) {
+					final Object[] values = (Object[]) row;
+					if (occursAt(sequence, (String) values[1], prefixPositions.get((String) values[2]))) {
+						result.add((Integer) values[0]);
+					}
+				}
+				batch.clear();
+			}
+		}
+		return new ArrayList<Integer>(result);
+	}
+
+	/**
+	 * @return True if the peptide occurs in the protein starting at one of given positions.
+	 */
+	private static boolean occursAt(String protein, String peptide, List<Integer> positions) {
+		if (positions == null) {
+			return false;
+		}
+		for (int position : positions) {
+			if (protein.regionMatches(position, peptide, 0, peptide.length())) {
+				return true;
+			}
+		}
+		return false;
 	}
 
 	@Override
-	public List<Integer> getProteinsForPeptide(int peptideId) {
-		return null; //TODO: implement me
+	public synchronized List<Integer> getProteinsForPeptide(int peptideId) {
+		final PeptideSequence peptide = getPeptideSequence(peptideId);
+		if (peptide == null) {
+			return null;
+		}
+		final ProteinSequenceIndex index = getProteinIndex();
+		if (index != null) {
+			final Set<Integer> result = new TreeSet<Integer>(index.findProteinsContaining(peptide.getSequence()));
+			final PendingSequences pending = getPending(false);
+			if (pending != null) {
+				result.addAll(pending.insertedProteins.findProteinsContaining(peptide.getSequence()));
+			}
+			return new ArrayList<Integer>(result);
+		}
+		final List<?> ids = getSession()
+				.createQuery("select s.id from ProteinSequence s where s.sequence like :pattern order by s.id")
+				.setParameter("pattern", "%" + peptide.getSequence() + "%")
+				.list();
+		final List<Integer> result = new ArrayList<Integer>(ids.size());
+		for (Object id : ids) {
+			result.add((Integer) id);
+		}
+		return result;
+	}
+
+	/**
+	 * Look up all given sequences, adding those that are not in the database yet.
+	 */
+	private <T extends Sequence> Map<String, T> addSequences(Collection<String> sequences, SequenceTable<T> table) {
+		final PendingSequences pending = getPending(true);
+		final Map<String, T> result = new HashMap<String, T>(sequences.size());
+		// Unique sequences not seen by this DAO yet, keyed by hash
+		final Map<String, String> unknown = new LinkedHashMap<String, String>();
+		for (String sequence : sequences) {
+			if (result.containsKey(sequence)) {
+				continue;
+			}
+			final String hash = Sequence.computeHash(sequence);
+			Integer id = table.getCachedId(hash);
+			if (id == null && pending != null) {
+				id = pending.getIds(table).get(hash);
+			}
+			if (id != null) {
+				result.put(sequence, table.create(id, sequence));
+			} else {
+				unknown.put(hash, sequence);
+			}
+		}
+		if (unknown.isEmpty()) {
+			return result;
+		}
+
+		final Map<String, Integer> found = findIds(table, unknown.keySet());
+		final List<T> missing = new ArrayList<T>(unknown.size() - found.size());
+		for (Map.Entry<String, String> entry : unknown.entrySet()) {
+			if (!found.containsKey(entry.getKey())) {
+				missing.add(table.create(entry.getValue()));
+			}
+		}
+		if (!missing.isEmpty()) {
+			LOGGER.debug("Inserting " + missing.size() + " new " + table.getEntityName() + " records");
+			insert(table, missing);
+			final List<String> missingHashes = new ArrayList<String>(missing.size());
+			for (T sequence : missing) {
+				missingHashes.add(sequence.getHash());
+			}
+			final Map<String, Integer> inserted = findIds(table, missingHashes);
+			found.putAll(inserted);
+			onInserted(table, missing, inserted, pending);
+		}
+
+		for (Map.Entry<String, String> entry : unknown.entrySet()) {
+			final Integer id = found.get(entry.getKey());
+			if (id == null) {
+				throw new MprcException("Could not store " + table.getEntityName() + " " + entry.getValue());
+			}
+			if (pending == null) {
+				table.cacheId(entry.getKey(), id);
+			} else {
+				pending.getIds(table).put(entry.getKey(), id);
+			}
+			result.put(entry.getValue(), table.create(id, entry.getValue()));
+		}
+		return result;
+	}
+
+	/**
+	 * Find ids of sequences with given hashes, {@link #BATCH_SIZE} at a time.
+	 *
+	 * @return Map from hash to id. Only contains the hashes that exist in the database.
+	 */
+	private Map<String, Integer> findIds(SequenceTable<?> table, Collection<String> hashes) {
+		final Map<String, Integer> result = new HashMap<String, Integer>(hashes.size());
+		final List<String> batch = new ArrayList<String>(BATCH_SIZE);
+		final Iterator<String> iterator = hashes.iterator();
+		while (iterator.hasNext()) {
+			batch.add(iterator.next());
+			if (batch.size() == BATCH_SIZE || !iterator.hasNext()) {
+				final List<?> rows = getSession()
+						.createQuery("select s.hash, s.id from " + table.getEntityName() + " s where s.hash in (:hashes)")
+						.setParameterList("hashes", batch)
+						.list();
+				for (Object row : rows) {
+					final Object[] values = (Object[]) row;
+					result.put((String) values[0], (Integer) values[1]);
+				}
+				batch.clear();
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Insert given sequences using batched JDBC statements.
+	 */
+	private void insert(SequenceTable<?> table, final List<? extends Sequence> sequences) {
+		final String tableName = ((AbstractEntityPersister) getSession().getSessionFactory().getClassMetadata(table.getSequenceClass())).getTableName();
+		final boolean withPrefix = table == peptides;
+		final String sql = "insert into " + tableName + (withPrefix
+				? " (hash, sequence, mass, prefix) values (?, ?, ?, ?)"
+				: " (hash, sequence, mass) values (?, ?, ?)");
+		getSession().doWork(new Work() {
+			@Override
+			public void execute(Connection connection) throws SQLException {
+				final PreparedStatement statement = connection.prepareStatement(sql);
+				try {
+					int batchCount = 0;
+					for (Sequence sequence : sequences) {
+						statement.setString(1, sequence.getHash());
+						statement.setString(2, sequence.getSequence());
+						statement.setDouble(3, sequence.getMass());
+						if (withPrefix) {
+							statement.setString(4, ((PeptideSequence) sequence).getPrefix());
+						}
+						statement.addBatch();
+						if (++batchCount == BATCH_SIZE) {
+							statement.executeBatch();
+							batchCount = 0;
+						}
+					}
+					if (batchCount > 0) {
+						statement.executeBatch();
+					}
+				} finally {
+					statement.close();
+				}
+			}
+		});
+	}
+
+	/**
+	 * Keep the in-memory index up to date with newly inserted proteins. Within a transaction, the proteins are
+	 * indexed once it commits.
+	 */
+	private void onInserted(SequenceTable<?> table, List<? extends Sequence> inserted, Map<String, Integer> ids, PendingSequences pending) {
+		if (table != proteins) {
+			return;
+		}
+		for (Sequence sequence : inserted) {
+			final Integer id = ids.get(sequence.getHash());
+			if (pending != null) {
+				pending.addProtein(id, sequence.getSequence());
+			} else if (proteinIndex != null && !addToIndex(id, sequence.getSequence())) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * @param create Create the pending sequences if the transaction has none yet.
+	 * @return Sequences added by the current transaction, null if there is no transaction in progress.
+	 */
+	private PendingSequences getPending(boolean create) {
+		final Transaction transaction = getSession().getTransaction();
+		if (transaction == null || !transaction.isActive()) {
+			return null;
+		}
+		PendingSequences pending = pendingByTransaction.get(transaction);
+		if (pending == null && create) {
+			pending = new PendingSequences(transaction);
+			pendingByTransaction.put(transaction, pending);
+			transaction.registerSynchronization(pending);
+		}
+		return pending;
+	}
+
+	/**
+	 * Makes the ids and proteins of a committed transaction visible to everyone.
+	 */
+	private void publish(PendingSequences pending) {
+		for (Map.Entry<String, Integer> entry : pending.proteinIds.entrySet()) {
+			proteins.cacheId(entry.getKey(), entry.getValue());
+		}
+		for (Map.Entry<String, Integer> entry : pending.peptideIds.entrySet()) {
+			peptides.cacheId(entry.getKey(), entry.getValue());
+		}
+		if (proteinIndex != null) {
+			for (Map.Entry<Integer, String> entry : pending.proteinSequences.entrySet()) {
+				if (!addToIndex(entry.getKey(), entry.getValue())) {
+					return;
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return Index of all proteins, null if there are too many of them.
+	 */
+	private ProteinSequenceIndex getProteinIndex() {
+		if (proteinIndex == null && !tooManyProteins) {
+			// Our own uncommitted proteins get indexed once the transaction commits
+			final PendingSequences pending = getPending(false);
+			proteinIndex = new ProteinSequenceIndex();
+			indexedProteinIds.clear();
+			indexedResidues = 0;
+			int lastId = Integer.MIN_VALUE;
+			while (true) {
+				final List<?> rows = getSession()
+						.createQuery("select s.id, s.sequence from ProteinSequence s where s.id > :lastId order by s.id")
+						.setParameter("lastId", lastId)
+						.setMaxResults(BATCH_SIZE)
+						.list();
+				for (Object row : rows) {
+					final Object[] values = (Object[]) row;
+					lastId = (Integer) values[0];
+					if (pending != null && pending.proteinSequences.containsKey(lastId)) {
+						continue;
+					}
+					if (!addToIndex(lastId, (String) values[1])) {
+						return null;
+					}
+				}
+				if (rows.size() < BATCH_SIZE) {
+					break;
+				}
+			}
+			LOGGER.info("Indexed " + proteinIndex.size() + " protein sequences");
+		}
+		return proteinIndex;
+	}
+
+	/**
+	 * Add a protein to the index, dropping the index if it grows too large.
+	 *
+	 * @return False if the index was dropped.
+	 */
+	private boolean addToIndex(int id, String sequence) {
+		if (!indexedProteinIds.add(id)) {
+			// Committed by another transaction before the index was loaded
+			return true;
+		}
+		indexedResidues += sequence.length();
+		if (indexedResidues > MAX_INDEXED_RESIDUES) {
+			LOGGER.info("Protein sequences exceed " + MAX_INDEXED_RESIDUES + " residues, searching them in the database instead of memory");
+			proteinIndex = null;
+			indexedProteinIds.clear();
+			tooManyProteins = true;
+			return false;
+		}
+		proteinIndex.add(id, sequence);
+		return true;
+	}
+
+	/**
+	 * Ids and proteins added by a transaction. Dropped if the transaction rolls back.
+	 */
+	private final class PendingSequences implements Synchronization {
+		private final Transaction transaction;
+		private final Map<String, Integer> proteinIds = new HashMap<String, Integer>();
+		private final Map<String, Integer> peptideIds = new HashMap<String, Integer>();
+		/**
+		 * Inserted proteins by id, to be added to the shared index.
+		 */
+		private final Map<Integer, String> proteinSequences = new LinkedHashMap<Integer, String>();
+		/**
+		 * Inserted proteins, searched in addition to the shared index until the commit.
+		 */
+		private final ProteinSequenceIndex insertedProteins = new ProteinSequenceIndex();
+
+		private PendingSequences(Transaction transaction) {
+			this.transaction = transaction;
+		}
+
+		public Map<String, Integer> getIds(SequenceTable<?> table) {
+			return table == proteins ? proteinIds : peptideIds;
+		}
+
+		public void addProtein(int id, String sequence) {
+			proteinSequences.put(id, sequence);
+			insertedProteins.add(id, sequence);
+		}
+
+		@Override
+		public void beforeCompletion() {
+		}
+
+		@Override
+		public void afterCompletion(int status) {
+			synchronized (SearchDbDaoImpl.this) {
+				pendingByTransaction.remove(transaction);
+				if (status == Status.STATUS_COMMITTED) {
+					publish(this);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Information about a table of sequences, together with a cache of the most recently seen hash to id mappings.
+	 */
+	private abstract static class SequenceTable<T extends Sequence> {
+		private final Class<T> sequenceClass;
+		private final Map<String, Integer> idsByHash = new LinkedHashMap<String, Integer>(1000, 0.75f, true) {
+			private static final long serialVersionUID = 20111020L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Integer> eldest) {
+				return size() > MAX_CACHED_IDS;
+			}
+		};
+
+		protected SequenceTable(Class<T> sequenceClass) {
+			this.sequenceClass = sequenceClass;
+		}
+
+		public abstract T create(String sequence);
+
+		public T create(Integer id, String sequence) {
+			final T result = create(sequence);
+			result.setId(id);
+			return result;
+		}
+
+		public Class<T> getSequenceClass() {
+			return sequenceClass;
+		}
+
+		public String getEntityName() {
+			return sequenceClass.getSimpleName();
+		}
+
+		public Integer getCachedId(String hash) {
+			return idsByHash.get(hash);
+		}
+
+		public void cacheId(String hash, Integer id) {
+			idsByHash.put(hash, id);
+		}
 	}
 }
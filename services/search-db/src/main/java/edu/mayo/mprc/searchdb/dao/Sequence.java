@@ -1,13 +1,25 @@
 package edu.mayo.mprc.searchdb.dao;
 
+import edu.mayo.mprc.MprcException;
 import edu.mayo.mprc.chem.AminoAcidSet;
 import edu.mayo.mprc.database.PersistableBase;
 
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
 /**
  * A sequence of amino acids.
+ * <p/>
+ * The sequences can be long, so the database looks them up by their {@link #getHash() content hash} instead.
  */
 public abstract class Sequence extends PersistableBase {
+	private static final String DIGEST_INSTANCE = "MD5";
+
 	private String sequence;
+	/**
+	 * Hex-encoded MD5 of the sequence.
+	 */
+	private String hash;
 	/**
 	 * Monoisotopic mass of the sequence.
 	 */
@@ -18,6 +30,7 @@ public abstract class Sequence extends PersistableBase {
 
 	public Sequence(String sequence) {
 		setSequence(sequence);
+		setHash(computeHash(sequence));
 		setMass(AminoAcidSet.DEFAULT.getMonoisotopicMass(sequence));
 	}
 
@@ -29,6 +42,14 @@ public abstract class Sequence extends PersistableBase {
 		this.sequence = sequence;
 	}
 
+	public String getHash() {
+		return hash;
+	}
+
+	void setHash(String hash) {
+		this.hash = hash;
+	}
+
 	public Double getMass() {
 		return mass;
 	}
@@ -37,16 +58,38 @@ public abstract class Sequence extends PersistableBase {
 		this.mass = mass;
 	}
 
+	/**
+	 * @param sequence Amino acid sequence.
+	 * @return The content hash the sequence is stored under.
+	 */
+	public static String computeHash(String sequence) {
+		final MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance(DIGEST_INSTANCE);
+		} catch (NoSuchAlgorithmException e) {
+			throw new MprcException("Digest algorithm " + DIGEST_INSTANCE + " is not available", e);
+		}
+		for (int i = 0; i < sequence.length(); i++) {
+			digest.update((byte) sequence.charAt(i));
+		}
+		final byte[] bytes = digest.digest();
+		final StringBuilder result = new StringBuilder(bytes.length * 2);
+		for (byte b : bytes) {
+			result.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+		}
+		return result.toString();
+	}
+
 	@Override
 	public boolean equals(Object o) {
 		if (this == o) {
 			return true;
 		}
-		if (!(o instanceof ProteinSequence)) {
+		if (o == null || getClass() != o.getClass()) {
 			return false;
 		}
 
-		ProteinSequence that = (ProteinSequence) o;
+		Sequence that = (Sequence) o;
 
 		if (!getSequence().equals(that.getSequence())) {
 			return false;
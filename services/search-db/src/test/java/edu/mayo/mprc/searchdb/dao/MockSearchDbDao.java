@@ -3,7 +3,10 @@ package edu.mayo.mprc.searchdb.dao;
 import com.google.common.collect.BiMap;
 import com.google.common.collect.HashBiMap;
 
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 public final class MockSearchDbDao implements SearchDbDao {
 	private BiMap<Integer, String> proteinSequences = HashBiMap.create();
@@ -40,6 +43,15 @@ public final class MockSearchDbDao implements SearchDbDao {
 		return proteinSequence(id, sequence);
 	}
 
+	@Override
+	public Map<String, ProteinSequence> addProteinSequences(Collection<String> sequences) {
+		final Map<String, ProteinSequence> result = new HashMap<String, ProteinSequence>(sequences.size());
+		for (String sequence : sequences) {
+			result.put(sequence, addProteinSequence(sequence));
+		}
+		return result;
+	}
+
 	@Override
 	public ProteinSequence getProteinSequence(int proteinId) {
 		String sequence = proteinSequences.get(proteinId);
@@ -59,6 +71,15 @@ public final class MockSearchDbDao implements SearchDbDao {
 		return peptideSequence(id, sequence);
 	}
 
+	@Override
+	public Map<String, PeptideSequence> addPeptideSequences(Collection<String> sequences) {
+		final Map<String, PeptideSequence> result = new HashMap<String, PeptideSequence>(sequences.size());
+		for (String sequence : sequences) {
+			result.put(sequence, addPeptideSequence(sequence));
+		}
+		return result;
+	}
+
 	private PeptideSequence peptideSequence(Integer id, String sequence) {
 		final PeptideSequence peptideSequence = new PeptideSequence(sequence);
 		peptideSequence.setId(id);
@@ -0,0 +1,34 @@
+package edu.mayo.mprc.searchdb.dao;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+public final class ProteinSequenceIndexTest {
+
+	@Test
+	public void shouldFindProteinsContainingPeptide() {
+		final ProteinSequenceIndex index = new ProteinSequenceIndex();
+		index.add(10, "MKLVAAGPEPTIDEK");
+		index.add(20, "PEPTIDEPEPTIDER");
+		index.add(30, "MSTNPKPQRKTKRNTNRR");
+
+		Assert.assertEquals(index.size(), 3);
+		Assert.assertEquals(index.findProteinsContaining("PEPTIDE"), Arrays.asList(10, 20));
+		Assert.assertEquals(index.findProteinsContaining("TIDER"), Arrays.asList(20));
+		Assert.assertEquals(index.findProteinsContaining("NOTHERE"), Arrays.<Integer>asList());
+	}
+
+	@Test
+	public void shouldHandleShortAndUnusualPeptides() {
+		final ProteinSequenceIndex index = new ProteinSequenceIndex();
+		index.add(1, "MKLVAAG");
+		index.add(2, "AAGK*LM");
+
+		final List<Integer> shortPeptide = index.findProteinsContaining("AAG");
+		Assert.assertEquals(shortPeptide, Arrays.asList(1, 2));
+		Assert.assertEquals(index.findProteinsContaining("GK*L"), Arrays.asList(2));
+	}
+}
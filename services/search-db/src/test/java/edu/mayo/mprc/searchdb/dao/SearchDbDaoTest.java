@@ -0,0 +1,109 @@
+package edu.mayo.mprc.searchdb.dao;
+
+import edu.mayo.mprc.database.DatabasePlaceholder;
+import edu.mayo.mprc.database.DatabaseUtilities;
+import org.hibernate.SessionFactory;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+public final class SearchDbDaoTest {
+	private SearchDbDao searchDbDao;
+	private SessionFactory factory;
+
+	@BeforeClass
+	public void setup() {
+		factory = DatabaseUtilities.getTestSessionFactory(
+				Arrays.asList(
+						"edu/mayo/mprc/searchdb/dao/ProteinSequence.hbm.xml",
+						"edu/mayo/mprc/searchdb/dao/PeptideSequence.hbm.xml")
+		);
+		final DatabasePlaceholder databasePlaceholder = new DatabasePlaceholder();
+		databasePlaceholder.setSessionFactory(factory);
+		searchDbDao = new SearchDbDaoImpl(null, databasePlaceholder);
+	}
+
+	@AfterClass
+	public void teardown() {
+		factory.close();
+	}
+
+	@Test
+	public void shouldHandleEmptyTables() throws Throwable {
+		searchDbDao.begin();
+		try {
+			Assert.assertNull(searchDbDao.getPeptidesForProtein(1));
+			Assert.assertNull(searchDbDao.getProteinsForPeptide(1));
+
+			final ProteinSequence protein = searchDbDao.addProteinSequence("MPEPTIDEK");
+			Assert.assertTrue(searchDbDao.getPeptidesForProtein(protein.getId()).isEmpty(), "There are no peptides yet");
+			searchDbDao.commit();
+		} catch (Exception t) {
+			searchDbDao.rollback();
+			throw t;
+		}
+	}
+
+	@Test(dependsOnMethods = "shouldHandleEmptyTables")
+	public void shouldMapPeptidesToProteins() throws Throwable {
+		searchDbDao.begin();
+		try {
+			final Map<String, ProteinSequence> proteins = searchDbDao.addProteinSequences(
+					Arrays.asList("MPEPTIDEK", "AAPEPTIDER", "GGGGGGGGG"));
+			final Map<String, PeptideSequence> peptides = searchDbDao.addPeptideSequences(
+					Arrays.asList("PEPTIDE", "PEPTIDEK", "AAPEP", "WWWW"));
+			final int first = proteins.get("MPEPTIDEK").getId();
+			final int second = proteins.get("AAPEPTIDER").getId();
+
+			Assert.assertEquals(searchDbDao.getProteinsForPeptide(peptides.get("PEPTIDE").getId()), sorted(first, second));
+			Assert.assertEquals(searchDbDao.getProteinsForPeptide(peptides.get("PEPTIDEK").getId()), Arrays.asList(first));
+			Assert.assertTrue(searchDbDao.getProteinsForPeptide(peptides.get("WWWW").getId()).isEmpty());
+
+			Assert.assertEquals(searchDbDao.getPeptidesForProtein(first),
+					sorted(peptides.get("PEPTIDE").getId(), peptides.get("PEPTIDEK").getId()));
+			Assert.assertEquals(searchDbDao.getPeptidesForProtein(second),
+					sorted(peptides.get("PEPTIDE").getId(), peptides.get("AAPEP").getId()));
+			Assert.assertTrue(searchDbDao.getPeptidesForProtein(proteins.get("GGGGGGGGG").getId()).isEmpty());
+
+			// Proteins added after the index was built are found too
+			final ProteinSequence later = searchDbDao.addProteinSequence("WWWWK");
+			Assert.assertEquals(searchDbDao.getProteinsForPeptide(peptides.get("WWWW").getId()), Arrays.asList(later.getId()));
+			searchDbDao.commit();
+		} catch (Exception t) {
+			searchDbDao.rollback();
+			throw t;
+		}
+	}
+
+	@Test(dependsOnMethods = "shouldMapPeptidesToProteins")
+	public void shouldForgetRolledBackSequences() throws Throwable {
+		searchDbDao.begin();
+		final PeptideSequence peptide = searchDbDao.addPeptideSequence("ROLLEDBACK");
+		final ProteinSequence protein = searchDbDao.addProteinSequence("MROLLEDBACKK");
+		Assert.assertEquals(searchDbDao.getProteinsForPeptide(peptide.getId()), Arrays.asList(protein.getId()),
+				"The transaction sees its own proteins");
+		searchDbDao.rollback();
+
+		searchDbDao.begin();
+		try {
+			final PeptideSequence again = searchDbDao.addPeptideSequence("ROLLEDBACK");
+			final PeptideSequence stored = searchDbDao.getPeptideSequence(again.getId());
+			Assert.assertNotNull(stored, "The id of the rolled back insert must not be reused");
+			Assert.assertEquals(stored.getSequence(), "ROLLEDBACK");
+			Assert.assertTrue(searchDbDao.getProteinsForPeptide(again.getId()).isEmpty(), "The rolled back protein must not be indexed");
+			searchDbDao.commit();
+		} catch (Exception t) {
+			searchDbDao.rollback();
+			throw t;
+		}
+	}
+
+	private static List<Integer> sorted(int id1, int id2) {
+		return id1 < id2 ? Arrays.asList(id1, id2) : Arrays.asList(id2, id1);
+	}
+}
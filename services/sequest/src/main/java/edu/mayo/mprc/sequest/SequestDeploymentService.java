@@ -13,6 +13,7 @@ import edu.mayo.mprc.daemon.WorkerFactoryBase;
 import edu.mayo.mprc.daemon.progress.ProgressReporter;
 import edu.mayo.mprc.enginedeployment.DeploymentRequest;
 import edu.mayo.mprc.enginedeployment.DeploymentService;
+import edu.mayo.mprc.fasta.FastaFingerprint;
 import edu.mayo.mprc.utilities.FileUtilities;
 import edu.mayo.mprc.utilities.GZipUtilities;
 import edu.mayo.mprc.utilities.ProcessCaller;
@@ -127,6 +128,11 @@ public final class SequestDeploymentService extends DeploymentService<SequestDep
 			return reportInto;
 		}
 
+		final FastaFingerprint fingerprint = getFingerprint(super.getCurationFile(request), getDeployedFastaFile(request));
+		if (isIdenticalDatabaseDeployed(request, fingerprint, reportInto)) {
+			return reportInto;
+		}
+
 		//key files generated as a result of the deployment.  The caller may be interested in these.
 		final List<File> generatedFiles = new ArrayList<File>();
 		//a directory for holding temporary files while the deployment is happending this will be cleaned up at the end
@@ -195,7 +201,7 @@ public final class SequestDeploymentService extends DeploymentService<SequestDep
 
 			ProcessCaller caller = new ProcessCaller(pb);
 			try {
-				caller.run();
+				runIndexer(caller);
 			} catch (Exception t) {
 				throw new MprcException("Could not create sequest database index.", t);
 			}
@@ -255,6 +261,9 @@ public final class SequestDeploymentService extends DeploymentService<SequestDep
 			FileUtilities.writeStringToFile(infoFile, info.toString(), true);
 			generatedFiles.add(infoFile);
 
+			recordFingerprint(movedFasta, fingerprint);
+			generatedFiles.add(FastaFingerprint.getFingerprintFile(movedFasta));
+
 			reportInto.setGeneratedFiles(generatedFiles);
 
 		} catch (IOException e) {
@@ -346,30 +355,11 @@ public final class SequestDeploymentService extends DeploymentService<SequestDep
 			final String want = converter.convertSequestParamsFileIntoMakeDBPIC(sequestParams, fastaFile, sequestMappingFactory).toString();
 			final File depdir = getCurrentDeploymentFolder(request);
 
-			if (depdir.exists()) {
-
-				final FilenameFilter makedbFileFilter = new FilenameFilter() {
-					public boolean accept(File dir, String name) {
-						return name.endsWith("makedb.params");
-					}
-				};
-
-				//look for all makedb.params files in this folder and if one would seem to create the same as the given params file would
-				//then we want to find the hdr file that was created from that makedb.params file this will be a hdr file with the same name
-				for (File file : depdir.listFiles(makedbFileFilter)) {
-					String found = Files.toString(file, Charsets.US_ASCII);
-					if (found.equals(want)) {
-						String commonName = file.getAbsolutePath().replace(".makedb.params", "");
-						File hdr = new File(commonName + ".fasta.hdr");
-						if (hdr.exists()) {
-							reportInto.setFileToSearchAgainst(hdr);
-							reportInto.addMessage("No deployment necessary, it was previously deployed.");
-							return true;
-						} else {
-							throw new FileNotFoundException("A makedb file was found but we could not find an associated .fasta.hdr file: " + file.getAbsolutePath());
-						}
-					}
-				}
+			final File hdr = findPreviousHdr(depdir, want);
+			if (hdr != null) {
+				reportInto.setFileToSearchAgainst(hdr);
+				reportInto.addMessage("No deployment necessary, it was previously deployed.");
+				return true;
 			}
 			return false;
 		} catch (Exception t) {
@@ -377,6 +367,73 @@ public final class SequestDeploymentService extends DeploymentService<SequestDep
 		}
 	}
 
+	/**
+	 * Checks whether a database with identical contents was already indexed under a different name with equivalent
+	 * makedb settings. Sequest indices cannot be patched, but an index of identical contents can be searched directly,
+	 * saving the (often hours long) makedb run.
+	 *
+	 * @param request     The deployment request.
+	 * @param fingerprint Fingerprint of the database to be deployed.
+	 * @param reportInto  Result to fill in with the reused index.
+	 * @return true if an identical deployment was found and reported.
+	 */
+	private boolean isIdenticalDatabaseDeployed(final DeploymentRequest request, final FastaFingerprint fingerprint, final SequestDeploymentResult reportInto) {
+		final File identical = findIdenticalDeployment(getDeployedFastaFile(request), fingerprint);
+		if (identical == null) {
+			return false;
+		}
+
+		final File sequestParams = (File) request.getProperty(SEQUEST_PARAMS_FILE);
+		try {
+			final String want = converter.convertSequestParamsFileIntoMakeDBPIC(sequestParams, identical, sequestMappingFactory).toString();
+			final File hdr = findPreviousHdr(identical.getParentFile(), want);
+			if (hdr == null) {
+				LOGGER.debug("Database " + identical.getAbsolutePath() + " is identical, but it was indexed with different makedb settings.");
+				return false;
+			}
+			reportInto.setDeployedFile(identical);
+			reportInto.setFileToSearchAgainst(hdr);
+			reportInto.addMessage("No deployment necessary, an identical database was previously deployed as " + identical.getName() + ".");
+			return true;
+		} catch (Exception t) {
+			throw new MprcException("Could not check the deployment of identical database " + identical.getAbsolutePath(), t);
+		}
+	}
+
+	/**
+	 * Look for all makedb.params files in given folder. If one has the same contents as the one we want,
+	 * return the hdr file that was created from that makedb.params file. This will be a hdr file with the same name.
+	 *
+	 * @param depdir Deployment folder to check.
+	 * @param want   The makedb.params contents we want.
+	 * @return The .fasta.hdr file matching the makedb.params, null if there is none.
+	 */
+	private File findPreviousHdr(final File depdir, final String want) throws IOException {
+		if (!depdir.exists()) {
+			return null;
+		}
+
+		final FilenameFilter makedbFileFilter = new FilenameFilter() {
+			public boolean accept(File dir, String name) {
+				return name.endsWith("makedb.params");
+			}
+		};
+
+		for (File file : depdir.listFiles(makedbFileFilter)) {
+			String found = Files.toString(file, Charsets.US_ASCII);
+			if (found.equals(want)) {
+				String commonName = file.getAbsolutePath().replace(".makedb.params", "");
+				File hdr = new File(commonName + ".fasta.hdr");
+				if (hdr.exists()) {
+					return hdr;
+				} else {
+					throw new FileNotFoundException("A makedb file was found but we could not find an associated .fasta.hdr file: " + file.getAbsolutePath());
+				}
+			}
+		}
+		return null;
+	}
+
 	protected String getParamSetName(DeploymentRequest request) {
 		File originalSequestParamsFile;
 		Object givenProperty = request.getProperty(SEQUEST_PARAMS_FILE);
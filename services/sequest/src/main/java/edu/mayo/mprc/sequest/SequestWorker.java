@@ -71,6 +71,7 @@ public final class SequestWorker implements Worker {
 
 		m.setHostsFile(pvmHosts);
 		m.setSequestExe(sequestCommand);
+		m.setPipelined(true);
 
 		m.callSequest(
 				sequestWorkPacket.getOutputFile(),
@@ -26,6 +26,22 @@ final class Dta2TarWriter {
   *
   */
 	public void writeDtaFilesToTar(List<String> dtaFileNames, File outputDir, TarWriter tarWriter) {
+		List<File> allFiles = getDtaAndOutFiles(dtaFileNames, outputDir);
+		// now tar these files
+		if (allFiles.size() > 0) {
+			tarWriter.addFiles(allFiles);
+		}
+	}
+
+	/**
+	 * Pairs each dta file with the .out file Sequest produced for it.
+	 * If an .out file is missing, the files are moved to an 'outs' folder for troubleshooting and an exception is thrown.
+	 *
+	 * @param dtaFileNames - the dta file names
+	 * @param outputDir    - the search output directory
+	 * @return the files in the order they go to the tar: dta, out, dta, out...
+	 */
+	public List<File> getDtaAndOutFiles(List<String> dtaFileNames, File outputDir) {
 		List<File> allFiles = new ArrayList<File>();
 		for (String fileName1 : dtaFileNames) {
 			File dtaFile = new File(fileName1);
@@ -62,11 +78,7 @@ final class Dta2TarWriter {
 			allFiles.add(out);
 
 		}
-		// now tar these files
-		if (allFiles.size() > 0) {
-			tarWriter.addFiles(allFiles);
-		}
-
+		return allFiles;
 	}
 
 
@@ -49,6 +49,11 @@ public final class Mgf2SequestCaller implements Mgf2SequestInterface {
 	 */
 	private int maxCommandLineLength;
 
+	/**
+	 * when set, dta files are written while sequest searches and the results are archived, see {@link PipelinedSequestSubmit}
+	 */
+	private boolean pipelined;
+
 	/**
 	 * last calculated max call length
 	 */
@@ -117,7 +122,14 @@ public final class Mgf2SequestCaller implements Mgf2SequestInterface {
 		}
 
 		File tarFileName = prepareTarFileLocation(tarFile);
-		SequestSubmitterInterface s = new SequestSubmit(maxCommandLineLength, searchParamsFile, outputDir, tarFileName, hostsFile);
+		final SequestSubmitterInterface s;
+		PipelinedSequestSubmit pipeline = null;
+		if (pipelined) {
+			pipeline = new PipelinedSequestSubmit(maxCommandLineLength, searchParamsFile, outputDir, tarFileName, hostsFile);
+			s = pipeline;
+		} else {
+			s = new SequestSubmit(maxCommandLineLength, searchParamsFile, outputDir, tarFileName, hostsFile);
+		}
 
 		SequestRunner sc = new SequestRunner(tempFolder, paramsFile, new ArrayList<String>(), hostsFile);
 
@@ -151,6 +163,9 @@ public final class Mgf2SequestCaller implements Mgf2SequestInterface {
 
 			parser.getDTAsFromFileWithBlockReads(br);
 		} catch (Exception t) {
+			if (pipeline != null) {
+				pipeline.abort();
+			}
 			throw new MprcException(t);
 		} finally {
 			FileUtilities.closeQuietly(br);
@@ -255,6 +270,10 @@ public final class Mgf2SequestCaller implements Mgf2SequestInterface {
 		this.maxCommandLineLength = commandLineLength;
 	}
 
+	public void setPipelined(boolean pipelined) {
+		this.pipelined = pipelined;
+	}
+
 
 	/**
 	 * Checks if the length of the database hdr file name exceeds specifications for sequest.
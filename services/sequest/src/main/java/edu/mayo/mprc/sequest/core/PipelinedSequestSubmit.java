@@ -0,0 +1,314 @@
+package edu.mayo.mprc.sequest.core;
+
+import edu.mayo.mprc.MprcException;
+import edu.mayo.mprc.tar.TarWriter;
+import edu.mayo.mprc.utilities.FileUtilities;
+import edu.mayo.mprc.utilities.GZipUtilities;
+import edu.mayo.mprc.utilities.ParallelGZIPOutputStream;
+import org.apache.log4j.Logger;
+import org.apache.tools.tar.TarOutputStream;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Packages dtas for Sequest the same way {@link SequestSubmit} does, but runs the three phases concurrently:
+ * <ul>
+ * <li>the caller keeps writing dta files and adding them,</li>
+ * <li>a search thread runs Sequest on each batch as soon as it is full,</li>
+ * <li>an archive thread streams the dta and .out files of finished batches into the resulting <tt>.tar.gz</tt>.</li>
+ * </ul>
+ * The stages are connected by bounded queues, so a fast stage waits for a slow one instead of piling up work.
+ * Sequest itself still runs one batch at a time.
+ * <p/>
+ * The tar is compressed as it is written, there is no separate gzip pass over the finished tar.
+ * The batches are archived in the order they were searched.
+ */
+final class PipelinedSequestSubmit implements SequestSubmitterInterface {
+	private static final Logger LOGGER = Logger.getLogger(PipelinedSequestSubmit.class);
+
+	/**
+	 * How many batches can wait for each stage.
+	 */
+	private static final int QUEUED_BATCHES = 2;
+	/**
+	 * How often a blocked stage checks whether another stage failed.
+	 */
+	private static final long FAILURE_CHECK_MILLIS = 100;
+	private static final String SEQUEST_LOG = "sequest.log";
+
+	/**
+	 * Marks the end of the batches.
+	 */
+	private static final List<String> END = new ArrayList<String>(0);
+
+	private final int maxLineLength;
+	private final File paramsFile;
+	private final File outputDir;
+	private final File gzFile;
+	private final File hostsFile;
+	private SequestCallerInterface sequestCaller;
+
+	/**
+	 * dta files not submitted yet
+	 */
+	private List<String> sequestDtaFiles = new ArrayList<String>();
+	private int accumulatedLength;
+
+	private final BlockingQueue<List<String>> searchQueue = new ArrayBlockingQueue<List<String>>(QUEUED_BATCHES);
+	private final BlockingQueue<List<String>> archiveQueue = new ArrayBlockingQueue<List<String>>(QUEUED_BATCHES);
+	private final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+	private Thread searchThread;
+	private Thread archiveThread;
+
+	/**
+	 * @param maxLineLength Maximum length of the Sequest command line.
+	 * @param paramsFile    Sequest parameters.
+	 * @param workingDir    Search output directory.
+	 * @param tarFile       The tar file, the result is written to this file with <tt>.gz</tt> appended.
+	 * @param hostsFile     PVM hosts file.
+	 */
+	public PipelinedSequestSubmit(final long maxLineLength, File paramsFile, File workingDir, File tarFile, File hostsFile) {
+		this.maxLineLength = (int) maxLineLength;
+		this.paramsFile = paramsFile;
+		outputDir = workingDir;
+		gzFile = new File(tarFile.getAbsolutePath() + ".gz");
+		this.hostsFile = hostsFile;
+	}
+
+	/**
+	 * Add a dta file for submission. When the files do not fit on a command line anymore, they are passed to the search
+	 * thread. Blocks when Sequest is too far behind.
+	 */
+	public void addDtaFile(String fileName, boolean forced) {
+		checkFailure();
+		sequestDtaFiles.add(fileName);
+		accumulatedLength += new File(fileName).getName().length() + 1;
+		if (forced) {
+			LOGGER.debug("forced set");
+			submit(sequestDtaFiles.size());
+		} else if (accumulatedLength >= maxLineLength) {
+			// The file that made the line too long waits for the next batch
+			final boolean lastFileNotProcessed = accumulatedLength > maxLineLength && sequestDtaFiles.size() > 1;
+			submit(lastFileNotProcessed ? sequestDtaFiles.size() - 1 : sequestDtaFiles.size());
+		}
+	}
+
+	/**
+	 * Submits all remaining files, waits until they are searched and archived.
+	 */
+	public void forceSubmit() {
+		if (!sequestDtaFiles.isEmpty()) {
+			submit(sequestDtaFiles.size());
+		}
+		enqueue(searchQueue, END);
+		join(searchThread);
+		join(archiveThread);
+		checkFailure();
+		LOGGER.debug("sequest results archived to " + gzFile.getAbsolutePath());
+	}
+
+	/**
+	 * Stops the stages and deletes the partial result. Call when the dta files cannot be produced.
+	 */
+	public void abort() {
+		fail(new MprcException("Sequest search was aborted"));
+		join(searchThread);
+		join(archiveThread);
+		FileUtilities.quietDelete(gzFile);
+	}
+
+	public int getHowManyFiles() {
+		return sequestDtaFiles.size();
+	}
+
+	public void setExceptionThrown(Throwable exceptionThrown) {
+		fail(exceptionThrown);
+	}
+
+	public SequestCallerInterface getSequestCaller() {
+		return sequestCaller;
+	}
+
+	public void setSequestCaller(SequestCallerInterface sequestCaller) {
+		this.sequestCaller = sequestCaller;
+	}
+
+	/**
+	 * @return The resulting <tt>.tar.gz</tt> file.
+	 */
+	public File getGzFile() {
+		return gzFile;
+	}
+
+	/**
+	 * Passes first <code>count</code> files to the search thread, keeps the rest.
+	 */
+	private void submit(int count) {
+		final List<String> batch = new ArrayList<String>(sequestDtaFiles.subList(0, count));
+		final List<String> remaining = new ArrayList<String>(sequestDtaFiles.subList(count, sequestDtaFiles.size()));
+		sequestDtaFiles = remaining;
+		accumulatedLength = 0;
+		for (String dtaFile : remaining) {
+			accumulatedLength += new File(dtaFile).getName().length() + 1;
+		}
+		enqueue(searchQueue, batch);
+	}
+
+	/**
+	 * Blocks until the queue takes the batch, fails if any stage failed meanwhile.
+	 */
+	private void enqueue(BlockingQueue<List<String>> queue, List<String> batch) {
+		start();
+		try {
+			while (!queue.offer(batch, FAILURE_CHECK_MILLIS, TimeUnit.MILLISECONDS)) {
+				checkFailure();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new MprcException("Interrupted while waiting for sequest", e);
+		}
+	}
+
+	private synchronized void start() {
+		if (searchThread != null) {
+			return;
+		}
+		searchThread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					search();
+				} catch (Throwable t) {
+					fail(t);
+				}
+			}
+		}, "sequest-search");
+		archiveThread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					archive();
+				} catch (Throwable t) {
+					fail(t);
+					FileUtilities.quietDelete(gzFile);
+				}
+			}
+		}, "sequest-archive");
+		searchThread.setDaemon(true);
+		archiveThread.setDaemon(true);
+		searchThread.start();
+		archiveThread.start();
+	}
+
+	/**
+	 * The search stage. Runs Sequest on each batch, passes the results to the archive stage.
+	 */
+	private void search() throws InterruptedException {
+		int submitCount = 0;
+		while (true) {
+			final List<String> batch = searchQueue.take();
+			if (batch == END) {
+				enqueue(archiveQueue, END);
+				return;
+			}
+			submitCount++;
+			// keep the log of the previous batch
+			final File sequestLog = new File(outputDir, SEQUEST_LOG);
+			if (sequestLog.exists()) {
+				FileUtilities.copyFile(sequestLog, new File(outputDir, sequestLog.getName() + "." + submitCount), true);
+			}
+
+			final SequestCallerInterface caller = createCaller(batch);
+			final long startSearch = System.currentTimeMillis();
+			caller.run();
+			LOGGER.debug("searchtime = " + (System.currentTimeMillis() - startSearch) + " for " + batch.size() + " dta files");
+
+			// .out and .dta files are in the working dir for sequest
+			final List<String> searched = new ArrayList<String>(batch.size());
+			for (String dtaFile : batch) {
+				searched.add(new File(caller.getWorkingDir(), new File(dtaFile).getName()).getAbsolutePath());
+			}
+			enqueue(archiveQueue, searched);
+		}
+	}
+
+	private SequestCallerInterface createCaller(List<String> dtaFiles) {
+		if (sequestCaller == null) {
+			return new SequestRunner(outputDir, paramsFile, dtaFiles, hostsFile);
+		}
+		final SequestCallerInterface caller = sequestCaller.createInstance(sequestCaller.getWorkingDir(), paramsFile, dtaFiles, hostsFile);
+		caller.setStartTimeOut(sequestCaller.getStartTimeOut());
+		caller.setWatchDogTimeOut(sequestCaller.getWatchDogTimeOut());
+		caller.setSearchResultsFolder(sequestCaller.getSearchResultsFolder());
+		return caller;
+	}
+
+	/**
+	 * The archive stage. Streams the dta and .out files of each searched batch to the compressed tar.
+	 */
+	private void archive() throws InterruptedException, IOException {
+		final Dta2TarWriter dtaWriter = new Dta2TarWriter();
+		TarOutputStream tar = null;
+		try {
+			FileUtilities.quietDelete(gzFile);
+			tar = new TarOutputStream(new ParallelGZIPOutputStream(new BufferedOutputStream(new FileOutputStream(gzFile), GZipUtilities.LARGE_BUFF_SIZE)));
+			while (true) {
+				final List<String> batch = archiveQueue.take();
+				if (batch == END) {
+					break;
+				}
+				final long startTar = System.currentTimeMillis();
+				for (File file : dtaWriter.getDtaAndOutFiles(batch, outputDir)) {
+					TarWriter.addEntry(tar, file, gzFile.getAbsolutePath());
+				}
+				LOGGER.debug("tartime = " + (System.currentTimeMillis() - startTar));
+			}
+			tar.close();
+			tar = null;
+		} finally {
+			FileUtilities.closeQuietly(tar);
+		}
+	}
+
+	/**
+	 * Records the first failure and stops all the stages.
+	 */
+	private void fail(Throwable t) {
+		if (failure.compareAndSet(null, t)) {
+			synchronized (this) {
+				if (searchThread != null) {
+					searchThread.interrupt();
+					archiveThread.interrupt();
+				}
+			}
+		}
+	}
+
+	private void checkFailure() {
+		final Throwable t = failure.get();
+		if (t != null) {
+			throw new MprcException("Sequest search failed", t);
+		}
+	}
+
+	private static void join(Thread thread) {
+		if (thread == null) {
+			return;
+		}
+		try {
+			thread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new MprcException("Interrupted while waiting for sequest", e);
+		}
+	}
+}
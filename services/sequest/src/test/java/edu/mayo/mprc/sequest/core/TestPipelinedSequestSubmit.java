@@ -0,0 +1,196 @@
+package edu.mayo.mprc.sequest.core;
+
+import edu.mayo.mprc.MprcException;
+import edu.mayo.mprc.utilities.FileUtilities;
+import org.apache.tools.tar.TarEntry;
+import org.apache.tools.tar.TarInputStream;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+
+public final class TestPipelinedSequestSubmit {
+	private static final int DTA_COUNT = 100;
+
+	@Test
+	public void shouldSearchWhileDtasAreWritten() throws IOException {
+		final File folder = FileUtilities.createTempFolder();
+		try {
+			final File dtaFolder = new File(folder, "dtas");
+			FileUtilities.ensureFolderExists(dtaFolder);
+			final AtomicInteger added = new AtomicInteger();
+			final FakeSequest sequest = new FakeSequest(dtaFolder, new ArrayList<String>(), added, Collections.synchronizedList(new ArrayList<Integer>()), Collections.synchronizedList(new ArrayList<Integer>()));
+
+			final PipelinedSequestSubmit submit = new PipelinedSequestSubmit(100, new File(folder, "params"), folder, new File(folder, "result.tar"), null);
+			submit.setSequestCaller(sequest);
+			for (int i = 0; i < DTA_COUNT; i++) {
+				final File dta = new File(dtaFolder, "spectrum" + (1000 + i) + ".dta");
+				FileUtilities.writeStringToFile(dta, "dta " + i, true);
+				added.incrementAndGet();
+				submit.addDtaFile(dta.getAbsolutePath(), false);
+			}
+			submit.forceSubmit();
+
+			int searched = 0;
+			for (int batchSize : sequest.batchSizes) {
+				searched += batchSize;
+				Assert.assertTrue(batchSize * "spectrum1000.dta ".length() <= 100, "Batch of " + batchSize + " does not fit the command line");
+			}
+			Assert.assertEquals(searched, DTA_COUNT);
+			Assert.assertTrue(sequest.addedAtStart.get(0) < DTA_COUNT, "The first search must start before all dtas are written");
+
+			final List<String> entries = readEntries(submit.getGzFile());
+			Assert.assertEquals(entries.size(), 2 * DTA_COUNT);
+			for (int i = 0; i < DTA_COUNT; i++) {
+				Assert.assertEquals(entries.get(2 * i), "spectrum" + (1000 + i) + ".dta");
+				Assert.assertEquals(entries.get(2 * i + 1), "spectrum" + (1000 + i) + ".out");
+			}
+			Assert.assertFalse(new File(folder, "result.tar").exists(), "No intermediate tar");
+		} finally {
+			FileUtilities.cleanupTempFile(folder);
+		}
+	}
+
+	@Test
+	public void shouldReportSearchFailure() {
+		final File folder = FileUtilities.createTempFolder();
+		try {
+			final PipelinedSequestSubmit submit = new PipelinedSequestSubmit(100, new File(folder, "params"), folder, new File(folder, "result.tar"), null);
+			submit.setSequestCaller(new FakeSequest(folder, new ArrayList<String>(), new AtomicInteger(), null, null));
+			final File dta = new File(folder, "missing.dta");
+			submit.addDtaFile(dta.getAbsolutePath(), true);
+			try {
+				submit.forceSubmit();
+				Assert.fail("The failed search must be reported");
+			} catch (MprcException e) {
+				// expected
+			}
+			Assert.assertFalse(submit.getGzFile().exists(), "Partial result must be deleted");
+		} finally {
+			FileUtilities.cleanupTempFile(folder);
+		}
+	}
+
+	private static List<String> readEntries(File gzFile) throws IOException {
+		final List<String> entries = new ArrayList<String>();
+		TarInputStream tar = null;
+		try {
+			tar = new TarInputStream(new GZIPInputStream(new FileInputStream(gzFile)));
+			TarEntry entry;
+			while ((entry = tar.getNextEntry()) != null) {
+				entries.add(entry.getName());
+			}
+		} finally {
+			FileUtilities.closeQuietly(tar);
+		}
+		return entries;
+	}
+
+	/**
+	 * Writes an .out file for each dta, slowly. Fails when a dta is missing.
+	 */
+	private static final class FakeSequest implements SequestCallerInterface {
+		private final File workingDir;
+		private final List<String> dtaFiles;
+		private final AtomicInteger added;
+		private final List<Integer> addedAtStart;
+		private final List<Integer> batchSizes;
+		private long watchDogTimeOut;
+		private long startTimeOut;
+		private String searchResultsFolder;
+
+		private FakeSequest(File workingDir, List<String> dtaFiles, AtomicInteger added, List<Integer> addedAtStart, List<Integer> batchSizes) {
+			this.workingDir = workingDir;
+			this.dtaFiles = dtaFiles;
+			this.added = added;
+			this.addedAtStart = addedAtStart;
+			this.batchSizes = batchSizes;
+		}
+
+		@Override
+		public SequestCallerInterface createInstance(File workingDir, File paramsFile, List<String> sequestDtaFiles, File hostsFile) {
+			return new FakeSequest(workingDir, sequestDtaFiles, added, addedAtStart, batchSizes);
+		}
+
+		@Override
+		public void run() {
+			if (addedAtStart != null) {
+				addedAtStart.add(added.get());
+				batchSizes.add(dtaFiles.size());
+			}
+			for (String dtaFile : dtaFiles) {
+				final File dta = new File(workingDir, new File(dtaFile).getName());
+				if (!dta.isFile()) {
+					throw new MprcException("Missing " + dta.getAbsolutePath());
+				}
+				FileUtilities.writeStringToFile(new File(FileUtilities.stripExtension(dta.getAbsolutePath()) + ".out"), "out", true);
+			}
+			try {
+				Thread.sleep(20);
+			} catch (InterruptedException e) {
+				throw new MprcException(e);
+			}
+		}
+
+		@Override
+		public String getCall() {
+			return null;
+		}
+
+		@Override
+		public String getCommand() {
+			return null;
+		}
+
+		@Override
+		public String getSequestExe() {
+			return null;
+		}
+
+		@Override
+		public void setSequestExe(String sequestExe) {
+		}
+
+		@Override
+		public String getSearchResultsFolder() {
+			return searchResultsFolder;
+		}
+
+		@Override
+		public void setSearchResultsFolder(String folder) {
+			searchResultsFolder = folder;
+		}
+
+		@Override
+		public File getWorkingDir() {
+			return workingDir;
+		}
+
+		@Override
+		public long getWatchDogTimeOut() {
+			return watchDogTimeOut;
+		}
+
+		@Override
+		public void setWatchDogTimeOut(long timeOut) {
+			watchDogTimeOut = timeOut;
+		}
+
+		@Override
+		public long getStartTimeOut() {
+			return startTimeOut;
+		}
+
+		@Override
+		public void setStartTimeOut(long timeOut) {
+			startTimeOut = timeOut;
+		}
+	}
+}
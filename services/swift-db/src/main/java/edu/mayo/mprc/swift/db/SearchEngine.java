@@ -1,5 +1,6 @@
 package edu.mayo.mprc.swift.db;
 
+import com.google.common.io.CharStreams;
 import edu.mayo.mprc.MprcException;
 import edu.mayo.mprc.daemon.DaemonConnection;
 import edu.mayo.mprc.swift.params2.*;
@@ -8,7 +9,10 @@ import edu.mayo.mprc.utilities.FileUtilities;
 import org.apache.log4j.Logger;
 
 import java.io.*;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.EnumSet;
+import java.util.Set;
 
 /**
  * Object representing a configured search engine.
@@ -18,11 +22,28 @@ import java.util.Collection;
  * <p/>
  * Since the object is very heavy-weight, it should not be stored and transferred as is. Instead use the {@link #getCode()} method
  * and {@link #getForId}.
+ * <p/>
+ * The base settings of the mapping factory are read only once and kept in memory. Validation can be limited to
+ * a single changed parameter.
  */
 public final class SearchEngine implements Serializable, Comparable<SearchEngine>, Cloneable {
 	private static final long serialVersionUID = 20080212L;
 	private static final Logger LOGGER = Logger.getLogger(SearchEngine.class);
 
+	/**
+	 * Parameters that have a mapping to the engine-specific format, in the order they are mapped.
+	 */
+	private static final ParamName[] MAPPED_PARAMS = {
+			ParamName.PeptideTolerance,
+			ParamName.FragmentTolerance,
+			ParamName.MissedCleavages,
+			ParamName.Database,
+			ParamName.Enzyme,
+			ParamName.FixedMods,
+			ParamName.VariableMods,
+			ParamName.Instrument,
+	};
+
 	private String code;
 	private String resultExtension;
 	private String doSearchXmlAttribute;
@@ -32,6 +53,10 @@ public final class SearchEngine implements Serializable, Comparable<SearchEngine
 	private ParamsInfo paramsInfo;
 
 	private transient MappingFactory mappingFactory;
+	/**
+	 * Base settings of {@link #mappingFactory}, null until first needed.
+	 */
+	private transient volatile String baseSettings;
 	private transient DaemonConnection searchDaemon;
 	private transient DaemonConnection dbDeployDaemon;
 
@@ -70,9 +95,65 @@ public final class SearchEngine implements Serializable, Comparable<SearchEngine
 	 * @return Object with a list of validations for each parameter
 	 */
 	public static ParamsValidations validate(SearchEngineParameters parameters, Collection<SearchEngine> engines) {
-		ParamsValidations validations = new ParamsValidations();
+		return validate(parameters, engines, EnumSet.copyOf(Arrays.asList(MAPPED_PARAMS)), new ParamsValidations());
+	}
+
+	/**
+	 * Validate a single parameter that changed since the previous validation, together with the parameters whose
+	 * validation depends on it. The validations of the other parameters are taken over from the previous validation.
+	 * <p/>
+	 * The mappings check a parameter against the parameters mapped before it (e.g. Mascot checks the variable mods
+	 * against the fixed mods), so all the parameters up to the revalidated ones are mapped again.
+	 *
+	 * @param parameters          Parameters to validate.
+	 * @param engines             List of engines that has to have valid parameter mappings.
+	 * @param changed             The parameter that changed.
+	 * @param previousValidations Validations of the parameters before the change. They are not modified.
+	 * @return Object with a list of validations for each parameter
+	 */
+	public static ParamsValidations validate(SearchEngineParameters parameters, Collection<SearchEngine> engines, ParamName changed, ParamsValidations previousValidations) {
+		final ParamsValidations validations = new ParamsValidations();
+		validations.addAll(previousValidations);
+		if (!Arrays.asList(MAPPED_PARAMS).contains(changed)) {
+			// The parameter is not mapped to the search engines
+			return validations;
+		}
+		final Set<ParamName> revalidated = EnumSet.of(changed);
+		if (changed == ParamName.FixedMods) {
+			// The variable mods must not repeat the fixed ones
+			revalidated.add(ParamName.VariableMods);
+		}
+		for (ParamName name : revalidated) {
+			validations.clearValidationsFor(name);
+		}
+		return validate(parameters, engines, revalidated, validations);
+	}
+
+	/**
+	 * Maps the parameters in order, up to the last one of the given set, and adds the validations of the given
+	 * parameters.
+	 */
+	private static ParamsValidations validate(SearchEngineParameters parameters, Collection<SearchEngine> engines, Set<ParamName> params, ParamsValidations validations) {
 		for (SearchEngine engine : engines) {
-			engine.validate(parameters, validations);
+			if (engine.getMappingFactory() == null) {
+				// This engine does not support mapping (e.g. Scaffold).
+				continue;
+			}
+			final ParamsValidations engineValidations = new ParamsValidations();
+			final ParamValidationsMappingContext context = new ParamValidationsMappingContext(engineValidations, engine.getParamsInfo());
+			final Mappings mapping = engine.createBaseMapping();
+			int toMap = params.size();
+			for (int i = 0; i < MAPPED_PARAMS.length && toMap > 0; i++) {
+				mapParameter(mapping, context, MAPPED_PARAMS[i], parameters);
+				if (params.contains(MAPPED_PARAMS[i])) {
+					toMap--;
+				}
+			}
+			for (ParamName name : params) {
+				for (Validation validation : engineValidations.getValidationFor(name)) {
+					validations.addValidation(name, validation);
+				}
+			}
 		}
 		return validations;
 	}
@@ -122,24 +203,11 @@ public final class SearchEngine implements Serializable, Comparable<SearchEngine
 			return;
 		}
 
-		/** Pass a dummy writer that does nothing */
-		Writer writer = new Writer() {
-			@Override
-			public void write(char[] cbuf, int off, int len) throws IOException {
-				// Do nothing
-			}
-
-			@Override
-			public void flush() throws IOException {
-				// Do nothing
-			}
-
-			@Override
-			public void close() throws IOException {
-				// Do nothing
-			}
-		};
-		writeSearchEngineParameters(parameters, validations, writer);
+		final ParamValidationsMappingContext context = new ParamValidationsMappingContext(validations, paramsInfo);
+		final Mappings mapping = createBaseMapping();
+		for (ParamName name : MAPPED_PARAMS) {
+			mapParameter(mapping, context, name, parameters);
+		}
 	}
 
 	private void writeSearchEngineParameters(SearchEngineParameters params, ParamsValidations validations, Writer writer) {
@@ -149,42 +217,19 @@ public final class SearchEngine implements Serializable, Comparable<SearchEngine
 		ParamValidationsMappingContext context = new ParamValidationsMappingContext(validations, paramsInfo);
 
 		// Initialize the mappings object
-		final Mappings mapping = getMappingFactory().createMapping();
-		final Reader baseSettings = mapping.baseSettings();
-		mapping.read(baseSettings);
-		FileUtilities.closeQuietly(baseSettings);
+		final Mappings mapping = createBaseMapping();
 
 		// Map each parameter
-		context.startMapping(ParamName.PeptideTolerance);
-		mapping.setPeptideTolerance(context, params.getPeptideTolerance());
-
-		context.startMapping(ParamName.FragmentTolerance);
-		mapping.setFragmentTolerance(context, params.getFragmentTolerance());
-
-		context.startMapping(ParamName.MissedCleavages);
-		mapping.setMissedCleavages(context, params.getMissedCleavages());
-
-		context.startMapping(ParamName.Database);
-		mapping.setSequenceDatabase(context, params.getDatabase().getShortName());
-
-		context.startMapping(ParamName.Enzyme);
-		mapping.setProtease(context, params.getProtease());
-
-		context.startMapping(ParamName.FixedMods);
-		mapping.setFixedMods(context, params.getFixedModifications());
-
-		context.startMapping(ParamName.VariableMods);
-		mapping.setVariableMods(context, params.getVariableModifications());
-
-		context.startMapping(ParamName.Instrument);
-		mapping.setInstrument(context, params.getInstrument());
+		for (ParamName name : MAPPED_PARAMS) {
+			mapParameter(mapping, context, name, params);
+		}
 
 		if (!context.noErrors()) {
 			// Errors detected with this parameter set.
 			throw new MprcException("Search engine parameters have following errors:\n" + validations.toString(ValidationSeverity.ERROR));
 		}
 
-		mapping.write(mapping.baseSettings(), writer);
+		mapping.write(new StringReader(getBaseSettings()), writer);
 
 		try {
 			writer.close();
@@ -193,6 +238,67 @@ public final class SearchEngine implements Serializable, Comparable<SearchEngine
 		}
 	}
 
+	/**
+	 * @return New mapping initialized with the base settings.
+	 */
+	private Mappings createBaseMapping() {
+		final Mappings mapping = getMappingFactory().createMapping();
+		mapping.read(new StringReader(getBaseSettings()));
+		return mapping;
+	}
+
+	/**
+	 * @return Base settings of the mapping factory. Read only once, they never change.
+	 */
+	private String getBaseSettings() {
+		if (baseSettings == null) {
+			final Reader reader = getMappingFactory().createMapping().baseSettings();
+			try {
+				baseSettings = CharStreams.toString(reader);
+			} catch (IOException e) {
+				throw new MprcException("Could not read base settings for " + getCode(), e);
+			} finally {
+				FileUtilities.closeQuietly(reader);
+			}
+		}
+		return baseSettings;
+	}
+
+	/**
+	 * Map a single parameter to given mapping, reporting the validations to the context.
+	 */
+	private static void mapParameter(Mappings mapping, ParamValidationsMappingContext context, ParamName name, SearchEngineParameters params) {
+		context.startMapping(name);
+		switch (name) {
+			case PeptideTolerance:
+				mapping.setPeptideTolerance(context, params.getPeptideTolerance());
+				break;
+			case FragmentTolerance:
+				mapping.setFragmentTolerance(context, params.getFragmentTolerance());
+				break;
+			case MissedCleavages:
+				mapping.setMissedCleavages(context, params.getMissedCleavages());
+				break;
+			case Database:
+				mapping.setSequenceDatabase(context, params.getDatabase().getShortName());
+				break;
+			case Enzyme:
+				mapping.setProtease(context, params.getProtease());
+				break;
+			case FixedMods:
+				mapping.setFixedMods(context, params.getFixedModifications());
+				break;
+			case VariableMods:
+				mapping.setVariableMods(context, params.getVariableModifications());
+				break;
+			case Instrument:
+				mapping.setInstrument(context, params.getInstrument());
+				break;
+			default:
+				throw new MprcException("Parameter " + name.getName() + " is not mapped to search engines");
+		}
+	}
+
 	public void setCode(String code) {
 		this.code = code;
 	}
@@ -258,6 +364,7 @@ public final class SearchEngine implements Serializable, Comparable<SearchEngine
 
 	public void setMappingFactory(MappingFactory mappingFactory) {
 		this.mappingFactory = mappingFactory;
+		baseSettings = null;
 	}
 
 	public DaemonConnection getDbDeployDaemon() {
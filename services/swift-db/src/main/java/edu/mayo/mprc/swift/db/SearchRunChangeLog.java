@@ -0,0 +1,171 @@
+package edu.mayo.mprc.swift.db;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * In-memory log of recent changes to search runs and their tasks, so the report page can ask "what changed since
+ * I last looked" instead of re-reading everything from the database.
+ * <p/>
+ * Every recorded change advances a cursor. Clients remember the cursor they got last time and ask for changes since then,
+ * optionally waiting until something happens (long polling). Only the last {@link #DEFAULT_CAPACITY} changes are kept -
+ * clients that fall further behind, or that present a cursor from before a restart, are told their view
+ * is not complete and have to reload everything.
+ * <p/>
+ * The changes have to be recorded after the transaction that made them is committed, otherwise
+ * a client could be woken up before it can see the new data.
+ */
+public final class SearchRunChangeLog {
+	private static final int DEFAULT_CAPACITY = 4096;
+
+	/**
+	 * Cursors start at a value derived from the current time, so cursors handed out before a restart are not valid afterwards.
+	 */
+	private static final long CURSORS_PER_MILLISECOND = 1000L;
+
+	private final int capacity;
+	private final int[] searchRunIds;
+	private final boolean[] taskChanges;
+	private final long firstCursor;
+	private long nextCursor;
+	private boolean tracking;
+
+	public SearchRunChangeLog() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	SearchRunChangeLog(int capacity) {
+		this.capacity = capacity;
+		searchRunIds = new int[capacity];
+		taskChanges = new boolean[capacity];
+		firstCursor = System.currentTimeMillis() * CURSORS_PER_MILLISECOND;
+		nextCursor = firstCursor;
+	}
+
+	/**
+	 * @return Cursor pointing after the most recent change.
+	 */
+	public synchronized long getCursor() {
+		return nextCursor;
+	}
+
+	/**
+	 * @return True once task changes are being recorded in this JVM. When false, the searches are most likely running
+	 *         in a different process and the clients have to poll the database instead.
+	 */
+	public synchronized boolean isTracking() {
+		return tracking;
+	}
+
+	/**
+	 * Record that search run data changed (was added, hidden, its progress changed).
+	 */
+	public void searchRunChanged(int searchRunId) {
+		record(searchRunId, false);
+	}
+
+	/**
+	 * Record that one or more tasks of the search run changed. This implies the search run changed too.
+	 */
+	public void tasksChanged(int searchRunId) {
+		record(searchRunId, true);
+	}
+
+	private synchronized void record(int searchRunId, boolean taskChange) {
+		final int slot = (int) (nextCursor % capacity);
+		searchRunIds[slot] = searchRunId;
+		taskChanges[slot] = taskChange;
+		nextCursor++;
+		if (taskChange) {
+			tracking = true;
+		}
+		notifyAll();
+	}
+
+	/**
+	 * Return all changes made since given cursor. If there are none, wait up to given time for some to happen.
+	 *
+	 * @param cursor        Cursor obtained from previous call to {@link #getCursor()} or {@link Changes#getCursor()}.
+	 * @param timeoutMillis How long to wait for a change. 0 returns immediately.
+	 * @return Changes since the cursor. If they cannot be determined, {@link Changes#isComplete()} is false.
+	 */
+	public synchronized Changes getChangesSince(long cursor, long timeoutMillis) throws InterruptedException {
+		if (!covers(cursor)) {
+			return new Changes(nextCursor, false, Collections.<Integer>emptySet(), Collections.<Integer>emptySet());
+		}
+		final long deadline = System.currentTimeMillis() + timeoutMillis;
+		long remaining = timeoutMillis;
+		while (nextCursor == cursor && remaining > 0) {
+			wait(remaining);
+			remaining = deadline - System.currentTimeMillis();
+		}
+		if (!covers(cursor)) {
+			return new Changes(nextCursor, false, Collections.<Integer>emptySet(), Collections.<Integer>emptySet());
+		}
+
+		final Set<Integer> searchRuns = new TreeSet<Integer>();
+		final Set<Integer> searchRunsWithTaskChanges = new TreeSet<Integer>();
+		for (long i = cursor; i < nextCursor; i++) {
+			final int slot = (int) (i % capacity);
+			searchRuns.add(searchRunIds[slot]);
+			if (taskChanges[slot]) {
+				searchRunsWithTaskChanges.add(searchRunIds[slot]);
+			}
+		}
+		return new Changes(nextCursor, true, searchRuns, searchRunsWithTaskChanges);
+	}
+
+	private boolean covers(long cursor) {
+		return cursor >= firstCursor && cursor <= nextCursor && nextCursor - cursor <= capacity;
+	}
+
+	/**
+	 * Changes since a given cursor.
+	 */
+	public static final class Changes {
+		private final long cursor;
+		private final boolean complete;
+		private final Set<Integer> searchRuns;
+		private final Set<Integer> searchRunsWithTaskChanges;
+
+		Changes(long cursor, boolean complete, Set<Integer> searchRuns, Set<Integer> searchRunsWithTaskChanges) {
+			this.cursor = cursor;
+			this.complete = complete;
+			this.searchRuns = Collections.unmodifiableSet(searchRuns);
+			this.searchRunsWithTaskChanges = Collections.unmodifiableSet(searchRunsWithTaskChanges);
+		}
+
+		/**
+		 * @return Cursor to use for the next request.
+		 */
+		public long getCursor() {
+			return cursor;
+		}
+
+		/**
+		 * @return False if the changes since the cursor are not known (too many of them, or the cursor is from before a restart).
+		 */
+		public boolean isComplete() {
+			return complete;
+		}
+
+		public boolean isEmpty() {
+			return complete && searchRuns.isEmpty();
+		}
+
+		/**
+		 * @return Ids of all search runs that changed.
+		 */
+		public Set<Integer> getSearchRuns() {
+			return searchRuns;
+		}
+
+		/**
+		 * @return Ids of search runs whose task lists changed.
+		 */
+		public Set<Integer> getSearchRunsWithTaskChanges() {
+			return searchRunsWithTaskChanges;
+		}
+	}
+}
@@ -2,6 +2,7 @@ package edu.mayo.mprc.swift.db;
 
 import edu.mayo.mprc.utilities.StringUtilities;
 import org.hibernate.Criteria;
+import org.hibernate.criterion.CriteriaSpecification;
 import org.hibernate.criterion.Order;
 import org.hibernate.criterion.Restrictions;
 
@@ -14,6 +15,10 @@ import java.util.Date;
  *         Date: Jun 28, 2007
  */
 public final class SearchRunFilter {
+	/**
+	 * Alias of the submitting user within the criteria produced by {@link #updateCriteria(Criteria)}.
+	 */
+	public static final String USER_ALIAS = "user";
 
 	private int userSortOrder;
 	private String userWhereClause;
@@ -132,10 +137,9 @@ public final class SearchRunFilter {
 		if (!StringUtilities.stringEmpty(count)) {
 			criteria.setMaxResults(Integer.parseInt(count));
 		}
-		Criteria submittingUserCriteria = null;
+		criteria.createAlias("submittingUser", USER_ALIAS, CriteriaSpecification.LEFT_JOIN);
 		if (!StringUtilities.stringEmpty(userWhereClause)) {
-			submittingUserCriteria = criteria.createCriteria("submittingUser");
-			submittingUserCriteria.add(Restrictions.in("id", usersWhereClauseAsArray()));
+			criteria.add(Restrictions.in(USER_ALIAS + ".id", usersWhereClauseAsArray()));
 		}
 		if (startDate != null) {
 			criteria.add(Restrictions.isNotNull("startTimestamp"));
@@ -150,21 +154,17 @@ public final class SearchRunFilter {
 		}
 		switch (userSortOrder) {
 			case -1:
-				if (submittingUserCriteria == null) {
-					submittingUserCriteria = criteria.createCriteria("submittingUser");
-				}
-				submittingUserCriteria.addOrder(Order.desc("lastName"));
+				criteria.addOrder(Order.desc(USER_ALIAS + ".lastName"));
 				break;
 			case 1:
-				if (submittingUserCriteria == null) {
-					submittingUserCriteria = criteria.createCriteria("submittingUser");
-				}
-				submittingUserCriteria.addOrder(Order.asc("lastName"));
+				criteria.addOrder(Order.asc(USER_ALIAS + ".lastName"));
 				break;
 			default:
 				criteria.addOrder(Order.desc("startTimestamp"));
 				break;
 		}
+		// Make the order total, so the pages do not overlap
+		criteria.addOrder(Order.desc("id"));
 	}
 
 	private Integer[] usersWhereClauseAsArray() {
@@ -8,7 +8,6 @@ import edu.mayo.mprc.database.Dao;
 import edu.mayo.mprc.swift.dbmapping.*;
 import edu.mayo.mprc.workflow.persistence.TaskState;
 import edu.mayo.mprc.workspace.User;
-import org.hibernate.Session;
 
 import java.io.File;
 import java.util.Date;
@@ -39,12 +38,26 @@ public interface SwiftDao extends Dao, RuntimeInitializer {
 
 	/**
 	 * get the status information for all the search runs. The list is considered read-only - do not modify those searches.
+	 * <p/>
+	 * The search runs are paged in the database and only the data needed for listing is loaded - the returned
+	 * objects are not attached to the session.
 	 *
 	 * @param filter Filter for the search runs.
 	 * @return List of all search runs filtered and ordered as {@link SearchRunFilter specifies}.
 	 */
 	List<SearchRun> getSearchRunList(SearchRunFilter filter);
 
+	/**
+	 * Stream start and end times of all successfully completed tasks of search runs within the date range of the filter,
+	 * using a single scrollable query. The tasks are reported in order of their start time.
+	 * <p/>
+	 * Only the date range and the hidden flag of the filter are used, paging and user restrictions are ignored.
+	 *
+	 * @param filter  Filter defining the search runs.
+	 * @param handler Receives the task times.
+	 */
+	void scrollTaskTimes(SearchRunFilter filter, TaskTimeHandler handler);
+
 	/**
 	 * find number of running tasks for a search run
 	 *
@@ -108,8 +121,6 @@ public interface SwiftDao extends Dao, RuntimeInitializer {
 	 */
 	TaskData updateTask(TaskData task);
 
-	TaskStateData getTaskState(Session session, TaskState state);
-
 	/**
 	 * Loads the entire task state table into a hash map so it can function at reasonable speeed.
 	 *
@@ -125,4 +136,9 @@ public interface SwiftDao extends Dao, RuntimeInitializer {
 	void storeAssignedTaskData(TaskData taskData, AssignedTaskData assignedTaskData);
 
 	void searchRunFailed(int searchRunId, String message);
+
+	/**
+	 * @return Log of recent search run changes made in this JVM. Record changes to it only after they are committed.
+	 */
+	SearchRunChangeLog getChangeLog();
 }
@@ -8,15 +8,20 @@ import edu.mayo.mprc.daemon.progress.ProgressReport;
 import edu.mayo.mprc.database.Change;
 import edu.mayo.mprc.database.DaoBase;
 import edu.mayo.mprc.database.DatabasePlaceholder;
+import edu.mayo.mprc.database.ReferenceCache;
 import edu.mayo.mprc.swift.dbmapping.*;
 import edu.mayo.mprc.workflow.persistence.TaskState;
 import edu.mayo.mprc.workspace.User;
 import edu.mayo.mprc.workspace.WorkspaceDao;
 import org.apache.log4j.Logger;
 import org.hibernate.Criteria;
+import org.hibernate.Query;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
 import org.hibernate.Session;
 import org.hibernate.criterion.Criterion;
-import org.hibernate.criterion.LogicalExpression;
+import org.hibernate.criterion.Disjunction;
+import org.hibernate.criterion.Projections;
 import org.hibernate.criterion.Restrictions;
 
 import java.io.File;
@@ -26,10 +31,27 @@ public final class SwiftDaoHibernate extends DaoBase implements SwiftDao {
 	private static final Logger LOGGER = Logger.getLogger(SwiftDaoHibernate.class);
 
 	private FileTokenFactory fileTokenFactory;
-	private final Object taskStatesLock = new Object();
-	private Map<TaskState, TaskStateData> taskStates = null;
+	private final ReferenceCache<Map<TaskState, TaskStateData>> taskStates = new ReferenceCache<Map<TaskState, TaskStateData>>(new ReferenceCache.Loader<Map<TaskState, TaskStateData>>() {
+		@Override
+		public Map<TaskState, TaskStateData> load() {
+			try {
+				return listToTaskStateMap(getSession().createQuery("from TaskStateData").list());
+			} catch (Exception t) {
+				throw new MprcException("Cannot load the task state enumeration", t);
+			}
+		}
+	});
 	private WorkspaceDao workspaceDao;
 	private List<SearchEngine> searchEngines;
+	private final SearchRunChangeLog changeLog = new SearchRunChangeLog();
+	/**
+	 * How many task time rows to fetch from the database at once when scrolling.
+	 */
+	private static final int TASK_TIME_FETCH_SIZE = 1000;
+	/**
+	 * How many search runs to load reports for in one query.
+	 */
+	private static final int REPORT_BATCH_SIZE = 500;
 
 	public SwiftDaoHibernate() {
 		super(null);
@@ -77,15 +99,130 @@ public final class SwiftDaoHibernate extends DaoBase implements SwiftDao {
 		try {
 			Criteria criteria = getSession().createCriteria(SearchRun.class);
 			filter.updateCriteria(criteria);
-			criteria.setCacheable(true)
-					.setReadOnly(true);
-
-			return criteria.list();
+			final String user = SearchRunFilter.USER_ALIAS + ".";
+			criteria.setProjection(Projections.projectionList()
+					.add(Projections.property("id"))
+					.add(Projections.property("title"))
+					.add(Projections.property(user + "id"))
+					.add(Projections.property(user + "firstName"))
+					.add(Projections.property(user + "lastName"))
+					.add(Projections.property("swiftSearch"))
+					.add(Projections.property("startTimestamp"))
+					.add(Projections.property("endTimestamp"))
+					.add(Projections.property("errorMessage"))
+					.add(Projections.property("numTasks"))
+					.add(Projections.property("tasksWithWarning"))
+					.add(Projections.property("tasksFailed"))
+					.add(Projections.property("tasksCompleted"))
+					.add(Projections.property("hidden")));
+
+			final List<?> rows = criteria.list();
+			final List<SearchRun> searchRuns = new ArrayList<SearchRun>(rows.size());
+			for (Object row : rows) {
+				searchRuns.add(searchRunFromRow((Object[]) row));
+			}
+			loadReports(searchRuns);
+			return searchRuns;
 		} catch (Exception t) {
 			throw new MprcException("Cannot obtain search run status list for filter: " + filter, t);
 		}
 	}
 
+	/**
+	 * Create a detached search run from one row of the {@link #getSearchRunList} projection.
+	 */
+	private static SearchRun searchRunFromRow(Object[] row) {
+		final SearchRun searchRun = new SearchRun();
+		searchRun.setId((Integer) row[0]);
+		searchRun.setTitle((String) row[1]);
+		if (row[2] != null) {
+			final User user = new User();
+			user.setId((Integer) row[2]);
+			user.setFirstName((String) row[3]);
+			user.setLastName((String) row[4]);
+			searchRun.setSubmittingUser(user);
+		}
+		searchRun.setSwiftSearch((Integer) row[5]);
+		searchRun.setStartTimestamp((Date) row[6]);
+		searchRun.setEndTimestamp((Date) row[7]);
+		searchRun.setErrorMessage((String) row[8]);
+		searchRun.setNumTasks(intValue(row[9]));
+		searchRun.setTasksWithWarning(intValue(row[10]));
+		searchRun.setTasksFailed(intValue(row[11]));
+		searchRun.setTasksCompleted(intValue(row[12]));
+		searchRun.setHidden(intValue(row[13]));
+		return searchRun;
+	}
+
+	private static int intValue(Object value) {
+		return value == null ? 0 : ((Number) value).intValue();
+	}
+
+	/**
+	 * Fill in reports of completed search runs, {@link #REPORT_BATCH_SIZE} search runs per query.
+	 */
+	private void loadReports(List<SearchRun> searchRuns) {
+		final Map<Integer, SearchRun> completed = new HashMap<Integer, SearchRun>();
+		for (SearchRun searchRun : searchRuns) {
+			if (searchRun.isCompleted()) {
+				completed.put(searchRun.getId(), searchRun);
+			}
+		}
+		final List<Integer> ids = new ArrayList<Integer>(completed.keySet());
+		for (int i = 0; i < ids.size(); i += REPORT_BATCH_SIZE) {
+			final List<?> rows = getSession().createQuery("select r.searchRun.id, r from ReportData r where r.searchRun.id in (:ids)")
+					.setParameterList("ids", ids.subList(i, Math.min(ids.size(), i + REPORT_BATCH_SIZE)))
+					.setReadOnly(true)
+					.list();
+			for (Object row : rows) {
+				final Object[] values = (Object[]) row;
+				completed.get((Integer) values[0]).getReports().add((ReportData) values[1]);
+			}
+		}
+	}
+
+	@Override
+	public void scrollTaskTimes(final SearchRunFilter filter, final TaskTimeHandler handler) {
+		final StringBuilder hql = new StringBuilder(300);
+		hql.append("select t.searchRun.id, t.startTimestamp, t.endTimestamp from TaskData t")
+				.append(" where t.taskState.description=:completed")
+				.append(" and t.startTimestamp is not null and t.endTimestamp is not null");
+		if (filter.getStartDate() != null) {
+			hql.append(" and t.searchRun.startTimestamp>=:startDate");
+		}
+		if (filter.getEndDate() != null) {
+			hql.append(" and t.searchRun.endTimestamp<:endDate");
+		}
+		if (!filter.isShowHidden()) {
+			hql.append(" and t.searchRun.hidden=0");
+		}
+		hql.append(" order by t.startTimestamp");
+
+		ScrollableResults results = null;
+		try {
+			final Query query = getSession().createQuery(hql.toString())
+					.setString("completed", TaskState.COMPLETED_SUCCESFULLY.getText())
+					.setReadOnly(true)
+					.setFetchSize(TASK_TIME_FETCH_SIZE);
+			if (filter.getStartDate() != null) {
+				query.setTimestamp("startDate", filter.getStartDate());
+			}
+			if (filter.getEndDate() != null) {
+				query.setTimestamp("endDate", filter.getEndDate());
+			}
+			results = query.scroll(ScrollMode.FORWARD_ONLY);
+			while (results.next()) {
+				handler.taskTime((Integer) results.get(0), (Date) results.get(1), (Date) results.get(2));
+			}
+		} catch (Exception t) {
+			throw new MprcException("Cannot obtain task times for filter: " + filter, t);
+		} finally {
+			if (results != null) {
+				results.close();
+			}
+		}
+	}
+
 	@Override
 	public int getNumberRunningTasksForSearchRun(final SearchRun searchRun) {
 		// Do not hit database for finished search runs. Counting running tasks is costly
@@ -93,8 +230,8 @@ public final class SwiftDaoHibernate extends DaoBase implements SwiftDao {
 			return 0;
 		}
 		try {
-			long howmanyrunning = (Long) getSession().createQuery("select count(t) from TaskData t where t.searchRun=:searchRun and t.taskState.description='" + TaskState.RUNNING.getText() + "'")
-					.setParameter("searchRun", searchRun)
+			long howmanyrunning = (Long) getSession().createQuery("select count(t) from TaskData t where t.searchRun.id=:searchRunId and t.taskState.description='" + TaskState.RUNNING.getText() + "'")
+					.setInteger("searchRunId", searchRun.getId())
 					.uniqueResult();
 			return (int) howmanyrunning;
 		} catch (Exception t) {
@@ -106,45 +243,30 @@ public final class SwiftDaoHibernate extends DaoBase implements SwiftDao {
 	public Set<SearchRun> getSearchRuns(final boolean showSuccess, final boolean showFailure, final boolean showWarnings, final Date updatedSince) {
 
 		final Set<SearchRun> resultSet = new HashSet<SearchRun>();
+		if (!showSuccess && !showFailure && !showWarnings) {
+			return resultSet;
+		}
 
-		Session session = getSession();
 		try {
-			LogicalExpression timeCriteria;
-			if (updatedSince == null) {
-				timeCriteria = null;
-			} else {
-				timeCriteria = Restrictions.or(
-						Restrictions.gt("startTimestamp", updatedSince),
-						Restrictions.gt("endTimestamp", updatedSince));
-			}
-
+			final Disjunction statusCriteria = Restrictions.disjunction();
 			if (showSuccess) {
-				Criteria criteriaQuery = session.createCriteria(SearchRun.class);
-				if (timeCriteria != null) {
-					criteriaQuery.add(timeCriteria);
-				}
-				criteriaQuery.add(Restrictions.and(Restrictions.isNotNull("endTimestamp"), Restrictions.eq("tasksFailed", 0)));
-				resultSet.addAll(criteriaQuery.list());
+				statusCriteria.add(Restrictions.and(Restrictions.isNotNull("endTimestamp"), Restrictions.eq("tasksFailed", 0)));
 			}
-
 			if (showFailure) {
-				Criteria criteriaQuery = session.createCriteria(SearchRun.class);
-				if (timeCriteria != null) {
-					criteriaQuery.add(timeCriteria);
-				}
-				criteriaQuery.add(Restrictions.gt("tasksFailed", 0));
-				resultSet.addAll(criteriaQuery.list());
+				statusCriteria.add(Restrictions.gt("tasksFailed", 0));
 			}
-
 			if (showWarnings) {
-				Criteria criteriaQuery = session.createCriteria(SearchRun.class);
-				if (timeCriteria != null) {
-					criteriaQuery.add(timeCriteria);
-				}
-				criteriaQuery.add(Restrictions.gt("tasksWithWarning", 0));
-				resultSet.addAll(criteriaQuery.list());
+				statusCriteria.add(Restrictions.gt("tasksWithWarning", 0));
 			}
 
+			final Criteria criteriaQuery = getSession().createCriteria(SearchRun.class)
+					.add(statusCriteria);
+			if (updatedSince != null) {
+				criteriaQuery.add(Restrictions.or(
+						Restrictions.gt("startTimestamp", updatedSince),
+						Restrictions.gt("endTimestamp", updatedSince)));
+			}
+			resultSet.addAll(criteriaQuery.list());
 		} catch (Exception t) {
 			throw new MprcException("Cannot obtain a list search runs from the database.", t);
 		}
@@ -427,41 +549,20 @@ public final class SwiftDaoHibernate extends DaoBase implements SwiftDao {
 		return task;
 	}
 
-	private void listToTaskStateMap(List<?> list) {
-		taskStates = new HashMap<TaskState, TaskStateData>(list.size());
+	private static Map<TaskState, TaskStateData> listToTaskStateMap(List<?> list) {
+		final Map<TaskState, TaskStateData> map = new HashMap<TaskState, TaskStateData>(list.size());
 		for (Object o : list) {
 			if (o instanceof TaskStateData) {
 				TaskStateData stateData = (TaskStateData) o;
-				taskStates.put(TaskState.fromText(stateData.getDescription()), stateData);
+				map.put(TaskState.fromText(stateData.getDescription()), stateData);
 			}
 		}
-	}
-
-	@Override
-	public TaskStateData getTaskState(Session session, TaskState state) {
-		synchronized (taskStatesLock) {
-			if (taskStates == null) {
-				listToTaskStateMap(session.createQuery("from TaskStateData").list());
-			}
-			return taskStates.get(state);
-		}
-
+		return map;
 	}
 
 	@Override
 	public TaskStateData getTaskState(TaskState state) {
-		synchronized (taskStatesLock) {
-			if (taskStates == null) {
-				List<?> list = null;
-				try {
-					list = (List<?>) getSession().createQuery("from TaskStateData").list();
-				} catch (Exception t) {
-					throw new MprcException("", t);
-				}
-				listToTaskStateMap(list);
-			}
-			return taskStates.get(state);
-		}
+		return taskStates.get().get(state);
 	}
 
 	@Override
@@ -476,7 +577,7 @@ public final class SwiftDaoHibernate extends DaoBase implements SwiftDao {
 					/*startStamp*/ null,
 					/*endStamp*/ null,
 					searchRun,
-					getTaskState(session, taskState),
+					getTaskState(taskState),
 					descriptionLong);
 
 			session.saveOrUpdate(task);
@@ -563,6 +664,7 @@ public final class SwiftDaoHibernate extends DaoBase implements SwiftDao {
 			for (TaskState state : TaskState.values()) {
 				getSession().saveOrUpdate(new TaskStateData(state.getText()));
 			}
+			taskStates.invalidate(getSession());
 		}
 
 		final long searchEngineCount = countAll(SearchEngineConfig.class);
@@ -594,4 +696,9 @@ public final class SwiftDaoHibernate extends DaoBase implements SwiftDao {
 	public void setSearchEngines(List<SearchEngine> searchEngines) {
 		this.searchEngines = searchEngines;
 	}
+
+	@Override
+	public SearchRunChangeLog getChangeLog() {
+		return changeLog;
+	}
 }
\ No newline at end of file
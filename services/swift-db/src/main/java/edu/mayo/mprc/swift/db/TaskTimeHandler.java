@@ -0,0 +1,15 @@
+package edu.mayo.mprc.swift.db;
+
+import java.util.Date;
+
+/**
+ * Receives task times from {@link SwiftDao#scrollTaskTimes}.
+ */
+public interface TaskTimeHandler {
+	/**
+	 * @param searchRunId Search run the task belongs to.
+	 * @param start       When the task started.
+	 * @param end         When the task ended.
+	 */
+	void taskTime(int searchRunId, Date start, Date end);
+}
@@ -2,14 +2,10 @@ package edu.mayo.mprc.swift.db;
 
 import edu.mayo.mprc.swift.dbmapping.SearchRun;
 import edu.mayo.mprc.swift.dbmapping.TaskData;
-import edu.mayo.mprc.utilities.ComparisonChain;
 import edu.mayo.mprc.workflow.persistence.TaskState;
 import org.joda.time.Interval;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Date;
-import java.util.List;
+import java.util.*;
 
 /**
  * Report how much CPU time was used by Swift. This is a basis for charging for Swift use.
@@ -63,69 +59,102 @@ public final class TimeReport {
 	 * Calculate productive time of given set of tasks. Productive time - amount of time when something was actually happening on the CPU,
 	 * not counting the waiting time and periods when there was no activity.
 	 * <p/>
-	 * This is calculated by sorting all tasks start and end times and then sweeping through, keeping count of whether
-	 * anything is running or not during a given time interval.
+	 * This is calculated by sorting the tasks by their start times and then sweeping through, see {@link SearchRunTimes}.
 	 *
 	 * @param tasks List of tasks
 	 * @return Productive time when at least one task was actually running.
 	 */
 	public static double productiveTime(List<TaskData> tasks) {
-		List<TaskTimestamp> taskTimestamps = new ArrayList<TaskTimestamp>(tasks.size() * 2);
+		List<TaskData> workingTasks = new ArrayList<TaskData>(tasks.size());
 		for (TaskData task : tasks) {
 			if (taskDidWork(task)) {
-				taskTimestamps.add(TaskTimestamp.startTimestamp(task));
-				taskTimestamps.add(TaskTimestamp.endTimestamp(task));
+				workingTasks.add(task);
 			}
 		}
-		Collections.sort(taskTimestamps);
-		int intervalCounter = 0;
-		double total = 0.0;
-		Date previousTime = null;
-		for (TaskTimestamp timeStamp : taskTimestamps) {
-			if (intervalCounter > 0) {
-				total += duration(previousTime, timeStamp.getTime());
-			}
-			if (timeStamp.isStart()) {
-				intervalCounter++;
-			} else {
-				intervalCounter--;
+		Collections.sort(workingTasks, new Comparator<TaskData>() {
+			@Override
+			public int compare(TaskData o1, TaskData o2) {
+				return o1.getStartTimestamp().compareTo(o2.getStartTimestamp());
 			}
-			previousTime = timeStamp.getTime();
+		});
+		final SearchRunTimes times = new SearchRunTimes();
+		for (TaskData task : workingTasks) {
+			times.addTask(task.getStartTimestamp(), task.getEndTimestamp());
 		}
-		return total;
+		return times.getProductiveTime();
 	}
 
-	private static class TaskTimestamp implements Comparable<TaskTimestamp> {
-		private final boolean start;
-		private final Date time;
-
-		private TaskTimestamp(boolean start, Date time) {
-			this.start = start;
-			this.time = time;
+	/**
+	 * Consumed and productive time of a single search run, computed in one pass over its tasks.
+	 * <p/>
+	 * The tasks must be added in order of their start time. Then the productive time is a simple sweep - we keep
+	 * extending the current busy interval while the tasks overlap it, and close it once a task starts after it ended.
+	 */
+	public static final class SearchRunTimes {
+		private long consumedMillis;
+		private long productiveMillis;
+		private long busyStart;
+		private long busyEnd;
+		private boolean busy;
+
+		public SearchRunTimes() {
 		}
 
-		public static TaskTimestamp startTimestamp(TaskData task) {
-			return new TaskTimestamp(true, task.getStartTimestamp());
+		/**
+		 * @param start Start of a task that did work. Must not be before start of previously added task.
+		 * @param end   End of the task.
+		 */
+		public void addTask(Date start, Date end) {
+			final long startMillis = start.getTime();
+			final long endMillis = end.getTime();
+			consumedMillis += endMillis - startMillis;
+			if (!busy) {
+				busy = true;
+				busyStart = startMillis;
+				busyEnd = endMillis;
+			} else if (startMillis > busyEnd) {
+				productiveMillis += busyEnd - busyStart;
+				busyStart = startMillis;
+				busyEnd = endMillis;
+			} else if (endMillis > busyEnd) {
+				busyEnd = endMillis;
+			}
 		}
 
-		public static TaskTimestamp endTimestamp(TaskData task) {
-			return new TaskTimestamp(false, task.getEndTimestamp());
+		public double getConsumedTime() {
+			return consumedMillis / 1000.0;
 		}
 
-		public boolean isStart() {
-			return start;
+		public double getProductiveTime() {
+			return (productiveMillis + (busy ? busyEnd - busyStart : 0)) / 1000.0;
 		}
+	}
+
+	/**
+	 * Collects {@link SearchRunTimes} for many search runs at once from {@link SwiftDao#scrollTaskTimes}.
+	 */
+	public static final class Collector implements TaskTimeHandler {
+		private final Map<Integer, SearchRunTimes> times = new HashMap<Integer, SearchRunTimes>();
 
-		public Date getTime() {
-			return time;
+		public Collector() {
 		}
 
 		@Override
-		public int compareTo(TaskTimestamp o) {
-			return ComparisonChain.start()
-					.compare(this.time, o.time)
-					.compare(this.start, o.start)
-					.result();
+		public void taskTime(int searchRunId, Date start, Date end) {
+			SearchRunTimes runTimes = times.get(searchRunId);
+			if (runTimes == null) {
+				runTimes = new SearchRunTimes();
+				times.put(searchRunId, runTimes);
+			}
+			runTimes.addTask(start, end);
+		}
+
+		/**
+		 * @return Times for given search run. A search run without any tasks that did work gets zero times.
+		 */
+		public SearchRunTimes getTimes(int searchRunId) {
+			final SearchRunTimes runTimes = times.get(searchRunId);
+			return runTimes == null ? new SearchRunTimes() : runTimes;
 		}
 	}
 
@@ -0,0 +1,217 @@
+package edu.mayo.mprc.swift.db;
+
+import edu.mayo.mprc.dbcurator.model.Curation;
+import edu.mayo.mprc.swift.params2.*;
+import edu.mayo.mprc.swift.params2.mapping.*;
+import edu.mayo.mprc.unimod.*;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.Writer;
+import java.util.*;
+
+public final class TestSearchEngineValidation {
+	private static final String CONFLICT = "Same mods are both fixed and variable";
+
+	private final ModSpecificity phospho = makeSpecificity("Phospho", 'S');
+	private final ModSpecificity oxidation = makeSpecificity("Oxidation", 'M');
+
+	@Test
+	public void shouldReportConflictWhenVariableModsChange() {
+		final List<SearchEngine> engines = Arrays.asList(makeEngine());
+		final SearchEngineParameters parameters = makeParameters(modSet(phospho), modSet(oxidation));
+		final ParamsValidations before = SearchEngine.validate(parameters, engines);
+		Assert.assertTrue(before.getValidationFor(ParamName.VariableMods).isEmpty());
+
+		parameters.setVariableModifications(modSet(phospho));
+		final ParamsValidations after = SearchEngine.validate(parameters, engines, ParamName.VariableMods, before);
+		Assert.assertEquals(getMessages(after, ParamName.VariableMods), Arrays.asList(CONFLICT));
+		Assert.assertEquals(after.toString(ValidationSeverity.INFO), SearchEngine.validate(parameters, engines).toString(ValidationSeverity.INFO));
+	}
+
+	@Test
+	public void shouldClearConflictWhenFixedModsChange() {
+		final List<SearchEngine> engines = Arrays.asList(makeEngine());
+		final SearchEngineParameters parameters = makeParameters(modSet(phospho), modSet(phospho));
+		final ParamsValidations before = SearchEngine.validate(parameters, engines);
+		Assert.assertEquals(getMessages(before, ParamName.VariableMods), Arrays.asList(CONFLICT));
+
+		parameters.setFixedModifications(modSet(oxidation));
+		final ParamsValidations after = SearchEngine.validate(parameters, engines, ParamName.FixedMods, before);
+		Assert.assertTrue(after.getValidationFor(ParamName.VariableMods).isEmpty(), "The stale conflict has to go away");
+
+		parameters.setFixedModifications(modSet(phospho));
+		final ParamsValidations again = SearchEngine.validate(parameters, engines, ParamName.FixedMods, after);
+		Assert.assertEquals(getMessages(again, ParamName.VariableMods), Arrays.asList(CONFLICT));
+	}
+
+	private static List<String> getMessages(ParamsValidations validations, ParamName name) {
+		final List<String> messages = new ArrayList<String>();
+		for (Validation validation : validations.getValidationFor(name)) {
+			messages.add(validation.getMessage());
+		}
+		return messages;
+	}
+
+	private static SearchEngine makeEngine() {
+		final SearchEngine engine = new SearchEngine();
+		engine.setCode("TEST");
+		engine.setMappingFactory(new TestMappingFactory());
+		engine.setParamsInfo(new TestParamsInfo());
+		return engine;
+	}
+
+	private static SearchEngineParameters makeParameters(ModSet fixed, ModSet variable) {
+		final SearchEngineParameters parameters = new SearchEngineParameters();
+		final Curation database = new Curation();
+		database.setShortName("test");
+		parameters.setDatabase(database);
+		parameters.setFixedModifications(fixed);
+		parameters.setVariableModifications(variable);
+		return parameters;
+	}
+
+	private static ModSet modSet(ModSpecificity specificity) {
+		final ModSet modSet = new ModSet();
+		modSet.add(specificity);
+		return modSet;
+	}
+
+	private static ModSpecificity makeSpecificity(String title, char site) {
+		final ModBuilder builder = new ModBuilder();
+		builder.setTitle(title);
+		builder.addSpecificity(title, String.valueOf(site), Terminus.Anywhere, false, null);
+		return builder.build().getModSpecificities().iterator().next();
+	}
+
+	private static final class TestMappingFactory implements MappingFactory {
+		private static final long serialVersionUID = 20111020L;
+
+		@Override
+		public String getSearchEngineCode() {
+			return "TEST";
+		}
+
+		@Override
+		public String getCanonicalParamFileName() {
+			return "test.params";
+		}
+
+		@Override
+		public Mappings createMapping() {
+			return new TestMappings();
+		}
+	}
+
+	/**
+	 * Checks the variable mods against the fixed mods mapped before, like the Mascot mappings do.
+	 */
+	private static final class TestMappings implements Mappings {
+		private ModSet fixedMods;
+
+		@Override
+		public Reader baseSettings() {
+			return new StringReader("");
+		}
+
+		@Override
+		public void read(Reader isr) {
+			fixedMods = new ModSet();
+		}
+
+		@Override
+		public void write(Reader oldParams, Writer out) {
+		}
+
+		@Override
+		public void setFixedMods(MappingContext context, ModSet fixedMods) {
+			this.fixedMods = fixedMods;
+		}
+
+		@Override
+		public void setVariableMods(MappingContext context, ModSet variableMods) {
+			for (ModSpecificity specificity : variableMods.getModifications()) {
+				if (fixedMods.contains(specificity)) {
+					context.reportError(CONFLICT, null);
+				}
+			}
+		}
+
+		@Override
+		public void setPeptideTolerance(MappingContext context, Tolerance peptideTolerance) {
+		}
+
+		@Override
+		public void setFragmentTolerance(MappingContext context, Tolerance fragmentTolerance) {
+		}
+
+		@Override
+		public void setSequenceDatabase(MappingContext context, String shortDatabaseName) {
+		}
+
+		@Override
+		public void setProtease(MappingContext context, Protease protease) {
+		}
+
+		@Override
+		public void setMissedCleavages(MappingContext context, Integer missedCleavages) {
+		}
+
+		@Override
+		public void setInstrument(MappingContext context, Instrument instrument) {
+		}
+
+		@Override
+		public String getNativeParam(String name) {
+			return null;
+		}
+
+		@Override
+		public void setNativeParam(String name, String value) {
+		}
+	}
+
+	private static final class TestParamsInfo extends ParamsInfo {
+		@Override
+		public List<Curation> getDatabaseAllowedValues() {
+			return null;
+		}
+
+		@Override
+		public List<Protease> getEnzymeAllowedValues() {
+			return null;
+		}
+
+		@Override
+		public Set<ModSpecificity> getVariableModsAllowedValues(boolean includeHidden) {
+			return null;
+		}
+
+		@Override
+		public Set<ModSpecificity> getFixedModsAllowedValues(boolean includeHidden) {
+			return null;
+		}
+
+		@Override
+		public Unimod getUnimod() {
+			return null;
+		}
+
+		@Override
+		public List<Instrument> getInstrumentAllowedValues() {
+			return null;
+		}
+
+		@Override
+		public Map<String, Instrument> getInstruments() {
+			return null;
+		}
+
+		@Override
+		public Map<String, IonSeries> getIons() {
+			return null;
+		}
+	}
+}
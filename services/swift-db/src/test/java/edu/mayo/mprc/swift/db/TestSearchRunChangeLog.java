@@ -0,0 +1,65 @@
+package edu.mayo.mprc.swift.db;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+
+public final class TestSearchRunChangeLog {
+
+	@Test
+	public void shouldReportChangesSinceCursor() throws InterruptedException {
+		final SearchRunChangeLog log = new SearchRunChangeLog();
+		Assert.assertFalse(log.isTracking());
+		final long cursor = log.getCursor();
+
+		log.searchRunChanged(1);
+		log.tasksChanged(2);
+		log.searchRunChanged(2);
+		Assert.assertTrue(log.isTracking());
+
+		final SearchRunChangeLog.Changes changes = log.getChangesSince(cursor, 0);
+		Assert.assertTrue(changes.isComplete());
+		Assert.assertEquals(changes.getSearchRuns(), new HashSet<Integer>(Arrays.asList(1, 2)));
+		Assert.assertEquals(changes.getSearchRunsWithTaskChanges(), new HashSet<Integer>(Arrays.asList(2)));
+		Assert.assertEquals(changes.getCursor(), log.getCursor());
+
+		Assert.assertTrue(log.getChangesSince(changes.getCursor(), 0).isEmpty());
+	}
+
+	@Test
+	public void shouldRejectUnknownCursors() throws InterruptedException {
+		final SearchRunChangeLog log = new SearchRunChangeLog(2);
+		final long cursor = log.getCursor();
+		Assert.assertFalse(log.getChangesSince(cursor - 1, 0).isComplete(), "Cursor from before the log was created");
+		Assert.assertFalse(log.getChangesSince(cursor + 1, 0).isComplete(), "Cursor from the future");
+
+		log.tasksChanged(1);
+		log.tasksChanged(2);
+		log.tasksChanged(3);
+		Assert.assertFalse(log.getChangesSince(cursor, 0).isComplete(), "The changes no longer fit in the log");
+		Assert.assertTrue(log.getChangesSince(cursor + 1, 0).isComplete());
+	}
+
+	@Test
+	public void shouldWakeUpWaitingClient() throws InterruptedException {
+		final SearchRunChangeLog log = new SearchRunChangeLog();
+		final long cursor = log.getCursor();
+		final Thread producer = new Thread(new Runnable() {
+			public void run() {
+				try {
+					Thread.sleep(50);
+				} catch (InterruptedException ignore) {
+					// SWALLOWED: record the change right away
+				}
+				log.tasksChanged(7);
+			}
+		});
+		producer.start();
+
+		final SearchRunChangeLog.Changes changes = log.getChangesSince(cursor, 10000);
+		Assert.assertEquals(changes.getSearchRunsWithTaskChanges(), new HashSet<Integer>(Arrays.asList(7)));
+		producer.join();
+	}
+}
@@ -112,6 +112,23 @@ public final class TestTimeReport {
 	}
 
 
+	@Test
+	public static void collectManySearchRuns() {
+		final TimeReport.Collector collector = new TimeReport.Collector();
+		// Tasks come ordered by start time, interleaved between search runs
+		collector.taskTime(1, start.plusSeconds(5).toDate(), start.plusSeconds(35).toDate());
+		collector.taskTime(2, start.plusSeconds(6).toDate(), start.plusSeconds(8).toDate());
+		collector.taskTime(1, start.plusSeconds(20).toDate(), start.plusSeconds(40).toDate());
+		collector.taskTime(2, start.plusSeconds(30).toDate(), start.plusSeconds(35).toDate());
+		collector.taskTime(1, start.plusSeconds(50).toDate(), start.plusSeconds(51).toDate());
+
+		Assert.assertEquals(collector.getTimes(1).getConsumedTime(), 30.0 + 20.0 + 1.0);
+		Assert.assertEquals(collector.getTimes(1).getProductiveTime(), 35.0 + 1.0);
+		Assert.assertEquals(collector.getTimes(2).getConsumedTime(), 7.0);
+		Assert.assertEquals(collector.getTimes(2).getProductiveTime(), 7.0);
+		Assert.assertEquals(collector.getTimes(3).getProductiveTime(), 0.0);
+	}
+
 	@Test
 	public static void taskDidWork() {
 		Assert.assertTrue(TimeReport.taskDidWork(taskData(TaskState.COMPLETED_SUCCESFULLY)));
@@ -30,6 +30,7 @@ public final class PersistenceMonitor implements SearchMonitor {
 		try {
 			swiftDao.reportSearchRunProgress(searchRunId, report);
 			swiftDao.commit();
+			swiftDao.getChangeLog().searchRunChanged(searchRunId);
 		} catch (Exception t) {
 			swiftDao.rollback();
 			throw new MprcException("Could not store search progress information to the database", t);
@@ -51,6 +52,7 @@ public final class PersistenceMonitor implements SearchMonitor {
 				swiftDao.storeReport(searchRunId, scaffoldTask.getResultingFile());
 			}
 			swiftDao.commit();
+			swiftDao.getChangeLog().tasksChanged(searchRunId);
 		} catch (Exception t) {
 			throw new MprcException("Could not store change in task information", t);
 		}
@@ -61,6 +63,7 @@ public final class PersistenceMonitor implements SearchMonitor {
 		try {
 			syncTaskBase(task, TaskState.RUN_FAILED);
 			swiftDao.commit();
+			swiftDao.getChangeLog().tasksChanged(searchRunId);
 		} catch (Exception e) {
 			// SWALLOWED: just log
 			LOGGER.error("Could not store " + task.getName() + " task exception into the database (" + t.getMessage() + ").", e);
@@ -79,6 +82,7 @@ public final class PersistenceMonitor implements SearchMonitor {
 		try {
 			swiftDao.searchRunFailed(searchRunId, message);
 			swiftDao.commit();
+			swiftDao.getChangeLog().searchRunChanged(searchRunId);
 		} catch (Exception e) {
 			// SWALLOWED: just log
 			LOGGER.error("Could not store " + searchRunId + " search run exception into the database (" + t.getMessage() + ").", e);
@@ -97,6 +101,7 @@ public final class PersistenceMonitor implements SearchMonitor {
 				try {
 					swiftDao.storeAssignedTaskData(data, (AssignedTaskData) progressInfo);
 					swiftDao.commit();
+					swiftDao.getChangeLog().tasksChanged(searchRunId);
 				} catch (Exception t) {
 					// SWALLOWED: just log
 					LOGGER.error("Could not store " + task.getName() + " assigned task data into the database (" + t.getMessage() + ").", t);
@@ -113,6 +118,7 @@ public final class PersistenceMonitor implements SearchMonitor {
 						data.setPercentDone(done.getPercentDone());
 					}
 					swiftDao.commit();
+					swiftDao.getChangeLog().tasksChanged(searchRunId);
 				} catch (Exception t) {
 					// SWALLOWED: just log
 					LOGGER.error("Could not store " + task.getName() + " task progress into the database (" + t.getMessage() + ").", t);
@@ -319,6 +319,10 @@ public final class SwiftSearcher implements Worker {
 			}
 
 			swiftDao.commit();
+			swiftDao.getChangeLog().searchRunChanged(data.getId());
+			if (previousSearchRunning(swiftSearchWorkPacket)) {
+				swiftDao.getChangeLog().searchRunChanged(swiftSearchWorkPacket.getPreviousSearchRunId());
+			}
 			return searchRunner;
 		} catch (Exception t) {
 			swiftDao.rollback();
@@ -1,15 +1,11 @@
 package edu.mayo.mprc.dbcurator.server;
 
 import java.io.File;
-import java.io.RandomAccessFile;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.SortedMap;
-import java.util.TreeMap;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
 
@@ -29,10 +25,13 @@ import edu.mayo.mprc.dbcurator.model.Curation;
 import edu.mayo.mprc.dbcurator.model.FastaSource;
 import edu.mayo.mprc.dbcurator.model.HeaderTransform;
 import edu.mayo.mprc.dbcurator.model.persistence.CurationDao;
-import edu.mayo.mprc.utilities.FileUtilities;
 
 public class CommonDataRequesterDelegateImpl implements CommonDataRequester {
 	private static final Logger LOGGER = Logger.getLogger(CommonDataRequesterDelegateImpl.class);
+	/**
+	 * How long can {@link #getLines} search before it returns the lines found so far.
+	 */
+	private static final long GET_LINES_TIME_LIMIT = 10 * 1000;
 
 	private CurationDao curationDao;
 	
@@ -253,93 +252,38 @@ public class CommonDataRequesterDelegateImpl implements CommonDataRequester {
 		}
 	}
 
+	/**
+	 * Reads a page of lines through a {@link LineOffsetIndex} shared by all sessions. The lines are added to the session
+	 * results as they are found, so {@link #getResults()} can show them before the request finishes. The request
+	 * stops when canceled or after {@link #GET_LINES_TIME_LIMIT} milliseconds, returning what was found so far.
+	 */
 	public String[] getLines(String sharedPath, int startLineInclusive, int numberOfLines, String pattern) throws GWTServiceException {
-		RandomAccessFile raf = null;
 		try {
 			this.setCancelMessage(false);
 			this.clearResults();
 
 			Pattern compiledPattern = null;
 			if (pattern != null && pattern.length() > 0) {
-				pattern = ".*" + pattern + ".*";
-				pattern = pattern.replace("\\", "\\\\");
-				compiledPattern = Pattern.compile(pattern, Pattern.CASE_INSENSITIVE);
+				compiledPattern = Pattern.compile(pattern.replace("\\", "\\\\"), Pattern.CASE_INSENSITIVE);
 			}
 
-			SortedMap<Integer, Long> currentPositionMap = getCurrentPositionMap(sharedPath, pattern);
-
-			raf = new RandomAccessFile(new File(sharedPath), "r");
-			Long startLinePosition = currentPositionMap.get(startLineInclusive);
-			if (startLinePosition == null) {
-				//todo: find the position of this line
-				SortedMap<Integer, Long> headMap = currentPositionMap.headMap(startLineInclusive);
-
-				Integer closestLessThanLine = 0;
-				if (headMap.size() == 0) {
-					startLinePosition = 0L;
-				} else {
-					closestLessThanLine = Collections.max(headMap.keySet());
-				}
-
-
-				if (closestLessThanLine == null || closestLessThanLine == 0) {
-					startLinePosition = 0L;
-					closestLessThanLine = 0;
-				} else {
-					startLinePosition = headMap.get(closestLessThanLine);
+			final LineOffsetIndex index = LineOffsetIndex.get(new File(sharedPath), compiledPattern);
+			index.getLines(Math.max(0, startLineInclusive), numberOfLines, new LineOffsetIndex.LineSink() {
+				@Override
+				public void line(String line) {
+					addResult(line);
 				}
 
-				raf.seek(startLinePosition);
-
-				int matchCounter = closestLessThanLine;
-				while (closestLessThanLine < startLineInclusive) {
-					long position = raf.getFilePointer();
-					String line = raf.readLine();
-					if (line == null) {
-						break;
-					}
-					if (compiledPattern == null || compiledPattern.matcher(line).matches()) {
-						currentPositionMap.put(matchCounter++, position);
-						closestLessThanLine++;
-					}
+				@Override
+				public boolean isCanceled() {
+					return getCancelMessage();
 				}
-				//now we are at the startLine
-			} else {
-				raf.seek(startLinePosition);
-			}
-
-			//todo: probably just want to go through until we fill up the array taking the pattern into account.
-
-			int resultCounter = 0;
-			int fromStart = 0;
-			while (resultCounter < numberOfLines && !getCancelMessage()) {
-				Long cachedPosition = currentPositionMap.get(startLineInclusive + fromStart);
-				fromStart++;
-				if (cachedPosition != null) {
-					raf.seek(cachedPosition);
-					addResult(raf.readLine());
-					resultCounter++;
-				} else {
-					long position = raf.getFilePointer();
-					String line = raf.readLine();
-					if (line == null) { //if we have reached the end of the file then just don't get any more.
-						break;
-					}
-					if (compiledPattern == null || compiledPattern.matcher(line).matches()) {
-						currentPositionMap.put(startLineInclusive + resultCounter, position);
-						addResult(line);
-						resultCounter++;
-					}
-				}
-			}
+			}, GET_LINES_TIME_LIMIT);
 			return getResults();
 		} catch (Exception e) {
 			LOGGER.error("Could not obtain lines", e);
 			throw GWTServiceExceptionFactory.createException("Could not obtain lines", e);
-		} finally {
-			FileUtilities.closeQuietly(raf);
 		}
-
 	}
 
 	protected synchronized void clearResults() {
@@ -395,36 +339,4 @@ public class CommonDataRequesterDelegateImpl implements CommonDataRequester {
 		return !(this.sessionSupplier.get().getAttribute("cancelRequest") == null);
 	}
 
-	private SortedMap<Integer, Long> getCurrentPositionMap(String filePath, String pattern) {
-		Map<String, SortedMap<Integer, Long>> allPositionMaps = getPositionMaps();
-		String currentKey = (pattern == null || pattern.length() == 0 ? filePath : filePath + "_" + pattern);
-
-		SortedMap<Integer, Long> currentPositionLookup = null;
-
-		//get rid of the maps we are no longer interested in
-		for (Map.Entry<String, SortedMap<Integer, Long>> entry : allPositionMaps.entrySet()) {
-			if (!entry.getKey().equals(currentKey)) {
-				allPositionMaps.remove(entry.getKey());
-			} else {
-				currentPositionLookup = entry.getValue();
-			}
-		}
-
-		if (currentPositionLookup == null) {
-			currentPositionLookup = new TreeMap<Integer, Long>();
-			allPositionMaps.put(currentKey, currentPositionLookup);
-		}
-		return currentPositionLookup;
-	}
-
-	private Map<String, SortedMap<Integer, Long>> getPositionMaps() {
-		final Object attribute = this.sessionSupplier.get().getAttribute("FileLineMap");
-		Map<String, SortedMap<Integer, Long>> positionMap = (Map<String, SortedMap<Integer, Long>>) attribute;
-		if (positionMap == null) {
-			positionMap = new HashMap<String, SortedMap<Integer, Long>>();
-			this.sessionSupplier.get().setAttribute("FileLineMap", positionMap);
-		}
-		return positionMap;
-	}
-
 }
@@ -192,7 +192,7 @@ public final class CurationHandler implements CurationHandlerI {
 					syncStep.addMessage(message);
 				}
 			} else { //we are current performing the next set sp report progress
-				(toSync.getSteps().get(i)).setProgress((int) this.lastRunStatus.getCurrentStepProgress());
+				(toSync.getSteps().get(i)).setProgress((int) this.lastRunStatus.getProgress().getStepProgress());
 			}
 		}
 	}
@@ -0,0 +1,296 @@
+package edu.mayo.mprc.dbcurator.server;
+
+import edu.mayo.mprc.MprcException;
+import edu.mayo.mprc.utilities.FileUtilities;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Remembers where the lines of a text file start, so a page from the middle of a huge file (FASTA databases, logs)
+ * can be read without going through the whole file again.
+ * <p/>
+ * When a filter is given, the index numbers only the lines that match it - line 0 is the first matching line.
+ * Only every {@link #STRIDE}-th line offset is kept, so the index stays small even for gigabyte files. The index is
+ * built as far as the requests went. A request that runs out of time still extends it, so the next one continues
+ * where the last one stopped.
+ * <p/>
+ * The indices are shared by all users, see {@link #get}. An index is dropped when its file changes its size or
+ * modification time.
+ * <p/>
+ * Lines end with <code>\n</code>, <code>\r</code> or <code>\r\n</code> and are decoded as ISO-8859-1, the same
+ * as {@link java.io.RandomAccessFile#readLine} does.
+ */
+public final class LineOffsetIndex {
+	/**
+	 * Every STRIDE-th line offset gets stored.
+	 */
+	private static final int STRIDE = 64;
+	private static final int BUFFER_SIZE = 64 * 1024;
+	/**
+	 * How many lines to read between checking for cancellation and time limit.
+	 */
+	private static final int CHECK_INTERVAL = 1024;
+	private static final int MAX_CACHED_INDICES = 16;
+	private static final Charset LATIN_1 = Charset.forName("ISO-8859-1");
+
+	private static final Map<String, LineOffsetIndex> INDICES = new LinkedHashMap<String, LineOffsetIndex>(MAX_CACHED_INDICES, 0.75f, true) {
+		private static final long serialVersionUID = 20111020L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, LineOffsetIndex> eldest) {
+			return size() > MAX_CACHED_INDICES;
+		}
+	};
+
+	private final File file;
+	private final long length;
+	private final long lastModified;
+	private final Pattern filter;
+
+	/**
+	 * <code>checkpoints[i]</code> is the offset of line <code>i*STRIDE</code>.
+	 */
+	private long[] checkpoints = new long[16];
+	/**
+	 * Number of lines indexed so far.
+	 */
+	private int indexedLines;
+	/**
+	 * Offset where the indexing stopped. The lines before it are indexed.
+	 */
+	private volatile long indexedTo;
+	/**
+	 * The whole file is indexed.
+	 */
+	private boolean complete;
+
+	/**
+	 * Receives the lines and decides when to stop.
+	 */
+	public interface LineSink {
+		void line(String line);
+
+		/**
+		 * Checked every now and then while reading.
+		 *
+		 * @return True if the reading should stop.
+		 */
+		boolean isCanceled();
+	}
+
+	LineOffsetIndex(File file, Pattern filter) {
+		this.file = file;
+		this.filter = filter;
+		length = file.length();
+		lastModified = file.lastModified();
+	}
+
+	/**
+	 * @param file   File to index.
+	 * @param filter Only lines where the filter finds a match are indexed. Null indexes all lines.
+	 * @return Shared index for given file and filter. A new one if the file changed since the index was built.
+	 */
+	public static LineOffsetIndex get(File file, Pattern filter) {
+		final String key = file.getAbsolutePath() + (filter == null ? "" : "\n" + filter.flags() + "\n" + filter.pattern());
+		synchronized (INDICES) {
+			LineOffsetIndex index = INDICES.get(key);
+			if (index == null || index.length != file.length() || index.lastModified != file.lastModified()) {
+				index = new LineOffsetIndex(file, filter);
+				INDICES.put(key, index);
+			}
+			return index;
+		}
+	}
+
+	/**
+	 * Sends lines <code>[startLine, startLine+numberOfLines)</code> to the sink as they are read.
+	 *
+	 * @param startLine     First line to read. When filtering, the first matching line is line 0.
+	 * @param numberOfLines How many lines to read at most.
+	 * @param sink          Receives the lines.
+	 * @param timeLimit     Stop reading after this many milliseconds.
+	 * @return Number of lines sent to the sink. Less than requested if the file ended, the sink canceled or the time ran out.
+	 */
+	public int getLines(int startLine, int numberOfLines, LineSink sink, long timeLimit) {
+		final long deadline = System.currentTimeMillis() + timeLimit;
+		long offset;
+		int line;
+		synchronized (this) {
+			if (startLine < indexedLines) {
+				final int checkpoint = startLine / STRIDE;
+				offset = checkpoints[checkpoint];
+				line = checkpoint * STRIDE;
+			} else if (complete) {
+				return 0;
+			} else {
+				offset = indexedTo;
+				line = indexedLines;
+			}
+		}
+
+		final LineReader reader;
+		try {
+			reader = new LineReader(file, offset);
+		} catch (IOException e) {
+			throw new MprcException("Cannot read " + file.getAbsolutePath(), e);
+		}
+		try {
+			int sent = 0;
+			int sinceCheck = 0;
+			while (sent < numberOfLines) {
+				if (++sinceCheck == CHECK_INTERVAL) {
+					sinceCheck = 0;
+					if (sink.isCanceled() || System.currentTimeMillis() > deadline) {
+						break;
+					}
+				}
+				final String text = reader.readLine();
+				final long next = reader.getOffset();
+				if (text == null) {
+					if (offset == indexedTo) {
+						markComplete(offset);
+					}
+					break;
+				}
+				final boolean matches = filter == null || filter.matcher(text).find();
+				if (offset == indexedTo) {
+					extend(offset, next, matches);
+				}
+				if (matches) {
+					if (line >= startLine) {
+						sink.line(text);
+						sent++;
+					}
+					line++;
+				}
+				offset = next;
+			}
+			return sent;
+		} catch (IOException e) {
+			throw new MprcException("Cannot read " + file.getAbsolutePath(), e);
+		} finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * @return True if the whole file was indexed.
+	 */
+	public synchronized boolean isComplete() {
+		return complete;
+	}
+
+	/**
+	 * @return Number of lines indexed so far, all lines of the file if {@link #isComplete()}.
+	 */
+	public synchronized int getIndexedLines() {
+		return indexedLines;
+	}
+
+	/**
+	 * Adds a line to the index, unless another reader already did.
+	 */
+	private synchronized void extend(long lineStart, long nextLine, boolean matches) {
+		if (lineStart != indexedTo) {
+			return;
+		}
+		if (matches) {
+			if (indexedLines % STRIDE == 0) {
+				final int checkpoint = indexedLines / STRIDE;
+				if (checkpoint == checkpoints.length) {
+					checkpoints = Arrays.copyOf(checkpoints, checkpoints.length * 2);
+				}
+				checkpoints[checkpoint] = lineStart;
+			}
+			indexedLines++;
+		}
+		indexedTo = nextLine;
+	}
+
+	private synchronized void markComplete(long end) {
+		if (end == indexedTo) {
+			complete = true;
+		}
+	}
+
+	/**
+	 * Buffered replacement of {@link java.io.RandomAccessFile#readLine} that knows its offset in the file.
+	 */
+	private static final class LineReader {
+		private final FileInputStream stream;
+		private final byte[] buffer = new byte[BUFFER_SIZE];
+		private int position;
+		private int limit;
+		private long offset;
+		private byte[] line = new byte[256];
+
+		private LineReader(File file, long offset) throws IOException {
+			stream = new FileInputStream(file);
+			try {
+				stream.getChannel().position(offset);
+			} catch (IOException e) {
+				FileUtilities.closeQuietly(stream);
+				throw e;
+			}
+			this.offset = offset;
+		}
+
+		/**
+		 * @return Offset of the next line.
+		 */
+		public long getOffset() {
+			return offset;
+		}
+
+		/**
+		 * @return Next line without the line terminator, null at the end of file.
+		 */
+		public String readLine() throws IOException {
+			int lineLength = 0;
+			boolean any = false;
+			while (true) {
+				if (position == limit && !fill()) {
+					return any ? new String(line, 0, lineLength, LATIN_1) : null;
+				}
+				any = true;
+				final int start = position;
+				while (position < limit && buffer[position] != '\n' && buffer[position] != '\r') {
+					position++;
+				}
+				final int chunk = position - start;
+				if (lineLength + chunk > line.length) {
+					line = Arrays.copyOf(line, Math.max(line.length * 2, lineLength + chunk));
+				}
+				System.arraycopy(buffer, start, line, lineLength, chunk);
+				lineLength += chunk;
+				offset += chunk;
+				if (position < limit) {
+					final byte terminator = buffer[position++];
+					offset++;
+					if (terminator == '\r' && (position < limit || fill()) && buffer[position] == '\n') {
+						position++;
+						offset++;
+					}
+					return new String(line, 0, lineLength, LATIN_1);
+				}
+			}
+		}
+
+		private boolean fill() throws IOException {
+			position = 0;
+			limit = Math.max(0, stream.read(buffer));
+			return limit > 0;
+		}
+
+		public void close() {
+			FileUtilities.closeQuietly(stream);
+		}
+	}
+}
@@ -0,0 +1,198 @@
+package edu.mayo.mprc.dbcurator.server;
+
+import edu.mayo.mprc.utilities.FileUtilities;
+import org.apache.log4j.Logger;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+public final class LineOffsetIndexTest {
+	private static final Logger LOGGER = Logger.getLogger(LineOffsetIndexTest.class);
+	private static final long NO_LIMIT = Long.MAX_VALUE / 2;
+	/**
+	 * How many lines the file in {@link #benchmarkPaging} has.
+	 */
+	private static final String BENCHMARK_LINES = "lineindex.benchmark.lines";
+
+	@Test
+	public void shouldReadAnyPage() throws IOException {
+		final File file = File.createTempFile("lineIndex", ".txt");
+		try {
+			final List<String> lines = writeLines(file, 5000, new Random(1));
+			final Random random = new Random(2);
+			for (int i = 0; i < 200; i++) {
+				final int start = random.nextInt(lines.size() + 10);
+				final int count = random.nextInt(150);
+				Assert.assertEquals(read(file, null, start, count), expected(lines, null, start, count), "Lines " + start + "+" + count);
+			}
+			Assert.assertTrue(LineOffsetIndex.get(file, null).isComplete());
+			Assert.assertEquals(LineOffsetIndex.get(file, null).getIndexedLines(), lines.size());
+		} finally {
+			FileUtilities.quietDelete(file);
+		}
+	}
+
+	@Test
+	public void shouldNumberMatchingLines() throws IOException {
+		final File file = File.createTempFile("lineIndex", ".txt");
+		try {
+			final List<String> lines = writeLines(file, 5000, new Random(3));
+			final Pattern filter = Pattern.compile("ab", Pattern.CASE_INSENSITIVE);
+			final Random random = new Random(4);
+			for (int i = 0; i < 100; i++) {
+				final int start = random.nextInt(1000);
+				Assert.assertEquals(read(file, filter, start, 50), expected(lines, filter, start, 50), "Lines " + start);
+			}
+		} finally {
+			FileUtilities.quietDelete(file);
+		}
+	}
+
+	@Test
+	public void shouldHandleLineEndings() throws IOException {
+		final File file = File.createTempFile("lineIndex", ".txt");
+		try {
+			FileUtilities.writeStringToFile(file, "a\r\nb\rc\n\nd", true);
+			final List<String> expected = new ArrayList<String>();
+			expected.add("a");
+			expected.add("b");
+			expected.add("c");
+			expected.add("");
+			expected.add("d");
+			Assert.assertEquals(read(file, null, 0, 10), expected);
+			Assert.assertEquals(read(file, null, 3, 10), expected.subList(3, 5));
+		} finally {
+			FileUtilities.quietDelete(file);
+		}
+	}
+
+	@Test
+	public void shouldDropIndexOfChangedFile() throws IOException {
+		final File file = File.createTempFile("lineIndex", ".txt");
+		try {
+			FileUtilities.writeStringToFile(file, "a\nb\n", true);
+			final LineOffsetIndex index = LineOffsetIndex.get(file, null);
+			Assert.assertSame(LineOffsetIndex.get(file, null), index, "The index is shared");
+			Assert.assertEquals(read(file, null, 1, 1).get(0), "b");
+
+			FileUtilities.writeStringToFile(file, "c\nd\ne\n", true);
+			Assert.assertNotSame(LineOffsetIndex.get(file, null), index);
+			Assert.assertEquals(read(file, null, 1, 1).get(0), "d");
+		} finally {
+			FileUtilities.quietDelete(file);
+		}
+	}
+
+	@Test
+	public void shouldStopWhenCanceled() throws IOException {
+		final File file = File.createTempFile("lineIndex", ".txt");
+		try {
+			writeLines(file, 10000, new Random(5));
+			// Nothing matches, the search has to go through the whole file
+			final LineOffsetIndex index = new LineOffsetIndex(file, Pattern.compile("no such line"));
+			final Collector canceled = new Collector(true);
+			Assert.assertEquals(index.getLines(0, 10, canceled, NO_LIMIT), 0);
+			Assert.assertFalse(index.isComplete(), "Canceled search stops early");
+
+			Assert.assertEquals(index.getLines(0, 10, new Collector(false), 0), 0);
+			Assert.assertFalse(index.isComplete(), "Search without time stops early");
+
+			Assert.assertEquals(index.getLines(0, 10, new Collector(false), NO_LIMIT), 0);
+			Assert.assertTrue(index.isComplete());
+		} finally {
+			FileUtilities.quietDelete(file);
+		}
+	}
+
+	/**
+	 * Pages backwards through a file of {@link #BENCHMARK_LINES} lines (default 1000000), the slowest case without the index.
+	 */
+	@Test(groups = "benchmark")
+	public void benchmarkPaging() throws IOException {
+		final int count = Integer.getInteger(BENCHMARK_LINES, 1000000);
+		final File file = File.createTempFile("lineIndex", ".txt");
+		try {
+			writeLines(file, count, new Random(6));
+			final LineOffsetIndex index = new LineOffsetIndex(file, null);
+			long start = System.currentTimeMillis();
+			index.getLines(count - 1, 1, new Collector(false), NO_LIMIT);
+			final long build = System.currentTimeMillis() - start;
+
+			start = System.currentTimeMillis();
+			int pages = 0;
+			for (int page = count - 100; page >= 0 && pages < 1000; page -= count / 1000) {
+				index.getLines(page, 100, new Collector(false), NO_LIMIT);
+				pages++;
+			}
+			final long paging = System.currentTimeMillis() - start;
+			LOGGER.info("Indexing " + count + " lines: " + build + " ms, " + pages + " random pages: " + paging + " ms");
+		} finally {
+			FileUtilities.quietDelete(file);
+		}
+	}
+
+	private static List<String> read(File file, Pattern filter, int start, int count) {
+		final Collector collector = new Collector(false);
+		final int sent = LineOffsetIndex.get(file, filter).getLines(start, count, collector, NO_LIMIT);
+		Assert.assertEquals(sent, collector.lines.size());
+		return collector.lines;
+	}
+
+	private static List<String> expected(List<String> lines, Pattern filter, int start, int count) {
+		final List<String> result = new ArrayList<String>();
+		int line = 0;
+		for (String text : lines) {
+			if (filter == null || filter.matcher(text).find()) {
+				if (line >= start && result.size() < count) {
+					result.add(text);
+				}
+				line++;
+			}
+		}
+		return result;
+	}
+
+	private static List<String> writeLines(File file, int count, Random random) throws IOException {
+		final List<String> lines = new ArrayList<String>(count);
+		final Writer writer = new BufferedWriter(new FileWriter(file));
+		try {
+			for (int i = 0; i < count; i++) {
+				final StringBuilder line = new StringBuilder();
+				final int length = random.nextInt(80);
+				for (int j = 0; j < length; j++) {
+					line.append((char) ('A' + random.nextInt(26)));
+				}
+				lines.add(line.toString());
+				writer.write(line.toString());
+				writer.write('\n');
+			}
+		} finally {
+			FileUtilities.closeQuietly(writer);
+		}
+		return lines;
+	}
+
+	private static final class Collector implements LineOffsetIndex.LineSink {
+		private final List<String> lines = new ArrayList<String>();
+		private final boolean canceled;
+
+		private Collector(boolean canceled) {
+			this.canceled = canceled;
+		}
+
+		@Override
+		public void line(String line) {
+			lines.add(line);
+		}
+
+		@Override
+		public boolean isCanceled() {
+			return canceled;
+		}
+	}
+}
@@ -69,6 +69,17 @@ public final class JsonWriter {
 		out.print(MessageFormat.format("window.timestamp={0};", Long.toString(date.getTime())));
 	}
 
+	/**
+	 * Appends code that tells the client where in the change log it is.
+	 *
+	 * @param cursor   Cursor to send with the next update request.
+	 * @param longPoll True if the client should keep asking for changes since the cursor, false if it should poll periodically.
+	 */
+	public void setCursor(long cursor, boolean longPoll) {
+		dumpMethod(null, null);
+		out.print(MessageFormat.format("window.cursor={0};window.longPoll={1};", Long.toString(cursor), Boolean.toString(longPoll)));
+	}
+
 	/**
 	 * Appends code that inserts a search run at given position into the stream.
 	 *
@@ -10,6 +10,7 @@ import edu.mayo.mprc.daemon.progress.ProgressListener;
 import edu.mayo.mprc.qstat.QstatOutput;
 import edu.mayo.mprc.qstat.QstatWorkPacket;
 import edu.mayo.mprc.swift.SwiftWebContext;
+import edu.mayo.mprc.swift.db.SearchRunChangeLog;
 import edu.mayo.mprc.swift.db.SearchRunFilter;
 import edu.mayo.mprc.swift.db.SwiftDao;
 import edu.mayo.mprc.swift.dbmapping.ReportData;
@@ -29,6 +30,7 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
 import java.util.List;
+import java.util.Set;
 
 // TODO: Ideally refactor into RESTful interface - would provide clean access to Swift
 
@@ -42,6 +44,10 @@ public final class ReportUpdate extends HttpServlet {
 	 * How many milliseconds to wait till qstat considered down.
 	 */
 	private static final int QSTAT_TIMEOUT = 30 * 1000;
+	/**
+	 * Longest time in seconds a client can wait for changes in a single update request.
+	 */
+	private static final int MAX_UPDATE_WAIT = 60;
 
 	public void init() throws ServletException {
 		if (ServletIntialization.initServletConfiguration(getServletConfig())) {
@@ -82,6 +88,7 @@ public final class ReportUpdate extends HttpServlet {
 			swiftDao.begin(); // Transaction-per-request
 			hideSearch(req, resp, hide);
 			swiftDao.commit();
+			swiftDao.getChangeLog().searchRunChanged(Integer.parseInt(hide));
 			return;
 		}
 
@@ -115,6 +122,12 @@ public final class ReportUpdate extends HttpServlet {
 			return;
 		}
 
+		// Wait for changes before touching the database, so long polling clients do not hold transactions
+		final SearchRunChangeLog changeLog = swiftDao.getChangeLog();
+		final SearchRunChangeLog.Changes changes = "update".equals(action) ? waitForChanges(req, changeLog) : null;
+		// Cursor has to be obtained before reading the data, so changes made meanwhile get reported next time
+		final long cursor = changes != null ? changes.getCursor() : changeLog.getCursor();
+
 		JsonWriter out = null;
 		try {
 			// All following actions require a search run
@@ -150,20 +163,16 @@ public final class ReportUpdate extends HttpServlet {
 				} else {
 					time.setTime(0);
 				}
-				updateSearchRuns(out, searchRunFilter, time);
-
-				// TODO: Do not output all expanded task lists, only the changed ones
-				String expanded = req.getParameter("expanded");
-				if (null != expanded) {
-					String[] expandedIds = expanded.split(",");
-					for (String idString : expandedIds) {
-						if (null != idString && idString.length() != 0) {
-							int id = Integer.parseInt(idString);
-							out.rewriteTaskDataList(id, swiftDao.getTaskDataList(id));
-						}
-					}
+				if (changes == null || !changes.isComplete()) {
+					// We do not know what changed, send everything
+					updateSearchRuns(out, searchRunFilter, time);
+					rewriteExpandedTaskLists(out, req.getParameter("expanded"), null);
+				} else if (!changes.isEmpty()) {
+					updateSearchRuns(out, searchRunFilter, time);
+					rewriteExpandedTaskLists(out, req.getParameter("expanded"), changes.getSearchRunsWithTaskChanges());
 				}
 			}
+			out.setCursor(cursor, changeLog.isTracking());
 			swiftDao.commit();
 		} catch (Exception t) {
 			swiftDao.rollback();
@@ -175,6 +184,48 @@ public final class ReportUpdate extends HttpServlet {
 		}
 	}
 
+	/**
+	 * If the client sent a cursor and this JVM tracks the changes, wait for changes since the cursor.
+	 *
+	 * @return Changes since the client cursor, null if the client has to be sent all data.
+	 */
+	private static SearchRunChangeLog.Changes waitForChanges(HttpServletRequest req, SearchRunChangeLog changeLog) {
+		final String cursor = req.getParameter("cursor");
+		if (cursor == null || !changeLog.isTracking()) {
+			return null;
+		}
+		final String wait = req.getParameter("wait");
+		final int waitSeconds = wait == null ? 0 : Math.max(0, Math.min(MAX_UPDATE_WAIT, Integer.parseInt(wait)));
+		try {
+			return changeLog.getChangesSince(Long.parseLong(cursor), waitSeconds * 1000L);
+		} catch (InterruptedException ignore) {
+			// SWALLOWED: the client gets all the data instead
+			Thread.currentThread().interrupt();
+			return null;
+		}
+	}
+
+	/**
+	 * Rewrite task lists for the search runs the client has expanded.
+	 *
+	 * @param expanded Comma separated list of expanded search run ids.
+	 * @param changed  Only rewrite task lists of these search runs. If null, rewrite all.
+	 */
+	private void rewriteExpandedTaskLists(JsonWriter out, String expanded, Set<Integer> changed) {
+		if (null == expanded) {
+			return;
+		}
+		String[] expandedIds = expanded.split(",");
+		for (String idString : expandedIds) {
+			if (null != idString && idString.length() != 0) {
+				int id = Integer.parseInt(idString);
+				if (changed == null || changed.contains(id)) {
+					out.rewriteTaskDataList(id, swiftDao.getTaskDataList(id));
+				}
+			}
+		}
+	}
+
 	private void rerunSearch(HttpServletRequest req, HttpServletResponse resp, String rerun) throws ServletException {
 		PrintWriter output;
 		try {
@@ -246,15 +297,12 @@ public final class ReportUpdate extends HttpServlet {
 	 * @param filter Filter defining what search runs and how sorted to output.
 	 */
 	private void printSearchRuns(JsonWriter out, SearchRunFilter filter, String method) {
+		// The filter pages the list in the database already
 		List<SearchRun> searchRuns = swiftDao.getSearchRunList(filter);
-		int firstSearchRun = 0;
-		int lastSearchRun = Math.min(
-				filter.getCount() != null ? Integer.parseInt(filter.getCount()) : 0,
-				searchRuns.size());
 
 		Date newTimestamp = new Date();
 		newTimestamp.setTime(0);
-		for (int i = firstSearchRun; i < lastSearchRun; i++) {
+		for (int i = 0; i < searchRuns.size(); i++) {
 			SearchRun searchRun = searchRuns.get(i);
 			ArrayList<String> reports = getReportsForSearchRun(searchRun);
 			if (null != searchRun.getStartTimestamp() && searchRun.getStartTimestamp().compareTo(newTimestamp) > 0) {
@@ -293,12 +341,11 @@ public final class ReportUpdate extends HttpServlet {
 	 * @param filter    Filter defining what search runs and how sorted to output.
 	 */
 	private void updateSearchRuns(JsonWriter out, SearchRunFilter filter, Date timestamp) {
+		// The filter pages the list in the database already
 		List<SearchRun> searchRuns = swiftDao.getSearchRunList(filter);
-		int firstSearchRun = filter.getStart() != null ? Integer.parseInt(filter.getStart()) : 0;
-		int lastSearchRun = Math.min(firstSearchRun + (filter.getCount() != null ? Integer.parseInt(filter.getCount()) : searchRuns.size()), searchRuns.size());
 
 		Date newTimestamp = timestamp;
-		for (int i = firstSearchRun; i < lastSearchRun; i++) {
+		for (int i = 0; i < searchRuns.size(); i++) {
 			SearchRun searchRun = searchRuns.get(i);
 			ArrayList<String> reports = getReportsForSearchRun(searchRun);
 			if (null != searchRun.getStartTimestamp() && searchRun.getStartTimestamp().compareTo(newTimestamp) > 0) {
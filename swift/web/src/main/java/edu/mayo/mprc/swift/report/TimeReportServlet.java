@@ -8,7 +8,6 @@ import edu.mayo.mprc.swift.db.SearchRunFilter;
 import edu.mayo.mprc.swift.db.SwiftDao;
 import edu.mayo.mprc.swift.db.TimeReport;
 import edu.mayo.mprc.swift.dbmapping.SearchRun;
-import edu.mayo.mprc.swift.dbmapping.TaskData;
 import org.joda.time.DateTime;
 
 import javax.servlet.ServletConfig;
@@ -81,19 +80,22 @@ public final class TimeReportServlet extends HttpServlet {
 
 	private void printReport(SearchRunFilter filter, ServletOutputStream out, char separator) throws IOException {
 		final List<SearchRun> searchRuns = swiftDao.getSearchRunList(filter);
+		// All the task times in one pass instead of a query per search run
+		final TimeReport.Collector taskTimes = new TimeReport.Collector();
+		swiftDao.scrollTaskTimes(filter, taskTimes);
+
 		out.println("Search run" + separator + "Start time" + separator + "Elapsed time" + separator + "Consumed time" + separator + "Productive time");
 		for (SearchRun searchRun : searchRuns) {
-			// TODO: Optimize this - fetch the task data for all search runs at once, do not order
-			final List<TaskData> taskDataList = swiftDao.getTaskDataList(searchRun.getId());
+			final TimeReport.SearchRunTimes times = taskTimes.getTimes(searchRun.getId());
 			out.print(searchRun.getTitle());
 			out.print(separator);
 			out.print(searchRun.getStartTimestamp().toString());
 			out.print(separator);
 			out.print(TimeReport.elapsedTime(searchRun));
 			out.print(separator);
-			out.print(TimeReport.consumedTime(taskDataList));
+			out.print(times.getConsumedTime());
 			out.print(separator);
-			out.print(TimeReport.productiveTime(taskDataList));
+			out.print(times.getProductiveTime());
 			out.println();
 		}
 	}
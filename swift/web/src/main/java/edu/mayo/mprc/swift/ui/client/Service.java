@@ -6,6 +6,7 @@ import edu.mayo.mprc.common.client.GWTServiceException;
 import edu.mayo.mprc.swift.ui.client.rpc.*;
 import edu.mayo.mprc.swift.ui.client.rpc.files.Entry;
 import edu.mayo.mprc.swift.ui.client.rpc.files.FileInfo;
+import edu.mayo.mprc.swift.ui.client.rpc.files.FileSearchProgress;
 
 import java.io.Serializable;
 import java.util.List;
@@ -53,11 +54,33 @@ public interface Service extends RemoteService {
 	 * or to a directory. They can even lead to directories that contain each other. The result is a listing of
 	 * files that were discovered within these directories, complete with the file sizes.
 	 *
+	 * <p/>
+	 * The search gives up after a while, returning only the files found until then. Use {@link #startFindFiles} to
+	 * see the files as they are found.
+	 *
 	 * @param relativePaths Listing of paths to examine.
 	 * @return Listing of files that were discovered within these paths.
 	 */
 	FileInfo[] findFiles(String[] relativePaths) throws GWTServiceException;
 
+	/**
+	 * Starts the same search as {@link #findFiles} in the background. The search stops after finding too many files or
+	 * after running for too long.
+	 *
+	 * @param relativePaths Listing of paths to examine.
+	 * @return Id of the search for {@link #getFindFilesProgress}.
+	 */
+	String startFindFiles(String[] relativePaths) throws GWTServiceException;
+
+	/**
+	 * Returns the files found since the last call. Waits a little if there are none yet. Keep calling until the
+	 * progress says the search is done - a search that is not asked about for a minute is canceled.
+	 *
+	 * @param searchId Id from {@link #startFindFiles}.
+	 * @return Files found since the last call.
+	 */
+	FileSearchProgress getFindFilesProgress(String searchId) throws GWTServiceException;
+
 	/**
 	 * @return List of all users.
 	 */
@@ -4,6 +4,7 @@ import com.google.gwt.user.client.rpc.AsyncCallback;
 import edu.mayo.mprc.swift.ui.client.rpc.*;
 import edu.mayo.mprc.swift.ui.client.rpc.files.Entry;
 import edu.mayo.mprc.swift.ui.client.rpc.files.FileInfo;
+import edu.mayo.mprc.swift.ui.client.rpc.files.FileSearchProgress;
 
 import java.util.List;
 
@@ -22,11 +23,33 @@ public interface ServiceAsync {
 	 * or to a directory. They can even lead to directories that contain each other. The result is a listing of
 	 * files that were discovered within these directories, complete with the file sizes.
 	 *
+	 * <p/>
+	 * The search gives up after a while, returning only the files found until then. Use {@link #startFindFiles} to
+	 * see the files as they are found.
+	 *
 	 * @param relativePaths Listing of paths to examine.
 	 * @return Listing of files that were discovered within these paths.
 	 */
 	void findFiles(String[] relativePaths, AsyncCallback<FileInfo[]> async);
 
+	/**
+	 * Starts the same search as {@link #findFiles} in the background. The search stops after finding too many files or
+	 * after running for too long.
+	 *
+	 * @param relativePaths Listing of paths to examine.
+	 * @return Id of the search for {@link #getFindFilesProgress}.
+	 */
+	void startFindFiles(String[] relativePaths, AsyncCallback<String> async);
+
+	/**
+	 * Returns the files found since the last call. Waits a little if there are none yet. Keep calling until the
+	 * progress says the search is done - a search that is not asked about for a minute is canceled.
+	 *
+	 * @param searchId Id from {@link #startFindFiles}.
+	 * @return Files found since the last call.
+	 */
+	void getFindFilesProgress(String searchId, AsyncCallback<FileSearchProgress> async);
+
 	/**
 	 * @return List of all users.
 	 */
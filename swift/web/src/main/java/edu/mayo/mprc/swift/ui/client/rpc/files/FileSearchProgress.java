@@ -0,0 +1,43 @@
+package edu.mayo.mprc.swift.ui.client.rpc.files;
+
+import java.io.Serializable;
+
+/**
+ * Files found by a running file search since the client asked the last time.
+ */
+public final class FileSearchProgress implements Serializable {
+	private static final long serialVersionUID = 20111020L;
+	private FileInfo[] files;
+	private boolean done;
+	private String message;
+
+	public FileSearchProgress() {
+	}
+
+	public FileSearchProgress(FileInfo[] files, boolean done, String message) {
+		this.files = files;
+		this.done = done;
+		this.message = message;
+	}
+
+	/**
+	 * @return Files found since the last call.
+	 */
+	public FileInfo[] getFiles() {
+		return files;
+	}
+
+	/**
+	 * @return True if the search has finished, no more files will come.
+	 */
+	public boolean isDone() {
+		return done;
+	}
+
+	/**
+	 * @return Why the search stopped before going through all the folders, null if it did not.
+	 */
+	public String getMessage() {
+		return message;
+	}
+}
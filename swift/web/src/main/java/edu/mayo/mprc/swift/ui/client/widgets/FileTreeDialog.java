@@ -3,12 +3,14 @@ package edu.mayo.mprc.swift.ui.client.widgets;
 import com.google.gwt.core.client.GWT;
 import com.google.gwt.user.client.DOM;
 import com.google.gwt.user.client.Element;
+import com.google.gwt.user.client.Window;
 import com.google.gwt.user.client.rpc.AsyncCallback;
 import com.google.gwt.user.client.rpc.ServiceDefTarget;
 import com.google.gwt.user.client.ui.*;
 import edu.mayo.mprc.swift.ui.client.Service;
 import edu.mayo.mprc.swift.ui.client.ServiceAsync;
-import edu.mayo.mprc.swift.ui.client.rpc.files.FileInfo;
+import edu.mayo.mprc.swift.ui.client.dialogs.ErrorDialog;
+import edu.mayo.mprc.swift.ui.client.rpc.files.FileSearchProgress;
 
 /**
  * A dialog box that contains a file tree.
@@ -88,14 +90,14 @@ public final class FileTreeDialog extends DialogBox implements ClickListener {
 			ServiceDefTarget endpoint = (ServiceDefTarget) fileFinderService;
 			endpoint.setServiceEntryPoint(GWT.getModuleBaseURL() + "Service");
 
-			fileFinderService.findFiles(eachSelectedFile, new AsyncCallback<FileInfo[]>() {
+			fileFinderService.startFindFiles(eachSelectedFile, new AsyncCallback<String>() {
 
 				public void onFailure(Throwable throwable) {
-					//TODO: implement me
+					ErrorDialog.show(throwable);
 				}
 
-				public void onSuccess(FileInfo[] o) {
-					selectedFilesListener.selectedFiles(o);
+				public void onSuccess(String searchId) {
+					pollFoundFiles(fileFinderService, searchId, selectedFilesListener);
 				}
 			});
 
@@ -105,6 +107,29 @@ public final class FileTreeDialog extends DialogBox implements ClickListener {
 		}
 	}
 
+	/**
+	 * Passes the files to the listener as the server finds them, until the search is done.
+	 */
+	private static void pollFoundFiles(final ServiceAsync service, final String searchId, final SelectedFilesListener listener) {
+		service.getFindFilesProgress(searchId, new AsyncCallback<FileSearchProgress>() {
+			public void onFailure(Throwable throwable) {
+				ErrorDialog.show(throwable);
+			}
+
+			public void onSuccess(FileSearchProgress progress) {
+				if (progress.getFiles().length > 0) {
+					listener.selectedFiles(progress.getFiles());
+				}
+				if (!progress.isDone()) {
+					// The server waits for new files itself, ask again right away
+					pollFoundFiles(service, searchId, listener);
+				} else if (progress.getMessage() != null) {
+					Window.alert(progress.getMessage());
+				}
+			}
+		});
+	}
+
 	/**
 	 * Calling this method will load the old Swift 1.0 FileChooser.  When the dialog is closed then a List of String of the
 	 * paths to the selected file will be returned.
@@ -0,0 +1,100 @@
+package edu.mayo.mprc.swift.ui.server;
+
+import edu.mayo.mprc.utilities.FileUtilities;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.Serializable;
+import java.util.*;
+
+/**
+ * Remembers recent directory listings, so expanding the same folder again does not list it again.
+ * Listing a large folder on NFS can take seconds.
+ * <p/>
+ * A listing is reused only while the folder keeps its modification time, and only for a short time - the modification
+ * time of a folder does not change when a file within it grows, and NFS reports it with a delay.
+ */
+final class DirectoryListingCache {
+	private final FilenameFilter filter;
+	private final long timeToLive;
+	private final Map<File, Listing> listings;
+
+	/**
+	 * @param filter     Which files to list. Directories are listed always.
+	 * @param timeToLive How long can a listing be reused, in milliseconds.
+	 * @param maxFolders How many listings to remember.
+	 */
+	DirectoryListingCache(FilenameFilter filter, long timeToLive, final int maxFolders) {
+		this.filter = filter;
+		this.timeToLive = timeToLive;
+		listings = new LinkedHashMap<File, Listing>(maxFolders, 0.75f, true) {
+			private static final long serialVersionUID = 20111020L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<File, Listing> eldest) {
+				return size() > maxFolders;
+			}
+		};
+	}
+
+	/**
+	 * @param folder Folder to list.
+	 * @return Subfolders and files of the folder, hidden ones excluded, both sorted by name ignoring case.
+	 */
+	public Listing list(File folder) {
+		final long modified = folder.lastModified();
+		final long now = System.currentTimeMillis();
+		synchronized (listings) {
+			final Listing cached = listings.get(folder);
+			if (cached != null && cached.modified == modified && now - cached.listed < timeToLive) {
+				return cached;
+			}
+		}
+
+		final List<File> dirs = new ArrayList<File>(100);
+		final List<File> files = new ArrayList<File>(100);
+		FileUtilities.listFolderContents(folder, filter, dirs, files);
+		Collections.sort(dirs, NameComparator.INSTANCE);
+		Collections.sort(files, NameComparator.INSTANCE);
+		final Listing listing = new Listing(modified, now, dirs, files);
+		synchronized (listings) {
+			listings.put(folder, listing);
+		}
+		return listing;
+	}
+
+	/**
+	 * Contents of a single folder.
+	 */
+	static final class Listing {
+		private final long modified;
+		private final long listed;
+		private final List<File> directories;
+		private final List<File> files;
+
+		private Listing(long modified, long listed, List<File> directories, List<File> files) {
+			this.modified = modified;
+			this.listed = listed;
+			this.directories = Collections.unmodifiableList(directories);
+			this.files = Collections.unmodifiableList(files);
+		}
+
+		public List<File> getDirectories() {
+			return directories;
+		}
+
+		public List<File> getFiles() {
+			return files;
+		}
+	}
+
+	private static final class NameComparator implements Comparator<File>, Serializable {
+		private static final long serialVersionUID = 20111020L;
+		private static final NameComparator INSTANCE = new NameComparator();
+
+		@Override
+		public int compare(File o1, File o2) {
+			return o1.getName().compareToIgnoreCase(o2.getName());
+		}
+	}
+}
@@ -0,0 +1,283 @@
+package edu.mayo.mprc.swift.ui.server;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import edu.mayo.mprc.MprcException;
+import edu.mayo.mprc.swift.ui.client.rpc.files.FileInfo;
+import edu.mayo.mprc.swift.ui.client.rpc.files.FileSearchProgress;
+import org.apache.log4j.Logger;
+
+import java.io.File;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.regex.Pattern;
+
+/**
+ * Walks the folders selected by the user and collects the input files within them.
+ * <p/>
+ * The walk stops when it finds too many files, runs out of time or gets canceled, so a click on a huge shared folder
+ * does not keep the server busy for minutes. The files found so far can be taken at any time, so the user can see
+ * them while the walk goes on.
+ * <p/>
+ * The walks started by {@link #start} run in the background. A walk nobody asks about for
+ * {@link #ABANDON_TIMEOUT} milliseconds is canceled.
+ */
+final class FileFinder implements Runnable {
+	private static final Logger LOGGER = Logger.getLogger(FileFinder.class);
+
+	/**
+	 * How many walks can run at once, the rest waits.
+	 */
+	private static final int WALKER_THREADS = 4;
+	/**
+	 * Cancel the walk if the client did not ask for progress for this long.
+	 */
+	private static final long ABANDON_TIMEOUT = 60 * 1000;
+
+	private static final ExecutorService WALKERS = Executors.newFixedThreadPool(WALKER_THREADS,
+			new ThreadFactoryBuilder()
+					.setDaemon(true)
+					.setNameFormat("file-finder-%d")
+					.build());
+
+	private static final Map<String, FileFinder> RUNNING = new HashMap<String, FileFinder>();
+
+	private final File browseRoot;
+	private final List<File> paths;
+	private final DirectoryListingCache listingCache;
+	private final int maxFiles;
+	private final long timeLimit;
+
+	private final List<FileInfo> found = new ArrayList<FileInfo>();
+	private int foundTotal;
+	private boolean done;
+	private volatile boolean canceled;
+	private String message;
+	private volatile long lastAccess;
+
+	/**
+	 * @param browseRoot    Root of the browsed folders, the files are reported relative to it.
+	 * @param relativePaths Paths to files or folders to search, relative to the browse root. A path that is within
+	 *                      another one is skipped.
+	 * @param listingCache  Cache to list the folders with.
+	 * @param maxFiles      Stop after finding this many files.
+	 * @param timeLimit     Stop after this many milliseconds.
+	 */
+	FileFinder(File browseRoot, String[] relativePaths, DirectoryListingCache listingCache, int maxFiles, long timeLimit) {
+		this.browseRoot = browseRoot;
+		this.listingCache = listingCache;
+		this.maxFiles = maxFiles;
+		this.timeLimit = timeLimit;
+		paths = new ArrayList<File>(relativePaths.length);
+		for (String path : filterNestedPaths(relativePaths)) {
+			paths.add(new File(browseRoot, path));
+		}
+		lastAccess = System.currentTimeMillis();
+	}
+
+	/**
+	 * Starts the walk in the background.
+	 *
+	 * @return Id of the walk for {@link #get}.
+	 */
+	public static String start(FileFinder finder) {
+		final String id = UUID.randomUUID().toString();
+		synchronized (RUNNING) {
+			removeAbandoned();
+			RUNNING.put(id, finder);
+		}
+		WALKERS.execute(finder);
+		return id;
+	}
+
+	/**
+	 * @param id Id returned by {@link #start}.
+	 * @return The walk with given id.
+	 */
+	public static FileFinder get(String id) {
+		synchronized (RUNNING) {
+			final FileFinder finder = RUNNING.get(id);
+			if (finder == null) {
+				throw new MprcException("The file search " + id + " does not exist. It either finished or was abandoned.");
+			}
+			finder.lastAccess = System.currentTimeMillis();
+			return finder;
+		}
+	}
+
+	/**
+	 * Forgets a walk, canceling it if it still runs.
+	 */
+	public static void remove(String id) {
+		final FileFinder finder;
+		synchronized (RUNNING) {
+			finder = RUNNING.remove(id);
+		}
+		if (finder != null) {
+			finder.cancel();
+		}
+	}
+
+	private static void removeAbandoned() {
+		final long abandoned = System.currentTimeMillis() - ABANDON_TIMEOUT;
+		for (final Iterator<FileFinder> iterator = RUNNING.values().iterator(); iterator.hasNext(); ) {
+			final FileFinder finder = iterator.next();
+			if (finder.lastAccess < abandoned) {
+				finder.cancel();
+				iterator.remove();
+			}
+		}
+	}
+
+	@Override
+	public void run() {
+		final long deadline = System.currentTimeMillis() + timeLimit;
+		String stopReason = null;
+		try {
+			final Deque<File> toVisit = new ArrayDeque<File>();
+			for (int i = paths.size() - 1; i >= 0; i--) {
+				toVisit.push(paths.get(i));
+			}
+			while (!toVisit.isEmpty()) {
+				if (canceled) {
+					stopReason = "The file search was canceled.";
+					break;
+				}
+				if (System.currentTimeMillis() > deadline) {
+					stopReason = "The file search took longer than " + timeLimit / 1000 + " seconds.";
+					break;
+				}
+				if (getFoundTotal() >= maxFiles) {
+					stopReason = "The file search reached the limit of " + maxFiles + " files.";
+					break;
+				}
+				visit(toVisit.pop(), toVisit);
+			}
+		} catch (Exception e) {
+			LOGGER.error("File search failed", e);
+			stopReason = "The file search failed: " + MprcException.getDetailedMessage(e) + ".";
+		} finally {
+			synchronized (this) {
+				if (stopReason != null) {
+					message = stopReason + " Added " + foundTotal + " files found until then.";
+				}
+				done = true;
+				notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Reports the files from a folder first, then queues its subfolders, so the files show up folder by folder.
+	 */
+	private void visit(File file, Deque<File> toVisit) {
+		if (!file.exists() || file.isHidden()) {
+			return;
+		}
+		if (file.isDirectory()) {
+			final DirectoryListingCache.Listing listing = listingCache.list(file);
+			final List<FileInfo> infos = new ArrayList<FileInfo>(listing.getFiles().size());
+			for (File child : listing.getFiles()) {
+				infos.add(new FileInfo(getRelativePath(child), child.length()));
+			}
+			addFound(infos);
+			final List<File> directories = listing.getDirectories();
+			for (int i = directories.size() - 1; i >= 0; i--) {
+				toVisit.push(directories.get(i));
+			}
+		} else if (ServiceImpl.FILTER.accept(file.getParentFile(), file.getName())) {
+			addFound(Arrays.asList(new FileInfo(getRelativePath(file), file.length())));
+		}
+	}
+
+	private String getRelativePath(File file) {
+		final String path = file.getAbsolutePath().substring(browseRoot.getAbsolutePath().length());
+		return path.replaceAll(Pattern.quote(File.separator), "/");
+	}
+
+	private synchronized void addFound(List<FileInfo> infos) {
+		if (infos.isEmpty()) {
+			return;
+		}
+		final int room = maxFiles - foundTotal;
+		final List<FileInfo> added = infos.size() > room ? infos.subList(0, room) : infos;
+		found.addAll(added);
+		foundTotal += added.size();
+		notifyAll();
+	}
+
+	private synchronized int getFoundTotal() {
+		return foundTotal;
+	}
+
+	/**
+	 * Runs the walk in the calling thread.
+	 *
+	 * @return All files found.
+	 */
+	public FileInfo[] findAll() {
+		run();
+		return takeProgress(0).getFiles();
+	}
+
+	/**
+	 * Returns the files found since the last call. If there are none yet, waits for them a little.
+	 *
+	 * @param maxWait How long to wait for new files, in milliseconds.
+	 * @return Files found since the last call, whether the walk is done, and why it stopped early.
+	 */
+	public synchronized FileSearchProgress takeProgress(long maxWait) {
+		final long waitUntil = System.currentTimeMillis() + maxWait;
+		long remaining = maxWait;
+		while (!done && found.isEmpty() && remaining > 0) {
+			try {
+				wait(remaining);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				break;
+			}
+			remaining = waitUntil - System.currentTimeMillis();
+		}
+		final FileInfo[] files = found.toArray(new FileInfo[found.size()]);
+		found.clear();
+		return new FileSearchProgress(files, done, done ? message : null);
+	}
+
+	public void cancel() {
+		canceled = true;
+	}
+
+	/**
+	 * Drops paths that are within another path on the list, so no file is reported twice.
+	 */
+	static List<String> filterNestedPaths(String[] relativePaths) {
+		final List<String> filteredPaths = new ArrayList<String>(relativePaths.length);
+		for (int i = 0; i < relativePaths.length; i++) {
+			int j;
+			for (j = 0; j < relativePaths.length; j++) {
+				// Our path is a child or a repeat, throw it away
+				if (i != j && isWithin(relativePaths[i], relativePaths[j])
+						&& (j < i || !relativePaths[i].equals(relativePaths[j]))) {
+					break;
+				}
+			}
+			// This path is legitimate, not a child of anything
+			if (j == relativePaths.length) {
+				filteredPaths.add(relativePaths[i]);
+			}
+		}
+		return filteredPaths;
+	}
+
+	/**
+	 * @return True if the path is the parent itself or lies within it. Whole path segments are compared,
+	 *         so <code>ab</code> is not within <code>a</code>.
+	 */
+	private static boolean isWithin(String path, String parent) {
+		if (!path.startsWith(parent)) {
+			return false;
+		}
+		return path.length() == parent.length() || parent.length() == 0 || parent.endsWith("/")
+				|| path.charAt(parent.length()) == '/';
+	}
+}
@@ -1,7 +1,6 @@
 package edu.mayo.mprc.swift.ui.server;
 
 import edu.mayo.mprc.MprcException;
-import edu.mayo.mprc.utilities.FileUtilities;
 import org.xml.sax.SAXException;
 import org.xml.sax.helpers.AttributesImpl;
 
@@ -14,12 +13,7 @@ import javax.xml.transform.sax.TransformerHandler;
 import javax.xml.transform.stream.StreamResult;
 import java.io.File;
 import java.io.IOException;
-import java.io.Serializable;
 import java.io.Writer;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
-import java.util.List;
 
 /**
  * This provides functionality the retrieve the structure under a folder in
@@ -181,9 +175,7 @@ public final class FileSearchBean {
 	 * Writes out XML containing information about a given folder.
 	 * <p/>
 	 * We go through extra effort to perform as few isDirectory() calls as possible, as these are incredibly
-	 * expensive as the directory size grows.
-	 * <p/>
-	 * TODO: Use something faster than isDirectory
+	 * expensive as the directory size grows. The listings are cached in {@link ServiceImpl#LISTING_CACHE}.
 	 *
 	 * @param hd            Where to write the XML to.
 	 * @param root          Directory to lists.
@@ -191,16 +183,10 @@ public final class FileSearchBean {
 	 */
 	private void writeOutFolder(TransformerHandler hd, final File root, File[] expandedPaths) {
 		// find all the files+directories
-		final List<File> dirs = new ArrayList<File>(100);
-		final List<File> files = new ArrayList<File>(100);
-
-		FileUtilities.listFolderContents(root, ServiceImpl.FILTER, dirs, files);
+		final DirectoryListingCache.Listing listing = ServiceImpl.LISTING_CACHE.list(root);
 		AttributesImpl atts = new AttributesImpl();
 		try {
-			Collections.sort(dirs, new SimpleFileComparator());
-			Collections.sort(files, new SimpleFileComparator());
-
-			for (File dir : dirs) {
+			for (File dir : listing.getDirectories()) {
 				atts.clear();
 				atts.addAttribute("", "", NAME_ATTR, "CDATA", dir.getName());
 				hd.startElement("", "", DIR_TAG, atts);
@@ -211,7 +197,7 @@ public final class FileSearchBean {
 				hd.endElement("", "", DIR_TAG);
 			}
 
-			for (File file : files) {
+			for (File file : listing.getFiles()) {
 				atts.clear();
 				atts.addAttribute("", "", NAME_ATTR, "CDATA", file.getName());
 				hd.startElement("", "", FILE_TAG, atts);
@@ -221,13 +207,4 @@ public final class FileSearchBean {
 			throw new MprcException("Failed writing out folder " + root.getPath(), e);
 		}
 	}
-
-	private static final class SimpleFileComparator implements Comparator<File>, Serializable {
-		private static final long serialVersionUID = 20121221L;
-
-		@Override
-		public int compare(File o1, File o2) {
-			return o1.getName().compareToIgnoreCase(o2.getName());
-		}
-	}
 }
@@ -4,6 +4,7 @@ import edu.mayo.mprc.MprcException;
 import edu.mayo.mprc.swift.params2.ParamsDao;
 import edu.mayo.mprc.swift.params2.SavedSearchEngineParameters;
 import edu.mayo.mprc.swift.params2.SearchEngineParameters;
+import edu.mayo.mprc.swift.params2.mapping.ParamsValidations;
 import edu.mayo.mprc.swift.ui.client.rpc.ClientParamSet;
 
 import javax.servlet.http.HttpSession;
@@ -23,6 +24,8 @@ public final class ParameterSetCache {
 	private static final String TEMPORARY_PARAM_SETS = "temporaryParamSets";
 	// A list of client tokens
 	private static final String TEMPORARY_CLIENT_PARAM_LIST = "temporaryClientParamList";
+	// Client token id -> last validations of the parameter set
+	private static final String PARAM_SET_VALIDATIONS = "paramSetValidations";
 
 	private Map<Integer, SearchEngineParameters> persistentCache;
 	private Map<Integer, SearchEngineParameters> temporaryCache;
@@ -51,6 +54,7 @@ public final class ParameterSetCache {
 
 	public synchronized void removeFromCache(ClientParamSet clientParamSet) {
 		getCache(clientParamSet.getId()).remove(clientParamSet.getId());
+		getValidationCache().remove(clientParamSet.getId());
 		if (clientParamSet.isTemporary()) {
 			getTemporaryClientParamList().remove(clientParamSet);
 		}
@@ -136,6 +140,35 @@ public final class ParameterSetCache {
 		}
 	}
 
+	/**
+	 * @param paramSet   Client token of the parameter set.
+	 * @param parameters The parameters as obtained from {@link #getFromCache}.
+	 * @return The last validations stored for the parameters, null if there are none or they were done on a different object.
+	 */
+	public synchronized ParamsValidations getValidations(ClientParamSet paramSet, SearchEngineParameters parameters) {
+		final CachedValidations cached = getValidationCache().get(paramSet.getId());
+		if (cached == null || cached.parameters != parameters) {
+			return null;
+		}
+		return cached.validations;
+	}
+
+	/**
+	 * Remember validations of given parameters, so the next change can revalidate only the parameter that changed.
+	 */
+	public synchronized void setValidations(ClientParamSet paramSet, SearchEngineParameters parameters, ParamsValidations validations) {
+		getValidationCache().put(paramSet.getId(), new CachedValidations(parameters, validations));
+	}
+
+	private Map<Integer, CachedValidations> getValidationCache() {
+		Map<Integer, CachedValidations> validationCache = (Map<Integer, CachedValidations>) session.getAttribute(PARAM_SET_VALIDATIONS);
+		if (validationCache == null) {
+			validationCache = new HashMap<Integer, CachedValidations>();
+			session.setAttribute(PARAM_SET_VALIDATIONS, validationCache);
+		}
+		return validationCache;
+	}
+
 	/**
 	 * Temporary parameter set map maps search engine parameters to a client 'token' - a simple reference to the parameter set.
 	 * The map is defined on the session. If no map is present a new, empty one is created.
@@ -232,4 +265,17 @@ public final class ParameterSetCache {
 		}
 		return null;
 	}
+
+	/**
+	 * Validations together with the exact parameter object they were made for.
+	 */
+	private static final class CachedValidations {
+		private final SearchEngineParameters parameters;
+		private final ParamsValidations validations;
+
+		private CachedValidations(SearchEngineParameters parameters, ParamsValidations validations) {
+			this.parameters = parameters;
+			this.validations = validations;
+		}
+	}
 }
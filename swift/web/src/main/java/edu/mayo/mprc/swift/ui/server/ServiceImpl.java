@@ -27,7 +27,6 @@ import edu.mayo.mprc.swift.search.SwiftSearcherCaller;
 import edu.mayo.mprc.swift.ui.client.Service;
 import edu.mayo.mprc.swift.ui.client.rpc.*;
 import edu.mayo.mprc.swift.ui.client.rpc.files.*;
-import edu.mayo.mprc.utilities.NotHiddenFilter;
 import edu.mayo.mprc.utilities.exceptions.ExceptionUtilities;
 import edu.mayo.mprc.workspace.User;
 import edu.mayo.mprc.workspace.WorkspaceDao;
@@ -56,9 +55,18 @@ public final class ServiceImpl extends RemoteServiceServlet implements Service {
 	// String of allowed extensions, separated by | signs. The extensions are case insensitive.
 	private static final String ALLOWED_EXTENSIONS = ".RAW|.raw|.mgf";
 	public static final InputFileFilter FILTER = new InputFileFilter(ALLOWED_EXTENSIONS, false);
-	private static final InputFileFilter FILTER_DIRS = new InputFileFilter(ALLOWED_EXTENSIONS, true);
 	// After 10 seconds without hearing from the other side the search attempt timeouts
 	private static final int SEARCH_TIMEOUT = 10 * 1000;
+	// Folder listings are reused for 30 seconds, unless the folder changes
+	static final DirectoryListingCache LISTING_CACHE = new DirectoryListingCache(FILTER, 30 * 1000, 1000);
+	// A file search adds at most this many files
+	private static final int MAX_FOUND_FILES = 10000;
+	// The synchronous file search gives up after 30 seconds
+	private static final long FIND_FILES_TIMEOUT = 30 * 1000;
+	// The background file search gives up after 5 minutes
+	private static final long FIND_FILES_BACKGROUND_TIMEOUT = 5 * 60 * 1000;
+	// How long to wait for newly found files before answering the progress request
+	private static final long FIND_FILES_PROGRESS_WAIT = 2 * 1000;
 
 	private static final ClientUser[] EMPTY_USER_LIST = new ClientUser[0];
 	private static final Pattern BAD_TITLE_CHARACTER = Pattern.compile("[^a-zA-Z0-9-+._()[\\\\]{}=# ]");
@@ -236,55 +244,32 @@ public final class ServiceImpl extends RemoteServiceServlet implements Service {
 
 	public FileInfo[] findFiles(String[] relativePaths) throws GWTServiceException {
 		try {
-			// Filter paths so we never have both parent and a child in the list.
-			List<String> filteredPaths = new ArrayList<String>();
-			for (int i = 0; i < relativePaths.length; i++) {
-				int j;
-				for (j = 0; j < relativePaths.length; j++) {
-					// Our path is a child, throw it away
-					if (i != j && relativePaths[i].startsWith(relativePaths[j])) {
-						break;
-					}
-				}
-				// This path is legitimate, not a child of anything
-				if (j == relativePaths.length) {
-					filteredPaths.add(relativePaths[i]);
-				}
-			}
-
-			List<FileInfo> list = new ArrayList<FileInfo>();
-
-			for (String path : filteredPaths) {
-				addPathToList(new File(getBrowseRoot(), path), list);
-			}
-
-			FileInfo[] results = new FileInfo[list.size()];
-			return list.toArray(results);
+			return new FileFinder(getBrowseRoot(), relativePaths, LISTING_CACHE, MAX_FOUND_FILES, FIND_FILES_TIMEOUT).findAll();
 		} catch (Exception t) {
 			LOGGER.error("Could not find files", t);
 			throw GWTServiceExceptionFactory.createException("Could not find files", t);
 		}
 	}
 
-	private void addPathToList(File file, List<FileInfo> list) {
-		if (!file.exists() || file.isHidden()) {
-			return;
+	public String startFindFiles(String[] relativePaths) throws GWTServiceException {
+		try {
+			return FileFinder.start(new FileFinder(getBrowseRoot(), relativePaths, LISTING_CACHE, MAX_FOUND_FILES, FIND_FILES_BACKGROUND_TIMEOUT));
+		} catch (Exception t) {
+			LOGGER.error("Could not start file search", t);
+			throw GWTServiceExceptionFactory.createException("Could not start file search", t);
 		}
-		if (file.isDirectory()) {
-			// Recursively add the contents
-			// TODO: Limit the running time
-			File[] files = file.listFiles(FILTER_DIRS);
-			Arrays.sort(files);
-			for (File path : files) {
-				addPathToList(path, list);
-			}
-		} else {
-			if (FILTER.accept(file.getParentFile(), file.getName())) {
-				String path = file.getAbsolutePath();
-				path = path.substring(getBrowseRoot().getAbsolutePath().length());
-				path = path.replaceAll(Pattern.quote(File.separator), "/");
-				list.add(new FileInfo(path, file.length()));
+	}
+
+	public FileSearchProgress getFindFilesProgress(String searchId) throws GWTServiceException {
+		try {
+			final FileSearchProgress progress = FileFinder.get(searchId).takeProgress(FIND_FILES_PROGRESS_WAIT);
+			if (progress.isDone()) {
+				FileFinder.remove(searchId);
 			}
+			return progress;
+		} catch (Exception t) {
+			LOGGER.error("Could not obtain file search progress", t);
+			throw GWTServiceExceptionFactory.createException("Could not obtain file search progress", t);
 		}
 	}
 
@@ -322,46 +307,26 @@ public final class ServiceImpl extends RemoteServiceServlet implements Service {
 	 * @param expandedPaths List of paths that have to be expanded in the listing.
 	 */
 	private void listDirectoryContents(Entry rootEntry, File root, File[] expandedPaths) {
-		// find all directories
-		File dirs[] = null;
+		final DirectoryListingCache.Listing listing;
 		try {
-			dirs = root.listFiles(new NotHiddenFilter());
+			listing = LISTING_CACHE.list(root);
 		} catch (SecurityException e) {
 			LOGGER.debug("Could not list contents of " + root.getAbsolutePath(), e);
 			rootEntry.addChild(new ErrorEntry(MessageFormat.format("Could not list contents of {0}: {1}", root.getAbsolutePath(), e.getMessage())));
 			return;
 		}
 
-		if (dirs != null) {
-			Arrays.sort(dirs, new FilenameComparator());
-			for (File dir : dirs) {
-				if (dir.isDirectory()) {
-					DirectoryEntry directory = new DirectoryEntry(dir.getName());
-					rootEntry.addChild(directory);
-					// If this directory should be expanded
-					if (isSubfolder(dir, expandedPaths)) {
-						listDirectoryContents(directory, dir, expandedPaths);
-					}
-				}
+		for (File dir : listing.getDirectories()) {
+			DirectoryEntry directory = new DirectoryEntry(dir.getName());
+			rootEntry.addChild(directory);
+			// If this directory should be expanded
+			if (isSubfolder(dir, expandedPaths)) {
+				listDirectoryContents(directory, dir, expandedPaths);
 			}
 		}
 
-		// find all the files with allowed extension
-		File[] files = null;
-		try {
-			files = root.listFiles(FILTER);
-		} catch (SecurityException e) {
-			LOGGER.debug("Could not list contents of " + root.getAbsolutePath(), e);
-			rootEntry.addChild(new ErrorEntry(MessageFormat.format("Could not list contents of {0}: {1}", root.getAbsolutePath(), e.getMessage())));
-			return;
-		}
-		if (files != null) {
-			Arrays.sort(files, new FilenameComparator());
-			for (File file : files) {
-				if (!file.isDirectory()) {
-					rootEntry.addChild(new FileEntry(file.getName()));
-				}
-			}
+		for (File file : listing.getFiles()) {
+			rootEntry.addChild(new FileEntry(file.getName()));
 		}
 	}
 
@@ -443,6 +408,7 @@ public final class ServiceImpl extends RemoteServiceServlet implements Service {
 			ParameterSetCache cache = new ParameterSetCache(session, getParamsDao());
 			SearchEngineParameters ps = cache.getFromCache(paramSet);
 			final ParamsValidations paramsValidations = SearchEngine.validate(ps, getSearchEngines());
+			cache.setValidations(paramSet, ps, paramsValidations);
 			final ClientParamSetValues clientParamSetValues = getClientProxyGenerator().convertValues(ps, paramsValidations);
 			getParamsDao().commit();
 			return clientParamSetValues;
@@ -504,8 +470,13 @@ public final class ServiceImpl extends RemoteServiceServlet implements Service {
 			SearchEngineParameters ps = cache.getFromCache(paramSet);
 			try {
 				ParamName name = ParamName.getById(param);
+				final ParamsValidations previousValidations = cache.getValidations(paramSet, ps);
 				ps.setValue(name, getClientProxyGenerator().convert(value, getParamsInfo().getAllowedValues(name)));
-				ParamsValidations validations = SearchEngine.validate(ps, getSearchEngines());
+				// Only the changed parameter needs to be mapped again
+				final ParamsValidations validations = previousValidations == null ?
+						SearchEngine.validate(ps, getSearchEngines()) :
+						SearchEngine.validate(ps, getSearchEngines(), name, previousValidations);
+				cache.setValidations(paramSet, ps, validations);
 				final ClientParamsValidations validationList = getClientProxyGenerator().convertTo(validations);
 				getParamsDao().commit();
 				return validationList;
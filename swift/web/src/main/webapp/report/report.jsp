@@ -187,14 +187,46 @@
     }
 
     var timestamp = 0;
+    // Cursor into the server change log, long polling is used while the server confirms it tracks the changes
+    var cursor = null;
+    var longPoll = false;
 
-    var periodicalUpdate;
+    // Seconds between updates when the server cannot tell us about changes
     var updateDelay = 60;
+    // Seconds the server may hold a long poll request waiting for changes
+    var longPollWait = 30;
     var queries = getQueryString();
     var listedEntries = queries['count'] == null ? 100 : queries['count'];
     var firstEntry = queries['start'] == null ? 0 : queries['start'];
     var displayer;
 
+    function requestUpdate() {
+        var parameters = {
+            action: 'update',
+            start: firstEntry,
+            count: listedEntries,
+            expanded: displayer.listExpandedItems(),
+            timestamp : window.timestamp,
+            userfilter: user.getRequestString()
+        };
+        if (window.longPoll && window.cursor != null) {
+            parameters.cursor = window.cursor;
+            parameters.wait = longPollWait;
+        }
+        new Ajax.Request('reportupdate', {
+            method: 'get',
+            parameters: parameters,
+            onComplete: function(transport) {
+                // The response already updated window.cursor and window.longPoll
+                scheduleUpdate(transport.status == 200 && window.longPoll ? 1 : updateDelay);
+            }
+        });
+    }
+
+    function scheduleUpdate(delay) {
+        window.setTimeout(requestUpdate, delay * 1000);
+    }
+
     Event.observe(window, 'load', function() {
 
         window.root = turnIntoSparseArray(window.test, true);
@@ -218,23 +250,11 @@
                 count: listedEntries,
                 timestamp: window.timestamp,
                 userfilter: user.getRequestString()
+            },
+            onComplete: function(transport) {
+                scheduleUpdate(window.longPoll ? 1 : updateDelay);
             }});
 
-        periodicalUpdate = new PeriodicalExecuter(function(pe) {
-
-            new Ajax.Request('reportupdate', {
-                method: 'get',
-                parameters: {
-                    action: 'update',
-                    start: firstEntry,
-                    count: listedEntries,
-                    expanded: displayer.listExpandedItems(),
-                    timestamp : window.timestamp,
-                    userfilter: user.getRequestString()
-                }
-            });
-        }, updateDelay);
-
     });
 </script>
 <link rel="stylesheet" href="/common/topbar.css" media="all">
@@ -0,0 +1,128 @@
+package edu.mayo.mprc.swift.ui.server;
+
+import edu.mayo.mprc.MprcException;
+import edu.mayo.mprc.swift.ui.client.rpc.files.FileInfo;
+import edu.mayo.mprc.swift.ui.client.rpc.files.FileSearchProgress;
+import edu.mayo.mprc.utilities.FileUtilities;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public final class FileFinderTest {
+	private static final long NO_LIMIT = 60 * 1000;
+
+	private File root;
+
+	@BeforeClass
+	public void setup() {
+		root = FileUtilities.createTempFolder();
+		for (String path : new String[]{"a/1.RAW", "a/2.mgf", "a/notes.txt", "a/b/3.raw", "a/b/c/4.RAW", "d/5.mgf"}) {
+			final File file = new File(root, path);
+			FileUtilities.ensureFolderExists(file.getParentFile());
+			FileUtilities.writeStringToFile(file, path, true);
+		}
+	}
+
+	@AfterClass
+	public void teardown() {
+		FileUtilities.cleanupTempFile(root);
+	}
+
+	@Test
+	public void shouldFindNestedFiles() {
+		final FileInfo[] found = newFinder(new String[]{"a", "a/b", "d/5.mgf"}, 100).findAll();
+		Assert.assertEquals(paths(found), Arrays.asList("/a/1.RAW", "/a/2.mgf", "/a/b/3.raw", "/a/b/c/4.RAW", "/d/5.mgf"));
+		Assert.assertEquals(found[0].getSize(), (long) "a/1.RAW".length());
+	}
+
+	@Test
+	public void shouldReportRepeatedPathOnce() {
+		Assert.assertEquals(paths(newFinder(new String[]{"d", "d"}, 100).findAll()), Arrays.asList("/d/5.mgf"));
+	}
+
+	@Test
+	public void shouldCompareWholePathSegments() {
+		Assert.assertEquals(FileFinder.filterNestedPaths(new String[]{"a", "ab", "a/b", "a/", "d", "d"}),
+				Arrays.asList("a", "ab", "d"));
+		Assert.assertEquals(FileFinder.filterNestedPaths(new String[]{"a/b", ""}), Arrays.asList(""));
+	}
+
+	@Test
+	public void shouldStopAtLimit() {
+		final FileFinder finder = newFinder(new String[]{""}, 3);
+		finder.run();
+		final FileSearchProgress progress = finder.takeProgress(0);
+		Assert.assertEquals(progress.getFiles().length, 3);
+		Assert.assertTrue(progress.isDone());
+		Assert.assertNotNull(progress.getMessage(), "The user has to learn that some files were skipped");
+	}
+
+	@Test
+	public void shouldStopWhenCanceled() {
+		final FileFinder finder = newFinder(new String[]{""}, 100);
+		finder.cancel();
+		finder.run();
+		final FileSearchProgress progress = finder.takeProgress(0);
+		Assert.assertEquals(progress.getFiles().length, 0);
+		Assert.assertTrue(progress.isDone());
+	}
+
+	@Test
+	public void shouldDeliverFilesInBackground() {
+		final String id = FileFinder.start(newFinder(new String[]{""}, 100));
+		final List<String> found = new ArrayList<String>();
+		FileSearchProgress progress;
+		do {
+			progress = FileFinder.get(id).takeProgress(NO_LIMIT);
+			found.addAll(paths(progress.getFiles()));
+		} while (!progress.isDone());
+		FileFinder.remove(id);
+
+		Assert.assertEquals(found, Arrays.asList("/a/1.RAW", "/a/2.mgf", "/a/b/3.raw", "/a/b/c/4.RAW", "/d/5.mgf"));
+		Assert.assertNull(progress.getMessage());
+		try {
+			FileFinder.get(id);
+			Assert.fail("The finished search should be forgotten");
+		} catch (MprcException e) {
+			// SWALLOWED: expected
+		}
+	}
+
+	@Test
+	public void shouldReuseListingUntilFolderChanges() {
+		final DirectoryListingCache cache = new DirectoryListingCache(ServiceImpl.FILTER, NO_LIMIT, 10);
+		final File folder = new File(root, "a");
+		final DirectoryListingCache.Listing listing = cache.list(folder);
+		Assert.assertEquals(listing.getDirectories(), Arrays.asList(new File(folder, "b")));
+		Assert.assertEquals(listing.getFiles(), Arrays.asList(new File(folder, "1.RAW"), new File(folder, "2.mgf")));
+		Assert.assertSame(cache.list(folder), listing);
+
+		Assert.assertTrue(folder.setLastModified(folder.lastModified() - 10000));
+		Assert.assertNotSame(cache.list(folder), listing);
+	}
+
+	@Test
+	public void shouldExpireListing() {
+		final DirectoryListingCache cache = new DirectoryListingCache(ServiceImpl.FILTER, -1, 10);
+		final File folder = new File(root, "d");
+		Assert.assertNotSame(cache.list(folder), cache.list(folder));
+	}
+
+	private FileFinder newFinder(String[] paths, int maxFiles) {
+		return new FileFinder(root, paths, new DirectoryListingCache(ServiceImpl.FILTER, NO_LIMIT, 10), maxFiles, NO_LIMIT);
+	}
+
+	private static List<String> paths(FileInfo[] files) {
+		final List<String> paths = new ArrayList<String>(files.length);
+		for (FileInfo file : files) {
+			paths.add(file.getRelativePath());
+		}
+		return paths;
+	}
+}